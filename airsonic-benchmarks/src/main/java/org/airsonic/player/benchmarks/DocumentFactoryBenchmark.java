@@ -0,0 +1,67 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.service.search.DocumentFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the search index documents of every song of a library, as a full scan does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DocumentFactoryBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int size;
+
+    private final DocumentFactory documentFactory = new DocumentFactory();
+    private List<MediaFile> songs;
+
+    @Setup
+    public void setup() {
+        songs = new LibraryFixture(size).getSongs();
+    }
+
+    @Benchmark
+    public void createSongDocuments(Blackhole blackhole) {
+        for (MediaFile song : songs) {
+            blackhole.consume(documentFactory.createSongDocument(song));
+        }
+    }
+}
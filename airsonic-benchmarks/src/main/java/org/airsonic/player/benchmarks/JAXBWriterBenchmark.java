@@ -0,0 +1,98 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.controller.JAXBWriter;
+import org.airsonic.player.domain.MediaFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.subsonic.restapi.Child;
+import org.subsonic.restapi.Response;
+import org.subsonic.restapi.Songs;
+
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes a REST API response listing songs, the way getRandomSongs, getAlbumList2 and search3 do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JAXBWriterBenchmark {
+
+    @Param({ "xml", "json" })
+    public String format;
+
+    /**
+     * The number of songs in the response. Clients ask for up to 500.
+     */
+    @Param({ "50", "500" })
+    public int count;
+
+    private final JAXBWriter jaxbWriter = new JAXBWriter();
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private Response response;
+
+    @Setup
+    public void setup() {
+        request.setParameter("f", format);
+
+        Songs songs = new Songs();
+        for (MediaFile song : new LibraryFixture(count).getSongs()) {
+            Child child = new Child();
+            child.setId(String.valueOf(song.getId()));
+            child.setTitle(song.getTitle());
+            child.setAlbum(song.getAlbumName());
+            child.setArtist(song.getArtist());
+            child.setIsDir(false);
+            child.setYear(song.getYear());
+            child.setGenre(song.getGenre());
+            child.setCreated(jaxbWriter.convertDate(song.getCreated()));
+            child.setDuration((int) Math.round(song.getDuration()));
+            child.setBitRate(song.getBitRate());
+            child.setTrack(song.getTrackNumber());
+            child.setDiscNumber(song.getDiscNumber());
+            child.setSize(song.getFileSize());
+            child.setSuffix(song.getFormat());
+            child.setPath(song.getPath());
+            songs.getSong().add(child);
+        }
+        response = jaxbWriter.createResponse(true);
+        response.setRandomSongs(songs);
+    }
+
+    @Benchmark
+    public Entry<String, String> serializeForType() {
+        return jaxbWriter.serializeForType(request, response);
+    }
+}
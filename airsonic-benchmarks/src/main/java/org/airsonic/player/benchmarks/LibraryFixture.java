@@ -0,0 +1,146 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MediaFile.MediaType;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A synthetic music library, generated in-process so that benchmarks don't depend on files on disk. The same size
+ * always gives the same library.
+ * <p/>
+ * Artists have ten albums of ten songs each, so a library of {@code size} songs has {@code size / 100} artists.
+ * Some artist names start with an article, and some aren't ASCII, as in real libraries.
+ */
+public class LibraryFixture {
+
+    public static final String FOLDER = "/music";
+
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ra", "tu", "ven", "dor", "sil", "an", "be", "qua", "zé", "øy", "ñu", "ji", "wa"
+    };
+    private static final String[] ARTICLES = { "The", "El", "La", "Le", "Die", "Las", "Los" };
+    private static final String[] GENRES = { "Rock", "Pop", "Jazz", "Classical", "Electronic", "Hip-Hop", "Folk", "Metal" };
+    private static final String[] FORMATS = { "mp3", "flac", "m4a", "ogg" };
+
+    private final List<Artist> artists = new ArrayList<>();
+    private final List<MediaFile> albums = new ArrayList<>();
+    private final List<MediaFile> songs = new ArrayList<>();
+
+    public LibraryFixture(int size) {
+        Random random = new Random(size);
+        Instant now = Instant.now();
+        int id = 1;
+        for (int a = 0; a * 100 < size; a++) {
+            String artistName = createName(random, 1 + random.nextInt(3));
+            if (random.nextInt(5) == 0) {
+                artistName = ARTICLES[random.nextInt(ARTICLES.length)] + " " + artistName;
+            }
+            Artist artist = new Artist();
+            artist.setId(a + 1);
+            artist.setName(artistName);
+            artist.setAlbumCount(10);
+            artists.add(artist);
+
+            String artistPath = FOLDER + "/" + artistName;
+            for (int b = 0; b < 10 && songs.size() < size; b++) {
+                String albumName = createName(random, 1 + random.nextInt(4));
+                int year = 1950 + random.nextInt(72);
+                String genre = GENRES[random.nextInt(GENRES.length)];
+                String albumPath = artistPath + "/" + year + " - " + albumName;
+
+                MediaFile album = createMediaFile(id++, albumPath, artistPath, MediaType.ALBUM, now);
+                album.setArtist(artistName);
+                album.setAlbumName(albumName);
+                album.setYear(year);
+                album.setGenre(genre);
+                albums.add(album);
+
+                String format = FORMATS[random.nextInt(FORMATS.length)];
+                for (int t = 1; t <= 10 && songs.size() < size; t++) {
+                    String title = createName(random, 1 + random.nextInt(5));
+                    MediaFile song = createMediaFile(id++, albumPath + "/" + String.format("%02d", t) + " - " + title + "." + format,
+                            albumPath, MediaType.MUSIC, now);
+                    song.setFormat(format);
+                    song.setTitle(title);
+                    song.setArtist(artistName);
+                    song.setAlbumArtist(artistName);
+                    song.setAlbumName(albumName);
+                    song.setTrackNumber(t);
+                    song.setDiscNumber(1);
+                    song.setYear(year);
+                    song.setGenre(genre);
+                    song.setDuration(120.0 + random.nextInt(300));
+                    song.setBitRate(320);
+                    song.setFileSize(5_000_000L + random.nextInt(10_000_000));
+                    songs.add(song);
+                }
+            }
+        }
+    }
+
+    private static MediaFile createMediaFile(int id, String path, String parentPath, MediaType mediaType, Instant now) {
+        MediaFile file = new MediaFile();
+        file.setId(id);
+        file.setPath(path);
+        file.setParentPath(parentPath);
+        file.setFolder(FOLDER);
+        file.setMediaType(mediaType);
+        file.setCreated(now);
+        file.setChanged(now);
+        file.setLastScanned(now);
+        file.setChildrenLastUpdated(now);
+        file.setPresent(true);
+        return file;
+    }
+
+    private static String createName(Random random, int words) {
+        StringBuilder name = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                name.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                String syllable = SYLLABLES[random.nextInt(SYLLABLES.length)];
+                name.append(s == 0 ? Character.toUpperCase(syllable.charAt(0)) + syllable.substring(1) : syllable);
+            }
+        }
+        return name.toString();
+    }
+
+    public List<Artist> getArtists() {
+        return Collections.unmodifiableList(artists);
+    }
+
+    public List<MediaFile> getAlbums() {
+        return Collections.unmodifiableList(albums);
+    }
+
+    public List<MediaFile> getSongs() {
+        return Collections.unmodifiableList(songs);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MediaFileComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorts the albums and songs of a library, shuffled anew for every sort.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MediaFileComparatorBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean sortAlbumsByYear;
+
+    private final Random random = new Random(0);
+    private List<MediaFile> library;
+    private List<MediaFile> files;
+
+    @Setup
+    public void setup() {
+        LibraryFixture fixture = new LibraryFixture(size);
+        library = new ArrayList<>(fixture.getAlbums());
+        library.addAll(fixture.getSongs());
+    }
+
+    @Setup(Level.Invocation)
+    public void shuffle() {
+        files = new ArrayList<>(library);
+        Collections.shuffle(files, random);
+    }
+
+    @Benchmark
+    public List<MediaFile> sort() {
+        files.sort(new MediaFileComparator(sortAlbumsByYear));
+        return files;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MusicIndex;
+import org.airsonic.player.service.MusicIndexService;
+import org.airsonic.player.service.SettingsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Sorts the artists of a library into the music index, which creates the sortable name of every artist.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MusicIndexServiceBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    public int size;
+
+    private final MusicIndexService musicIndexService = new MusicIndexService();
+    private List<Artist> artists;
+
+    @Setup
+    public void setup() {
+        // The defaults of SettingsService, which splits the articles itself
+        SettingsService settingsService = mock(SettingsService.class, CALLS_REAL_METHODS);
+        doReturn("A B C D E F G H I J K L M N O P Q R S T U V W X-Z(XYZ)").when(settingsService).getIndexString();
+        doReturn("The El La Los Las Le Les").when(settingsService).getIgnoredArticles();
+        doReturn(Locale.ENGLISH).when(settingsService).getLocale();
+        ReflectionTestUtils.setField(musicIndexService, "settingsService", settingsService);
+
+        artists = new LibraryFixture(size).getArtists();
+    }
+
+    @Benchmark
+    public SortedMap<MusicIndex, List<MusicIndex.SortableArtistWithArtist>> getIndexedArtists() {
+        return musicIndexService.getIndexedArtists(artists);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.domain.Player;
+import org.airsonic.player.domain.TransferStatus;
+import org.airsonic.player.io.PipeStreams.MonitoredInputStream;
+import org.airsonic.player.io.PipeStreams.PipedInputStream;
+import org.airsonic.player.io.PipeStreams.PipedOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams a file's worth of bytes through the pipe that connects transcoders to clients, and through the stream that
+ * accounts for the bytes sent to a player.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipeStreamsBenchmark {
+
+    private static final int STREAM_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The size of the reads and writes, as done by the streaming controllers and transcoders.
+     */
+    @Param({ "4096", "65536" })
+    public int chunkSize;
+
+    private final byte[] data = new byte[STREAM_SIZE];
+    private byte[] chunk;
+    private ExecutorService writer;
+    private Player player;
+
+    @Setup
+    public void setup() {
+        chunk = new byte[chunkSize];
+        writer = Executors.newSingleThreadExecutor();
+        player = new Player();
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Benchmark
+    public long pipe() throws Exception {
+        PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out);
+        Future<?> written = writer.submit(() -> {
+            try (PipedOutputStream o = out) {
+                for (int i = 0; i < STREAM_SIZE; i += chunkSize) {
+                    o.write(data, i, Math.min(chunkSize, STREAM_SIZE - i));
+                }
+            }
+            return null;
+        });
+        long read;
+        try (InputStream i = in) {
+            read = drain(i);
+        }
+        written.get();
+        return read;
+    }
+
+    @Benchmark
+    public long monitored() throws Exception {
+        InputStream source = new ByteArrayInputStream(data);
+        try (InputStream in = new MonitoredInputStream(source, null, () -> new TransferStatus(player), status -> status.setActive(false), (i, status) -> { })) {
+            return drain(in);
+        }
+    }
+
+    private long drain(InputStream in) throws IOException {
+        long total = 0;
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+}
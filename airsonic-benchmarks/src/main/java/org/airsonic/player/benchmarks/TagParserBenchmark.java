@@ -0,0 +1,126 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.benchmarks;
+
+import org.airsonic.player.service.metadata.FastTagParser;
+import org.airsonic.player.service.metadata.JaudiotaggerParser;
+import org.airsonic.player.service.metadata.MetaData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the tags of an MP3 file, with and without a large embedded picture, with the parser used by scans and with
+ * Jaudiotagger, which it falls back to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagParserBenchmark {
+
+    @Param({ "0", "1048576" })
+    public int pictureSize;
+
+    private final JaudiotaggerParser jaudiotaggerParser = new JaudiotaggerParser(null);
+    private final FastTagParser fastTagParser = new FastTagParser();
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        ReflectionTestUtils.setField(fastTagParser, "jaudiotaggerParser", jaudiotaggerParser);
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeTextFrame(frames, "TIT2", "Title");
+        writeTextFrame(frames, "TPE1", "Artist");
+        writeTextFrame(frames, "TPE2", "Album Artist");
+        writeTextFrame(frames, "TALB", "Album");
+        writeTextFrame(frames, "TRCK", "3/12");
+        writeTextFrame(frames, "TDRC", "2001");
+        writeTextFrame(frames, "TCON", "Rock");
+        if (pictureSize > 0) {
+            writeFrame(frames, "APIC", new byte[pictureSize]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] { 'I', 'D', '3', 4, 0, 0 });
+        out.write(syncSafeInt(frames.size()));
+        frames.writeTo(out);
+        // MPEG-1 layer III, 128 kbps, 44.1 kHz frames of 417 bytes
+        for (int i = 0; i < 500; i++) {
+            byte[] frame = new byte[417];
+            frame[0] = (byte) 0xFF;
+            frame[1] = (byte) 0xFB;
+            frame[2] = (byte) 0x90;
+            out.write(frame);
+        }
+        file = Files.createTempFile("airsonic-benchmark", ".mp3");
+        Files.write(file, out.toByteArray());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public MetaData fastTagParser() {
+        return fastTagParser.getRawMetaData(file);
+    }
+
+    @Benchmark
+    public MetaData jaudiotagger() {
+        return jaudiotaggerParser.getRawMetaData(file);
+    }
+
+    private static void writeTextFrame(ByteArrayOutputStream out, String id, String text) throws IOException {
+        // UTF-8 encoded
+        writeFrame(out, id, ("\3" + text).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, String id, byte[] body) throws IOException {
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(syncSafeInt(body.length));
+        out.write(new byte[2]);
+        out.write(body);
+    }
+
+    private static byte[] syncSafeInt(int value) {
+        return new byte[] { (byte) (value >> 21 & 0x7F), (byte) (value >> 14 & 0x7F), (byte) (value >> 7 & 0x7F), (byte) (value & 0x7F) };
+    }
+}
@@ -1,5 +1,6 @@
 package org.airsonic.player;
 
+import org.airsonic.player.io.IoThreads;
 import org.apache.catalina.Container;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.webresources.StandardRoot;
@@ -41,5 +42,11 @@ public class TomcatApplication {
                 ((Wrapper) jsp).addInitParameter("development", Boolean.toString(development));
             }
         });
+
+        // Streams and downloads hold their request thread for as long as they play, so give every request its own
+        // virtual thread rather than a pooled platform thread
+        if (IoThreads.isVirtual()) {
+            tomcatFactory.addProtocolHandlerCustomizers(handler -> handler.setExecutor(IoThreads.newPerTaskExecutor("http-virtual")));
+        }
     }
 }
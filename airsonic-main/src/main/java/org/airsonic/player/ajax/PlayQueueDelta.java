@@ -0,0 +1,283 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.ajax;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PlayQueue.Status;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A change to the play queue of a player, as operations that turn version {@link #getBaseVersion()} of the play
+ * queue into version {@link #getVersion()}. A client whose copy of the play queue is at another version has missed
+ * a change, and must fetch the whole play queue again.
+ */
+public class PlayQueueDelta {
+    private final long baseVersion;
+    private final long version;
+    private final List<Operation> operations;
+    private final Status playStatus;
+    private final boolean shuffleRadioEnabled;
+    private final boolean internetRadioEnabled;
+
+    public PlayQueueDelta(long baseVersion, long version, List<Operation> operations, Status playStatus,
+            boolean shuffleRadioEnabled, boolean internetRadioEnabled) {
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.operations = operations;
+        this.playStatus = playStatus;
+        this.shuffleRadioEnabled = shuffleRadioEnabled;
+        this.internetRadioEnabled = internetRadioEnabled;
+    }
+
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public Status getPlayStatus() {
+        return playStatus;
+    }
+
+    public boolean isShuffleRadioEnabled() {
+        return shuffleRadioEnabled;
+    }
+
+    public boolean isInternetRadioEnabled() {
+        return internetRadioEnabled;
+    }
+
+    /**
+     * Returns the operations that turn one list of files into another. Files are compared by identity, as the play
+     * queue moves the same instances around.
+     *
+     * @param before    The files before the change.
+     * @param after     The files after the change.
+     * @param converter Converts the files that are inserted into entries.
+     * @return The operations, to be applied in order.
+     */
+    public static List<Operation> diff(List<MediaFile> before, List<MediaFile> after,
+            Function<List<MediaFile>, List<MediaFileEntry>> converter) {
+        // Most changes only touch a single range of the play queue
+        int prefix = 0;
+        while (prefix < before.size() && prefix < after.size() && before.get(prefix) == after.get(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < before.size() - prefix && suffix < after.size() - prefix
+                && before.get(before.size() - 1 - suffix) == after.get(after.size() - 1 - suffix)) {
+            suffix++;
+        }
+        List<MediaFile> removed = before.subList(prefix, before.size() - suffix);
+        List<MediaFile> inserted = after.subList(prefix, after.size() - suffix);
+
+        List<Operation> operations = new ArrayList<>();
+        if (removed.isEmpty() && inserted.isEmpty()) {
+            return operations;
+        }
+        if (removed.isEmpty()) {
+            operations.add(Operation.insert(prefix, converter.apply(inserted)));
+            return operations;
+        }
+        if (inserted.isEmpty()) {
+            operations.add(Operation.remove(prefix, removed.size()));
+            return operations;
+        }
+
+        List<Integer> order = getOrder(removed, inserted);
+        if (order != null) {
+            int last = order.size() - 1;
+            if (order.get(last) == 0 && order.subList(0, last).equals(range(1, last + 1))) {
+                operations.add(Operation.move(prefix, prefix + last));
+            } else if (order.get(0) == last && order.subList(1, last + 1).equals(range(0, last))) {
+                operations.add(Operation.move(prefix + last, prefix));
+            } else {
+                operations.add(Operation.reorder(prefix, order));
+            }
+            return operations;
+        }
+
+        List<int[]> removedRuns = getMissingRuns(removed, inserted);
+        if (removedRuns != null) {
+            // Remove from the end, so that the indexes of the remaining runs stay the same
+            Collections.reverse(removedRuns);
+            for (int[] run : removedRuns) {
+                operations.add(Operation.remove(prefix + run[0], run[1] - run[0]));
+            }
+            return operations;
+        }
+
+        List<int[]> insertedRuns = getMissingRuns(inserted, removed);
+        if (insertedRuns != null) {
+            for (int[] run : insertedRuns) {
+                operations.add(Operation.insert(prefix + run[0], converter.apply(inserted.subList(run[0], run[1]))));
+            }
+            return operations;
+        }
+
+        operations.add(Operation.remove(prefix, removed.size()));
+        operations.add(Operation.insert(prefix, converter.apply(inserted)));
+        return operations;
+    }
+
+    /**
+     * Returns, for every file of {@code after}, its index in {@code before}, or {@code null} if the lists don't hold
+     * the same files.
+     */
+    private static List<Integer> getOrder(List<MediaFile> before, List<MediaFile> after) {
+        if (before.size() != after.size()) {
+            return null;
+        }
+        Map<MediaFile, Deque<Integer>> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < before.size(); i++) {
+            indexes.computeIfAbsent(before.get(i), k -> new ArrayDeque<>()).add(i);
+        }
+        List<Integer> order = new ArrayList<>(after.size());
+        for (MediaFile file : after) {
+            Deque<Integer> candidates = indexes.get(file);
+            if (candidates == null || candidates.isEmpty()) {
+                return null;
+            }
+            order.add(candidates.poll());
+        }
+        return order;
+    }
+
+    /**
+     * Returns the ranges of {@code all} that are missing from {@code subsequence}, as start (inclusive) and end
+     * (exclusive) indexes, or {@code null} if {@code subsequence} isn't a subsequence of {@code all}.
+     */
+    private static List<int[]> getMissingRuns(List<MediaFile> all, List<MediaFile> subsequence) {
+        List<int[]> runs = new ArrayList<>();
+        int j = 0;
+        for (int i = 0; i < all.size(); i++) {
+            if (j < subsequence.size() && all.get(i) == subsequence.get(j)) {
+                j++;
+            } else if (!runs.isEmpty() && runs.get(runs.size() - 1)[1] == i) {
+                runs.get(runs.size() - 1)[1] = i + 1;
+            } else {
+                runs.add(new int[] {i, i + 1});
+            }
+        }
+        return j == subsequence.size() ? runs : null;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    public enum Type {
+        /** Inserts {@code entries} at {@code index}. */
+        INSERT,
+        /** Removes {@code count} entries at {@code index}. */
+        REMOVE,
+        /** Moves the entry at {@code index} to {@code toIndex}. */
+        MOVE,
+        /** Rearranges the entries from {@code index} on, so that the n-th one is the one previously at {@code index + order[n]}. */
+        REORDER,
+        /** Sets the index of the current song on the server to {@code index}. */
+        SET_INDEX,
+        /** Replaces all entries with {@code entries}. */
+        RESET
+    }
+
+    public static class Operation {
+        private final Type type;
+        private final int index;
+        private final int count;
+        private final int toIndex;
+        private final List<Integer> order;
+        private final List<MediaFileEntry> entries;
+
+        private Operation(Type type, int index, int count, int toIndex, List<Integer> order, List<MediaFileEntry> entries) {
+            this.type = type;
+            this.index = index;
+            this.count = count;
+            this.toIndex = toIndex;
+            this.order = order;
+            this.entries = entries;
+        }
+
+        public static Operation insert(int index, List<MediaFileEntry> entries) {
+            return new Operation(Type.INSERT, index, entries.size(), 0, null, entries);
+        }
+
+        public static Operation remove(int index, int count) {
+            return new Operation(Type.REMOVE, index, count, 0, null, null);
+        }
+
+        public static Operation move(int index, int toIndex) {
+            return new Operation(Type.MOVE, index, 1, toIndex, null, null);
+        }
+
+        public static Operation reorder(int index, List<Integer> order) {
+            return new Operation(Type.REORDER, index, order.size(), 0, order, null);
+        }
+
+        public static Operation setIndex(int index) {
+            return new Operation(Type.SET_INDEX, index, 0, 0, null, null);
+        }
+
+        public static Operation reset(List<MediaFileEntry> entries) {
+            return new Operation(Type.RESET, 0, entries.size(), 0, null, entries);
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getToIndex() {
+            return toIndex;
+        }
+
+        public List<Integer> getOrder() {
+            return order;
+        }
+
+        public List<MediaFileEntry> getEntries() {
+            return entries;
+        }
+    }
+}
@@ -31,17 +31,19 @@ import java.util.List;
  */
 public class PlayQueueInfo {
     private final List<MediaFileEntry> entries;
+    private final long version;
+    private final int index;
     private final Status playStatus;
     private final RepeatStatus repeatStatus;
     private final boolean shuffleRadioEnabled;
     private final boolean internetRadioEnabled;
     private final float gain;
-    private int startPlayerAt = -1;
-    private long startPlayerAtPosition; // millis
 
-    public PlayQueueInfo(List<MediaFileEntry> entries, Status playStatus, RepeatStatus repeatStatus,
+    public PlayQueueInfo(List<MediaFileEntry> entries, long version, int index, Status playStatus, RepeatStatus repeatStatus,
             boolean shuffleRadioEnabled, boolean internetRadioEnabled, float gain) {
         this.entries = entries;
+        this.version = version;
+        this.index = index;
         this.playStatus = playStatus;
         this.repeatStatus = repeatStatus;
         this.shuffleRadioEnabled = shuffleRadioEnabled;
@@ -53,6 +55,17 @@ public class PlayQueueInfo {
         return entries;
     }
 
+    /**
+     * Returns the version of the play queue the entries are from, see {@link PlayQueueDelta}.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
     public Status getPlayStatus() {
         return playStatus;
     }
@@ -72,22 +85,4 @@ public class PlayQueueInfo {
     public float getGain() {
         return gain;
     }
-
-    public int getStartPlayerAt() {
-        return startPlayerAt;
-    }
-
-    public PlayQueueInfo setStartPlayerAt(int startPlayerAt) {
-        this.startPlayerAt = startPlayerAt;
-        return this;
-    }
-
-    public long getStartPlayerAtPosition() {
-        return startPlayerAtPosition;
-    }
-
-    public PlayQueueInfo setStartPlayerAtPosition(long startPlayerAtPosition) {
-        this.startPlayerAtPosition = startPlayerAtPosition;
-        return this;
-    }
 }
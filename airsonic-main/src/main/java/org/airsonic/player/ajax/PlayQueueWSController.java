@@ -31,6 +31,13 @@ public class PlayQueueWSController {
         return playQueueService.getPlayQueueInfo(player);
     }
 
+    @MessageMapping("/snapshot")
+    @SendToUser
+    public PlayQueueInfo getPlayQueueSnapshot(@DestinationVariable int playerId, SimpMessageHeaderAccessor headers) throws Exception {
+        Player player = getPlayer(playerId, headers);
+        return playQueueService.getPlayQueueInfo(player);
+    }
+
     @MessageMapping("/start")
     public void start(@DestinationVariable int playerId, SimpMessageHeaderAccessor headers) throws Exception {
         Player player = getPlayer(playerId, headers);
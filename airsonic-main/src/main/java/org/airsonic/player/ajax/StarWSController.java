@@ -1,6 +1,7 @@
 package org.airsonic.player.ajax;
 
 import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.stereotype.Controller;
@@ -13,15 +14,19 @@ import java.util.List;
 public class StarWSController {
     @Autowired
     private MediaFileDao mediaFileDao;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
 
     @MessageMapping("/star")
     public void star(Principal user, List<Integer> ids) {
         mediaFileDao.starMediaFiles(ids, user.getName());
+        sonosCatalogVersion.favoritesChanged();
     }
 
     @MessageMapping("/unstar")
     public void unstar(Principal user, List<Integer> ids) {
         mediaFileDao.unstarMediaFiles(ids, user.getName());
+        sonosCatalogVersion.favoritesChanged();
     }
 
     public void setMediaFileDao(MediaFileDao mediaFileDao) {
@@ -37,6 +37,8 @@ public class GeneralSettingsCommand {
     private CoverArtSource coverArtSource;
     private Integer coverArtQuality;
     private Integer coverArtConcurrency;
+    private Integer videoProbeConcurrency;
+    private boolean coverArtPregeneration;
     private String index;
     private String ignoredArticles;
     private String genreSeparators;
@@ -108,6 +110,22 @@ public class GeneralSettingsCommand {
         this.coverArtConcurrency = coverArtConcurrency;
     }
 
+    public Integer getVideoProbeConcurrency() {
+        return videoProbeConcurrency;
+    }
+
+    public void setVideoProbeConcurrency(Integer videoProbeConcurrency) {
+        this.videoProbeConcurrency = videoProbeConcurrency;
+    }
+
+    public boolean isCoverArtPregeneration() {
+        return coverArtPregeneration;
+    }
+
+    public void setCoverArtPregeneration(boolean coverArtPregeneration) {
+        this.coverArtPregeneration = coverArtPregeneration;
+    }
+
     public String getIndex() {
         return index;
     }
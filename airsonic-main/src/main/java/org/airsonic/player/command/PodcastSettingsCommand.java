@@ -32,6 +32,8 @@ public class PodcastSettingsCommand {
     private String folder;
     private String episodeRetentionCount;
     private String episodeDownloadCount;
+    private String downloadLimit;
+    private String downloadsPerHost;
 
     public String getInterval() {
         return interval;
@@ -65,4 +67,20 @@ public class PodcastSettingsCommand {
         this.episodeDownloadCount = episodeDownloadCount;
     }
 
+    public String getDownloadLimit() {
+        return downloadLimit;
+    }
+
+    public void setDownloadLimit(String downloadLimit) {
+        this.downloadLimit = downloadLimit;
+    }
+
+    public String getDownloadsPerHost() {
+        return downloadsPerHost;
+    }
+
+    public void setDownloadsPerHost(String downloadsPerHost) {
+        this.downloadsPerHost = downloadsPerHost;
+    }
+
 }
@@ -20,6 +20,7 @@
 package org.airsonic.player.controller;
 
 import org.airsonic.player.domain.Avatar;
+import org.airsonic.player.service.CoverArtService;
 import org.airsonic.player.service.SecurityService;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.util.StringUtil;
@@ -119,7 +120,7 @@ public class AvatarUploadController {
                 double scaleFactor = MAX_AVATAR_SIZE / (double)Math.max(width, height);
                 height = (int) (height * scaleFactor);
                 width = (int) (width * scaleFactor);
-                image = CoverArtController.scale(image, width, height);
+                image = CoverArtService.scale(image, width, height);
                 ByteArrayOutputStream out = new ByteArrayOutputStream();
                 ImageIO.write(image, "jpeg", out);
                 data = out.toByteArray();
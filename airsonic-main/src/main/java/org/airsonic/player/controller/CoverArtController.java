@@ -19,46 +19,39 @@
  */
 package org.airsonic.player.controller;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.MoreFiles;
 import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.ArtistDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.*;
-import org.airsonic.player.service.metadata.JaudiotaggerParser;
-import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.service.CoverArtService.CoverArtRequest;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.jaudiotagger.tag.images.Artwork;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.ServletRequestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.servlet.mvc.LastModified;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import javax.annotation.PostConstruct;
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Instant;
-import java.util.List;
-import java.util.concurrent.Semaphore;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Controller which produces cover art images.
@@ -67,21 +60,14 @@ import java.util.stream.Collectors;
  */
 @Controller
 @RequestMapping({"/coverArt", "/ext/coverArt"})
-public class CoverArtController implements LastModified {
-
-    public static final String ALBUM_COVERART_PREFIX = "al-";
-    public static final String ARTIST_COVERART_PREFIX = "ar-";
-    public static final String PLAYLIST_COVERART_PREFIX = "pl-";
-    public static final String PODCAST_COVERART_PREFIX = "pod-";
+public class CoverArtController {
 
     private static final Logger LOG = LoggerFactory.getLogger(CoverArtController.class);
 
     @Autowired
     private MediaFileService mediaFileService;
     @Autowired
-    private TranscodingService transcodingService;
-    @Autowired
-    private SettingsService settingsService;
+    private CoverArtService coverArtService;
     @Autowired
     private PlaylistService playlistService;
     @Autowired
@@ -90,22 +76,26 @@ public class CoverArtController implements LastModified {
     private ArtistDao artistDao;
     @Autowired
     private AlbumDao albumDao;
-    @Autowired
-    private JaudiotaggerParser jaudiotaggerParser;
-    private Semaphore semaphore;
+    @Value("${CoverArtMemoryCacheSize:#{32 * 1024 * 1024}}")
+    private long memoryCacheSize;
+
+    /**
+     * Encoded thumbnails, so that pages showing many covers are served without touching the disk.
+     */
+    private Cache<String, CachedImage> imageCache;
+
+    /**
+     * Encoded fallback images, by size.
+     */
+    private Cache<Integer, byte[]> fallbackCache;
 
     @PostConstruct
     public void init() {
-        semaphore = new Semaphore(settingsService.getCoverArtConcurrency());
-    }
-
-    @Override
-    public long getLastModified(HttpServletRequest request) {
-        CoverArtRequest coverArtRequest = createCoverArtRequest(request);
-        if (coverArtRequest == null) {
-            return -1L;
-        }
-        return coverArtRequest.lastModified().toEpochMilli();
+        imageCache = CacheBuilder.newBuilder()
+                .maximumWeight(memoryCacheSize)
+                .<String, CachedImage>weigher((k, v) -> v.data.length)
+                .build();
+        fallbackCache = CacheBuilder.newBuilder().maximumSize(20).build();
     }
 
     @GetMapping
@@ -121,9 +111,13 @@ public class CoverArtController implements LastModified {
             return;
         }
 
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
         try {
             // Optimize if no scaling is required.
             if (size == null && coverArtRequest.getCoverArt() != null) {
+                if (webRequest.checkNotModified(coverArtRequest.lastModified().toEpochMilli())) {
+                    return;
+                }
                 LOG.trace("sendUnscaled - " + coverArtRequest);
                 sendUnscaled(coverArtRequest, response);
                 return;
@@ -133,8 +127,11 @@ public class CoverArtController implements LastModified {
             if (size == null) {
                 size = CoverArtScheme.LARGE.getSize() * 2;
             }
-            Path cachedImage = getCachedImage(coverArtRequest, size);
-            sendImage(cachedImage, response);
+            CachedImage image = getImage(coverArtRequest, size);
+            if (webRequest.checkNotModified(image.etag, image.lastModified.toEpochMilli())) {
+                return;
+            }
+            sendImage(image, response);
         } catch (Exception e) {
             LOG.debug("Sending fallback as an exception was encountered during normal cover art processing", e);
             sendFallback(size, response);
@@ -142,40 +139,41 @@ public class CoverArtController implements LastModified {
 
     }
 
+
     private CoverArtRequest createCoverArtRequest(HttpServletRequest request) {
         String id = request.getParameter("id");
         if (id == null) {
             return null;
         }
 
-        if (id.startsWith(ALBUM_COVERART_PREFIX)) {
-            return createAlbumCoverArtRequest(Integer.valueOf(id.replace(ALBUM_COVERART_PREFIX, "")));
+        if (id.startsWith(CoverArtService.ALBUM_COVERART_PREFIX)) {
+            return createAlbumCoverArtRequest(Integer.valueOf(id.replace(CoverArtService.ALBUM_COVERART_PREFIX, "")));
         }
-        if (id.startsWith(ARTIST_COVERART_PREFIX)) {
-            return createArtistCoverArtRequest(Integer.valueOf(id.replace(ARTIST_COVERART_PREFIX, "")));
+        if (id.startsWith(CoverArtService.ARTIST_COVERART_PREFIX)) {
+            return createArtistCoverArtRequest(Integer.valueOf(id.replace(CoverArtService.ARTIST_COVERART_PREFIX, "")));
         }
-        if (id.startsWith(PLAYLIST_COVERART_PREFIX)) {
-            return createPlaylistCoverArtRequest(Integer.valueOf(id.replace(PLAYLIST_COVERART_PREFIX, "")));
+        if (id.startsWith(CoverArtService.PLAYLIST_COVERART_PREFIX)) {
+            return createPlaylistCoverArtRequest(Integer.valueOf(id.replace(CoverArtService.PLAYLIST_COVERART_PREFIX, "")));
         }
-        if (id.startsWith(PODCAST_COVERART_PREFIX)) {
-            return createPodcastCoverArtRequest(Integer.valueOf(id.replace(PODCAST_COVERART_PREFIX, "")), request);
+        if (id.startsWith(CoverArtService.PODCAST_COVERART_PREFIX)) {
+            return createPodcastCoverArtRequest(Integer.valueOf(id.replace(CoverArtService.PODCAST_COVERART_PREFIX, "")), request);
         }
         return createMediaFileCoverArtRequest(Integer.valueOf(id), request);
     }
 
     private CoverArtRequest createAlbumCoverArtRequest(int id) {
         Album album = albumDao.getAlbum(id);
-        return album == null ? null : new AlbumCoverArtRequest(album);
+        return album == null ? null : coverArtService.createAlbumCoverArtRequest(album);
     }
 
     private CoverArtRequest createArtistCoverArtRequest(int id) {
         Artist artist = artistDao.getArtist(id);
-        return artist == null ? null : new ArtistCoverArtRequest(artist);
+        return artist == null ? null : coverArtService.createArtistCoverArtRequest(artist);
     }
 
-    private PlaylistCoverArtRequest createPlaylistCoverArtRequest(int id) {
+    private CoverArtRequest createPlaylistCoverArtRequest(int id) {
         Playlist playlist = playlistService.getPlaylist(id);
-        return playlist == null ? null : new PlaylistCoverArtRequest(playlist);
+        return playlist == null ? null : coverArtService.createPlaylistCoverArtRequest(playlist);
     }
 
     private CoverArtRequest createPodcastCoverArtRequest(int id, HttpServletRequest request) {
@@ -184,7 +182,7 @@ public class CoverArtController implements LastModified {
             return null;
         }
         if (channel.getMediaFileId() == null) {
-            return new PodcastCoverArtRequest(channel);
+            return coverArtService.createPodcastCoverArtRequest(channel);
         }
         return createMediaFileCoverArtRequest(channel.getMediaFileId(), request);
     }
@@ -196,32 +194,43 @@ public class CoverArtController implements LastModified {
         }
         if (mediaFile.isVideo()) {
             int offset = ServletRequestUtils.getIntParameter(request, "offset", 60);
-            return new VideoCoverArtRequest(mediaFile, offset);
+            return coverArtService.createVideoCoverArtRequest(mediaFile, offset);
         }
-        return new MediaFileCoverArtRequest(mediaFile);
+        return coverArtService.createMediaFileCoverArtRequest(mediaFile);
     }
 
-    private void sendImage(Path file, HttpServletResponse response) throws IOException {
-        response.setContentType(StringUtil.getMimeType(MoreFiles.getFileExtension(file)));
-        Files.copy(file, response.getOutputStream());
+    private void sendImage(CachedImage image, HttpServletResponse response) throws IOException {
+        response.setContentType(image.contentType);
+        response.setContentLength(image.data.length);
+        response.getOutputStream().write(image.data);
     }
 
     private void sendFallback(Integer size, HttpServletResponse response) throws IOException {
         if (response.getContentType() == null) {
             response.setContentType(StringUtil.getMimeType("jpeg"));
         }
-        try (InputStream in = getClass().getResourceAsStream("default_cover.jpg")) {
-            BufferedImage image = ImageIO.read(in);
-            if (size != null) {
-                image = scale(image, size, size);
-            }
-            ImageIO.write(image, "jpeg", response.getOutputStream());
+        byte[] data;
+        try {
+            data = fallbackCache.get(size == null ? 0 : size, () -> {
+                try (InputStream in = getClass().getResourceAsStream("default_cover.jpg")) {
+                    BufferedImage image = ImageIO.read(in);
+                    if (size != null) {
+                        image = CoverArtService.scale(image, size, size);
+                    }
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    ImageIO.write(image, "jpeg", out);
+                    return out.toByteArray();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to create fallback image", e.getCause());
         }
+        response.getOutputStream().write(data);
     }
 
     private void sendUnscaled(CoverArtRequest coverArtRequest, HttpServletResponse response) throws IOException {
         Path file = coverArtRequest.getCoverArt();
-        Pair<InputStream, String> imageInputStreamWithType = getImageInputStreamWithType(file);
+        Pair<InputStream, String> imageInputStreamWithType = coverArtService.getImageInputStreamWithType(file);
 
         try (InputStream in = imageInputStreamWithType.getLeft()) {
             response.setContentType(imageInputStreamWithType.getRight());
@@ -229,501 +238,34 @@ public class CoverArtController implements LastModified {
         }
     }
 
-    private Path getCachedImage(CoverArtRequest request, int size) throws IOException {
-        String hash = DigestUtils.md5Hex(request.getKey());
-        String encoding = request.getCoverArt() != null ? "jpeg" : "png";
-        Path cachedImage = getImageCacheDirectory(size).resolve(hash + "." + encoding);
-
-        // Synchronize to avoid concurrent writing to the same file.
-        synchronized (hash.intern()) {
-
-            // Is cache missing or obsolete?
-            if (!Files.exists(cachedImage) || request.lastModified().isAfter(FileUtil.lastModified(cachedImage))) {
-//                LOG.info("Cache MISS - " + request + " (" + size + ")");
-                ImageWriter writer = null;
-
-                try (OutputStream os = Files.newOutputStream(cachedImage);
-                        BufferedOutputStream bos = new BufferedOutputStream(os);
-                        ImageOutputStream out = ImageIO.createImageOutputStream(bos)) {
-                    semaphore.acquire();
-                    BufferedImage image = request.createImage(size);
-                    if (image == null) {
-                        throw new Exception("Unable to decode image.");
-                    }
-                    writer = ImageIO.getImageWritersByFormatName(encoding).next();
-
-                    float quality = (float) (settingsService.getCoverArtQuality() / 100.0);
-                    ImageWriteParam params = writer.getDefaultWriteParam();
-                    params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                    params.setCompressionQuality(quality); // default is 0.75
-
-                    writer.setOutput(out);
-                    writer.write(null, new IIOImage(image, null, null), params);
-
-                } catch (Throwable x) {
-                    // Delete corrupt (probably empty) thumbnail cache.
-                    LOG.warn("Failed to create thumbnail for {}", request, x);
-                    FileUtil.delete(cachedImage);
-                    throw new IOException("Failed to create thumbnail for " + request + ". " + x.getMessage());
-                } finally {
-                    if (writer != null) {
-                        writer.dispose();
-                        writer = null;
-                    }
-                    semaphore.release();
-                }
-            } else {
-//                LOG.info("Cache HIT - " + request + " (" + size + ")");
-            }
-            return cachedImage;
-        }
-    }
-
     /**
-     * Returns an input stream to the image in the given file.  If the file is an audio file,
-     * the embedded album art is returned.
+     * Returns the encoded thumbnail from memory, or else from the thumbnail cache on disk, creating it if necessary.
      */
-    private InputStream getImageInputStream(Path file) throws IOException {
-        return getImageInputStreamWithType(file).getLeft();
-    }
-
-    /**
-     * Returns an input stream to the image in the given file.  If the file is an audio file,
-     * the embedded album art is returned. In addition returns the mime type
-     */
-    private Pair<InputStream, String> getImageInputStreamWithType(Path file) throws IOException {
-        InputStream is;
-        String mimeType;
-        if (jaudiotaggerParser.isApplicable(file)) {
-            LOG.trace("Using Jaudio Tagger for reading artwork from {}", file);
-            MediaFile mediaFile = mediaFileService.getMediaFile(file);
-            try {
-                LOG.trace("Reading artwork from file {}", mediaFile);
-                Artwork artwork = jaudiotaggerParser.getArtwork(mediaFile);
-                is = new ByteArrayInputStream(artwork.getBinaryData());
-                mimeType = artwork.getMimeType();
-            } catch (Exception e) {
-                LOG.debug("Could not read artwork from file {}", mediaFile);
-                throw new RuntimeException(e);
-            }
-        } else {
-            is = new BufferedInputStream(Files.newInputStream(file));
-            mimeType = StringUtil.getMimeType(MoreFiles.getFileExtension(file));
-        }
-        return Pair.of(is, mimeType);
-    }
-
-    private InputStream getImageInputStreamForVideo(MediaFile mediaFile, int width, int height, int offset) throws Exception {
-        VideoTranscodingSettings videoSettings = new VideoTranscodingSettings(width, height, offset, 0, false);
-        TranscodingService.Parameters parameters = new TranscodingService.Parameters(mediaFile, videoSettings);
-        String command = settingsService.getVideoImageCommand();
-        parameters.setTranscoding(new Transcoding(null, null, null, null, command, null, null, false));
-        return transcodingService.getTranscodedInputStream(parameters);
-    }
-
-    private synchronized Path getImageCacheDirectory(int size) {
-        Path dir = SettingsService.getAirsonicHome().resolve("thumbs").resolve(String.valueOf(size));
-        if (!Files.exists(dir)) {
-            try {
-                dir = Files.createDirectories(dir);
-                LOG.info("Created thumbnail cache {}", dir);
-            } catch (Exception e) {
-                LOG.error("Failed to create thumbnail cache {}", dir, e);
-            }
-        }
-
-        return dir;
-    }
-
-    public static BufferedImage scale(BufferedImage image, int width, int height) {
-        int w = image.getWidth();
-        int h = image.getHeight();
-        BufferedImage thumb = image;
-
-        // For optimal results, use step by step bilinear resampling - halfing the size at each step.
-        do {
-            w /= 2;
-            h /= 2;
-            if (w < width) {
-                w = width;
-            }
-            if (h < height) {
-                h = height;
-            }
-
-            BufferedImage temp = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2 = temp.createGraphics();
-            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2.drawImage(thumb, 0, 0, temp.getWidth(), temp.getHeight(), null);
-            g2.dispose();
-
-            thumb = temp;
-        } while (w != width);
-
-        return thumb;
-    }
-
-
-    private abstract class CoverArtRequest {
-
-        protected Path coverArt;
-
-        private CoverArtRequest() {
-        }
-
-        private CoverArtRequest(String coverArtPath) {
-            this.coverArt = coverArtPath == null ? null : Paths.get(coverArtPath);
-        }
-
-        private Path getCoverArt() {
-            return coverArt;
-        }
-
-        public abstract String getKey();
-
-        public abstract Instant lastModified();
-
-        public BufferedImage createImage(int size) {
-            if (coverArt != null) {
-                try (InputStream in = getImageInputStream(coverArt)) {
-                    String reason = null;
-                    if (in == null) {
-                        reason = "getImageInputStream";
-                    } else {
-                        BufferedImage bimg = ImageIO.read(in);
-                        if (bimg == null) {
-                            reason = "ImageIO.read";
-                        } else {
-                            return scale(bimg, size, size);
-                        }
-                    }
-                    LOG.warn("Failed to process cover art " + coverArt + ": " + reason + " failed");
-                } catch (Throwable x) {
-                    LOG.warn("Failed to process cover art " + coverArt + ": " + x, x);
-                }
-            }
-            return createAutoCover(size, size);
-        }
-
-        protected BufferedImage createAutoCover(int width, int height) {
-            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            Graphics2D graphics = image.createGraphics();
-            AutoCover autoCover = new AutoCover(graphics, getKey(), getArtist(), getAlbum(), width, height);
-            autoCover.paintCover();
-            graphics.dispose();
-            return image;
-        }
-
-        public abstract String getAlbum();
-
-        public abstract String getArtist();
-    }
-
-    private class ArtistCoverArtRequest extends CoverArtRequest {
-
-        private final Artist artist;
-
-        private ArtistCoverArtRequest(Artist artist) {
-            super(artist.getCoverArtPath());
-            this.artist = artist;
-        }
-
-        @Override
-        public String getKey() {
-            return artist.getCoverArtPath() != null ? artist.getCoverArtPath() : (ARTIST_COVERART_PREFIX + artist.getId());
-        }
-
-        @Override
-        public Instant lastModified() {
-            return coverArt != null ? FileUtil.lastModified(coverArt) : artist.getLastScanned();
-        }
-
-        @Override
-        public String getAlbum() {
-            return null;
-        }
-
-        @Override
-        public String getArtist() {
-            return artist.getName();
-        }
-
-        @Override
-        public String toString() {
-            return "Artist " + artist.getId() + " - " + artist.getName();
-        }
-    }
-
-    private class AlbumCoverArtRequest extends CoverArtRequest {
-
-        private final Album album;
-
-        private AlbumCoverArtRequest(Album album) {
-            super(album.getCoverArtPath());
-            this.album = album;
-        }
-
-        @Override
-        public String getKey() {
-            return album.getCoverArtPath() != null ? album.getCoverArtPath() : (ALBUM_COVERART_PREFIX + album.getId());
-        }
-
-        @Override
-        public Instant lastModified() {
-            return coverArt != null ? FileUtil.lastModified(coverArt) : album.getLastScanned();
-        }
-
-        @Override
-        public String getAlbum() {
-            return album.getName();
-        }
-
-        @Override
-        public String getArtist() {
-            return album.getArtist();
-        }
-
-        @Override
-        public String toString() {
-            return "Album " + album.getId() + " - " + album.getName();
-        }
-    }
-
-    private class PlaylistCoverArtRequest extends CoverArtRequest {
-
-        private final Playlist playlist;
-
-        private PlaylistCoverArtRequest(Playlist playlist) {
-            super(null);
-            this.playlist = playlist;
-        }
-
-        @Override
-        public String getKey() {
-            return PLAYLIST_COVERART_PREFIX + playlist.getId();
-        }
-
-        @Override
-        public Instant lastModified() {
-            return playlist.getChanged();
-        }
-
-        @Override
-        public String getAlbum() {
-            return null;
-        }
-
-        @Override
-        public String getArtist() {
-            return playlist.getName();
-        }
-
-        @Override
-        public String toString() {
-            return "Playlist " + playlist.getId() + " - " + playlist.getName();
-        }
-
-        @Override
-        public BufferedImage createImage(int size) {
-            List<MediaFile> albums = getRepresentativeAlbums();
-            if (albums.isEmpty()) {
-                return createAutoCover(size, size);
-            }
-            if (albums.size() < 4) {
-                return new MediaFileCoverArtRequest(albums.get(0)).createImage(size);
-            }
-
-            BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
-            Graphics2D graphics = image.createGraphics();
-
-            int half = size / 2;
-            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(0)).createImage(half), null, 0, 0);
-            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(1)).createImage(half), null, half, 0);
-            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(2)).createImage(half), null, 0, half);
-            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(3)).createImage(half), null, half, half);
-            graphics.dispose();
+    private CachedImage getImage(CoverArtRequest request, int size) throws IOException {
+        String key = DigestUtils.md5Hex(request.getKey()) + "/" + size;
+        Instant lastModified = request.lastModified();
+        CachedImage image = imageCache.getIfPresent(key);
+        if (image != null && !lastModified.isAfter(image.lastModified)) {
             return image;
         }
 
-        private List<MediaFile> getRepresentativeAlbums() {
-            return playlistService.getFilesInPlaylist(playlist.getId())
-                    .parallelStream()
-                    .map(mediaFileService::getParentOf)
-                    .filter(album -> album != null && !mediaFileService.isRoot(album))
-                    .distinct()
-                    .collect(Collectors.toList());
-        }
-    }
-
-    private class PodcastCoverArtRequest extends CoverArtRequest {
-
-        private final PodcastChannel channel;
-
-        PodcastCoverArtRequest(PodcastChannel channel) {
-            this.channel = channel;
-        }
-
-        @Override
-        public String getKey() {
-            return PODCAST_COVERART_PREFIX + channel.getId();
-        }
-
-        @Override
-        public Instant lastModified() {
-            return Instant.ofEpochMilli(-1);
-        }
-
-        @Override
-        public String getAlbum() {
-            return null;
-        }
-
-        @Override
-        public String getArtist() {
-            return channel.getTitle() != null ? channel.getTitle() : channel.getUrl();
-        }
+        Path file = coverArtService.getThumbnail(request, size);
+        image = new CachedImage(Files.readAllBytes(file), StringUtil.getMimeType(MoreFiles.getFileExtension(file)), lastModified);
+        imageCache.put(key, image);
+        return image;
     }
 
-    private class MediaFileCoverArtRequest extends CoverArtRequest {
-
-        private final MediaFile mediaFile;
-        private final MediaFile dir;
-
-        private MediaFileCoverArtRequest(MediaFile mediaFile) {
-            this.mediaFile = mediaFile;
-            dir = mediaFile.isDirectory() ? mediaFile : mediaFileService.getParentOf(mediaFile);
-            coverArt = mediaFileService.getCoverArt(mediaFile);
-        }
-
-        @Override
-        public String getKey() {
-            return coverArt != null ? coverArt.toString() : dir.getPath();
-        }
-
-        @Override
-        public Instant lastModified() {
-            return coverArt != null ? FileUtil.lastModified(coverArt) : dir.getChanged();
-        }
-
-        @Override
-        public String getAlbum() {
-            return dir.getName();
-        }
-
-        @Override
-        public String getArtist() {
-            return dir.getAlbumArtist() != null ? dir.getAlbumArtist() : dir.getArtist();
-        }
-
-        @Override
-        public String toString() {
-            return "Media file " + mediaFile.getId() + " - " + mediaFile;
-        }
-    }
-
-    private class VideoCoverArtRequest extends CoverArtRequest {
-
-        private final MediaFile mediaFile;
-        private final int offset;
-
-        private VideoCoverArtRequest(MediaFile mediaFile, int offset) {
-            this.mediaFile = mediaFile;
-            this.offset = offset;
-        }
-
-        @Override
-        public BufferedImage createImage(int size) {
-            int height = size;
-            int width = height * 16 / 9;
-            try (InputStream in = getImageInputStreamForVideo(mediaFile, width, height, offset)) {
-                BufferedImage result = ImageIO.read(in);
-                if (result != null) {
-                    return result;
-                }
-                LOG.warn("Failed to process cover art for " + mediaFile + ": {}", result);
-            } catch (Throwable x) {
-                LOG.warn("Failed to process cover art for " + mediaFile + ": " + x, x);
-            }
-            return createAutoCover(width, height);
-        }
-
-        @Override
-        public String getKey() {
-            return mediaFile.getPath() + "/" + offset;
-        }
-
-        @Override
-        public Instant lastModified() {
-            return mediaFile.getChanged();
-        }
-
-        @Override
-        public String getAlbum() {
-            return null;
-        }
-
-        @Override
-        public String getArtist() {
-            return mediaFile.getName();
-        }
-
-        @Override
-        public String toString() {
-            return "Video file " + mediaFile.getId() + " - " + mediaFile;
-        }
-    }
-
-    static class AutoCover {
-
-        private final static int[] COLORS = {0x33B5E5, 0xAA66CC, 0x99CC00, 0xFFBB33, 0xFF4444};
-        private final Graphics2D graphics;
-        private final String artist;
-        private final String album;
-        private final int width;
-        private final int height;
-        private final Color color;
-
-        AutoCover(Graphics2D graphics, String key, String artist, String album, int width, int height) {
-            this.graphics = graphics;
-            this.artist = artist;
-            this.album = album;
-            this.width = width;
-            this.height = height;
-
-            int hash = key.hashCode();
-            int rgb = COLORS[Math.abs(hash) % COLORS.length];
-            this.color = new Color(rgb);
-        }
-
-        public void paintCover() {
-            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-
-            graphics.setPaint(color);
-            graphics.fillRect(0, 0, width, height);
-
-            int y = height * 2 / 3;
-            graphics.setPaint(new GradientPaint(0, y, new Color(82, 82, 82), 0, height, Color.BLACK));
-            graphics.fillRect(0, y, width, height / 3);
-
-            graphics.setPaint(Color.WHITE);
-            float fontSize = 3.0f + height * 0.07f;
-            Font font = new Font(Font.SANS_SERIF, Font.BOLD, (int) fontSize);
-            graphics.setFont(font);
-
-            if (album != null) {
-                graphics.drawString(album, width * 0.05f, height * 0.6f);
-            }
-            if (artist != null) {
-                graphics.drawString(artist, width * 0.05f, height * 0.8f);
-            }
-
-            int borderWidth = height / 50;
-            graphics.fillRect(0, 0, borderWidth, height);
-            graphics.fillRect(width - borderWidth, 0, height - borderWidth, height);
-            graphics.fillRect(0, 0, width, borderWidth);
-            graphics.fillRect(0, height - borderWidth, width, height);
+    private static class CachedImage {
+        private final byte[] data;
+        private final String contentType;
+        private final Instant lastModified;
+        private final String etag;
+
+        private CachedImage(byte[] data, String contentType, Instant lastModified) {
+            this.data = data;
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+            this.etag = "\"" + DigestUtils.md5Hex(data) + "\"";
         }
     }
 }
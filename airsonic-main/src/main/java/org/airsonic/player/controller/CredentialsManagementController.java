@@ -9,6 +9,7 @@ import org.airsonic.player.domain.User;
 import org.airsonic.player.domain.UserCredential;
 import org.airsonic.player.domain.UserCredential.App;
 import org.airsonic.player.security.GlobalSecurityConfig;
+import org.airsonic.player.service.AudioScrobblerService;
 import org.airsonic.player.service.SecurityService;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.util.Util;
@@ -50,6 +51,9 @@ public class CredentialsManagementController {
     @Autowired
     private SettingsService settingsService;
 
+    @Autowired
+    private AudioScrobblerService audioScrobblerService;
+
     public static final Map<App, AppCredSettings> APPS_CREDS_SETTINGS = ImmutableMap.of(
             App.AIRSONIC, new AppCredSettings(false, true),
             App.LASTFM, new AppCredSettings(true, false),
@@ -148,6 +152,7 @@ public class CredentialsManagementController {
             LOG.warn("Could not create creds for user {}", user.getName());
             success = false;
         }
+        audioScrobblerService.evictCredentials(user.getName());
 
         redirectAttributes.addFlashAttribute("settings_toast", success);
 
@@ -185,6 +190,7 @@ public class CredentialsManagementController {
                         }
                     });
         });
+        audioScrobblerService.evictCredentials(user.getName());
 
         redirectAttributes.addFlashAttribute("settings_toast", failures.isEmpty());
 
@@ -241,6 +247,8 @@ public class CredentialsManagementController {
         if (saveSettings) {
             settingsService.save();
         }
+        // migrated credentials and a new encryption key change how the stored credentials decode
+        audioScrobblerService.evictCredentials();
 
         redirectAttributes.addFlashAttribute("settings_toast", success);
 
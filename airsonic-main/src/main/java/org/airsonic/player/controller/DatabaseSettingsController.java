@@ -21,9 +21,11 @@ package org.airsonic.player.controller;
 
 import org.airsonic.player.command.DatabaseSettingsCommand;
 import org.airsonic.player.command.DatabaseSettingsCommand.DataSourceConfigType;
+import org.airsonic.player.dao.StatementMetrics;
 import org.airsonic.player.service.SettingsService;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -32,20 +34,38 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
+
 @Controller
 @RequestMapping("/databaseSettings")
 public class DatabaseSettingsController {
 
+    private static final int SLOWEST_STATEMENT_COUNT = 20;
+
     @Autowired
     private SettingsService settingsService;
+    @Autowired
+    private StatementMetrics statementMetrics;
 
     @GetMapping
-    protected String displayForm() {
+    protected String displayForm(Model model) {
+        model.addAttribute("statements", statementMetrics.getSlowestStatements(SLOWEST_STATEMENT_COUNT));
         return "databaseSettings";
     }
 
+    /**
+     * Exports the statistics of the statements that took the most time in total, slowest first.
+     */
+    @GetMapping(path = "/statements", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<StatementMetrics.Statistics> getStatements(@RequestParam(defaultValue = "100") int limit) {
+        return statementMetrics.getSlowestStatements(limit);
+    }
+
     @ModelAttribute
     protected void formBackingObject(Model model) {
         DatabaseSettingsCommand command = new DatabaseSettingsCommand();
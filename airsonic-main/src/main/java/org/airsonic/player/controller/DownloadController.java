@@ -22,15 +22,12 @@ package org.airsonic.player.controller;
 import com.google.common.collect.Streams;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.io.PipeStreams.MonitoredResource;
-import org.airsonic.player.io.PipeStreams.PipedInputStream;
-import org.airsonic.player.io.PipeStreams.PipedOutputStream;
+import org.airsonic.player.io.StoredZipResource;
+import org.airsonic.player.io.StoredZipResource.StoredZipInputStream;
 import org.airsonic.player.service.*;
-import org.airsonic.player.spring.KnownLengthInputStreamResource;
 import org.airsonic.player.util.FileUtil;
-import org.airsonic.player.util.LambdaUtils;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -56,21 +53,19 @@ import java.nio.file.Path;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * A controller used for downloading files to a remote client. If the requested
@@ -132,8 +127,11 @@ public class DownloadController {
                 response = prepareResponse(Collections.singletonList(mediaFile), null, statusSupplier, statusCloser, Collections.emptyList());
                 defaultDownloadName = mediaFile.getFile().getFileName().toString();
             } else {
+                // embedded cover art is kept outside the directory, and is already part of the audio files
+                Path coverArt = mediaFile.getCoverArtFile();
+                boolean includeCoverArt = indices == null && coverArt != null && coverArt.startsWith(mediaFile.getFile());
                 response = prepareResponse(mediaFileService.getChildrenOf(mediaFile, true, false, true), indices,
-                        statusSupplier, statusCloser, indices == null ? Collections.singletonList(mediaFile.getCoverArtFile()) : Collections.emptyList());
+                        statusSupplier, statusCloser, includeCoverArt ? Collections.singletonList(coverArt) : Collections.emptyList());
                 defaultDownloadName = FilenameUtils.getBaseName(mediaFile.getPath()) + ".zip";
             }
         } else if (playlist != null) {
@@ -176,10 +174,6 @@ public class DownloadController {
         }
     }
 
-    private static long zipSize(Stream<Entry<String, Long>> paths) {
-        return paths.mapToLong(e -> 30 + 46 + (2L * e.getKey().length()) + e.getValue()).sum() + 22;
-    }
-
     private ResponseDTO prepareResponse(List<MediaFile> files, List<Integer> indices,
             Supplier<TransferStatus> statusSupplier, Consumer<TransferStatus> statusCloser, Collection<Path> additionalFiles)
             throws IOException {
@@ -210,9 +204,12 @@ public class DownloadController {
                     file.getFileSize(),
                     changed);
         } else {
+            Map<Path, MediaFile> mediaFiles = indices.stream().map(files::get)
+                    .collect(Collectors.toMap(MediaFile::getFile, Function.identity(), (a, b) -> a));
+
             // get a list of all paths under the tree, plus their zip names and sizes
-            Collection<Pair<Path, Pair<String, Long>>> pathsToZip = Streams
-                    .concat(indices.stream().map(i -> files.get(i)).map(x -> x.getFile()), additionalFiles.stream())
+            Map<String, StoredZipResource.Entry> entries = new LinkedHashMap<>();
+            Streams.concat(indices.stream().map(i -> files.get(i)).map(x -> x.getFile()), additionalFiles.stream())
                     .filter(Objects::nonNull)
                     .flatMap(p -> {
                         Path parent = p.getParent();
@@ -225,66 +222,56 @@ public class DownloadController {
                                 } else {
                                     zipName = zipName + '/';
                                 }
-                                return Pair.of(f, Pair.of(zipName, size));
+                                return new StoredZipResource.Entry(f, zipName, size, FileUtil.lastModified(f));
                             }).collect(Collectors.toList()).stream();
                         } catch (Exception e) {
                             LOG.warn("Error retrieving file to zip", e);
                             return Stream.empty();
                         }
-                    }).filter(f -> Objects.nonNull(f))
-                    .collect(Collectors.toCollection(LinkedHashSet::new));
-
-            // zip to out
-            BiConsumer<InputStream, TransferStatus> poutInit = (input, status) -> {
-                PipedInputStream pin = (PipedInputStream) input;
-
-                // start a new thread to feed data in
-                new Thread(() -> {
-                    try (PipedOutputStream pout = new PipedOutputStream(pin);
-                            ZipOutputStream zout = new ZipOutputStream(pout)) {
-                        zout.setMethod(ZipOutputStream.STORED); // No compression.
-                        pathsToZip.stream().forEach(LambdaUtils.uncheckConsumer(f -> {
-                            status.setFile(f.getKey());
-                            ZipEntry zipEntry = new ZipEntry(f.getValue().getKey());
-                            zipEntry.setSize(f.getValue().getValue());
-                            zipEntry.setCompressedSize(f.getValue().getValue());
-
-                            if (f.getValue().getKey().endsWith("/") && f.getValue().getValue() == 0L) {
-                                // directory
-                                zipEntry.setCrc(0);
-                                zout.putNextEntry(zipEntry);
-                            } else {
-                                zipEntry.setCrc(computeCrc(f.getKey()));
-                                zout.putNextEntry(zipEntry);
-                                Files.copy(f.getKey(), zout);
-                            }
-
-                            zout.closeEntry();
-                        }));
-                    } catch (Exception e1) {
-                        LOG.debug("Error with output to zip", e1);
-                    }
-                }, "DownloadControllerDatafeed").start();
-
-                // wait for src data thread to connect
-                while (pin.source == null) {
-                    // sit and wait and ponder life
-                }
-            };
-
-            long size = zipSize(pathsToZip.stream().map(e -> e.getValue()));
-
-            PipedInputStream pin = new PipedInputStream(null, 16 * 1024); // 16 Kb buffer
+                    })
+                    .forEach(e -> entries.putIfAbsent(e.getName(), e));
+
+            StoredZipResource zip = new StoredZipResource(entries.values(),
+                e -> getCrc(e, mediaFiles.containsKey(e.getFile()) ? mediaFiles.get(e.getFile()) : getMediaFile(e.getFile())));
 
             return new ResponseDTO(
                     new MonitoredResource(
-                            new KnownLengthInputStreamResource(pin, size),
+                            zip,
                             settingsService.getDownloadBitrateLimiter(),
                             statusSupplier,
                             statusCloser,
-                            poutInit),
-                    null, size, -1);
+                        (input, status) -> ((StoredZipInputStream) input).setEntryListener(status::setFile)),
+                    null, zip.contentLength(), zip.lastModified());
+        }
+    }
+
+    /**
+     * Returns the media file of a file found within a downloaded directory, so that its stored CRC can be used, or
+     * null if it isn't a media file.
+     */
+    private MediaFile getMediaFile(Path file) {
+        if (!Files.isRegularFile(file) || !mediaFileService.includeMediaFile(file)) {
+            return null;
+        }
+        return mediaFileService.getMediaFile(file, true);
+    }
+
+    /**
+     * Returns the CRC of a file to archive, using (and filling) the checksum stored with its media file while the
+     * file is unchanged since it was scanned.
+     */
+    private long getCrc(StoredZipResource.Entry entry, MediaFile mediaFile) throws IOException {
+        boolean unchanged = mediaFile != null
+                && entry.getLastModified().equals(mediaFile.getChanged())
+                && Objects.equals(entry.getSize(), mediaFile.getFileSize());
+        if (unchanged && mediaFile.getCrc() != null) {
+            return mediaFile.getCrc();
+        }
+        long crc = computeCrc(entry.getFile());
+        if (unchanged) {
+            mediaFileService.updateCrc(mediaFile, crc);
         }
+        return crc;
     }
 
     public static class ResponseDTO {
@@ -57,6 +57,8 @@ public class GeneralSettingsController {
         command.setCoverArtSource(settingsService.getCoverArtSource());
         command.setCoverArtConcurrency(settingsService.getCoverArtConcurrency());
         command.setCoverArtQuality(settingsService.getCoverArtQuality());
+        command.setVideoProbeConcurrency(settingsService.getVideoProbeConcurrency());
+        command.setCoverArtPregeneration(settingsService.isCoverArtPregeneration());
         command.setIgnoredArticles(settingsService.getIgnoredArticles());
         command.setGenreSeparators(settingsService.getGenreSeparators());
         command.setShortcuts(settingsService.getShortcuts());
@@ -124,6 +126,8 @@ public class GeneralSettingsController {
         settingsService.setCoverArtSource(command.getCoverArtSource());
         settingsService.setCoverArtConcurrency(command.getCoverArtConcurrency());
         settingsService.setCoverArtQuality(command.getCoverArtQuality());
+        settingsService.setVideoProbeConcurrency(command.getVideoProbeConcurrency());
+        settingsService.setCoverArtPregeneration(command.isCoverArtPregeneration());
         settingsService.setSortAlbumsByYear(command.isSortAlbumsByYear());
         settingsService.setGettingStartedEnabled(command.isGettingStartedEnabled());
         settingsService.setWelcomeTitle(command.getWelcomeTitle());
@@ -21,14 +21,25 @@ package org.airsonic.player.controller;
 
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Player;
+import org.airsonic.player.domain.User;
+import org.airsonic.player.io.PipeStreams.MonitoredResource;
+import org.airsonic.player.security.JWTAuthenticationToken;
+import org.airsonic.player.service.HlsService;
 import org.airsonic.player.service.JWTSecurityService;
 import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.PlayerService;
 import org.airsonic.player.service.SecurityService;
+import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.ServletRequestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -40,13 +51,14 @@ import javax.servlet.http.HttpServletResponse;
 
 import java.awt.*;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Controller which produces the HLS (Http Live Streaming) playlist.
+ * Controller which produces the HLS (Http Live Streaming) playlist, and serves its segments from {@link HlsService}.
  *
  * @author Sindre Mehus
  */
@@ -54,7 +66,8 @@ import java.util.regex.Pattern;
 @RequestMapping({"/hls/**", "/ext/hls/**"})
 public class HLSController {
 
-    private static final int SEGMENT_DURATION = 10;
+    private static final int SEGMENT_DURATION = HlsService.SEGMENT_DURATION;
+    private static final MediaType SEGMENT_CONTENT_TYPE = MediaType.parseMediaType("video/MP2T");
     private static final Pattern BITRATE_PATTERN = Pattern.compile("(\\d+)(@(\\d+)x(\\d+))?");
 
     @Autowired
@@ -65,6 +78,12 @@ public class HLSController {
     private SecurityService securityService;
     @Autowired
     private JWTSecurityService jwtSecurityService;
+    @Autowired
+    private HlsService hlsService;
+    @Autowired
+    private StreamController streamController;
+    @Autowired
+    private SettingsService settingsService;
 
     @GetMapping
     public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws Exception {
@@ -103,6 +122,42 @@ public class HLSController {
         return;
     }
 
+    @GetMapping(params = "segment")
+    public ResponseEntity<Resource> handleSegmentRequest(Authentication authentication, HttpServletRequest request,
+            HttpServletResponse response) throws Exception {
+        int id = ServletRequestUtils.getRequiredIntParameter(request, "id");
+        int index = ServletRequestUtils.getRequiredIntParameter(request, "segment");
+        MediaFile mediaFile = mediaFileService.getMediaFile(id);
+        Player player = playerService.getPlayer(request, response, false, true);
+        User user = securityService.getUserByName(player.getUsername());
+
+        if (mediaFile == null || index < 0) {
+            return ResponseEntity.notFound().build();
+        }
+
+        if (!(authentication instanceof JWTAuthenticationToken)
+                && (!user.isStreamRole() || !securityService.isFolderAccessAllowed(mediaFile, user.getUsername()))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        String bitRateSpec = request.getParameter("bitRate");
+        Pair<Integer, Dimension> bitRate = bitRateSpec == null ? null : parseBitRate(bitRateSpec);
+        int kbps = bitRate == null ? VideoPlayerController.DEFAULT_BIT_RATE : bitRate.getLeft();
+        Dimension size = bitRate != null && bitRate.getRight() != null ? bitRate.getRight()
+                : streamController.getSuitableVideoSize(mediaFile.getWidth(), mediaFile.getHeight(), bitRate == null ? null : kbps);
+
+        HlsService.Segment segment = hlsService.getSegment(mediaFile, player, kbps, size, index);
+        if (segment == null) {
+            return ResponseEntity.notFound().build();
+        }
+        securityService.updateUserByteCounts(user, Files.size(segment.getFile()), 0L, 0L);
+
+        // The stream status lasts as long as the session, and is removed by the service
+        Resource resource = new MonitoredResource(new FileSystemResource(segment.getFile()),
+                settingsService.getDownloadBitrateLimiter(), segment::getStatus, status -> {}, (input, status) -> {});
+        return ResponseEntity.ok().contentType(SEGMENT_CONTENT_TYPE).body(resource);
+    }
+
     private List<Pair<Integer, Dimension>> parseBitRates(HttpServletRequest request) throws IllegalArgumentException {
         List<Pair<Integer, Dimension>> result = new ArrayList<Pair<Integer, Dimension>>();
         String[] bitRates = request.getParameterValues("bitRate");
@@ -145,14 +200,9 @@ public class HLSController {
             UriComponentsBuilder url = (UriComponentsBuilder.fromUriString(contextPath + "ext/hls/hls.m3u8")
                     .queryParam("id", id)
                     .queryParam("player", player.getId())
-                    .queryParam("bitRate", kbps));
+                    .queryParam("bitRate", formatBitRate(bitRate)));
             jwtSecurityService.addJWTToken(player.getUsername(), url);
-            writer.print(url.toUriString());
-            Dimension dimension = bitRate.getRight();
-            if (dimension != null) {
-                writer.print("@" + dimension.width + "x" + dimension.height);
-            }
-            writer.println();
+            writer.println(url.toUriString());
         }
 //        writer.println("#EXT-X-ENDLIST");
     }
@@ -162,40 +212,40 @@ public class HLSController {
         writer.println("#EXT-X-VERSION:1");
         writer.println("#EXT-X-TARGETDURATION:" + SEGMENT_DURATION);
 
-        for (int i = 0; i < totalDuration / SEGMENT_DURATION; i++) {
-            int offset = i * SEGMENT_DURATION;
+        int segments = (int) (totalDuration / SEGMENT_DURATION);
+        for (int i = 0; i < segments; i++) {
             writer.println("#EXTINF:" + SEGMENT_DURATION + ",");
-            writer.println(createStreamUrl(request, player, id, offset, SEGMENT_DURATION, bitRate));
+            writer.println(createSegmentUrl(request, player, id, i, bitRate));
         }
 
         long remainder = totalDuration % SEGMENT_DURATION;
         if (remainder > 0) {
             writer.println("#EXTINF:" + remainder + ",");
-            long offset = totalDuration - remainder;
-            writer.println(createStreamUrl(request, player, id, offset, remainder, bitRate));
+            writer.println(createSegmentUrl(request, player, id, segments, bitRate));
         }
         writer.println("#EXT-X-ENDLIST");
     }
 
-    private String createStreamUrl(HttpServletRequest request, Player player, int id, long offset, long duration, Pair<Integer, Dimension> bitRate) {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(getContextPath(request) + "ext/stream/stream.ts");
+    private String createSegmentUrl(HttpServletRequest request, Player player, int id, int index, Pair<Integer, Dimension> bitRate) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(getContextPath(request) + "ext/hls/segment.ts");
         builder.queryParam("id", id);
-        builder.queryParam("hls", "true");
-        builder.queryParam("timeOffset", offset);
         builder.queryParam("player", player.getId());
-        builder.queryParam("duration", duration);
+        builder.queryParam("segment", index);
         if (bitRate != null) {
-            builder.queryParam("maxBitRate", bitRate.getLeft());
-            Dimension dimension = bitRate.getRight();
-            if (dimension != null) {
-                builder.queryParam("size", dimension.width);
-                builder.queryParam("x", dimension.height);
-            }
+            builder.queryParam("bitRate", formatBitRate(bitRate));
         }
         jwtSecurityService.addJWTToken(player.getUsername(), builder);
         return builder.toUriString();
     }
 
+    /**
+     * Inverse of {@link #parseBitRate(String)}.
+     */
+    private static String formatBitRate(Pair<Integer, Dimension> bitRate) {
+        Dimension dimension = bitRate.getRight();
+        return dimension == null ? String.valueOf(bitRate.getLeft()) : bitRate.getLeft() + "@" + dimension.width + "x" + dimension.height;
+    }
+
     private String getContextPath(HttpServletRequest request) {
         String contextPath = request.getContextPath();
         if (StringUtils.isEmpty(contextPath)) {
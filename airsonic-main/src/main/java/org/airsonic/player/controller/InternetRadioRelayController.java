@@ -0,0 +1,127 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.controller;
+
+import com.google.common.io.ByteStreams;
+import org.airsonic.player.domain.InternetRadio;
+import org.airsonic.player.domain.InternetRadioSource;
+import org.airsonic.player.domain.Player;
+import org.airsonic.player.domain.TranscodeScheme;
+import org.airsonic.player.domain.User;
+import org.airsonic.player.io.ShoutCastOutputStream;
+import org.airsonic.player.security.JWTAuthenticationToken;
+import org.airsonic.player.service.InternetRadioRelayService;
+import org.airsonic.player.service.InternetRadioService;
+import org.airsonic.player.service.PlayerService;
+import org.airsonic.player.service.SecurityService;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.service.TranscodingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Streams an internet radio station to a player through {@link InternetRadioRelayService}, downsampling it to the
+ * bit rate of the player if it has one.
+ */
+@Controller
+@RequestMapping({"/internetRadioRelay", "/ext/internetRadioRelay"})
+public class InternetRadioRelayController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InternetRadioRelayController.class);
+
+    @Autowired
+    private PlayerService playerService;
+    @Autowired
+    private SecurityService securityService;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private TranscodingService transcodingService;
+    @Autowired
+    private InternetRadioService internetRadioService;
+    @Autowired
+    private InternetRadioRelayService internetRadioRelayService;
+
+    @GetMapping
+    public void handleRequest(Authentication authentication, @RequestParam int id,
+            @RequestParam(defaultValue = "0") int source, HttpServletRequest request, HttpServletResponse response)
+            throws Exception {
+        Player player = playerService.getPlayer(request, response, false, true);
+        User user = securityService.getUserByName(player.getUsername());
+
+        if (!(authentication instanceof JWTAuthenticationToken) && !user.isStreamRole()) {
+            throw new AccessDeniedException("Streaming is forbidden for user " + user.getUsername());
+        }
+
+        InternetRadio radio = settingsService.getAllInternetRadios().stream()
+                .filter(r -> r.getId() == id)
+                .findAny().orElse(null);
+        List<InternetRadioSource> sources = radio == null ? List.of() : internetRadioService.getInternetRadioSources(radio);
+        if (!settingsService.isInternetRadioRelay() || source < 0 || source >= sources.size()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        TranscodeScheme transcodeScheme = player.getTranscodeScheme()
+                .strictest(settingsService.getUserSettings(user.getUsername()).getTranscodeScheme());
+
+        try (InternetRadioRelayService.Listener listener = internetRadioRelayService.listen(sources.get(source).getStreamUrl())) {
+            InputStream in = listener;
+            String contentType = Optional.ofNullable(listener.getContentType()).orElse("audio/mpeg");
+            if (transcodeScheme.getMaxBitRate() != 0) {
+                in = transcodingService.getDownsampledInputStream(listener, transcodeScheme.getMaxBitRate(), radio.getName());
+                contentType = "audio/mpeg";
+            }
+
+            response.setContentType(contentType);
+            OutputStream out = response.getOutputStream();
+            if ("1".equals(request.getHeader("icy-metadata"))) {
+                response.setHeader("icy-metaint", String.valueOf(ShoutCastOutputStream.META_DATA_INTERVAL));
+                response.setHeader("icy-name", radio.getName());
+                out = new ShoutCastOutputStream(out, () -> Optional.ofNullable(listener.getTitle()).orElse(radio.getName()));
+            }
+
+            try (InputStream audio = in) {
+                ByteStreams.copy(audio, out);
+            }
+        } catch (IOException e) {
+            // Happens when the player goes away, or when the station can't be reached
+            LOG.debug("Stopped relaying internet radio {} to {}: {}", radio.getName(), player.getIpAddress(), e.toString());
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+            }
+        }
+    }
+}
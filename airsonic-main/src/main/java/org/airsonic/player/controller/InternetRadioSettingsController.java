@@ -55,6 +55,7 @@ public class InternetRadioSettingsController {
         Map<String, Object> map = new HashMap<>();
 
         map.put("internetRadios", settingsService.getAllInternetRadios(true));
+        map.put("relay", settingsService.isInternetRadioRelay());
 
         model.addAttribute("model", map);
         return "internetRadioSettings";
@@ -73,6 +74,9 @@ public class InternetRadioSettingsController {
     }
 
     private String handleParameters(HttpServletRequest request) {
+        settingsService.setInternetRadioRelay(request.getParameter("relay") != null);
+        settingsService.save();
+
         List<InternetRadio> radios = settingsService.getAllInternetRadios(true);
         for (InternetRadio radio : radios) {
             Integer id = radio.getId();
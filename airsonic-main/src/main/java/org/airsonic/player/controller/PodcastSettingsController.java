@@ -53,6 +53,8 @@ public class PodcastSettingsController {
         command.setEpisodeRetentionCount(String.valueOf(settingsService.getPodcastEpisodeRetentionCount()));
         command.setEpisodeDownloadCount(String.valueOf(settingsService.getPodcastEpisodeDownloadCount()));
         command.setFolder(settingsService.getPodcastFolder());
+        command.setDownloadLimit(String.valueOf(settingsService.getPodcastDownloadBitrateLimit()));
+        command.setDownloadsPerHost(String.valueOf(settingsService.getPodcastDownloadsPerHost()));
 
         model.addAttribute("command",command);
         return "podcastSettings";
@@ -64,6 +66,10 @@ public class PodcastSettingsController {
         settingsService.setPodcastEpisodeRetentionCount(Integer.parseInt(command.getEpisodeRetentionCount()));
         settingsService.setPodcastEpisodeDownloadCount(Integer.parseInt(command.getEpisodeDownloadCount()));
         settingsService.setPodcastFolder(command.getFolder());
+        try {
+            settingsService.setPodcastDownloadBitrateLimit(Long.parseLong(command.getDownloadLimit()));
+        } catch (NumberFormatException x) { /* Intentionally ignored. */ }
+        settingsService.setPodcastDownloadsPerHost(Integer.parseInt(command.getDownloadsPerHost()));
         settingsService.save();
 
         podcastService.schedule();
@@ -21,6 +21,7 @@ package org.airsonic.player.controller;
 
 import com.google.common.io.ByteStreams;
 import org.airsonic.player.domain.*;
+import org.airsonic.player.io.IoThreads;
 import org.airsonic.player.io.PipeStreams.MonitoredInputStream;
 import org.airsonic.player.io.PipeStreams.PipedInputStream;
 import org.airsonic.player.io.PipeStreams.PipedOutputStream;
@@ -293,7 +294,7 @@ public class StreamController {
             PipedInputStream pin = (PipedInputStream) i;
 
             // start a new thread to feed data in
-            new Thread(() -> {
+            IoThreads.start("ShoutcastStreamDatafeed", () -> {
                 try (InputStream in = input;
                         PipedOutputStream pout = new PipedOutputStream(pin);
                         ShoutCastOutputStream shout = new ShoutCastOutputStream(pout,
@@ -305,7 +306,7 @@ public class StreamController {
                 } catch (Exception e) {
                     LOG.debug("Error with output to Shoutcast stream", e);
                 }
-            }, "ShoutcastStreamDatafeed").start();
+            });
 
             // wait for src data thread to connect
             while (pin.source == null) {
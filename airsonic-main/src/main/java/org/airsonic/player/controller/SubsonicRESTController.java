@@ -35,6 +35,7 @@ import org.airsonic.player.domain.UserCredential.App;
 import org.airsonic.player.i18n.LocaleResolver;
 import org.airsonic.player.service.*;
 import org.airsonic.player.service.search.IndexType;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.airsonic.player.util.StringUtil;
 import org.airsonic.player.util.Util;
 import org.apache.commons.lang.StringUtils;
@@ -151,6 +152,8 @@ public class SubsonicRESTController {
     private MediaScannerService mediaScannerService;
     @Autowired
     private LocaleResolver localeResolver;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
 
     private final JAXBWriter jaxbWriter = new JAXBWriter();
 
@@ -499,7 +502,7 @@ public class SubsonicRESTController {
         jaxbArtist.setStarred(jaxbWriter.convertDate(artistDao.getArtistStarredDate(artist.getId(), username)));
         jaxbArtist.setAlbumCount(artist.getAlbumCount());
         if (artist.getCoverArtPath() != null) {
-            jaxbArtist.setCoverArt(CoverArtController.ARTIST_COVERART_PREFIX + artist.getId());
+            jaxbArtist.setCoverArt(CoverArtService.ARTIST_COVERART_PREFIX + artist.getId());
         }
         return jaxbArtist;
     }
@@ -547,7 +550,7 @@ public class SubsonicRESTController {
             }
         }
         if (album.getCoverArtPath() != null) {
-            jaxbAlbum.setCoverArt(CoverArtController.ALBUM_COVERART_PREFIX + album.getId());
+            jaxbAlbum.setCoverArt(CoverArtService.ALBUM_COVERART_PREFIX + album.getId());
         }
         jaxbAlbum.setSongCount(album.getSongCount());
         jaxbAlbum.setDuration((int) Math.round(album.getDuration()));
@@ -568,7 +571,7 @@ public class SubsonicRESTController {
         jaxbPlaylist.setDuration((int) Math.round(playlist.getDuration()));
         jaxbPlaylist.setCreated(jaxbWriter.convertDate(playlist.getCreated()));
         jaxbPlaylist.setChanged(jaxbWriter.convertDate(playlist.getChanged()));
-        jaxbPlaylist.setCoverArt(CoverArtController.PLAYLIST_COVERART_PREFIX + playlist.getId());
+        jaxbPlaylist.setCoverArt(CoverArtService.PLAYLIST_COVERART_PREFIX + playlist.getId());
 
         for (String username : playlistService.getPlaylistUsers(playlist.getId())) {
             jaxbPlaylist.getAllowedUser().add(username);
@@ -1523,6 +1526,7 @@ public class SubsonicRESTController {
                 artistDao.unstarArtist(artistId, username);
             }
         }
+        sonosCatalogVersion.favoritesChanged();
 
         writeEmptyResponse(request, response);
     }
@@ -1594,7 +1598,7 @@ public class SubsonicRESTController {
                 c.setStatus(PodcastStatus.valueOf(channel.getStatus().name()));
                 c.setTitle(channel.getTitle());
                 c.setDescription(channel.getDescription());
-                c.setCoverArt(CoverArtController.PODCAST_COVERART_PREFIX + channel.getId());
+                c.setCoverArt(CoverArtService.PODCAST_COVERART_PREFIX + channel.getId());
                 c.setOriginalImageUrl(channel.getImageUrl());
                 c.setErrorMessage(channel.getErrorMessage());
 
@@ -2360,8 +2364,8 @@ public class SubsonicRESTController {
     }
 
     private String mapId(String id) {
-        if (id == null || id.startsWith(CoverArtController.ALBUM_COVERART_PREFIX) ||
-                id.startsWith(CoverArtController.ARTIST_COVERART_PREFIX) || StringUtils.isNumeric(id)) {
+        if (id == null || id.startsWith(CoverArtService.ALBUM_COVERART_PREFIX) ||
+                id.startsWith(CoverArtService.ARTIST_COVERART_PREFIX) || StringUtils.isNumeric(id)) {
             return id;
         }
 
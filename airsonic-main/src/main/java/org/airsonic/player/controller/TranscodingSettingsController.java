@@ -59,6 +59,7 @@ public class TranscodingSettingsController {
         map.put("transcodeDirectory", transcodingService.getTranscodeDirectory());
         map.put("downsampleCommand", settingsService.getDownsamplingCommand());
         map.put("hlsCommand", settingsService.getHlsCommand());
+        map.put("hlsSegmenterCommand", settingsService.getHlsSegmenterCommand());
         map.put("transcodeEstimateTimePadding", settingsService.getTranscodeEstimateTimePadding());
         map.put("transcodeEstimateBytePadding", settingsService.getTranscodeEstimateBytePadding());
         map.put("brand", settingsService.getBrand());
@@ -137,6 +138,7 @@ public class TranscodingSettingsController {
         }
         settingsService.setDownsamplingCommand(StringUtils.trim(request.getParameter("downsampleCommand")));
         settingsService.setHlsCommand(StringUtils.trim(request.getParameter("hlsCommand")));
+        settingsService.setHlsSegmenterCommand(StringUtils.trim(request.getParameter("hlsSegmenterCommand")));
 
         String timePad = StringUtils.trimToNull(request.getParameter("transcodeEstimateTimePadding"));
         String bytePad = StringUtils.trimToNull(request.getParameter("transcodeEstimateBytePadding"));
@@ -28,11 +28,14 @@ import com.google.common.util.concurrent.RateLimiter;
 import org.airsonic.player.ajax.UploadInfo;
 import org.airsonic.player.domain.TransferStatus;
 import org.airsonic.player.domain.User;
+import org.airsonic.player.service.BroadcastService;
+import org.airsonic.player.service.MediaFileService;
 import org.airsonic.player.service.PlayerService;
 import org.airsonic.player.service.SecurityService;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.service.StatusService;
-import org.airsonic.player.upload.MonitoredDiskFileItemFactory;
+import org.airsonic.player.upload.ParallelFileWriter;
+import org.airsonic.player.upload.UploadInputStream;
 import org.airsonic.player.upload.UploadListener;
 import org.airsonic.player.util.FileUtil;
 import org.airsonic.player.util.LambdaUtils;
@@ -42,10 +45,13 @@ import org.apache.commons.compress.archivers.ArchiveStreamFactory;
 import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
 import org.apache.commons.compress.archivers.sevenz.SevenZFile;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
-import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.FileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -55,6 +61,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.servlet.ModelAndView;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -63,12 +70,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
@@ -91,9 +107,49 @@ public class UploadController {
     @Autowired
     private SettingsService settingsService;
     @Autowired
+    private MediaFileService mediaFileService;
+    @Autowired
     private SimpMessagingTemplate brokerTemplate;
+    @Autowired
+    private BroadcastService broadcastService;
 
     private static final Set<String> SUPPORTED_ZIP_FORMATS = ImmutableSet.of("zip", "7z", "rar", "cpio", "jar", "tar");
+    // formats that can be extracted while they are being uploaded, the others need random access
+    private static final Set<String> STREAMABLE_ZIP_FORMATS = ImmutableSet.of("zip", "cpio", "jar", "tar");
+    private static final int UNZIP_THREADS = 4;
+    private static final int UNZIP_MAX_BUFFERED_CHUNKS = 64;
+
+    // shared by all uploads, every upload limits how much it buffers itself
+    private final ThreadPoolExecutor unzipPool = new ThreadPoolExecutor(UNZIP_THREADS, UNZIP_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), UploadController::newUnzipThread);
+    // refreshes uploaded directories one at a time, off the common pool that parallel streams use
+    private final ThreadPoolExecutor refreshPool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), UploadController::newRefreshThread);
+
+    public UploadController() {
+        unzipPool.allowCoreThreadTimeOut(true);
+        refreshPool.allowCoreThreadTimeOut(true);
+    }
+
+    private static Thread newUnzipThread(Runnable r) {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        t.setName("UploadUnzip");
+        return t;
+    }
+
+    private static Thread newRefreshThread(Runnable r) {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        t.setName("UploadRefresh");
+        return t;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        unzipPool.shutdownNow();
+        refreshPool.shutdownNow();
+    }
 
     @PostMapping
     protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response) {
@@ -103,6 +159,8 @@ public class UploadController {
         List<Path> unzippedFiles = new ArrayList<>();
         List<Exception> exceptions = new ArrayList<>();
         TransferStatus status = null;
+        Path dir = null;
+        Map<String, Path> spooledFiles = new LinkedHashMap<>();
 
         try {
 
@@ -116,24 +174,45 @@ public class UploadController {
                 throw new Exception("Illegal request.");
             }
 
-            Path dir = null;
             boolean unzip = false;
 
-            UploadListener listener = new UploadListenerImpl(status, settingsService.getUploadBitrateLimiter(), brokerTemplate);
-
-            FileItemFactory factory = new MonitoredDiskFileItemFactory(listener);
-            ServletFileUpload upload = new ServletFileUpload(factory);
-
-            List<?> items = upload.parseRequest(request);
-
-            // First, look for "dir" and "unzip" parameters.
-            for (Object o : items) {
-                FileItem item = (FileItem) o;
+            UploadListener listener = new UploadListenerImpl(status, settingsService.getUploadBitrateLimiter(), brokerTemplate, broadcastService);
+
+            // Files are processed while the request is read. This relies on the "dir" and "unzip" parameters
+            // coming first, files sent before them are spooled to disk and processed at the end.
+            FileItemIterator items = new ServletFileUpload().getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+
+                if (item.isFormField()) {
+                    try (InputStream is = item.openStream()) {
+                        if ("dir".equals(item.getFieldName())) {
+                            dir = Paths.get(Streams.asString(is, StandardCharsets.UTF_8.name()));
+                            securityService.checkUploadAllowed(dir, false);
+                            if (!Files.exists(dir)) {
+                                Files.createDirectories(dir);
+                            }
+                        } else if ("unzip".equals(item.getFieldName())) {
+                            unzip = true;
+                        }
+                    }
+                    continue;
+                }
 
-                if (item.isFormField() && "dir".equals(item.getFieldName())) {
-                    dir = Paths.get(item.getString());
-                } else if (item.isFormField() && "unzip".equals(item.getFieldName())) {
-                    unzip = true;
+                String fileName = item.getName();
+                if (fileName == null || fileName.trim().isEmpty()) {
+                    continue;
+                }
+                listener.start(fileName);
+
+                try (InputStream is = new UploadInputStream(item.openStream(), listener)) {
+                    if (dir == null) {
+                        Path spooled = Files.createTempFile("airsonic-upload", null);
+                        spooledFiles.put(fileName, spooled);
+                        Files.copy(is, spooled, StandardCopyOption.REPLACE_EXISTING);
+                    } else {
+                        receiveFile(dir, fileName, is, unzip, uploadedFiles, unzippedFiles, exceptions, unzipPool);
+                    }
                 }
             }
 
@@ -141,52 +220,30 @@ public class UploadController {
                 throw new Exception("Missing 'dir' parameter.");
             }
 
-            securityService.checkUploadAllowed(dir, false);
-
-            if (!Files.exists(dir)) {
-                Files.createDirectories(dir);
-            }
-
-            // Look for file items.
-            for (Object o : items) {
-                FileItem item = (FileItem) o;
-
-                if (!item.isFormField()) {
-                    String fileName = item.getName();
-                    if (!fileName.trim().isEmpty()) {
-
-                        Path targetFile = dir.resolve(Paths.get(fileName).getFileName());
-
-                        try {
-                            securityService.checkUploadAllowed(targetFile, true);
-                        } catch (IOException e) {
-                            exceptions.add(e);
-                            continue;
-                        }
-
-                        item.write(targetFile.toFile());
-                        uploadedFiles.add(targetFile);
-                        LOG.info("Uploaded {} ", targetFile);
-
-                        if (unzip && SUPPORTED_ZIP_FORMATS.contains(MoreFiles.getFileExtension(targetFile).toLowerCase())) {
-                            unzip(targetFile, unzippedFiles, exceptions);
-                        }
-                    }
+            for (Entry<String, Path> spooled : spooledFiles.entrySet()) {
+                try (InputStream is = Files.newInputStream(spooled.getValue())) {
+                    receiveFile(dir, spooled.getKey(), is, unzip, uploadedFiles, unzippedFiles, exceptions, unzipPool);
                 }
             }
         } catch (Exception x) {
             LOG.warn("Uploading failed.", x);
             exceptions.add(x);
         } finally {
+            spooledFiles.values().forEach(FileUtil::delete);
             if (status != null) {
                 statusService.removeUploadStatus(status);
-                brokerTemplate.convertAndSendToUser(status.getPlayer().getUsername(), "/queue/uploads/status",
-                        new UploadInfo(status.getId(), status.getBytesTotal() + 1, status.getBytesTotal()));
+                // Replaces the progress that hasn't been sent yet, so that it can't come after this
+                TransferStatus finished = status;
+                broadcastService.sendLatest("uploads/" + status.getId(), () -> brokerTemplate.convertAndSendToUser(
+                        finished.getPlayer().getUsername(), "/queue/uploads/status",
+                        new UploadInfo(finished.getId(), finished.getBytesTotal() + 1, finished.getBytesTotal())));
                 User user = securityService.getCurrentUser(request);
                 securityService.updateUserByteCounts(user, 0L, 0L, status.getBytesTransferred());
             }
         }
 
+        refreshDirectories(Stream.concat(uploadedFiles.stream(), unzippedFiles.stream()));
+
         map.put("exceptions", exceptions);
         map.put("uploadedFiles", uploadedFiles);
         map.put("unzippedFiles", unzippedFiles);
@@ -194,9 +251,76 @@ public class UploadController {
         return new ModelAndView("upload", "model", map);
     }
 
-    private void unzip(Path file, List<Path> unzippedFiles, List<Exception> exceptions) {
+    private void receiveFile(Path dir, String fileName, InputStream is, boolean unzip, List<Path> uploadedFiles,
+            List<Path> unzippedFiles, List<Exception> exceptions, ExecutorService unzipPool) throws IOException {
+        Path targetFile = dir.resolve(Paths.get(fileName).getFileName());
+
+        try {
+            securityService.checkUploadAllowed(targetFile, true);
+        } catch (IOException e) {
+            exceptions.add(e);
+            return;
+        }
+
+        String extension = MoreFiles.getFileExtension(targetFile).toLowerCase();
+        if (unzip && STREAMABLE_ZIP_FORMATS.contains(extension)) {
+            uploadedFiles.add(targetFile);
+            LOG.info("Uploading and unzipping {}", targetFile);
+            unzipStream(targetFile, extension, is, unzippedFiles, exceptions, unzipPool);
+            return;
+        }
+
+        Files.copy(is, targetFile, StandardCopyOption.REPLACE_EXISTING);
+        uploadedFiles.add(targetFile);
+        LOG.info("Uploaded {} ", targetFile);
+
+        if (unzip && SUPPORTED_ZIP_FORMATS.contains(extension)) {
+            unzip(targetFile, unzippedFiles, exceptions, unzipPool);
+        }
+    }
+
+    /**
+     * Makes the new files browsable without waiting for a media library scan.
+     */
+    private void refreshDirectories(Stream<Path> files) {
+        Set<Path> dirs = files.map(Path::getParent).filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new));
+        if (!dirs.isEmpty()) {
+            refreshPool.execute(() -> dirs.forEach(d -> {
+                try {
+                    mediaFileService.refreshDirectory(d);
+                } catch (Exception e) {
+                    LOG.warn("Could not refresh uploaded directory {}", d, e);
+                }
+            }));
+        }
+    }
+
+    private void unzipStream(Path file, String extension, InputStream is, List<Path> unzippedFiles,
+            List<Exception> exceptions, ExecutorService unzipPool) {
+        ParallelFileWriter writer = new ParallelFileWriter(unzipPool, UNZIP_MAX_BUFFERED_CHUNKS);
+        try (ArchiveInputStream ais = "zip".equals(extension)
+                ? new ZipArchiveInputStream(is, StandardCharsets.UTF_8.name(), true, true)
+                : new ArchiveStreamFactory().createArchiveInputStream(extension, is)) {
+            ArchiveEntry entry = null;
+            while ((entry = ais.getNextEntry()) != null) {
+                if (!ais.canReadEntryData(entry)) {
+                    LOG.info("Can't read {} in {}", entry.getName(), file);
+                    continue;
+                }
+                copyEntry(file, entry, os -> IOUtils.copy(ais, os), writer, exceptions);
+            }
+        } catch (Exception e) {
+            LOG.warn("Something went wrong unzipping {}", file, e);
+            exceptions.add(e);
+        } finally {
+            awaitEntries(writer, unzippedFiles, exceptions);
+        }
+    }
+
+    private void unzip(Path file, List<Path> unzippedFiles, List<Exception> exceptions, ExecutorService unzipPool) {
         LOG.info("Unzipping {}", file);
         boolean unzipped = false;
+        ParallelFileWriter writer = new ParallelFileWriter(unzipPool, UNZIP_MAX_BUFFERED_CHUNKS);
 
         // rar files
         if (file.getFileName().toString().toLowerCase().endsWith(".rar")) {
@@ -236,19 +360,20 @@ public class UploadController {
                         public Date getLastModifiedDate() {
                             return fh.getArcTime();
                         }
-                    }, dest -> {
-                            try (OutputStream os = Files.newOutputStream(dest)) {
+                    }, os -> {
+                            try {
                                 zip.extractFile(fh, os);
                             } catch (RarException e) {
                                 throw new IOException(e);
                             }
-                        }, unzippedFiles, exceptions);
+                        }, writer, exceptions);
                 }
             } catch (Exception e) {
                 LOG.warn("Something went wrong unzipping {}", file, e);
                 exceptions.add(e);
             } finally {
                 unzipped = true;
+                awaitEntries(writer, unzippedFiles, exceptions);
                 FileUtil.delete(file);
             }
         }
@@ -268,7 +393,7 @@ public class UploadController {
                     }
 
                     try (InputStream is = zip.getInputStream(entry)) {
-                        copyEntry(file, entry, dest -> Files.copy(is, dest), unzippedFiles, exceptions);
+                        copyEntry(file, entry, os -> IOUtils.copy(is, os), writer, exceptions);
                     }
                 }
             } catch (Exception e) {
@@ -276,6 +401,7 @@ public class UploadController {
                 exceptions.add(e);
             } finally {
                 unzipped = true;
+                awaitEntries(writer, unzippedFiles, exceptions);
                 FileUtil.delete(file);
             }
         }
@@ -287,20 +413,19 @@ public class UploadController {
                 byte[] buffer = new byte[8042];
                 SevenZArchiveEntry entry = null;
                 while ((entry = zip.getNextEntry()) != null) {
-                    copyEntry(file, entry, dest -> {
+                    copyEntry(file, entry, os -> {
                         int bytesRead = -1;
-                        try (OutputStream os = Files.newOutputStream(dest)) {
-                            while ((bytesRead = zip.read(buffer)) != -1) {
-                                os.write(buffer, 0, bytesRead);
-                            }
+                        while ((bytesRead = zip.read(buffer)) != -1) {
+                            os.write(buffer, 0, bytesRead);
                         }
-                    }, unzippedFiles, exceptions);
+                    }, writer, exceptions);
                 }
             } catch (Exception e) {
                 LOG.warn("Something went wrong unzipping {}", file, e);
                 exceptions.add(e);
             } finally {
                 unzipped = true;
+                awaitEntries(writer, unzippedFiles, exceptions);
                 FileUtil.delete(file);
             }
         }
@@ -316,19 +441,20 @@ public class UploadController {
                         LOG.info("Can't read {} in {}", entry.getName(), file);
                         continue;
                     }
-                    copyEntry(file, entry, dest -> Files.copy(ais, dest), unzippedFiles, exceptions);
+                    copyEntry(file, entry, os -> IOUtils.copy(ais, os), writer, exceptions);
                 }
             } catch (Exception e) {
                 LOG.warn("Something went wrong unzipping {}", file, e);
                 exceptions.add(e);
             } finally {
+                awaitEntries(writer, unzippedFiles, exceptions);
                 FileUtil.delete(file);
             }
         }
     }
 
-    private void copyEntry(Path file, ArchiveEntry entry, LambdaUtils.ThrowingConsumer<Path, IOException> copier,
-            List<Path> unzippedFiles, List<Exception> exceptions) {
+    private void copyEntry(Path file, ArchiveEntry entry, LambdaUtils.ThrowingConsumer<OutputStream, IOException> copier,
+            ParallelFileWriter writer, List<Exception> exceptions) {
         final Path toPath = file.resolveSibling(entry.getName());
         try {
             if (!toPath.normalize().startsWith(file.getParent())) {
@@ -345,9 +471,10 @@ public class UploadController {
 
                 securityService.checkUploadAllowed(toPath, true);
 
-                copier.accept(toPath);
-                unzippedFiles.add(toPath);
-                LOG.debug("Unzipped {}", toPath);
+                try (OutputStream os = writer.create(toPath)) {
+                    copier.accept(os);
+                }
+                LOG.debug("Unzipping {}", toPath);
 
             }
         } catch (IOException e) {
@@ -358,19 +485,32 @@ public class UploadController {
         LOG.info("Processed {}", toPath);
     }
 
+    private void awaitEntries(ParallelFileWriter writer, List<Path> unzippedFiles, List<Exception> exceptions) {
+        try {
+            ParallelFileWriter.Result result = writer.await();
+            unzippedFiles.addAll(result.getWritten());
+            exceptions.addAll(result.getErrors());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exceptions.add(e);
+        }
+    }
+
     /**
      * Receives callbacks as the file upload progresses.
      */
     private static class UploadListenerImpl implements UploadListener {
         private TransferStatus status;
         private SimpMessagingTemplate brokerTemplate;
+        private BroadcastService broadcastService;
         private RateLimiter rateLimiter;
         private volatile int lastBroadcastPercentage = 0;
 
         private UploadListenerImpl(TransferStatus status, RateLimiter rateLimiter,
-                SimpMessagingTemplate brokerTemplate) {
+                SimpMessagingTemplate brokerTemplate, BroadcastService broadcastService) {
             this.status = status;
             this.brokerTemplate = brokerTemplate;
+            this.broadcastService = broadcastService;
             this.rateLimiter = rateLimiter;
         }
 
@@ -392,7 +532,7 @@ public class UploadController {
             // broadcast every 2% (no need to broadcast at every byte read)
             if (percentDone - lastBroadcastPercentage > 2) {
                 lastBroadcastPercentage = (int) percentDone;
-                CompletableFuture.runAsync(() -> brokerTemplate.convertAndSendToUser(
+                broadcastService.sendLatest("uploads/" + status.getId(), () -> brokerTemplate.convertAndSendToUser(
                         status.getPlayer().getUsername(),
                         "/queue/uploads/status",
                         new UploadInfo(status.getId(), status.getBytesTransferred(), status.getBytesTotal())));
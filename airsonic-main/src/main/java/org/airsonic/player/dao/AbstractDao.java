@@ -65,6 +65,9 @@ public class AbstractDao {
     @Autowired
     NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
+    @Autowired
+    StatementMetrics statementMetrics;
+
     public JdbcTemplate getJdbcTemplate() {
         return jdbcTemplate;
     }
@@ -120,7 +123,7 @@ public class AbstractDao {
         LOG.trace("Executing query: [{}]", sql);
         int result = getJdbcTemplate().update(sql, convertToDBTypes(args));
         LOG.trace("Updated {} rows", result);
-        log(sql, t);
+        log(sql, t, result);
         return result;
     }
 
@@ -129,7 +132,7 @@ public class AbstractDao {
         LOG.trace("Executing query: [{}]", sql);
         int result = getNamedParameterJdbcTemplate().update(sql, convertToDBTypes(args));
         LOG.trace("Updated {} rows", result);
-        log(sql, t);
+        log(sql, t, result);
         return result;
     }
 
@@ -148,11 +151,17 @@ public class AbstractDao {
             });
         int tally = Arrays.stream(result).flatMapToInt(Arrays::stream).sum();
         LOG.trace("Updated {} rows", tally);
-        log(sql, t);
+        statementMetrics.recordBatch(sql, t, tally, batchArgs.size());
+        logSlow(sql, t);
         return tally;
     }
 
-    private void log(String sql, long startTimeNano) {
+    private void log(String sql, long startTimeNano, int rows) {
+        statementMetrics.record(sql, startTimeNano, rows);
+        logSlow(sql, startTimeNano);
+    }
+
+    private void logSlow(String sql, long startTimeNano) {
         long millis = (System.nanoTime() - startTimeNano) / 1000000L;
 
         // Log queries that take more than 2 seconds.
@@ -164,28 +173,28 @@ public class AbstractDao {
     protected <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
         long t = System.nanoTime();
         List<T> result = getJdbcTemplate().query(sql, convertToDBTypes(args), rowMapper);
-        log(sql, t);
+        log(sql, t, result.size());
         return result;
     }
 
     protected <T> List<T> namedQuery(String sql, RowMapper<T> rowMapper, Map<String, Object> args) {
         long t = System.nanoTime();
         List<T> result = getNamedParameterJdbcTemplate().query(sql, convertToDBTypes(args), rowMapper);
-        log(sql, t);
+        log(sql, t, result.size());
         return result;
     }
 
     protected <T> List<T> queryForTypes(String sql, Class<T> type, Object... args) {
         long t = System.nanoTime();
         List<T> result = getJdbcTemplate().queryForList(sql, convertToDBTypes(args), type);
-        log(sql, t);
+        log(sql, t, result.size());
         return result;
     }
 
     protected <T> List<T> namedQueryForTypes(String sql, Class<T> type, Map<String, Object> args) {
         long t = System.nanoTime();
         List<T> result = getNamedParameterJdbcTemplate().queryForList(sql, convertToDBTypes(args), type);
-        log(sql, t);
+        log(sql, t, result.size());
         return result;
     }
 
@@ -278,7 +287,8 @@ public class AbstractDao {
         })).collect(Collectors.toConcurrentMap(Pair::getLeft, Pair::getRight)));
     }
 
-    protected static Integer insert(String table, Object obj) {
+    protected Integer insert(String table, Object obj) {
+        long t = System.nanoTime();
         Map<String, Object> args = methods.get(table).entrySet()
                 .stream()
                 .map(e -> {
@@ -290,7 +300,9 @@ public class AbstractDao {
                 })
                 //can't use Collectors.toMap or Collectors.toConcurrentMap due to possible null value mappings
                 .collect(HashMap::new, (m, v) -> m.put(v.getKey(), v.getValue()), HashMap::putAll);
-        var keyHolder = insertTemplates.get(table).executeAndReturnKeyHolder(args);
+        var insert = insertTemplates.get(table);
+        var keyHolder = insert.executeAndReturnKeyHolder(args);
+        log(insert.getInsertString(), t, 1);
         return keyHolder.getKey().intValue();
     }
 
@@ -161,6 +161,21 @@ public class AlbumDao extends AbstractDao {
      * @return Albums in alphabetical order.
      */
     public List<Album> getAlphabeticalAlbums(final int offset, final int count, boolean byArtist, boolean ignoreCase, final List<MusicFolder> musicFolders) {
+        return getAlphabeticalAlbums(offset, count, byArtist, ignoreCase, false, musicFolders);
+    }
+
+    /**
+     * Returns albums in alphabetical order.
+     *
+     * @param offset       Number of albums to skip.
+     * @param count        Maximum number of albums to return.
+     * @param byArtist     Whether to sort by artist name
+     * @param ignoreCase   Use case insensitive sorting
+     * @param descending   Whether to return the albums in reverse alphabetical order.
+     * @param musicFolders Only return albums from these folders.
+     * @return Albums in alphabetical order.
+     */
+    public List<Album> getAlphabeticalAlbums(final int offset, final int count, boolean byArtist, boolean ignoreCase, boolean descending, final List<MusicFolder> musicFolders) {
         if (musicFolders.isEmpty()) {
             return Collections.emptyList();
         }
@@ -168,15 +183,16 @@ public class AlbumDao extends AbstractDao {
         args.put("folders", MusicFolder.toIdList(musicFolders));
         args.put("count", count);
         args.put("offset", offset);
+        String direction = descending ? " desc" : "";
         String orderBy;
         if (ignoreCase) {
-            orderBy = byArtist ? "LOWER(artist),  LOWER(name)" : "LOWER(name)";
+            orderBy = byArtist ? "LOWER(artist)" + direction + ", LOWER(name)" + direction : "LOWER(name)" + direction;
         } else {
-            orderBy = byArtist ? "artist, name" : "name";
+            orderBy = byArtist ? "artist" + direction + ", name" + direction : "name" + direction;
         }
 
         return namedQuery("select " + QUERY_COLUMNS + " from album where present and folder_id in (:folders) " +
-                          "order by " + orderBy + ", id limit :count offset :offset", rowMapper, args);
+                          "order by " + orderBy + ", id" + direction + " limit :count offset :offset", rowMapper, args);
     }
 
     /**
@@ -347,6 +363,13 @@ public class AlbumDao extends AbstractDao {
         update("delete from album where not present");
     }
 
+    /**
+     * Returns the cover art paths of all albums, including the ones that are not present.
+     */
+    public List<String> getCoverArtPaths() {
+        return queryForStrings("select distinct cover_art_path from album where cover_art_path is not null");
+    }
+
     public void starAlbum(int albumId, String username) {
         unstarAlbum(albumId, username);
         update("insert into starred_album(album_id, username, created) values (?,?,?)", albumId, username, Instant.now());
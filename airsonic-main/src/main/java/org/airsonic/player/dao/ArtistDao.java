@@ -82,6 +82,35 @@ public class ArtistDao extends AbstractDao {
         return queryOne("select " + QUERY_COLUMNS + " from artist where id=?", rowMapper, id);
     }
 
+    /**
+     * Returns the artists with the given names.
+     *
+     * @param artistNames  The artist names.
+     * @param musicFolders Only return artists that have at least one album in these folders, or {@code null} for
+     *                     artists in any folder.
+     * @return The artists found, in no particular order.
+     */
+    public List<Artist> getArtists(final Collection<String> artistNames, final List<MusicFolder> musicFolders) {
+        if (artistNames.isEmpty() || (musicFolders != null && musicFolders.isEmpty())) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("names", artistNames);
+        if (musicFolders == null) {
+            return namedQuery("select " + QUERY_COLUMNS + " from artist where name in (:names)", rowMapper, args);
+        }
+        args.put("folders", MusicFolder.toIdList(musicFolders));
+        return namedQuery("select " + QUERY_COLUMNS + " from artist where name in (:names) and folder_id in (:folders)",
+                          rowMapper, args);
+    }
+
+    /**
+     * Returns the names of all artists.
+     */
+    public List<String> getArtistNames() {
+        return queryForStrings("select distinct name from artist");
+    }
+
     /**
      * Creates or updates an artist.
      *
@@ -94,14 +123,16 @@ public class ArtistDao extends AbstractDao {
                      "album_count=?," +
                      "last_scanned=?," +
                      "present=?," +
-                     "folder_id=? " +
+                     "folder_id=?," +
+                     "sort_name=? " +
                      "where name=?";
+        String sortName = Artist.createSortName(artist.getName());
 
-        int n = update(sql, artist.getCoverArtPath(), artist.getAlbumCount(), artist.getLastScanned(), artist.isPresent(), artist.getFolderId(), artist.getName());
+        int n = update(sql, artist.getCoverArtPath(), artist.getAlbumCount(), artist.getLastScanned(), artist.isPresent(), artist.getFolderId(), sortName, artist.getName());
 
         if (n == 0) {
-            update("insert into artist (" + INSERT_COLUMNS + ") values (" + questionMarks(INSERT_COLUMNS) + ")",
-                   artist.getName(), artist.getCoverArtPath(), artist.getAlbumCount(), artist.getLastScanned(), artist.isPresent(), artist.getFolderId());
+            update("insert into artist (" + INSERT_COLUMNS + ", sort_name) values (" + questionMarks(INSERT_COLUMNS) + ", ?)",
+                   artist.getName(), artist.getCoverArtPath(), artist.getAlbumCount(), artist.getLastScanned(), artist.isPresent(), artist.getFolderId(), sortName);
         }
 
         int id = queryForInt("select id from artist where name=?", null, artist.getName());
@@ -129,6 +160,45 @@ public class ArtistDao extends AbstractDao {
                           "order by name, id limit :count offset :offset", rowMapper, args);
     }
 
+    /**
+     * Returns artists ordered by their sort name (see {@link Artist#createSortName(String)}).
+     *
+     * @param offset       Number of artists to skip.
+     * @param count        Maximum number of artists to return.
+     * @param descending   Whether to return the artists in descending order.
+     * @param musicFolders Only return artists that have at least one album in these folders.
+     * @return Artists ordered by sort name.
+     */
+    public List<Artist> getSortedArtists(final int offset, final int count, boolean descending, final List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("folders", MusicFolder.toIdList(musicFolders));
+        args.put("count", count);
+        args.put("offset", offset);
+        String direction = descending ? " desc" : "";
+
+        return namedQuery("select " + QUERY_COLUMNS + " from artist where present and folder_id in (:folders) " +
+                          "order by sort_name" + direction + ", id" + direction + " limit :count offset :offset", rowMapper, args);
+    }
+
+    /**
+     * Returns the number of artists in the given folders.
+     *
+     * @param musicFolders Only count artists that have at least one album in these folders.
+     * @return The number of artists.
+     */
+    public int getArtistCount(final List<MusicFolder> musicFolders) {
+        if (musicFolders.isEmpty()) {
+            return 0;
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("folders", MusicFolder.toIdList(musicFolders));
+
+        return namedQueryForInt("select count(*) from artist where present and folder_id in (:folders)", 0, args);
+    }
+
     /**
      * Returns the most recently starred artists.
      *
@@ -173,6 +243,13 @@ public class ArtistDao extends AbstractDao {
         update("delete from artist where not present");
     }
 
+    /**
+     * Returns the cover art paths of all artists, including the ones that are not present.
+     */
+    public List<String> getCoverArtPaths() {
+        return queryForStrings("select distinct cover_art_path from artist where cover_art_path is not null");
+    }
+
     public void starArtist(int artistId, String username) {
         unstarArtist(artistId, username);
         update("insert into starred_artist(artist_id, username, created) values (?,?,?)", artistId, username, Instant.now());
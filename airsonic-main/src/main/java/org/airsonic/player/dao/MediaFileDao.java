@@ -25,7 +25,6 @@ import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.RandomSearchCriteria;
 import org.airsonic.player.util.Util;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.RowMapper;
@@ -51,7 +50,7 @@ public class MediaFileDao extends AbstractDao {
     private static final String INSERT_COLUMNS = "path, folder, type, format, title, album, artist, album_artist, disc_number, " +
                                                 "track_number, year, genre, bit_rate, variable_bit_rate, duration, file_size, width, height, cover_art_path, " +
                                                 "parent_path, play_count, last_played, comment, created, changed, last_scanned, children_last_updated, present, " +
-                                                "version, mb_release_id, mb_recording_id";
+                                                "version, mb_release_id, mb_recording_id, crc";
 
     private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
     private static final String GENRE_COLUMNS = "name, song_count, album_count";
@@ -92,6 +91,16 @@ public class MediaFileDao extends AbstractDao {
         return query("select " + QUERY_COLUMNS + " from media_file where parent_path=? and present", rowMapper, path);
     }
 
+    /**
+     * Returns the number of media files that are direct children of the given path.
+     *
+     * @param path The path.
+     * @return The number of children.
+     */
+    public int getChildrenCount(String path) {
+        return queryForInt("select count(*) from media_file where parent_path=? and present", 0, path);
+    }
+
     public List<MediaFile> getFilesInPlaylist(int playlistId) {
         return query("select " + prefix(QUERY_COLUMNS, "media_file") + " from playlist_file, media_file where " +
                      "media_file.id = playlist_file.media_file_id and " +
@@ -99,6 +108,13 @@ public class MediaFileDao extends AbstractDao {
                      "order by playlist_file.id", rowMapper, playlistId);
     }
 
+    public List<MediaFile> getFilesInPlayerQueue(int playerId) {
+        return query("select " + prefix(QUERY_COLUMNS, "media_file") + " from player_queue_file, media_file where " +
+                     "media_file.id = player_queue_file.media_file_id and " +
+                     "player_queue_file.player_id = ? " +
+                     "order by player_queue_file.queue_position", rowMapper, playerId);
+    }
+
     public List<MediaFile> getSongsForAlbum(String artist, String album) {
         return query("select " + QUERY_COLUMNS + " from media_file where album_artist=? and album=? and present " +
                      "and type in (?,?,?) order by disc_number, track_number", rowMapper,
@@ -131,6 +147,39 @@ public class MediaFileDao extends AbstractDao {
                              "and present and folder in (:folders)", rowMapper, args);
     }
 
+    /**
+     * Returns the artist directories with the given artist names.
+     *
+     * @return The directories found, ordered by ID so that artist directories come before their albums.
+     */
+    public List<MediaFile> getArtistsByNames(final Collection<String> names, final List<MusicFolder> musicFolders) {
+        if (names.isEmpty() || musicFolders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("type", MediaFile.MediaType.DIRECTORY.name());
+        args.put("names", names);
+        args.put("folders", MusicFolder.toPathList(musicFolders));
+        return namedQuery("select " + QUERY_COLUMNS + " from media_file where type = :type and artist in (:names) " +
+                          "and present and folder in (:folders) order by id", rowMapper, args);
+    }
+
+    /**
+     * Returns the artist names of all directories.
+     */
+    public List<String> getDirectoryArtistNames() {
+        return queryForStrings("select distinct artist from media_file where type=? and artist is not null and present",
+                               MediaFile.MediaType.DIRECTORY.name());
+    }
+
+    /**
+     * Returns the artist names of all songs.
+     */
+    public List<String> getSongArtistNames() {
+        return queryForStrings("select distinct artist from media_file where type=? and artist is not null and present",
+                               MediaFile.MediaType.MUSIC.name());
+    }
+
     /**
      * Creates or updates a media file.
      *
@@ -168,7 +217,8 @@ public class MediaFileDao extends AbstractDao {
                      "present=?, " +
                      "version=?, " +
                      "mb_release_id=?, " +
-                     "mb_recording_id=? " +
+                     "mb_recording_id=?, " +
+                     "crc=? " +
                      "where path=?";
 
         LOG.trace("Updating media file {}", Util.debugObject(file));
@@ -179,7 +229,7 @@ public class MediaFileDao extends AbstractDao {
                 file.isVariableBitRate(), file.getDuration(), file.getFileSize(), file.getWidth(), file.getHeight(),
                        file.getCoverArtPath(), file.getParentPath(), file.getPlayCount(), file.getLastPlayed(), file.getComment(),
                        file.getChanged(), file.getLastScanned(), file.getChildrenLastUpdated(), file.isPresent(), VERSION,
-                       file.getMusicBrainzReleaseId(), file.getMusicBrainzRecordingId(), file.getPath());
+                       file.getMusicBrainzReleaseId(), file.getMusicBrainzRecordingId(), file.getCrc(), file.getPath());
 
         if (n == 0) {
 
@@ -197,7 +247,8 @@ public class MediaFileDao extends AbstractDao {
                    file.isVariableBitRate(), file.getDuration(), file.getFileSize(), file.getWidth(), file.getHeight(),
                    file.getCoverArtPath(), file.getParentPath(), file.getPlayCount(), file.getLastPlayed(), file.getComment(),
                    file.getCreated(), file.getChanged(), file.getLastScanned(),
-                   file.getChildrenLastUpdated(), file.isPresent(), VERSION, file.getMusicBrainzReleaseId(), file.getMusicBrainzRecordingId());
+                   file.getChildrenLastUpdated(), file.isPresent(), VERSION, file.getMusicBrainzReleaseId(), file.getMusicBrainzRecordingId(),
+                   file.getCrc());
         }
 
         int id = queryForInt("select id from media_file where path=?", null, file.getPath());
@@ -208,6 +259,10 @@ public class MediaFileDao extends AbstractDao {
         return queryOne("select play_count, last_played, comment from music_file_info where path=?", musicFileInfoRowMapper, path);
     }
 
+    public void updateCrc(int id, long crc) {
+        update("update media_file set crc=? where id=?", crc, id);
+    }
+
     public void deleteMediaFile(String path) {
         deleteMediaFiles(Collections.singletonList(path));
     }
@@ -411,18 +466,29 @@ public class MediaFileDao extends AbstractDao {
                      rowMapper, MediaFile.MediaType.MUSIC.name(), MediaFile.MediaType.PODCAST.name(), MediaFile.MediaType.AUDIOBOOK.name(), artist, count, offset);
     }
 
-    public MediaFile getSongByArtistAndTitle(final String artist, final String title, final List<MusicFolder> musicFolders) {
-        if (musicFolders.isEmpty() || StringUtils.isBlank(title) || StringUtils.isBlank(artist)) {
-            return null;
+    /**
+     * Returns the songs of the given artists.
+     *
+     * @param artists        The artist names.
+     * @param countPerArtist Maximum number of songs to return for each artist.
+     * @param musicFolders   Only return songs in these folders.
+     * @return The songs found, ordered by ID.
+     */
+    public List<MediaFile> getSongsByArtists(final Collection<String> artists, final int countPerArtist,
+                                             final List<MusicFolder> musicFolders) {
+        if (artists.isEmpty() || musicFolders.isEmpty()) {
+            return Collections.emptyList();
         }
         Map<String, Object> args = new HashMap<>();
-        args.put("artist", artist);
-        args.put("title", title);
+        args.put("artists", artists);
         args.put("type", MediaFile.MediaType.MUSIC.name());
         args.put("folders", MusicFolder.toPathList(musicFolders));
-        return namedQueryOne("select " + QUERY_COLUMNS + " from media_file where artist = :artist " +
-                             "and title = :title and type = :type and present and folder in (:folders)",
-                             rowMapper, args);
+        List<MediaFile> songs = namedQuery("select " + QUERY_COLUMNS + " from media_file where artist in (:artists) " +
+                                           "and type = :type and present and folder in (:folders) order by id", rowMapper, args);
+        Map<String, Integer> counts = new HashMap<>();
+        return songs.stream()
+                .filter(song -> counts.merge(song.getArtist(), 1, Integer::sum) <= countPerArtist)
+                .collect(Collectors.toList());
     }
 
     /**
@@ -726,6 +792,13 @@ public class MediaFileDao extends AbstractDao {
         update("delete from media_file where not present");
     }
 
+    /**
+     * Returns the cover art paths of all media files, including the ones that are not present.
+     */
+    public List<String> getCoverArtPaths() {
+        return queryForStrings("select distinct cover_art_path from media_file where cover_art_path is not null");
+    }
+
     private static class MediaFileMapper implements RowMapper<MediaFile> {
         @Override
         public MediaFile mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -761,7 +834,8 @@ public class MediaFileDao extends AbstractDao {
                     rs.getBoolean(29),
                     rs.getInt(30),
                     rs.getString(31),
-                    rs.getString(32));
+                    rs.getString(32),
+                    rs.getObject(33, Long.class));
         }
     }
 
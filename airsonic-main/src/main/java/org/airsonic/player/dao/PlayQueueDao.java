@@ -18,6 +18,8 @@
  */
 package org.airsonic.player.dao;
 
+import org.airsonic.player.domain.PersistedPlayQueue;
+import org.airsonic.player.domain.PlayQueue.RepeatStatus;
 import org.airsonic.player.domain.SavedPlayQueue;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
@@ -27,8 +29,10 @@ import javax.annotation.PostConstruct;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -70,6 +74,64 @@ public class PlayQueueDao extends AbstractDao {
                 playQueue.getMediaFileIds().stream().map(x -> new Object[] { id, x }).collect(Collectors.toList()));
     }
 
+    /**
+     * Returns the live play queue of the given player, as last written by {@link #updatePersistedPlayQueue}.
+     *
+     * @param playerId The player ID.
+     * @return The play queue, or null if none was written.
+     */
+    @Transactional
+    public PersistedPlayQueue getPersistedPlayQueue(int playerId) {
+        List<int[]> rows = query("select queue_position, media_file_id from player_queue_file where player_id=? order by queue_position",
+            (rs, rowNum) -> new int[] { rs.getInt(1), rs.getInt(2) }, playerId);
+        List<Integer> mediaFileIds = new ArrayList<>(rows.size());
+        for (int[] row : rows) {
+            while (mediaFileIds.size() < row[0]) {
+                mediaFileIds.add(null);
+            }
+            mediaFileIds.add(row[1]);
+        }
+        return queryOne("select current_index, repeat_status from player_queue where player_id=?",
+            (rs, rowNum) -> new PersistedPlayQueue(playerId, rs.getInt(1), RepeatStatus.valueOf(rs.getString(2)), mediaFileIds),
+            playerId);
+    }
+
+    /**
+     * Writes the live play queue of a player. Rows are keyed by position, and only the positions that differ from
+     * the previously written play queue are written, so appending to or removing from the end of a large play queue
+     * is cheap.
+     *
+     * @param playQueue   The play queue to write.
+     * @param previousIds The media files of the previously written play queue, as returned by
+     *                    {@link #getPersistedPlayQueue} or given to the previous call.
+     */
+    @Transactional
+    public void updatePersistedPlayQueue(PersistedPlayQueue playQueue, List<Integer> previousIds) {
+        int playerId = playQueue.getPlayerId();
+        if (update("update player_queue set current_index=?, repeat_status=? where player_id=?",
+                playQueue.getIndex(), playQueue.getRepeatStatus().name(), playerId) == 0) {
+            update("insert into player_queue(player_id, current_index, repeat_status) values (?, ?, ?)",
+                    playerId, playQueue.getIndex(), playQueue.getRepeatStatus().name());
+        }
+
+        List<Integer> mediaFileIds = playQueue.getMediaFileIds();
+        if (previousIds.size() > mediaFileIds.size()) {
+            update("delete from player_queue_file where player_id=? and queue_position>=?", playerId, mediaFileIds.size());
+        }
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < mediaFileIds.size(); i++) {
+            Integer previousId = i < previousIds.size() ? previousIds.get(i) : null;
+            if (previousId == null) {
+                inserts.add(new Object[] { playerId, i, mediaFileIds.get(i) });
+            } else if (!Objects.equals(previousId, mediaFileIds.get(i))) {
+                updates.add(new Object[] { mediaFileIds.get(i), playerId, i });
+            }
+        }
+        batchedUpdate("update player_queue_file set media_file_id=? where player_id=? and queue_position=?", updates);
+        batchedUpdate("insert into player_queue_file(player_id, queue_position, media_file_id) values (?, ?, ?)", inserts);
+    }
+
     private static class PlayQueueMapper implements RowMapper<SavedPlayQueue> {
         @Override
         public SavedPlayQueue mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -0,0 +1,221 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PersistedPlayQueue;
+import org.airsonic.player.domain.PlayQueue;
+import org.airsonic.player.domain.PlayQueue.RepeatStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the live play queues of players in the database, so that they survive restarts.
+ * <p/>
+ * Play queues are restored when their player is first used, and written behind: a changed play queue is written once
+ * it has stopped changing for a flush interval, or at the latest after {@link #MAX_DELAY_MILLIS}. Only the positions
+ * that changed since the last write are written.
+ */
+@Component
+public class PlayQueueStore {
+    private static final Logger LOG = LoggerFactory.getLogger(PlayQueueStore.class);
+
+    private static final long FLUSH_INTERVAL_SECONDS = 2;
+    private static final long MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @Autowired
+    private PlayQueueDao playQueueDao;
+    @Autowired
+    private MediaFileDao mediaFileDao;
+
+    private final Map<Integer, TrackedPlayQueue> playQueues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    public PlayQueueStore() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName("PlayQueueStore");
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        executor.scheduleWithFixedDelay(() -> flush(false), FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush(true);
+    }
+
+    /**
+     * Fills the given empty play queue with the one written for the given player, if any, and keeps it in the
+     * database from now on.
+     */
+    public void restore(int playerId, PlayQueue playQueue) {
+        PersistedPlayQueue persisted = playQueueDao.getPersistedPlayQueue(playerId);
+        TrackedPlayQueue tracked;
+        if (persisted == null) {
+            tracked = new TrackedPlayQueue(playQueue, Collections.emptyList());
+        } else {
+            List<MediaFile> files = mediaFileDao.getFilesInPlayerQueue(playerId);
+            synchronized (playQueue) {
+                playQueue.addFiles(false, files);
+                playQueue.setIndex(persisted.getIndex());
+                playQueue.setRepeatStatus(persisted.getRepeatStatus());
+            }
+            tracked = new TrackedPlayQueue(playQueue, persisted.getMediaFileIds());
+            // Media files may have been deleted since, leaving gaps to close
+            if (files.size() == persisted.getMediaFileIds().size()) {
+                tracked.written = tracked.getState();
+            }
+        }
+        playQueues.put(playerId, tracked);
+    }
+
+    /**
+     * Stops keeping the play queue of a deleted player.
+     */
+    public void remove(int playerId) {
+        playQueues.remove(playerId);
+    }
+
+    /**
+     * Writes the play queues that changed.
+     *
+     * @param force Whether to also write the play queues that are still changing.
+     */
+    void flush(boolean force) {
+        long now = System.currentTimeMillis();
+        playQueues.forEach((playerId, tracked) -> {
+            try {
+                flush(playerId, tracked, force, now);
+            } catch (DataIntegrityViolationException e) {
+                // The player was deleted
+                LOG.debug("Could not write play queue of player {}", playerId, e);
+                playQueues.remove(playerId, tracked);
+            } catch (Exception e) {
+                LOG.warn("Could not write play queue of player {}", playerId, e);
+            }
+        });
+    }
+
+    private void flush(int playerId, TrackedPlayQueue tracked, boolean force, long now) {
+        State state = tracked.getState();
+        if (state.equals(tracked.written)) {
+            tracked.pending = null;
+            return;
+        }
+        if (!force && !state.equals(tracked.pending) && (tracked.pending == null || now - tracked.pendingSince < MAX_DELAY_MILLIS)) {
+            // Still changing, wait for it to settle
+            if (tracked.pending == null) {
+                tracked.pendingSince = now;
+            }
+            tracked.pending = state;
+            return;
+        }
+
+        PlayQueue playQueue = tracked.playQueue;
+        List<Integer> mediaFileIds;
+        synchronized (playQueue) {
+            state = tracked.getState();
+            mediaFileIds = playQueue.getFiles().stream().map(MediaFile::getId).collect(Collectors.toList());
+        }
+        playQueueDao.updatePersistedPlayQueue(new PersistedPlayQueue(playerId, state.index, state.repeatStatus, mediaFileIds),
+                tracked.writtenIds);
+        tracked.writtenIds = mediaFileIds;
+        tracked.written = state;
+        tracked.pending = null;
+    }
+
+    private static class TrackedPlayQueue {
+        private final PlayQueue playQueue;
+        private List<Integer> writtenIds;
+        private State written;
+        private State pending;
+        private long pendingSince;
+
+        private TrackedPlayQueue(PlayQueue playQueue, List<Integer> writtenIds) {
+            this.playQueue = playQueue;
+            this.writtenIds = writtenIds;
+        }
+
+        private State getState() {
+            synchronized (playQueue) {
+                return new State(playQueue.getVersion(), playQueue.getIndex(), playQueue.getRepeatStatus());
+            }
+        }
+    }
+
+    /**
+     * What tells whether a play queue changed, without copying its files.
+     */
+    private static class State {
+        private final long version;
+        private final int index;
+        private final RepeatStatus repeatStatus;
+
+        private State(long version, int index, RepeatStatus repeatStatus) {
+            this.version = version;
+            this.index = index;
+            this.repeatStatus = repeatStatus;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State other = (State) o;
+            return version == other.version && index == other.index && repeatStatus == other.repeatStatus;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, index, repeatStatus);
+        }
+    }
+}
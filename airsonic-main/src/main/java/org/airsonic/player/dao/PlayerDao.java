@@ -49,6 +49,8 @@ public class PlayerDao extends AbstractDao {
 
     @Autowired
     private PlayerDaoPlayQueueFactory playerDaoPlayQueueFactory;
+    @Autowired
+    private PlayQueueStore playQueueStore;
 
     private PlayerRowMapper rowMapper = new PlayerRowMapper();
     private Map<Integer, PlayQueue> playlists = Collections.synchronizedMap(new HashMap<Integer, PlayQueue>());
@@ -119,6 +121,7 @@ public class PlayerDao extends AbstractDao {
         String sql = "delete from player where id=?";
         update(sql, id);
         playlists.remove(id);
+        playQueueStore.remove(id);
     }
 
 
@@ -167,6 +170,7 @@ public class PlayerDao extends AbstractDao {
         PlayQueue playQueue = playlists.get(player.getId());
         if (playQueue == null) {
             playQueue = playerDaoPlayQueueFactory.createPlayQueue();
+            playQueueStore.restore(player.getId(), playQueue);
             playlists.put(player.getId(), playQueue);
         }
         player.setPlayQueue(playQueue);
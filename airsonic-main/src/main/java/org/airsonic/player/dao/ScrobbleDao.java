@@ -0,0 +1,115 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.Scrobble;
+import org.airsonic.player.domain.UserCredential.App;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides database services for the scrobble outbox, the listens that are yet to be submitted to scrobbling services.
+ */
+@Repository
+public class ScrobbleDao extends AbstractDao {
+
+    private static final String INSERT_COLUMNS = "username, app, artist, album, title, musicbrainz_release_id, " +
+            "musicbrainz_recording_id, track_number, duration, listened_at, attempts, next_attempt";
+    private static final String QUERY_COLUMNS = "id, " + INSERT_COLUMNS;
+
+    private final ScrobbleRowMapper rowMapper = new ScrobbleRowMapper();
+
+    @PostConstruct
+    public void register() throws Exception {
+        registerInserts("scrobble", "id", Arrays.asList(INSERT_COLUMNS.split(", ")), Scrobble.class);
+    }
+
+    public void createScrobble(Scrobble scrobble) {
+        Integer id = insert("scrobble", scrobble);
+        scrobble.setId(id);
+    }
+
+    /**
+     * Returns the users and services whose pending listens are due for submission. Listens queued while a service
+     * is backing off don't make it due any sooner.
+     */
+    public List<Pair<String, App>> getDueRecipients(Instant now) {
+        return query("select username, app from scrobble group by username, app having max(next_attempt) <= ?",
+            (rs, rowNum) -> Pair.of(rs.getString(1), App.valueOf(rs.getString(2))), now);
+    }
+
+    /**
+     * Returns the oldest pending listens of the given user for the given service.
+     */
+    public List<Scrobble> getScrobbles(String username, App app, int count) {
+        return query("select " + QUERY_COLUMNS + " from scrobble where username=? and app=? order by listened_at, id limit ?",
+            rowMapper, username, app, count);
+    }
+
+    public void deleteScrobbles(Collection<Integer> ids) {
+        namedUpdate("delete from scrobble where id in (:ids)", Map.of("ids", ids));
+    }
+
+    /**
+     * Postpones all pending listens of the given user for the given service after a failed submission.
+     */
+    public void deferScrobbles(String username, App app, int attempts, Instant nextAttempt) {
+        update("update scrobble set attempts=?, next_attempt=? where username=? and app=?", attempts, nextAttempt, username, app);
+    }
+
+    public int getScrobbleCount() {
+        return queryForInt("select count(*) from scrobble", 0);
+    }
+
+    public Instant getOldestListenedAt() {
+        return queryForInstant("select min(listened_at) from scrobble", null);
+    }
+
+    private static class ScrobbleRowMapper implements RowMapper<Scrobble> {
+        @Override
+        public Scrobble mapRow(ResultSet rs, int rowNum) throws SQLException {
+            Scrobble scrobble = new Scrobble();
+            scrobble.setId(rs.getInt("id"));
+            scrobble.setUsername(rs.getString("username"));
+            scrobble.setApp(App.valueOf(rs.getString("app")));
+            scrobble.setArtist(rs.getString("artist"));
+            scrobble.setAlbum(rs.getString("album"));
+            scrobble.setTitle(rs.getString("title"));
+            scrobble.setMusicBrainzReleaseId(rs.getString("musicbrainz_release_id"));
+            scrobble.setMusicBrainzRecordingId(rs.getString("musicbrainz_recording_id"));
+            scrobble.setTrackNumber((Integer) rs.getObject("track_number"));
+            scrobble.setDuration(rs.getInt("duration"));
+            scrobble.setListenedAt(rs.getTimestamp("listened_at").toInstant());
+            scrobble.setAttempts(rs.getInt("attempts"));
+            scrobble.setNextAttempt(rs.getTimestamp("next_attempt").toInstant());
+            return scrobble;
+        }
+    }
+}
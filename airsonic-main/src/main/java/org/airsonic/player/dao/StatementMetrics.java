@@ -0,0 +1,206 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.dao;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import org.airsonic.player.monitor.MetricsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Records the latency and row counts of every statement executed through {@link AbstractDao}. Statements are
+ * grouped by their fingerprint, the SQL with its literals and parameter lists collapsed, so that statements which
+ * only differ in their values share their statistics.
+ */
+@Component
+public class StatementMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementMetrics.class);
+
+    /**
+     * The number of distinct statements to keep statistics for. Statements built with inlined values that the
+     * fingerprint doesn't catch would otherwise grow the statistics forever.
+     */
+    private static final int MAX_STATEMENTS = 1000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    private final Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    @Autowired
+    private MetricsManager metricsManager;
+
+    /**
+     * Records a statement.
+     *
+     * @param sql         The statement.
+     * @param startNanos  When the statement was started, as given by {@link System#nanoTime()}.
+     * @param rows        The number of rows returned or affected.
+     */
+    public void record(String sql, long startNanos, int rows) {
+        Statistics stats = getStatistics(sql);
+        if (stats != null) {
+            stats.record(System.nanoTime() - startNanos, rows);
+        }
+    }
+
+    /**
+     * Records a batch of statements.
+     *
+     * @param sql         The statement.
+     * @param startNanos  When the batch was started, as given by {@link System#nanoTime()}.
+     * @param rows        The number of rows affected by the whole batch.
+     * @param batchSize   The number of statements in the batch.
+     */
+    public void recordBatch(String sql, long startNanos, int rows, int batchSize) {
+        Statistics stats = getStatistics(sql);
+        if (stats != null) {
+            stats.record(System.nanoTime() - startNanos, rows);
+            stats.batchSizes.update(batchSize);
+        }
+    }
+
+    /**
+     * Returns the statements that took the most time in total, slowest first.
+     */
+    public List<Statistics> getSlowestStatements(int limit) {
+        return statistics.values().stream()
+                .sorted(Comparator.comparingLong(Statistics::getTotalNanos).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private Statistics getStatistics(String sql) {
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = fingerprint(sql);
+            if (fingerprints.size() < MAX_STATEMENTS * 10) {
+                fingerprints.put(sql, fingerprint);
+            }
+        }
+        Statistics stats = statistics.get(fingerprint);
+        if (stats == null) {
+            if (statistics.size() >= MAX_STATEMENTS) {
+                LOG.debug("Not recording statistics of statement {}", fingerprint);
+                return null;
+            }
+            stats = statistics.computeIfAbsent(fingerprint, this::createStatistics);
+        }
+        return stats;
+    }
+
+    private Statistics createStatistics(String fingerprint) {
+        Statistics stats = new Statistics(fingerprint);
+        String name = "statements." + fingerprint;
+        metricsManager.register(AbstractDao.class, name + ".latency", stats.latency);
+        metricsManager.register(AbstractDao.class, name + ".rows", stats.rows);
+        metricsManager.register(AbstractDao.class, name + ".batchSize", stats.batchSizes);
+        return stats;
+    }
+
+    static String fingerprint(String sql) {
+        String fingerprint = STRING_LITERAL.matcher(sql).replaceAll("?");
+        fingerprint = NUMBER_LITERAL.matcher(fingerprint).replaceAll("?");
+        fingerprint = WHITESPACE.matcher(fingerprint).replaceAll(" ").trim();
+        return PARAMETER_LIST.matcher(fingerprint).replaceAll("(?)");
+    }
+
+    /**
+     * The statistics of all statements sharing a fingerprint.
+     */
+    public static class Statistics {
+        private final String statement;
+        private final Timer latency = new Timer();
+        private final Histogram rows = new Histogram(new ExponentiallyDecayingReservoir());
+        private final Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
+        private final LongAdder totalNanos = new LongAdder();
+
+        private Statistics(String statement) {
+            this.statement = statement;
+        }
+
+        private void record(long nanos, int rowCount) {
+            latency.update(nanos, TimeUnit.NANOSECONDS);
+            rows.update(rowCount);
+            totalNanos.add(nanos);
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public double getTotalMillis() {
+            return getTotalNanos() / 1e6;
+        }
+
+        public double getMeanMillis() {
+            return latency.getSnapshot().getMean() / 1e6;
+        }
+
+        public double getP95Millis() {
+            return latency.getSnapshot().get95thPercentile() / 1e6;
+        }
+
+        public double getMaxMillis() {
+            return latency.getSnapshot().getMax() / 1e6;
+        }
+
+        public double getMeanRows() {
+            return rows.getSnapshot().getMean();
+        }
+
+        public long getMaxRows() {
+            return rows.getSnapshot().getMax();
+        }
+
+        /**
+         * Returns the mean number of statements per batch, or zero if the statement wasn't batched.
+         */
+        public double getMeanBatchSize() {
+            Snapshot snapshot = batchSizes.getSnapshot();
+            return snapshot.size() == 0 ? 0 : snapshot.getMean();
+        }
+    }
+}
@@ -20,7 +20,9 @@
 package org.airsonic.player.domain;
 
 import java.time.Instant;
+import java.util.Locale;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * @author Sindre Mehus
@@ -28,6 +30,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class Artist {
 
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]");
+
     private int id;
     private String name;
     private String coverArtPath;
@@ -104,4 +108,16 @@ public class Artist {
     public Integer getFolderId() {
         return folderId;
     }
+
+    /**
+     * Creates the key artists are sorted by when browsing, i.e., the name stripped of punctuation and whitespace
+     * and in lower case. The key is stored with the artist so the ordering can be done by the database.
+     */
+    public static String createSortName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String sortName = NON_ALPHANUMERIC.matcher(name).replaceAll("").toLowerCase(Locale.ROOT);
+        return sortName.isEmpty() ? name.toLowerCase(Locale.ROOT) : sortName;
+    }
 }
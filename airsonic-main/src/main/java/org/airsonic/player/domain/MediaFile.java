@@ -70,12 +70,14 @@ public class MediaFile {
     private int version;
     private String musicBrainzReleaseId;
     private String musicBrainzRecordingId;
+    private Long crc;
 
     public MediaFile(int id, String path, String folder, MediaType mediaType, String format, String title,
                      String albumName, String artist, String albumArtist, Integer discNumber, Integer trackNumber, Integer year, String genre, Integer bitRate,
                      boolean variableBitRate, Double duration, Long fileSize, Integer width, Integer height, String coverArtPath,
                      String parentPath, int playCount, Instant lastPlayed, String comment, Instant created, Instant changed, Instant lastScanned,
-                     Instant childrenLastUpdated, boolean present, int version, String musicBrainzReleaseId, String musicBrainzRecordingId) {
+                     Instant childrenLastUpdated, boolean present, int version, String musicBrainzReleaseId, String musicBrainzRecordingId,
+                     Long crc) {
         this.id = id;
         this.path = path;
         this.folder = folder;
@@ -108,6 +110,7 @@ public class MediaFile {
         this.version = version;
         this.musicBrainzReleaseId = musicBrainzReleaseId;
         this.musicBrainzRecordingId = musicBrainzRecordingId;
+        this.crc = crc;
     }
 
     public MediaFile() {
@@ -394,6 +397,18 @@ public class MediaFile {
         this.musicBrainzRecordingId = musicBrainzRecordingId;
     }
 
+    /**
+     * Returns the CRC32 checksum of the file contents, or <code>null</code> if it has not been computed since the
+     * file last changed.
+     */
+    public Long getCrc() {
+        return crc;
+    }
+
+    public void setCrc(Long crc) {
+        this.crc = crc;
+    }
+
     /**
      * Returns when the children was last updated in the database.
      */
@@ -0,0 +1,61 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.domain;
+
+import org.airsonic.player.domain.PlayQueue.RepeatStatus;
+
+import java.util.List;
+
+/**
+ * The live play queue of a player, as kept in the database so that it survives restarts.
+ */
+public class PersistedPlayQueue {
+
+    private final int playerId;
+    private final int index;
+    private final RepeatStatus repeatStatus;
+    private final List<Integer> mediaFileIds;
+
+    /**
+     * @param mediaFileIds The media file at each position, with {@code null} for positions that have no row, such
+     *                     as when the media file was deleted.
+     */
+    public PersistedPlayQueue(int playerId, int index, RepeatStatus repeatStatus, List<Integer> mediaFileIds) {
+        this.playerId = playerId;
+        this.index = index;
+        this.repeatStatus = repeatStatus;
+        this.mediaFileIds = mediaFileIds;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public RepeatStatus getRepeatStatus() {
+        return repeatStatus;
+    }
+
+    public List<Integer> getMediaFileIds() {
+        return mediaFileIds;
+    }
+}
@@ -51,6 +51,12 @@ public class PlayQueue {
     private List<MediaFile> filesBackup = new ArrayList<>();
     private int indexBackup = 0;
 
+    /**
+     * Incremented whenever the songs in the play queue change, so that clients can tell whether their copy of the
+     * play queue is current.
+     */
+    private volatile long version;
+
     /**
      * Returns the user-defined name of the playlist.
      *
@@ -84,6 +90,7 @@ public class PlayQueue {
             // Remove file from playlist if it doesn't exist.
             if (!file.exists()) {
                 files.remove(index);
+                version++;
                 index = Math.max(0, Math.min(index, size() - 1));
                 return getCurrentFile();
             }
@@ -146,6 +153,15 @@ public class PlayQueue {
         return files.isEmpty();
     }
 
+    /**
+     * Returns the version of the play queue, which changes whenever the songs in it change.
+     *
+     * @return The version of the play queue.
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Returns the index of the current song.
      *
@@ -175,6 +191,7 @@ public class PlayQueue {
     public synchronized void addFilesAt(Collection<MediaFile> mediaFiles, int index) {
         makeBackup();
         files.addAll(index, mediaFiles);
+        version++;
         setStatus(Status.PLAYING);
     }
 
@@ -191,6 +208,7 @@ public class PlayQueue {
             files.clear();
         }
         files.addAll(mediaFiles);
+        version++;
         setStatus(Status.PLAYING);
     }
 
@@ -213,6 +231,7 @@ public class PlayQueue {
             this.index--;
         }
         files.remove(index);
+        version++;
 
         this.index = Math.max(0, Math.min(this.index, size() - 1));
     }
@@ -223,6 +242,7 @@ public class PlayQueue {
     public synchronized void clear() {
         makeBackup();
         files.clear();
+        version++;
         setRandomSearchCriteria(null);
         setInternetRadio(null);
         index = 0;
@@ -235,6 +255,7 @@ public class PlayQueue {
         makeBackup();
         MediaFile currentFile = getCurrentFile();
         Collections.shuffle(files);
+        version++;
         if (currentFile != null) {
             Collections.swap(files, files.indexOf(currentFile), 0);
             index = 0;
@@ -276,6 +297,7 @@ public class PlayQueue {
         };
 
         files.sort(comparator);
+        version++;
         if (currentFile != null) {
             index = files.indexOf(currentFile);
         }
@@ -299,6 +321,7 @@ public class PlayQueue {
 
         files.clear();
         files.addAll(Arrays.asList(newFiles));
+        version++;
     }
 
     /**
@@ -321,6 +344,7 @@ public class PlayQueue {
         }
         makeBackup();
         Collections.swap(files, index, index + 1);
+        version++;
 
         if (this.index == index) {
             this.index++;
@@ -372,6 +396,7 @@ public class PlayQueue {
 
         indexBackup = indexTmp;
         filesBackup = filesTmp;
+        version++;
     }
 
     /**
@@ -400,7 +425,10 @@ public class PlayQueue {
      *
      * @param internetRadio An internet radio, or <code>null</code> if this is not an internet radio playlist
      */
-    public void setInternetRadio(InternetRadio internetRadio) {
+    public synchronized void setInternetRadio(InternetRadio internetRadio) {
+        if (this.internetRadio != internetRadio) {
+            version++;
+        }
         this.internetRadio = internetRadio;
     }
 
@@ -0,0 +1,172 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.domain;
+
+import org.airsonic.player.dao.AbstractDao.Column;
+import org.airsonic.player.domain.UserCredential.App;
+
+import java.time.Instant;
+
+/**
+ * A listen that is waiting to be submitted to a scrobbling service.
+ */
+public class Scrobble {
+
+    private Integer id;
+    private String username;
+    private App app;
+    private String artist;
+    private String album;
+    private String title;
+    @Column("musicbrainz_release_id")
+    private String musicBrainzReleaseId;
+    @Column("musicbrainz_recording_id")
+    private String musicBrainzRecordingId;
+    private Integer trackNumber;
+    private int duration;
+    private Instant listenedAt;
+    private int attempts;
+    private Instant nextAttempt;
+
+    public Scrobble() {
+    }
+
+    public Scrobble(String username, App app, MediaFile mediaFile, Instant listenedAt) {
+        this.username = username;
+        this.app = app;
+        this.artist = mediaFile.getArtist();
+        this.album = mediaFile.getAlbumName();
+        this.title = mediaFile.getTitle();
+        this.musicBrainzReleaseId = mediaFile.getMusicBrainzReleaseId();
+        this.musicBrainzRecordingId = mediaFile.getMusicBrainzRecordingId();
+        this.trackNumber = mediaFile.getTrackNumber();
+        this.duration = mediaFile.getDuration() == null ? 0 : (int) Math.round(mediaFile.getDuration());
+        this.listenedAt = listenedAt;
+        this.nextAttempt = listenedAt;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public App getApp() {
+        return app;
+    }
+
+    public void setApp(App app) {
+        this.app = app;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public void setArtist(String artist) {
+        this.artist = artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public void setAlbum(String album) {
+        this.album = album;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getMusicBrainzReleaseId() {
+        return musicBrainzReleaseId;
+    }
+
+    public void setMusicBrainzReleaseId(String musicBrainzReleaseId) {
+        this.musicBrainzReleaseId = musicBrainzReleaseId;
+    }
+
+    public String getMusicBrainzRecordingId() {
+        return musicBrainzRecordingId;
+    }
+
+    public void setMusicBrainzRecordingId(String musicBrainzRecordingId) {
+        this.musicBrainzRecordingId = musicBrainzRecordingId;
+    }
+
+    public Integer getTrackNumber() {
+        return trackNumber;
+    }
+
+    public void setTrackNumber(Integer trackNumber) {
+        this.trackNumber = trackNumber;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public void setDuration(int duration) {
+        this.duration = duration;
+    }
+
+    public Instant getListenedAt() {
+        return listenedAt;
+    }
+
+    public void setListenedAt(Instant listenedAt) {
+        this.listenedAt = listenedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getNextAttempt() {
+        return nextAttempt;
+    }
+
+    public void setNextAttempt(Instant nextAttempt) {
+        this.nextAttempt = nextAttempt;
+    }
+
+    @Override
+    public String toString() {
+        return "Scrobble{" + app + " " + username + ": '" + title + "' at " + listenedAt + "}";
+    }
+}
@@ -24,24 +24,33 @@ import org.apache.commons.collections4.queue.CircularFifoQueue;
 import java.nio.file.Path;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Status for a single transfer (stream, download or upload).
+ * <p>
+ * The byte counts are updated for every read or write of the transfer, so they are kept in striped counters. The
+ * history of samples is not recorded by the transferring threads, but by calling {@link #sample()} periodically.
  *
  * @author Sindre Mehus
  */
 public class TransferStatus {
 
     private static final int HISTORY_LENGTH = 200;
-    private static final long SAMPLE_INTERVAL_MILLIS = 5000;
+    public static final long SAMPLE_INTERVAL_MILLIS = 5000;
 
     private final UUID id = UUID.randomUUID();
     private final Player player;
     private Path file;
-    private final AtomicLong bytesTransferred = new AtomicLong();
-    private final AtomicLong bytesSkipped = new AtomicLong();
+    private final LongAdder bytesTransferred = new LongAdder();
+    private final LongAdder bytesSkipped = new LongAdder();
     private final AtomicLong bytesTotal = new AtomicLong();
-    private final SampleHistory history = new SampleHistory();
+    // Ring buffer of samples, the next one is written at sampleIndex
+    private final long[] sampleBytes = new long[HISTORY_LENGTH];
+    private final long[] sampleTimestamps = new long[HISTORY_LENGTH];
+    private int sampleIndex;
+    private int sampleCount;
+    private volatile long lastSampleTimestamp;
     private volatile boolean terminated;
     private volatile boolean active = true;
 
@@ -59,7 +68,7 @@ public class TransferStatus {
      * @return The number of bytes transferred.
      */
     public long getBytesTransferred() {
-        return bytesTransferred.get();
+        return bytesTransferred.sum();
     }
 
     /**
@@ -68,8 +77,7 @@ public class TransferStatus {
      * @param byteCount The byte count.
      */
     public void addBytesTransferred(long byteCount) {
-        bytesTransferred.addAndGet(byteCount);
-        createSample(false);
+        bytesTransferred.add(byteCount);
     }
 
     /**
@@ -78,20 +86,28 @@ public class TransferStatus {
      * @param bytesTransferred The number of bytes transferred.
      */
     public void setBytesTransferred(long bytesTransferred) {
-        this.bytesTransferred.set(bytesTransferred);
+        this.bytesTransferred.reset();
+        this.bytesTransferred.add(bytesTransferred);
+    }
+
+    /**
+     * Adds a sample of the number of bytes transferred to the history, unless nothing was transferred since the last
+     * sample. Should be called every {@link #SAMPLE_INTERVAL_MILLIS} milliseconds while the transfer is active.
+     */
+    public void sample() {
         createSample(false);
     }
 
     private synchronized void createSample(boolean force) {
-        long now = System.currentTimeMillis();
-
-        if (history.isEmpty()) {
-            history.add(new Sample(bytesTransferred.get(), now));
-        } else {
-            Sample lastSample = history.getLast();
-            if (force || now - lastSample.getTimestamp() > TransferStatus.SAMPLE_INTERVAL_MILLIS) {
-                history.add(new Sample(bytesTransferred.get(), now));
-            }
+        long bytes = bytesTransferred.sum();
+        long lastBytes = sampleCount == 0 ? 0L : sampleBytes[(sampleIndex + HISTORY_LENGTH - 1) % HISTORY_LENGTH];
+        if (force || bytes != lastBytes) {
+            long now = System.currentTimeMillis();
+            sampleBytes[sampleIndex] = bytes;
+            sampleTimestamps[sampleIndex] = now;
+            sampleIndex = (sampleIndex + 1) % HISTORY_LENGTH;
+            sampleCount = Math.min(sampleCount + 1, HISTORY_LENGTH);
+            lastSampleTimestamp = now;
         }
     }
 
@@ -101,10 +117,11 @@ public class TransferStatus {
      * @return Number of milliseconds, or <code>0</code> if never updated.
      */
     public long getMillisSinceLastUpdate() {
-        if (history.isEmpty()) {
+        long timestamp = lastSampleTimestamp;
+        if (timestamp == 0L) {
             return 0L;
         }
-        return System.currentTimeMillis() - history.getLast().timestamp;
+        return System.currentTimeMillis() - timestamp;
     }
 
     /**
@@ -132,7 +149,7 @@ public class TransferStatus {
      * @return The number of skipped bytes.
      */
     public long getBytesSkipped() {
-        return bytesSkipped.get();
+        return bytesSkipped.sum();
     }
 
     /**
@@ -142,7 +159,8 @@ public class TransferStatus {
      * @param bytesSkipped The number of skipped bytes.
      */
     public void setBytesSkipped(long bytesSkipped) {
-        this.bytesSkipped.set(bytesSkipped);
+        this.bytesSkipped.reset();
+        this.bytesSkipped.add(bytesSkipped);
     }
 
 
@@ -152,7 +170,7 @@ public class TransferStatus {
      * @param byteCount The byte count.
      */
     public void addBytesSkipped(long byteCount) {
-        bytesSkipped.addAndGet(byteCount);
+        bytesSkipped.add(byteCount);
     }
 
     /**
@@ -187,8 +205,13 @@ public class TransferStatus {
      *
      * @return A (copy of) the history list of samples.
      */
-    public SampleHistory getHistory() {
-        return new SampleHistory(history);
+    public synchronized SampleHistory getHistory() {
+        SampleHistory history = new SampleHistory();
+        for (int i = sampleCount; i > 0; i--) {
+            int index = (sampleIndex + HISTORY_LENGTH - i) % HISTORY_LENGTH;
+            history.add(new Sample(sampleBytes[index], sampleTimestamps[index]));
+        }
+        return history;
     }
 
     /**
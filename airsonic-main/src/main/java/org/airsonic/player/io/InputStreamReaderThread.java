@@ -29,12 +29,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 
 /**
- * Utility class which reads everything from an input stream and optionally logs it.
+ * Utility class which reads everything from an input stream and optionally logs it, in an {@link IoThreads} thread.
  *
  * @see TranscodeInputStream
  * @author Sindre Mehus
  */
-public class InputStreamReaderThread extends Thread {
+public class InputStreamReaderThread implements Runnable {
 
     private static final Logger LOG = LoggerFactory.getLogger(InputStreamReaderThread.class);
 
@@ -43,12 +43,21 @@ public class InputStreamReaderThread extends Thread {
     private boolean log;
 
     public InputStreamReaderThread(InputStream input, String name, boolean log) {
-        super(name + " InputStreamLogger");
         this.input = input;
         this.name = name;
         this.log = log;
     }
 
+    /**
+     * Starts reading in a new thread.
+     *
+     * @return The started thread.
+     */
+    public Thread start() {
+        return IoThreads.start(name + " InputStreamLogger", this);
+    }
+
+    @Override
     public void run() {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
             for (String line = reader.readLine(); line != null; line = reader.readLine()) {
@@ -0,0 +1,112 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads that spend their life blocked on I/O: the copy threads of transcoders and SHOUTcast streams,
+ * the readers of process output and, if enabled, the request threads of the servlet container.
+ * <p>
+ * By default these are ordinary platform threads. With the <code>airsonic.virtualThreads</code> system property set
+ * to <code>true</code> and a Java runtime that has virtual threads (21 or later), they are virtual threads instead,
+ * so that every concurrent stream no longer costs a few platform threads and their stacks. On older runtimes the
+ * property has no effect.
+ * <p>
+ * Blocking on the pipes of a transcoder process still occupies a carrier thread. The scheduler adds carriers while
+ * threads block, but by default no more than 256, after which every stream would stall behind the blocked ones. So
+ * unless <code>jdk.virtualThreadScheduler.maxPoolSize</code> is set, it is raised to its maximum when virtual
+ * threads are used.
+ *
+ * @see TranscodeInputStream
+ */
+public final class IoThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IoThreads.class);
+
+    private static final String MAX_CARRIERS_PROPERTY = "jdk.virtualThreadScheduler.maxPoolSize";
+    private static final int MAX_CARRIERS = 32767;
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY =
+            Boolean.getBoolean("airsonic.virtualThreads") ? createVirtualThreadFactory() : null;
+
+    private IoThreads() {
+    }
+
+    /**
+     * Returns whether I/O threads are virtual threads.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Starts a thread that runs the given task.
+     *
+     * @param name The name of the thread.
+     * @param task The task, which is expected to block on I/O.
+     * @return The started thread.
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread t = newThread(name, task);
+        t.start();
+        return t;
+    }
+
+    /**
+     * Returns an executor that runs every task in a new I/O thread, for the servlet container's requests. There is
+     * no limit on the number of threads, so it is only meant for virtual threads.
+     */
+    public static Executor newPerTaskExecutor(String name) {
+        return task -> start(name, task);
+    }
+
+    private static Thread newThread(String name, Runnable task) {
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            Thread t = VIRTUAL_THREAD_FACTORY.newThread(task);
+            t.setName(name);
+            return t;
+        }
+        return new Thread(task, name);
+    }
+
+    // Thread.ofVirtual().factory(), which does not exist in the Java version we build for
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // Read when the first virtual thread is created
+            if (System.getProperty(MAX_CARRIERS_PROPERTY) == null) {
+                System.setProperty(MAX_CARRIERS_PROPERTY, String.valueOf(MAX_CARRIERS));
+            }
+            Object builder = ofVirtual.invoke(null);
+            ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            LOG.info("Using virtual threads for streaming I/O, with at most {} carrier threads",
+                    System.getProperty(MAX_CARRIERS_PROPERTY));
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Virtual threads are not available in Java {}, using platform threads for streaming I/O",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package org.airsonic.player.io;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An uncompressed (STORED) zip archive whose complete layout, including every local header offset, is computed
+ * up front from the entry names and sizes. The archive is generated on the fly while it is read, file bodies are
+ * read exactly once and {@link InputStream#skip(long)} seeks instead of reading, so HTTP range requests and
+ * resumed downloads are cheap.
+ * <p>
+ * CRCs are only needed when the header of an entry (or the central directory) is actually produced, they are
+ * obtained from the given {@link CrcSource} so callers can serve cached values.
+ */
+public class StoredZipResource extends AbstractResource {
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_ZIP64 = 45;
+
+    private final List<Entry> entries;
+    private final CrcSource crcSource;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final boolean zip64End;
+    private final long length;
+
+    public StoredZipResource(Collection<Entry> entries, CrcSource crcSource) {
+        this.entries = new ArrayList<>(entries);
+        this.crcSource = crcSource;
+
+        long offset = 0;
+        long cdSize = 0;
+        for (Entry entry : this.entries) {
+            entry.offset = offset;
+            offset += entry.getLocalHeaderSize() + entry.size;
+            cdSize += entry.getCentralHeaderSize();
+        }
+        this.centralDirectoryOffset = offset;
+        this.centralDirectorySize = cdSize;
+        this.zip64End = this.entries.size() >= ZIP64_MAGIC_COUNT || offset >= ZIP64_MAGIC || cdSize >= ZIP64_MAGIC;
+        this.length = offset + cdSize + END_SIZE + (zip64End ? ZIP64_END_SIZE + ZIP64_LOCATOR_SIZE : 0);
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public long lastModified() {
+        return entries.stream().mapToLong(e -> e.lastModified.toEpochMilli()).max().orElse(0L);
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Stored zip archive of " + entries.size() + " entries";
+    }
+
+    @Override
+    public StoredZipInputStream getInputStream() {
+        return new StoredZipInputStream();
+    }
+
+    private long getCrc(Entry entry) throws IOException {
+        if (entry.isDirectory()) {
+            return 0L;
+        }
+        if (entry.crc == null) {
+            entry.crc = crcSource.getCrc(entry);
+        }
+        return entry.crc;
+    }
+
+    private byte[] createLocalHeader(Entry entry) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(entry.getLocalHeaderSize()).order(ByteOrder.LITTLE_ENDIAN);
+        boolean zip64 = entry.isZip64();
+        buf.putInt(0x04034b50);
+        buf.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_STORED));
+        buf.putShort((short) FLAG_UTF8);
+        buf.putShort((short) 0); // STORED
+        buf.putInt(entry.dosTime);
+        buf.putInt((int) getCrc(entry));
+        buf.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        buf.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        buf.putShort((short) entry.name.length);
+        buf.putShort((short) (zip64 ? 20 : 0));
+        buf.put(entry.name);
+        if (zip64) {
+            buf.putShort((short) 0x0001);
+            buf.putShort((short) 16);
+            buf.putLong(entry.size);
+            buf.putLong(entry.size);
+        }
+        return buf.array();
+    }
+
+    private byte[] createCentralDirectory() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) centralDirectorySize).order(ByteOrder.LITTLE_ENDIAN);
+        for (Entry entry : entries) {
+            boolean zip64Size = entry.isZip64();
+            boolean zip64Offset = entry.offset >= ZIP64_MAGIC;
+            int extraSize = entry.getCentralExtraSize();
+            int version = zip64Size || zip64Offset ? VERSION_ZIP64 : VERSION_STORED;
+            buf.putInt(0x02014b50);
+            buf.putShort((short) version);
+            buf.putShort((short) version);
+            buf.putShort((short) FLAG_UTF8);
+            buf.putShort((short) 0); // STORED
+            buf.putInt(entry.dosTime);
+            buf.putInt((int) getCrc(entry));
+            buf.putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size));
+            buf.putInt((int) (zip64Size ? ZIP64_MAGIC : entry.size));
+            buf.putShort((short) entry.name.length);
+            buf.putShort((short) extraSize);
+            buf.putShort((short) 0); // comment
+            buf.putShort((short) 0); // disk number
+            buf.putShort((short) 0); // internal attributes
+            buf.putInt(0); // external attributes
+            buf.putInt((int) (zip64Offset ? ZIP64_MAGIC : entry.offset));
+            buf.put(entry.name);
+            if (extraSize > 0) {
+                buf.putShort((short) 0x0001);
+                buf.putShort((short) (extraSize - 4));
+                if (zip64Size) {
+                    buf.putLong(entry.size);
+                    buf.putLong(entry.size);
+                }
+                if (zip64Offset) {
+                    buf.putLong(entry.offset);
+                }
+            }
+        }
+        return buf.array();
+    }
+
+    private byte[] createEnd() {
+        ByteBuffer buf = ByteBuffer.allocate((int) (length - centralDirectoryOffset - centralDirectorySize))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        if (zip64End) {
+            long zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+            buf.putInt(0x06064b50);
+            buf.putLong(ZIP64_END_SIZE - 12);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putShort((short) VERSION_ZIP64);
+            buf.putInt(0);
+            buf.putInt(0);
+            buf.putLong(entries.size());
+            buf.putLong(entries.size());
+            buf.putLong(centralDirectorySize);
+            buf.putLong(centralDirectoryOffset);
+
+            buf.putInt(0x07064b50);
+            buf.putInt(0);
+            buf.putLong(zip64EndOffset);
+            buf.putInt(1);
+        }
+        int count = Math.min(entries.size(), ZIP64_MAGIC_COUNT);
+        buf.putInt(0x06054b50);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putShort((short) count);
+        buf.putShort((short) count);
+        buf.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        buf.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        buf.putShort((short) 0);
+        return buf.array();
+    }
+
+    private static int toDosTime(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    @FunctionalInterface
+    public interface CrcSource {
+        long getCrc(Entry entry) throws IOException;
+    }
+
+    public static class Entry {
+        private final Path file;
+        private final byte[] name;
+        private final long size;
+        private final Instant lastModified;
+        private final int dosTime;
+        private long offset;
+        private volatile Long crc;
+
+        /**
+         * @param file         The file to store, ignored for directories.
+         * @param name         The name inside the archive, directory names must end with a slash.
+         * @param size         The size of the file, which must not change while the archive is read.
+         * @param lastModified The modification time stored in the archive.
+         */
+        public Entry(Path file, String name, long size, Instant lastModified) {
+            this.file = file;
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.size = size;
+            this.lastModified = lastModified;
+            this.dosTime = toDosTime(lastModified);
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getName() {
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public Instant getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isDirectory() {
+            return name.length > 0 && name[name.length - 1] == '/';
+        }
+
+        private boolean isZip64() {
+            return size >= ZIP64_MAGIC;
+        }
+
+        private int getLocalHeaderSize() {
+            return LOCAL_HEADER_SIZE + name.length + (isZip64() ? 20 : 0);
+        }
+
+        private int getCentralExtraSize() {
+            int size = (isZip64() ? 16 : 0) + (offset >= ZIP64_MAGIC ? 8 : 0);
+            return size == 0 ? 0 : size + 4;
+        }
+
+        private int getCentralHeaderSize() {
+            return CENTRAL_HEADER_SIZE + name.length + getCentralExtraSize();
+        }
+    }
+
+    /**
+     * Generates the archive. Only one entry's data is open at any time and headers are built when reached.
+     */
+    public class StoredZipInputStream extends InputStream {
+        private long position;
+        // index of the current entry, or entries.size() once in the central directory / end records
+        private int current = -1;
+        private byte[] header;
+        private FileChannel channel;
+        private byte[] trailer;
+        private Consumer<Path> entryListener = p -> {};
+
+        public void setEntryListener(Consumer<Path> entryListener) {
+            this.entryListener = entryListener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            int read;
+            if (position >= centralDirectoryOffset) {
+                read = readTrailer(b, off, len);
+            } else {
+                Entry entry = seekEntry();
+                long headerSize = entry.getLocalHeaderSize();
+                long inEntry = position - entry.offset;
+                if (inEntry < headerSize) {
+                    if (header == null) {
+                        header = createLocalHeader(entry);
+                    }
+                    read = (int) Math.min(len, headerSize - inEntry);
+                    System.arraycopy(header, (int) inEntry, b, off, read);
+                } else {
+                    read = readData(entry, inEntry - headerSize, b, off, len);
+                }
+            }
+            position += read;
+            return read;
+        }
+
+        private int readData(Entry entry, long filePosition, byte[] b, int off, int len) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(entry.file, StandardOpenOption.READ);
+            }
+            int toRead = (int) Math.min(len, entry.size - filePosition);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), filePosition);
+            if (read < 0) {
+                throw new IOException("File shrunk while being archived: " + entry.file);
+            }
+            return read;
+        }
+
+        private int readTrailer(byte[] b, int off, int len) throws IOException {
+            if (current != entries.size()) {
+                closeEntry();
+                current = entries.size();
+                byte[] cd = createCentralDirectory();
+                byte[] end = createEnd();
+                trailer = new byte[cd.length + end.length];
+                System.arraycopy(cd, 0, trailer, 0, cd.length);
+                System.arraycopy(end, 0, trailer, cd.length, end.length);
+            }
+            int inTrailer = (int) (position - centralDirectoryOffset);
+            int read = Math.min(len, trailer.length - inTrailer);
+            System.arraycopy(trailer, inTrailer, b, off, read);
+            return read;
+        }
+
+        private Entry seekEntry() throws IOException {
+            if (current >= 0 && current < entries.size()) {
+                Entry entry = entries.get(current);
+                if (position >= entry.offset && position < entry.offset + entry.getLocalHeaderSize() + entry.size) {
+                    return entry;
+                }
+            }
+            closeEntry();
+            int low = 0;
+            int high = entries.size() - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (entries.get(mid).offset <= position) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            current = low;
+            Entry entry = entries.get(current);
+            entryListener.accept(entry.file);
+            return entry;
+        }
+
+        private void closeEntry() throws IOException {
+            header = null;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeEntry();
+        }
+    }
+}
@@ -70,18 +70,16 @@ public class TranscodeInputStream extends InputStream {
 
         // Copy data in a separate thread
         if (in != null) {
-            new Thread(name + " TranscodedInputStream copy thread") {
-                public void run() {
-                    try {
-                        IOUtils.copy(in, processOutputStream);
-                    } catch (IOException x) {
-                        // Intentionally ignored. Will happen if the remote player closes the stream.
-                    } finally {
-                        FileUtil.closeQuietly(in);
-                        FileUtil.closeQuietly(processOutputStream);
-                    }
+            IoThreads.start(name + " TranscodedInputStream copy thread", () -> {
+                try {
+                    IOUtils.copy(in, processOutputStream);
+                } catch (IOException x) {
+                    // Intentionally ignored. Will happen if the remote player closes the stream.
+                } finally {
+                    FileUtil.closeQuietly(in);
+                    FileUtil.closeQuietly(processOutputStream);
                 }
-            }.start();
+            });
         }
     }
 
@@ -1,5 +1,7 @@
 package org.airsonic.player.monitor;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.jmx.JmxReporter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -72,6 +74,37 @@ public class MetricsManager {
         return timer(ref.getClass(),name);
     }
 
+    /**
+     * Registers a gauge whose name is based on a class name and a qualified name.
+     * The gauge is only registered if metrics are activated.
+     */
+    public void gauge(Class clazz, String name, Gauge<?> gauge) {
+        if (metricsActivatedByConfiguration()) {
+            metrics.gauge(MetricRegistry.name(clazz, name), () -> gauge);
+        }
+    }
+
+    /**
+     * Registers a metric whose name is based on a class name and a qualified name.
+     * The metric is only registered if metrics are activated, and replaces any metric of the same name.
+     */
+    public void register(Class clazz, String name, Metric metric) {
+        if (metricsActivatedByConfiguration()) {
+            String fullName = MetricRegistry.name(clazz, name);
+            metrics.remove(fullName);
+            metrics.register(fullName, metric);
+        }
+    }
+
+    /**
+     * Removes the metric whose name is based on a class name and a qualified name, if any.
+     */
+    public void remove(Class clazz, String name) {
+        if (metricsActivatedByConfiguration()) {
+            metrics.remove(MetricRegistry.name(clazz, name));
+        }
+    }
+
     /**
      * Initiate a {@link TimerBuilder} using a condition.
      * If the condition is false, a void {@link Timer} will finally be built thus
@@ -245,7 +245,8 @@ public class GlobalSecurityConfig {
                             "/ext/stream/**",
                             "/ext/coverArt*",
                             "/ext/share/**",
-                            "/ext/hls/**")
+                            "/ext/hls/**",
+                            "/ext/internetRadioRelay*")
                     .hasAnyRole("TEMP", "USER").and()
                     .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
                     .exceptionHandling().and()
@@ -300,7 +301,8 @@ public class GlobalSecurityConfig {
                             "/playerSettings*", "/shareSettings*", "/credentialsSettings*")
                     .hasRole("SETTINGS")
                     .antMatchers("/generalSettings*", "/advancedSettings*", "/userSettings*",
-                            "/musicFolderSettings*", "/databaseSettings*", "/transcodeSettings*", "/rest/startScan*")
+                            "/musicFolderSettings*", "/databaseSettings*", "/databaseSettings/**", "/transcodeSettings*",
+                            "/rest/startScan*")
                     .hasRole("ADMIN")
                     .antMatchers("/deletePlaylist*", "/savePlaylist*")
                     .hasRole("PLAYLIST")
@@ -343,6 +345,7 @@ public class GlobalSecurityConfig {
         source.registerCorsConfiguration("/ext/stream/**", configuration);
         source.registerCorsConfiguration("/ext/hls/**", configuration);
         source.registerCorsConfiguration("/ext/hls/**", configuration);
+        source.registerCorsConfiguration("/ext/internetRadioRelay*", configuration);
         return source;
     }
 }
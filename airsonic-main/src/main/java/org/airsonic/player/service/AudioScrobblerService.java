@@ -19,37 +19,106 @@
  */
 package org.airsonic.player.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.airsonic.player.dao.ScrobbleDao;
 import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Scrobble;
 import org.airsonic.player.domain.UserCredential;
 import org.airsonic.player.domain.UserCredential.App;
 import org.airsonic.player.domain.UserSettings;
+import org.airsonic.player.monitor.MetricsManager;
 import org.airsonic.player.security.GlobalSecurityConfig;
 import org.airsonic.player.security.PasswordDecoder;
 import org.airsonic.player.service.scrobbler.LastFMScrobbler;
 import org.airsonic.player.service.scrobbler.ListenBrainzScrobbler;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.EnumSet;
-import java.util.Map;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * Provides services for "audioscrobbling", which is the process of
  * registering what songs are played at website.
+ * <p/>
+ * Submissions are written to an outbox table, and a background dispatcher submits them in batches per user and
+ * service. Listens therefore survive restarts and outages of the services, which are retried with exponential
+ * backoff. Now playing notifications are only sent once, as they are worthless once stale.
  */
 @Service
 public class AudioScrobblerService {
     private static final Logger LOG = LoggerFactory.getLogger(AudioScrobblerService.class);
 
-    private LastFMScrobbler lastFMScrobbler;
-    private ListenBrainzScrobbler listenBrainzScrobbler;
+    private static final long DISPATCH_INTERVAL_SECONDS = 60;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMinutes(1);
+    private static final Duration MAX_BACKOFF = Duration.ofHours(6);
+
+    /**
+     * The number of failed attempts after which listens are dropped, which is about a week at the maximum backoff.
+     */
+    private static final int MAX_ATTEMPTS = 36;
+
+    private LastFMScrobbler lastFMScrobbler = new LastFMScrobbler();
+    private ListenBrainzScrobbler listenBrainzScrobbler = new ListenBrainzScrobbler();
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+
+    /**
+     * Decoded credentials, keyed by username and service. Decoding is costly, and is needed for every listen.
+     */
+    private final Cache<Pair<String, App>, Optional<Credentials>> credentials = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
     @Autowired
     private SettingsService settingsService;
     @Autowired
     private SecurityService securityService;
+    @Autowired
+    private ScrobbleDao scrobbleDao;
+    @Autowired
+    private MetricsManager metricsManager;
+
+    public AudioScrobblerService() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName("AudioScrobbler");
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        executor.scheduleWithFixedDelay(this::dispatch, DISPATCH_INTERVAL_SECONDS, DISPATCH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        metricsManager.gauge(AudioScrobblerService.class, "outbox.size", scrobbleDao::getScrobbleCount);
+        metricsManager.gauge(AudioScrobblerService.class, "outbox.lagSeconds", () -> Optional.ofNullable(scrobbleDao.getOldestListenedAt())
+                .map(oldest -> Duration.between(oldest, Instant.now()).getSeconds())
+                .orElse(0L));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 
     private static final String decode(UserCredential uc) {
         PasswordDecoder decoder = (PasswordDecoder) GlobalSecurityConfig.ENCODERS.get(uc.getEncoder());
@@ -63,15 +132,14 @@ public class AudioScrobblerService {
 
     /**
      * Registers the given media file at audio scrobble service.
-     * This method returns immediately, the actual registration is done by separate threads.
+     * This method returns immediately, the actual registration is done by a separate thread.
      *
      * @param mediaFile  The media file to register.
      * @param username   The user which played the music file.
      * @param submission Whether this is a submission or a now playing notification.
      * @param time       Event time, or {@code null} to use current time.
      */
-
-    public synchronized void register(MediaFile mediaFile, String username, boolean submission, Instant time) {
+    public void register(MediaFile mediaFile, String username, boolean submission, Instant time) {
         if (mediaFile == null || mediaFile.isVideo()) {
             return;
         }
@@ -87,31 +155,138 @@ public class AudioScrobblerService {
             enabledApps.add(App.LISTENBRAINZ);
         }
 
-        Map<App, UserCredential> creds = securityService.getDecodableCredsForApps(username, enabledApps.toArray(new App[0]));
+        Instant listenedAt = time == null ? Instant.now() : time;
+        boolean queued = false;
+        for (App app : enabledApps) {
+            if (getCredentials(username, app) == null) {
+                continue;
+            }
+            Scrobble scrobble = new Scrobble(username, app, mediaFile, listenedAt);
+            if (submission) {
+                scrobbleDao.createScrobble(scrobble);
+                queued = true;
+            } else {
+                executor.execute(() -> nowPlaying(scrobble));
+            }
+        }
+
+        if (queued && dispatchPending.compareAndSet(false, true)) {
+            executor.execute(this::dispatch);
+        }
+    }
+
+    /**
+     * Forgets the decoded credentials of the given user, so that changed credentials are used from the next listen on.
+     */
+    public void evictCredentials(String username) {
+        credentials.asMap().keySet().removeIf(key -> key.getLeft().equals(username));
+    }
+
+    /**
+     * Forgets the decoded credentials of all users, for instance after the encryption key changed.
+     */
+    public void evictCredentials() {
+        credentials.invalidateAll();
+    }
+
+    private Credentials getCredentials(String username, App app) {
+        try {
+            return credentials.get(Pair.of(username, app), () -> {
+                UserCredential cred = securityService.getDecodableCredsForApps(username, app).get(app);
+                String decoded = cred == null ? null : decode(cred);
+                return Optional.ofNullable(decoded).map(d -> new Credentials(cred.getAppUsername(), d));
+            }).orElse(null);
+        } catch (ExecutionException e) {
+            LOG.warn("Could not get credentials for user {}, app {}", username, app, e);
+            return null;
+        }
+    }
 
-        UserCredential cred = creds.get(App.LASTFM);
-        if (cred != null) {
-            if (lastFMScrobbler == null) {
-                lastFMScrobbler = new LastFMScrobbler();
+    private void nowPlaying(Scrobble scrobble) {
+        Credentials creds = getCredentials(scrobble.getUsername(), scrobble.getApp());
+        if (creds == null) {
+            return;
+        }
+        try {
+            if (scrobble.getApp() == App.LASTFM) {
+                lastFMScrobbler.nowPlaying(creds.username, creds.secret, scrobble);
+            } else {
+                String url = settingsService.getUserSettings(scrobble.getUsername()).getListenBrainzUrl();
+                listenBrainzScrobbler.nowPlaying(url, creds.secret, scrobble);
             }
-            String decoded = decode(cred);
-            if (decoded != null) {
-                lastFMScrobbler.register(mediaFile, cred.getAppUsername(), decoded, submission, time);
+        } catch (Exception e) {
+            LOG.info("Could not register now playing for '{}' at {}: {}", scrobble.getTitle(), scrobble.getApp().getName(), e.toString());
+        }
+    }
+
+    /**
+     * Submits the listens of every user and service that isn't backing off.
+     */
+    void dispatch() {
+        dispatchPending.set(false);
+        try {
+            for (Pair<String, App> recipient : scrobbleDao.getDueRecipients(Instant.now())) {
+                dispatch(recipient.getLeft(), recipient.getRight());
             }
+        } catch (Exception e) {
+            // don't let the exception cancel the scheduled dispatches
+            LOG.warn("Error while submitting scrobbles", e);
         }
+    }
 
-        cred = creds.get(App.LISTENBRAINZ);
-        if (cred != null) {
-            if (listenBrainzScrobbler == null) {
-                listenBrainzScrobbler = new ListenBrainzScrobbler();
+    private void dispatch(String username, App app) {
+        int batchSize = app == App.LASTFM ? LastFMScrobbler.MAX_BATCH_SIZE : ListenBrainzScrobbler.MAX_BATCH_SIZE;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Scrobble> batch = scrobbleDao.getScrobbles(username, app, batchSize);
+            if (batch.isEmpty()) {
+                return;
             }
-            String decoded = decode(cred);
-            if (decoded != null) {
-                listenBrainzScrobbler.register(mediaFile, userSettings.getListenBrainzUrl(), decoded, submission, time);
+            try {
+                if (submit(username, app, batch) || batch.size() == 1) {
+                    scrobbleDao.deleteScrobbles(batch.stream().map(Scrobble::getId).collect(Collectors.toList()));
+                } else {
+                    // find the listens that were rejected, rather than dropping the whole batch. Each one is removed
+                    // once it is done with, so that a failure part way only leaves the rest to submit again.
+                    for (Scrobble scrobble : batch) {
+                        submit(username, app, Collections.singletonList(scrobble));
+                        scrobbleDao.deleteScrobbles(Collections.singletonList(scrobble.getId()));
+                    }
+                }
+            } catch (IOException e) {
+                int attempts = batch.stream().mapToInt(Scrobble::getAttempts).max().orElse(0) + 1;
+                if (attempts >= MAX_ATTEMPTS) {
+                    LOG.warn("Dropping {} listen(s) of user {} for {} after {} failed attempts: {}", batch.size(), username,
+                            app.getName(), attempts, e.toString());
+                    scrobbleDao.deleteScrobbles(batch.stream().map(Scrobble::getId).collect(Collectors.toList()));
+                    continue;
+                }
+                Duration backoff = INITIAL_BACKOFF.multipliedBy(1L << Math.min(attempts - 1, 20));
+                Instant nextAttempt = Instant.now().plus(backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff);
+                LOG.info("Could not submit listens of user {} to {}, will try again at {}: {}", username, app.getName(),
+                        nextAttempt, e.toString());
+                scrobbleDao.deferScrobbles(username, app, attempts, nextAttempt);
+                return;
             }
         }
     }
 
+    /**
+     * Submits the given listens.
+     *
+     * @return Whether the listens were accepted, {@code false} if they were rejected for good.
+     * @throws IOException If the listens should be submitted again later.
+     */
+    private boolean submit(String username, App app, List<Scrobble> scrobbles) throws IOException {
+        Credentials creds = getCredentials(username, app);
+        if (creds == null) {
+            throw new IOException("No usable credentials");
+        }
+        if (app == App.LASTFM) {
+            return lastFMScrobbler.submit(creds.username, creds.secret, scrobbles);
+        }
+        return listenBrainzScrobbler.submit(settingsService.getUserSettings(username).getListenBrainzUrl(), creds.secret, scrobbles);
+    }
+
     public void setSettingsService(SettingsService settingsService) {
         this.settingsService = settingsService;
     }
@@ -119,4 +294,14 @@ public class AudioScrobblerService {
     public void setSecurityService(SecurityService securityService) {
         this.securityService = securityService;
     }
+
+    private static class Credentials {
+        private final String username;
+        private final String secret;
+
+        private Credentials(String username, String secret) {
+            this.username = username;
+            this.secret = secret;
+        }
+    }
 }
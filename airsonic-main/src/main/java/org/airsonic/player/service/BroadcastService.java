@@ -0,0 +1,88 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.monitor.MetricsManager;
+import org.airsonic.player.util.KeyedExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends websocket broadcasts from a small dedicated pool, rather than from the callers or from the common fork join
+ * pool that parallel streams use too.
+ * <p>
+ * Broadcasts with the same key are sent in the order they were made. State broadcasts only keep the latest broadcast
+ * of a key that hasn't been sent yet, so that frequent updates such as scan progress don't pile up behind slow sends.
+ */
+@Service
+public class BroadcastService {
+
+    private static final int THREADS = 2;
+
+    @Autowired
+    private MetricsManager metricsManager;
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), BroadcastService::newThread);
+    private final KeyedExecutor<String> broadcasts = new KeyedExecutor<>(executor);
+
+    public BroadcastService() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static Thread newThread(Runnable r) {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        t.setName("Broadcast");
+        return t;
+    }
+
+    @PostConstruct
+    public void init() {
+        metricsManager.gauge(BroadcastService.class, "pending", broadcasts::getQueueSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Sends the broadcast after the ones made before with the same key.
+     */
+    public void send(String key, Runnable broadcast) {
+        broadcasts.execute(key, broadcast);
+    }
+
+    /**
+     * Sends the broadcast, dropping the ones made before with the same key that haven't been sent yet. The broadcast
+     * should read the state it sends when it runs rather than when it is made.
+     */
+    public void sendLatest(String key, Runnable broadcast) {
+        broadcasts.executeLatest(key, broadcast);
+    }
+}
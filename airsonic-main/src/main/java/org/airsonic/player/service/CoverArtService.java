@@ -0,0 +1,659 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import com.google.common.io.MoreFiles;
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.CoverArtScheme;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Playlist;
+import org.airsonic.player.domain.PodcastChannel;
+import org.airsonic.player.service.metadata.EmbeddedArtworkStore;
+import org.airsonic.player.service.metadata.JaudiotaggerParser;
+import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.StringUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Creates cover art thumbnails, and keeps them in the thumbnail cache on disk. Used to serve cover art, and to create
+ * thumbnails ahead of time after a scan.
+ */
+@Service
+public class CoverArtService {
+
+    public static final String ALBUM_COVERART_PREFIX = "al-";
+    public static final String ARTIST_COVERART_PREFIX = "ar-";
+    public static final String PLAYLIST_COVERART_PREFIX = "pl-";
+    public static final String PODCAST_COVERART_PREFIX = "pod-";
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoverArtService.class);
+
+    /**
+     * The thumbnail sizes that are created ahead of time, see {@link #pregenerateThumbnails(Album)}.
+     */
+    private static final int[] PREGENERATED_SIZES = {CoverArtScheme.MEDIUM.getSize(), CoverArtScheme.LARGE.getSize()};
+
+    @Autowired
+    private MediaFileService mediaFileService;
+    @Autowired
+    private VideoPosterService videoPosterService;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private PlaylistService playlistService;
+    @Autowired
+    private JaudiotaggerParser jaudiotaggerParser;
+    @Autowired
+    private EmbeddedArtworkStore embeddedArtworkStore;
+    private Semaphore semaphore;
+
+    @PostConstruct
+    public void init() {
+        semaphore = new Semaphore(settingsService.getCoverArtConcurrency());
+    }
+
+    public CoverArtRequest createAlbumCoverArtRequest(Album album) {
+        return new AlbumCoverArtRequest(album);
+    }
+
+    public CoverArtRequest createArtistCoverArtRequest(Artist artist) {
+        return new ArtistCoverArtRequest(artist);
+    }
+
+    public CoverArtRequest createPlaylistCoverArtRequest(Playlist playlist) {
+        return new PlaylistCoverArtRequest(playlist);
+    }
+
+    public CoverArtRequest createPodcastCoverArtRequest(PodcastChannel channel) {
+        return new PodcastCoverArtRequest(channel);
+    }
+
+    public CoverArtRequest createMediaFileCoverArtRequest(MediaFile mediaFile) {
+        return new MediaFileCoverArtRequest(mediaFile);
+    }
+
+    public CoverArtRequest createVideoCoverArtRequest(MediaFile mediaFile, int offset) {
+        return new VideoCoverArtRequest(mediaFile, offset);
+    }
+
+    /**
+     * Creates the commonly requested thumbnails of the given album if they are missing or out of date. Albums
+     * without cover art are skipped, as their auto-generated covers are cheap to create on demand.
+     */
+    public void pregenerateThumbnails(Album album) {
+        if (album.getCoverArtPath() != null) {
+            pregenerateThumbnails(new AlbumCoverArtRequest(album));
+        }
+    }
+
+    /**
+     * Creates the commonly requested thumbnails of the given artist if they are missing or out of date. Artists
+     * without cover art are skipped, as their auto-generated covers are cheap to create on demand.
+     */
+    public void pregenerateThumbnails(Artist artist) {
+        if (artist.getCoverArtPath() != null) {
+            pregenerateThumbnails(new ArtistCoverArtRequest(artist));
+        }
+    }
+
+    private void pregenerateThumbnails(CoverArtRequest request) {
+        for (int size : PREGENERATED_SIZES) {
+            try {
+                getThumbnail(request, size);
+            } catch (IOException e) {
+                LOG.debug("Could not pregenerate thumbnail for {}", request, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the thumbnail of the given size from the thumbnail cache on disk, creating it if it is missing or out
+     * of date.
+     */
+    public Path getThumbnail(CoverArtRequest request, int size) throws IOException {
+        String hash = DigestUtils.md5Hex(request.getKey());
+        String encoding = request.getCoverArt() != null ? "jpeg" : "png";
+        Path cachedImage = getImageCacheDirectory(size).resolve(hash + "." + encoding);
+
+        // Synchronize to avoid concurrent writing to the same file.
+        synchronized (hash.intern()) {
+
+            // Is cache missing or obsolete?
+            if (!Files.exists(cachedImage) || request.lastModified().isAfter(FileUtil.lastModified(cachedImage))) {
+                if (!request.isReady()) {
+                    throw new IOException("Thumbnail for " + request + " is not ready yet");
+                }
+                ImageWriter writer = null;
+
+                try (OutputStream os = Files.newOutputStream(cachedImage);
+                        BufferedOutputStream bos = new BufferedOutputStream(os);
+                        ImageOutputStream out = ImageIO.createImageOutputStream(bos)) {
+                    semaphore.acquire();
+                    BufferedImage image = request.createImage(size);
+                    if (image == null) {
+                        throw new Exception("Unable to decode image.");
+                    }
+                    writer = ImageIO.getImageWritersByFormatName(encoding).next();
+
+                    float quality = (float) (settingsService.getCoverArtQuality() / 100.0);
+                    ImageWriteParam params = writer.getDefaultWriteParam();
+                    params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    params.setCompressionQuality(quality); // default is 0.75
+
+                    writer.setOutput(out);
+                    writer.write(null, new IIOImage(image, null, null), params);
+
+                } catch (Throwable x) {
+                    // Delete corrupt (probably empty) thumbnail cache.
+                    LOG.warn("Failed to create thumbnail for {}", request, x);
+                    FileUtil.delete(cachedImage);
+                    throw new IOException("Failed to create thumbnail for " + request + ". " + x.getMessage());
+                } finally {
+                    if (writer != null) {
+                        writer.dispose();
+                        writer = null;
+                    }
+                    semaphore.release();
+                }
+            }
+            return cachedImage;
+        }
+    }
+
+    /**
+     * Returns an input stream to the image in the given file.  If the file is an audio file,
+     * the embedded album art is returned.
+     */
+    private InputStream getImageInputStream(Path file) throws IOException {
+        return getImageInputStreamWithType(file).getLeft();
+    }
+
+    /**
+     * Returns an input stream to the image in the given file.  If the file is an audio file,
+     * the embedded album art is returned. In addition returns the mime type
+     */
+    public Pair<InputStream, String> getImageInputStreamWithType(Path file) throws IOException {
+        if (jaudiotaggerParser.isApplicable(file)) {
+            // Cover art scanned before embedded artwork was stored separately still points to the audio file
+            LOG.trace("Using the embedded artwork store for reading artwork from {}", file);
+            Path artwork = embeddedArtworkStore.getArtwork(file);
+            if (artwork == null) {
+                throw new IOException("Could not read artwork from file " + file);
+            }
+            file = artwork;
+        }
+        InputStream is = new BufferedInputStream(Files.newInputStream(file));
+        String mimeType = StringUtil.getMimeType(MoreFiles.getFileExtension(file));
+        return Pair.of(is, mimeType);
+    }
+
+    private synchronized Path getImageCacheDirectory(int size) {
+        Path dir = SettingsService.getAirsonicHome().resolve("thumbs").resolve(String.valueOf(size));
+        if (!Files.exists(dir)) {
+            try {
+                dir = Files.createDirectories(dir);
+                LOG.info("Created thumbnail cache {}", dir);
+            } catch (Exception e) {
+                LOG.error("Failed to create thumbnail cache {}", dir, e);
+            }
+        }
+
+        return dir;
+    }
+
+    public static BufferedImage scale(BufferedImage image, int width, int height) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        BufferedImage thumb = image;
+
+        // For optimal results, use step by step bilinear resampling - halfing the size at each step.
+        do {
+            w /= 2;
+            h /= 2;
+            if (w < width) {
+                w = width;
+            }
+            if (h < height) {
+                h = height;
+            }
+
+            BufferedImage temp = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = temp.createGraphics();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(thumb, 0, 0, temp.getWidth(), temp.getHeight(), null);
+            g2.dispose();
+
+            thumb = temp;
+        } while (w != width);
+
+        return thumb;
+    }
+
+    public abstract class CoverArtRequest {
+
+        protected Path coverArt;
+
+        private CoverArtRequest() {
+        }
+
+        private CoverArtRequest(String coverArtPath) {
+            this.coverArt = coverArtPath == null ? null : Paths.get(coverArtPath);
+        }
+
+        public Path getCoverArt() {
+            return coverArt;
+        }
+
+        public abstract String getKey();
+
+        public abstract Instant lastModified();
+
+        /**
+         * Returns whether the image can be created now, rather than only once something it is made from is ready.
+         */
+        public boolean isReady() {
+            return true;
+        }
+
+        public BufferedImage createImage(int size) {
+            if (coverArt != null) {
+                try (InputStream in = getImageInputStream(coverArt)) {
+                    String reason = null;
+                    if (in == null) {
+                        reason = "getImageInputStream";
+                    } else {
+                        BufferedImage bimg = ImageIO.read(in);
+                        if (bimg == null) {
+                            reason = "ImageIO.read";
+                        } else {
+                            return scale(bimg, size, size);
+                        }
+                    }
+                    LOG.warn("Failed to process cover art " + coverArt + ": " + reason + " failed");
+                } catch (Throwable x) {
+                    LOG.warn("Failed to process cover art " + coverArt + ": " + x, x);
+                }
+            }
+            return createAutoCover(size, size);
+        }
+
+        protected BufferedImage createAutoCover(int width, int height) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            AutoCover autoCover = new AutoCover(graphics, getKey(), getArtist(), getAlbum(), width, height);
+            autoCover.paintCover();
+            graphics.dispose();
+            return image;
+        }
+
+        public abstract String getAlbum();
+
+        public abstract String getArtist();
+    }
+
+    private class ArtistCoverArtRequest extends CoverArtRequest {
+
+        private final Artist artist;
+
+        private ArtistCoverArtRequest(Artist artist) {
+            super(artist.getCoverArtPath());
+            this.artist = artist;
+        }
+
+        @Override
+        public String getKey() {
+            return artist.getCoverArtPath() != null ? artist.getCoverArtPath() : (ARTIST_COVERART_PREFIX + artist.getId());
+        }
+
+        @Override
+        public Instant lastModified() {
+            return coverArt != null ? FileUtil.lastModified(coverArt) : artist.getLastScanned();
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return artist.getName();
+        }
+
+        @Override
+        public String toString() {
+            return "Artist " + artist.getId() + " - " + artist.getName();
+        }
+    }
+
+    private class AlbumCoverArtRequest extends CoverArtRequest {
+
+        private final Album album;
+
+        private AlbumCoverArtRequest(Album album) {
+            super(album.getCoverArtPath());
+            this.album = album;
+        }
+
+        @Override
+        public String getKey() {
+            return album.getCoverArtPath() != null ? album.getCoverArtPath() : (ALBUM_COVERART_PREFIX + album.getId());
+        }
+
+        @Override
+        public Instant lastModified() {
+            return coverArt != null ? FileUtil.lastModified(coverArt) : album.getLastScanned();
+        }
+
+        @Override
+        public String getAlbum() {
+            return album.getName();
+        }
+
+        @Override
+        public String getArtist() {
+            return album.getArtist();
+        }
+
+        @Override
+        public String toString() {
+            return "Album " + album.getId() + " - " + album.getName();
+        }
+    }
+
+    private class PlaylistCoverArtRequest extends CoverArtRequest {
+
+        private final Playlist playlist;
+
+        private PlaylistCoverArtRequest(Playlist playlist) {
+            super(null);
+            this.playlist = playlist;
+        }
+
+        @Override
+        public String getKey() {
+            return PLAYLIST_COVERART_PREFIX + playlist.getId();
+        }
+
+        @Override
+        public Instant lastModified() {
+            return playlist.getChanged();
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return playlist.getName();
+        }
+
+        @Override
+        public String toString() {
+            return "Playlist " + playlist.getId() + " - " + playlist.getName();
+        }
+
+        @Override
+        public BufferedImage createImage(int size) {
+            List<MediaFile> albums = getRepresentativeAlbums();
+            if (albums.isEmpty()) {
+                return createAutoCover(size, size);
+            }
+            if (albums.size() < 4) {
+                return new MediaFileCoverArtRequest(albums.get(0)).createImage(size);
+            }
+
+            BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+
+            int half = size / 2;
+            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(0)).createImage(half), null, 0, 0);
+            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(1)).createImage(half), null, half, 0);
+            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(2)).createImage(half), null, 0, half);
+            graphics.drawImage(new MediaFileCoverArtRequest(albums.get(3)).createImage(half), null, half, half);
+            graphics.dispose();
+            return image;
+        }
+
+        private List<MediaFile> getRepresentativeAlbums() {
+            return playlistService.getFilesInPlaylist(playlist.getId())
+                    .parallelStream()
+                    .map(mediaFileService::getParentOf)
+                    .filter(album -> album != null && !mediaFileService.isRoot(album))
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private class PodcastCoverArtRequest extends CoverArtRequest {
+
+        private final PodcastChannel channel;
+
+        PodcastCoverArtRequest(PodcastChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public String getKey() {
+            return PODCAST_COVERART_PREFIX + channel.getId();
+        }
+
+        @Override
+        public Instant lastModified() {
+            return Instant.ofEpochMilli(-1);
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return channel.getTitle() != null ? channel.getTitle() : channel.getUrl();
+        }
+    }
+
+    private class MediaFileCoverArtRequest extends CoverArtRequest {
+
+        private final MediaFile mediaFile;
+        private final MediaFile dir;
+
+        private MediaFileCoverArtRequest(MediaFile mediaFile) {
+            this.mediaFile = mediaFile;
+            dir = mediaFile.isDirectory() ? mediaFile : mediaFileService.getParentOf(mediaFile);
+            coverArt = mediaFileService.getCoverArt(mediaFile);
+        }
+
+        @Override
+        public String getKey() {
+            return coverArt != null ? coverArt.toString() : dir.getPath();
+        }
+
+        @Override
+        public Instant lastModified() {
+            return coverArt != null ? FileUtil.lastModified(coverArt) : dir.getChanged();
+        }
+
+        @Override
+        public String getAlbum() {
+            return dir.getName();
+        }
+
+        @Override
+        public String getArtist() {
+            return dir.getAlbumArtist() != null ? dir.getAlbumArtist() : dir.getArtist();
+        }
+
+        @Override
+        public String toString() {
+            return "Media file " + mediaFile.getId() + " - " + mediaFile;
+        }
+    }
+
+    private class VideoCoverArtRequest extends CoverArtRequest {
+
+        private final MediaFile mediaFile;
+        private final int offset;
+
+        private VideoCoverArtRequest(MediaFile mediaFile, int offset) {
+            this.mediaFile = mediaFile;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean isReady() {
+            // The default image is sent until the frames are extracted, without holding a permit meanwhile
+            return !videoPosterService.isExtracting(mediaFile);
+        }
+
+        @Override
+        public BufferedImage createImage(int size) {
+            int height = size;
+            int width = height * 16 / 9;
+            Path frame = videoPosterService.getFrame(mediaFile, offset);
+            if (frame != null) {
+                try (InputStream in = Files.newInputStream(frame)) {
+                    BufferedImage image = ImageIO.read(in);
+                    if (image != null) {
+                        return scale(image, width, height);
+                    }
+                    LOG.warn("Failed to process cover art for {}: unreadable frame {}", mediaFile, frame);
+                } catch (Throwable x) {
+                    LOG.warn("Failed to process cover art for " + mediaFile + ": " + x, x);
+                }
+            }
+            return createAutoCover(width, height);
+        }
+
+        @Override
+        public String getKey() {
+            // Offsets are rounded to the extracted frames, so nearby offsets share a thumbnail
+            return mediaFile.getPath() + "/" + videoPosterService.getFrameIndex(mediaFile, offset);
+        }
+
+        @Override
+        public Instant lastModified() {
+            return mediaFile.getChanged();
+        }
+
+        @Override
+        public String getAlbum() {
+            return null;
+        }
+
+        @Override
+        public String getArtist() {
+            return mediaFile.getName();
+        }
+
+        @Override
+        public String toString() {
+            return "Video file " + mediaFile.getId() + " - " + mediaFile;
+        }
+    }
+
+    static class AutoCover {
+
+        private final static int[] COLORS = {0x33B5E5, 0xAA66CC, 0x99CC00, 0xFFBB33, 0xFF4444};
+        private final Graphics2D graphics;
+        private final String artist;
+        private final String album;
+        private final int width;
+        private final int height;
+        private final Color color;
+
+        AutoCover(Graphics2D graphics, String key, String artist, String album, int width, int height) {
+            this.graphics = graphics;
+            this.artist = artist;
+            this.album = album;
+            this.width = width;
+            this.height = height;
+
+            int hash = key.hashCode();
+            int rgb = COLORS[Math.abs(hash) % COLORS.length];
+            this.color = new Color(rgb);
+        }
+
+        public void paintCover() {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+            graphics.setPaint(color);
+            graphics.fillRect(0, 0, width, height);
+
+            int y = height * 2 / 3;
+            graphics.setPaint(new GradientPaint(0, y, new Color(82, 82, 82), 0, height, Color.BLACK));
+            graphics.fillRect(0, y, width, height / 3);
+
+            graphics.setPaint(Color.WHITE);
+            float fontSize = 3.0f + height * 0.07f;
+            Font font = new Font(Font.SANS_SERIF, Font.BOLD, (int) fontSize);
+            graphics.setFont(font);
+
+            if (album != null) {
+                graphics.drawString(album, width * 0.05f, height * 0.6f);
+            }
+            if (artist != null) {
+                graphics.drawString(artist, width * 0.05f, height * 0.8f);
+            }
+
+            int borderWidth = height / 50;
+            graphics.fillRect(0, 0, borderWidth, height);
+            graphics.fillRect(width - borderWidth, 0, height - borderWidth, height);
+            graphics.fillRect(0, 0, width, borderWidth);
+            graphics.fillRect(0, height - borderWidth, width, height);
+        }
+    }
+}
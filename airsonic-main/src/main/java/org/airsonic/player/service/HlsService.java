@@ -0,0 +1,313 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PlayStatus;
+import org.airsonic.player.domain.Player;
+import org.airsonic.player.domain.TransferStatus;
+import org.airsonic.player.io.InputStreamReaderThread;
+import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Produces HTTP Live Streaming segments. Rather than starting a transcoder for every segment, a single transcoder
+ * runs per player, media file, bitrate and resolution, and writes its segments to a cache directory. A transcoder is
+ * restarted at the requested position when the player seeks too far ahead of it, or back before where it started,
+ * so viewers at different positions never restart each other's transcoder. Idle sessions are stopped and their
+ * segments deleted.
+ * <p/>
+ * Every session is registered as a stream of its player, so that it shows in Now Playing and on the status page,
+ * and counts as a play.
+ */
+@Service
+public class HlsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HlsService.class);
+
+    public static final int SEGMENT_DURATION = 10;
+
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long SEGMENT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    /**
+     * How many segments a transcoder may be behind a requested segment before it is restarted at that segment
+     * instead of waiting for it to catch up.
+     */
+    private static final int MAX_SEGMENTS_BEHIND = 3;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private TranscodingService transcodingService;
+    @Autowired
+    private StatusService statusService;
+    @Autowired
+    private MediaFileService mediaFileService;
+
+    public HlsService() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName("HlsSessionEvictor");
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void init() {
+        // Segments left behind by a previous run may be incomplete
+        Path cacheDirectory = getCacheDirectory();
+        if (Files.exists(cacheDirectory)) {
+            FileUtil.delete(cacheDirectory);
+        }
+        scheduler.scheduleWithFixedDelay(() -> evictIdleSessions(System.currentTimeMillis()), 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        sessions.values().forEach(Session::stop);
+    }
+
+    /**
+     * Returns the given segment, waiting for the transcoder to produce it if needed.
+     *
+     * @param mediaFile  The media file.
+     * @param player     The player that plays the media file.
+     * @param maxBitRate The video bitrate, in kbps.
+     * @param size       The video dimension.
+     * @param index      The index of the segment, each of which is {@link #SEGMENT_DURATION} seconds long.
+     * @return The segment, or {@code null} if it could not be produced in time.
+     */
+    public Segment getSegment(MediaFile mediaFile, Player player, int maxBitRate, Dimension size, int index)
+            throws IOException, InterruptedException {
+        String key = player.getId() + "-" + mediaFile.getId() + "-" + mediaFile.getChanged().toEpochMilli() + "-"
+                + maxBitRate + "-" + size.width + "x" + size.height;
+        Session session = sessions.computeIfAbsent(key, k -> createSession(mediaFile, player, maxBitRate, size, getCacheDirectory().resolve(k)));
+        Path file = session.getSegment(index);
+        return file == null ? null : new Segment(file, session.status);
+    }
+
+    private Session createSession(MediaFile mediaFile, Player player, int maxBitRate, Dimension size, Path directory) {
+        TransferStatus status = statusService.createStreamStatus(player);
+        status.setFile(mediaFile.getFile());
+        PlayStatus playStatus = new PlayStatus(status.getId(), mediaFile, player, status.getMillisSinceLastUpdate());
+        statusService.addActiveLocalPlay(playStatus);
+        mediaFileService.incrementPlayCount(mediaFile);
+        return new Session(mediaFile, maxBitRate, size, directory, status, playStatus);
+    }
+
+    void evictIdleSessions(long now) {
+        sessions.values().removeIf(session -> {
+            if (now - session.lastAccess > IDLE_TIMEOUT_MILLIS) {
+                LOG.debug("Evicting idle HLS session {}", session.directory);
+                session.stop();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static Path getCacheDirectory() {
+        return SettingsService.getAirsonicHome().resolve("hlscache");
+    }
+
+    /**
+     * A segment file, and the stream status of the session it belongs to.
+     */
+    public static class Segment {
+        private final Path file;
+        private final TransferStatus status;
+
+        private Segment(Path file, TransferStatus status) {
+            this.file = file;
+            this.status = status;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public TransferStatus getStatus() {
+            return status;
+        }
+    }
+
+    private class Session {
+        private final MediaFile mediaFile;
+        private final int maxBitRate;
+        private final Dimension size;
+        private final Path directory;
+        private final TransferStatus status;
+        private final PlayStatus playStatus;
+        private final Map<Integer, Path> completed = new HashMap<>();
+        private volatile long lastAccess = System.currentTimeMillis();
+        private Process process;
+        private int startIndex;
+        private boolean stopped;
+
+        private Session(MediaFile mediaFile, int maxBitRate, Dimension size, Path directory, TransferStatus status,
+                PlayStatus playStatus) {
+            this.mediaFile = mediaFile;
+            this.maxBitRate = maxBitRate;
+            this.size = size;
+            this.directory = directory;
+            this.status = status;
+            this.playStatus = playStatus;
+        }
+
+        private synchronized Path getSegment(int index) throws IOException, InterruptedException {
+            lastAccess = System.currentTimeMillis();
+            long deadline = lastAccess + SEGMENT_TIMEOUT_MILLIS;
+            boolean started = false;
+
+            while (!stopped) {
+                refreshCompleted();
+                Path segment = completed.get(index);
+                if (segment != null) {
+                    lastAccess = System.currentTimeMillis();
+                    return segment;
+                }
+
+                boolean alive = process != null && process.isAlive();
+                if (!alive && started) {
+                    // the transcoder ended without producing the segment, it is probably past the end
+                    return null;
+                }
+                if (!alive || index < startIndex || index > getProgress() + MAX_SEGMENTS_BEHIND) {
+                    start(index);
+                    started = true;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOG.warn("Timed out waiting for HLS segment {} of {}", index, mediaFile.getFile());
+                    return null;
+                }
+                wait(Math.min(remaining, POLL_INTERVAL_MILLIS));
+            }
+            return null;
+        }
+
+        /**
+         * Returns the last segment produced by the current transcoder, or the one before it started.
+         */
+        private int getProgress() {
+            int progress = startIndex - 1;
+            while (completed.containsKey(progress + 1)) {
+                progress++;
+            }
+            return progress;
+        }
+
+        private void start(int index) throws IOException {
+            destroyProcess();
+            // Each run writes to its own directory so that it never overwrites a segment that is being served
+            Path runDirectory = directory.resolve(String.valueOf(index));
+            if (Files.exists(runDirectory)) {
+                FileUtil.delete(runDirectory);
+            }
+            Files.createDirectories(runDirectory);
+
+            Map<Character, String> values = Map.of(
+                    's', mediaFile.getFile().toAbsolutePath().toString(),
+                    'b', String.valueOf(maxBitRate),
+                    'w', String.valueOf(size.width),
+                    'h', String.valueOf(size.height),
+                    'o', String.valueOf(index * SEGMENT_DURATION),
+                    'n', String.valueOf(index),
+                    'p', runDirectory.toString());
+            List<String> command = new ArrayList<>();
+            for (String arg : StringUtil.split(settingsService.getHlsSegmenterCommand())) {
+                command.add(StringUtil.replacePlaceholders(arg, values));
+            }
+            command.set(0, transcodingService.getTranscodeDirectory().resolve(command.get(0)).toString());
+
+            LOG.info("Starting HLS segmenter: {}", command.stream().collect(Collectors.joining("][", "[", "]")));
+            ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+            process = processBuilder.start();
+            process.getOutputStream().close();
+            new InputStreamReaderThread(process.getInputStream(), command.get(0), true).start();
+            startIndex = index;
+        }
+
+        /**
+         * Reads the segment list written by the current transcoder. A segment is only listed once it is complete.
+         */
+        private void refreshCompleted() throws IOException {
+            Path runDirectory = directory.resolve(String.valueOf(startIndex));
+            Path list = runDirectory.resolve("segments.csv");
+            if (process == null || !Files.exists(list)) {
+                return;
+            }
+            for (String line : Files.readAllLines(list)) {
+                String name = line.split(",", 2)[0];
+                if (name.endsWith(".ts")) {
+                    try {
+                        completed.putIfAbsent(Integer.parseInt(name.substring(0, name.length() - 3)), runDirectory.resolve(name));
+                    } catch (NumberFormatException e) {
+                        LOG.debug("Ignoring unexpected HLS segment {}", name);
+                    }
+                }
+            }
+        }
+
+        private void destroyProcess() {
+            if (process != null) {
+                process.destroy();
+                process = null;
+            }
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            destroyProcess();
+            FileUtil.delete(directory);
+            statusService.removeActiveLocalPlay(playStatus);
+            statusService.removeStreamStatus(status);
+            notifyAll();
+        }
+    }
+}
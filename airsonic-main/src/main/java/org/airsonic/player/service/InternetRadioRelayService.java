@@ -0,0 +1,401 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Relays internet radio stations to local listeners. A single upstream connection is kept per station, and its
+ * audio is written to a ring buffer from which every listener of the station reads at its own pace. SHOUTcast
+ * metadata is stripped from the relayed audio, and the current stream title is kept so that it can be sent to
+ * the listeners again. A station is disconnected once it has had no listeners for a grace period.
+ */
+@Service
+public class InternetRadioRelayService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InternetRadioRelayService.class);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * How much already relayed audio a new listener starts with, so that its player can fill its buffer at once.
+     */
+    private static final int INITIAL_BACKLOG = 64 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final Pattern STREAM_TITLE = Pattern.compile("StreamTitle='(.*?)';");
+
+    private final Map<String, Station> stations = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+
+    public InternetRadioRelayService() {
+        executor = Executors.newCachedThreadPool(daemonThreadFactory("InternetRadioRelay"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("InternetRadioRelayEvictor"));
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName(name);
+            return t;
+        };
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler.scheduleWithFixedDelay(() -> evictIdleStations(System.currentTimeMillis()), 10, 10, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        stations.values().forEach(Station::stop);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts listening to the given station, connecting to it if no one else is listening to it yet.
+     *
+     * @param streamUrl The stream URL of the station.
+     * @return The relayed audio, which must be closed when the listener goes away.
+     * @throws IOException If the station could not be reached.
+     */
+    public Listener listen(String streamUrl) throws IOException {
+        Station station = stations.compute(streamUrl, (url, s) -> {
+            if (s == null || s.isStopped()) {
+                s = new Station(url);
+                s.task = executor.submit(s::run);
+            }
+            s.addListener();
+            return s;
+        });
+        Listener listener = new Listener(station);
+        try {
+            station.awaitData();
+        } catch (IOException e) {
+            listener.close();
+            throw e;
+        }
+        return listener;
+    }
+
+    /**
+     * Returns the number of stations that are currently relayed.
+     */
+    public int getStationCount() {
+        return stations.size();
+    }
+
+    void evictIdleStations(long now) {
+        for (String url : stations.keySet()) {
+            stations.computeIfPresent(url, (u, station) -> {
+                if (station.isStopped()) {
+                    return null;
+                }
+                if (station.isIdle(now)) {
+                    LOG.debug("Disconnecting idle internet radio station {}", u);
+                    station.stop();
+                    return null;
+                }
+                return station;
+            });
+        }
+    }
+
+    private static class Station {
+        private final String url;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        /**
+         * Total number of bytes written to the buffer since the station was started.
+         */
+        private long written;
+        private int listeners;
+        private long idleSince;
+        private boolean stopped;
+        private volatile String title;
+        private volatile String contentType;
+        private volatile HttpURLConnection connection;
+        private volatile Future<?> task;
+
+        private Station(String url) {
+            this.url = url;
+        }
+
+        private void run() {
+            while (!isStopped()) {
+                try {
+                    relay();
+                } catch (IOException e) {
+                    LOG.warn("Lost connection to internet radio station {}: {}", url, e.toString());
+                }
+                synchronized (this) {
+                    // Listeners waiting for a first connection would otherwise wait for the whole read timeout
+                    if (written == 0) {
+                        stopped = true;
+                        notifyAll();
+                    }
+                    if (!stopped) {
+                        try {
+                            wait(RECONNECT_DELAY_MILLIS);
+                        } catch (InterruptedException e) {
+                            stopped = true;
+                        }
+                    }
+                }
+            }
+            LOG.info("Stopped relaying internet radio station {}", url);
+        }
+
+        private void relay() throws IOException {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            conn.setReadTimeout(READ_TIMEOUT_MILLIS);
+            conn.setRequestProperty("Icy-MetaData", "1");
+            connection = conn;
+            try {
+                int responseCode = conn.getResponseCode();
+                if (responseCode < 200 || responseCode >= 300) {
+                    throw new IOException("Unexpected response " + responseCode);
+                }
+                contentType = conn.getContentType();
+                int metaInterval = conn.getHeaderFieldInt("icy-metaint", 0);
+                LOG.info("Relaying internet radio station {} ({})", url, contentType);
+
+                try (DataInputStream in = new DataInputStream(conn.getInputStream())) {
+                    byte[] chunk = new byte[8192];
+                    int untilMetaData = metaInterval;
+                    while (!isStopped()) {
+                        int max = metaInterval > 0 ? Math.min(chunk.length, untilMetaData) : chunk.length;
+                        int n = in.read(chunk, 0, max);
+                        if (n == -1) {
+                            throw new IOException("End of stream");
+                        }
+                        write(chunk, n);
+                        untilMetaData -= n;
+                        if (metaInterval > 0 && untilMetaData == 0) {
+                            readMetaData(in);
+                            untilMetaData = metaInterval;
+                        }
+                    }
+                }
+            } finally {
+                connection = null;
+                conn.disconnect();
+            }
+        }
+
+        private void readMetaData(DataInputStream in) throws IOException {
+            int length = in.readUnsignedByte() * 16;
+            if (length == 0) {
+                return;
+            }
+            byte[] metaData = new byte[length];
+            in.readFully(metaData);
+            Matcher matcher = STREAM_TITLE.matcher(new String(metaData, StandardCharsets.UTF_8));
+            if (matcher.find()) {
+                title = matcher.group(1);
+            }
+        }
+
+        private synchronized void write(byte[] b, int len) {
+            int offset = (int) (written % BUFFER_SIZE);
+            int first = Math.min(len, BUFFER_SIZE - offset);
+            System.arraycopy(b, 0, buffer, offset, first);
+            System.arraycopy(b, first, buffer, 0, len - first);
+            written += len;
+            notifyAll();
+        }
+
+        /**
+         * Reads relayed audio from the given position, waiting for it to arrive if needed.
+         *
+         * @return The number of bytes read, or -1 if the station has stopped.
+         */
+        private synchronized int read(Listener listener, byte[] b, int off, int len) throws IOException {
+            long deadline = System.currentTimeMillis() + READ_TIMEOUT_MILLIS;
+            while (listener.position >= written && !stopped) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for internet radio station " + url);
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            if (listener.position >= written) {
+                return -1;
+            }
+            if (written - listener.position > BUFFER_SIZE) {
+                // The listener fell so far behind that its audio has been overwritten
+                LOG.debug("Internet radio listener skipped {} bytes of {}", written - listener.position - INITIAL_BACKLOG, url);
+                listener.position = written - INITIAL_BACKLOG;
+            }
+            int offset = (int) (listener.position % BUFFER_SIZE);
+            int n = (int) Math.min(Math.min(len, written - listener.position), BUFFER_SIZE - offset);
+            System.arraycopy(buffer, offset, b, off, n);
+            listener.position += n;
+            return n;
+        }
+
+        private synchronized void awaitData() throws IOException {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS + READ_TIMEOUT_MILLIS;
+            while (written == 0 && !stopped) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            if (written == 0) {
+                throw new IOException("Failed to connect to internet radio station " + url);
+            }
+        }
+
+        private synchronized long getStartPosition() {
+            return Math.max(0, written - INITIAL_BACKLOG);
+        }
+
+        private synchronized void addListener() {
+            listeners++;
+        }
+
+        private synchronized void removeListener() {
+            if (--listeners == 0) {
+                idleSince = System.currentTimeMillis();
+            }
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return listeners == 0 && now - idleSince > IDLE_TIMEOUT_MILLIS;
+        }
+
+        private synchronized boolean isStopped() {
+            return stopped;
+        }
+
+        private void stop() {
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                stopped = true;
+                notifyAll();
+            }
+            HttpURLConnection conn = connection;
+            if (conn != null) {
+                conn.disconnect();
+            }
+            // Only interrupts the pool thread while it still runs this station
+            Future<?> t = task;
+            if (t != null) {
+                t.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The relayed audio of a station, as read by a single listener.
+     */
+    public static class Listener extends InputStream {
+        private final Station station;
+        private long position;
+        private boolean closed;
+
+        private Listener(Station station) {
+            this.station = station;
+            this.position = station.getStartPosition();
+        }
+
+        /**
+         * Returns the current stream title of the station, or {@code null} if it doesn't send one.
+         */
+        public String getTitle() {
+            return station.title;
+        }
+
+        /**
+         * Returns the content type of the station, or {@code null} if it didn't send one.
+         */
+        public String getContentType() {
+            return station.contentType;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            return station.read(this, b, off, len);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                station.removeListener();
+            }
+        }
+    }
+}
@@ -21,118 +21,337 @@ package org.airsonic.player.service;
 
 import de.umass.lastfm.cache.Cache;
 import de.umass.lastfm.cache.FileSystemCache;
-import org.airsonic.player.util.FileUtil;
-import org.airsonic.player.util.LambdaUtils;
 import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.Properties;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Based on {@link FileSystemCache}, but properly closes files and enforces
- * time-to-live (by ignoring HTTP header directives).
+ * Replaces {@link FileSystemCache}, enforcing time-to-live (by ignoring HTTP header directives).
+ * <p/>
+ * Rather than two files per entry, entries are appended, compressed, to a few large segment files, and are looked
+ * up through an in-memory index that also holds their expiration date. The index is rebuilt from the segments at
+ * startup. Once the segments exceed the maximum size, the oldest segment is deleted. Its live entries are copied to
+ * the current segment first if they fit, so that superseded entries and removals are compacted away.
  *
  * @author Sindre Mehus
  * @version $Id$
  */
 public class LastFmCache extends Cache {
 
+    private static final Logger LOG = LoggerFactory.getLogger(LastFmCache.class);
+
+    private static final long SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int REMOVED = -1;
+
     private final Path cacheDir;
     private final long ttl;
+    private final long maxSize;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, FileChannel> segments = new ConcurrentSkipListMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
 
-    public LastFmCache(Path cacheDir, final long ttl) {
+    public LastFmCache(Path cacheDir, final long ttl, long maxSize) {
         this.cacheDir = cacheDir;
         this.ttl = ttl;
+        this.maxSize = maxSize;
 
         setExpirationPolicy((method, params) -> ttl);
+        open();
+    }
+
+    private synchronized void open() {
+        try {
+            Files.createDirectories(cacheDir);
+            List<Path> files;
+            try (Stream<Path> list = Files.list(cacheDir)) {
+                files = list.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(id, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                } else {
+                    // entries of the former file-per-entry cache
+                    Files.deleteIfExists(file);
+                }
+            }
+            for (Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+                scan(segment.getKey(), segment.getValue());
+            }
+            if (segments.isEmpty()) {
+                createSegment(0);
+            }
+            LOG.debug("Opened Last.fm cache {} with {} entries", cacheDir, index.size());
+        } catch (Exception e) {
+            LOG.warn("Failed to open Last.fm cache {}", cacheDir, e);
+        }
+    }
+
+    /**
+     * Adds the entries of the given segment to the index. An incomplete entry at the end, left by a crash, is
+     * truncated.
+     */
+    private void scan(int id, FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            ByteBuffer header = readFully(channel, position, Integer.BYTES);
+            int keyLength = header == null ? -1 : header.getInt();
+            // Check the lengths against the rest of the segment, as a corrupt length would allocate a huge buffer
+            if (keyLength < 0 || keyLength > size - position - Integer.BYTES - Long.BYTES - Integer.BYTES) {
+                break;
+            }
+            ByteBuffer entry = readFully(channel, position + Integer.BYTES, keyLength + Long.BYTES + Integer.BYTES);
+            if (entry == null) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            entry.get(key);
+            long expirationDate = entry.getLong();
+            int length = entry.getInt();
+            long dataPosition = position + Integer.BYTES + keyLength + Long.BYTES + Integer.BYTES;
+            if (length < REMOVED || length > size - dataPosition) {
+                break;
+            }
+            String name = new String(key, StandardCharsets.UTF_8);
+            if (length == REMOVED) {
+                index.remove(name);
+            } else {
+                index.put(name, new Entry(id, dataPosition, length, expirationDate));
+            }
+            position = dataPosition + Math.max(length, 0);
+        }
+        if (position < size) {
+            LOG.info("Truncating incomplete Last.fm cache entry in segment {}", id);
+            channel.truncate(position);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void createSegment(int id) throws IOException {
+        Path file = cacheDir.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+        segments.put(id, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
     }
 
     @Override
     public boolean contains(String cacheEntryName) {
-        return Files.exists(getXmlFile(cacheEntryName));
+        if (index.containsKey(cacheEntryName)) {
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
     }
 
     @Override
     public InputStream load(String cacheEntryName) {
-        try (InputStream in = Files.newInputStream(getXmlFile(cacheEntryName))) {
-            //Have to read into a byte array otherwise underlying stream is closed at the return of this method
-            return new ByteArrayInputStream(IOUtils.toByteArray(in));
+        Entry entry = index.get(cacheEntryName);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            FileChannel channel = segments.get(entry.segment);
+            ByteBuffer data = channel == null ? null : readFully(channel, entry.position, entry.length);
+            if (data == null) {
+                return null;
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data.array()))) {
+                //Have to read into a byte array as the entry may be evicted once this method returns
+                InputStream result = new ByteArrayInputStream(IOUtils.toByteArray(in));
+                hits.incrementAndGet();
+                return result;
+            }
         } catch (Exception e) {
+            // the segment may have just been evicted
             return null;
         }
     }
 
     @Override
     public void remove(String cacheEntryName) {
-        FileUtil.delete(getXmlFile(cacheEntryName));
-        FileUtil.delete(getMetaFile(cacheEntryName));
+        if (index.containsKey(cacheEntryName)) {
+            try {
+                append(cacheEntryName, null, 0);
+            } catch (Exception e) {
+                index.remove(cacheEntryName);
+            }
+        }
     }
 
     @Override
     public void store(String cacheEntryName, InputStream inputStream, long expirationDate) {
-        createCache();
-
-        Path xmlFile = getXmlFile(cacheEntryName);
-        Path metaFile = getMetaFile(cacheEntryName);
-
-        try (InputStream is = inputStream; Writer mw = Files.newBufferedWriter(metaFile)) {
-            Files.copy(is, xmlFile, StandardCopyOption.REPLACE_EXISTING);
-
-            Properties properties = new Properties();
-
+        try (InputStream is = inputStream) {
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            try (OutputStream out = new GZIPOutputStream(data)) {
+                IOUtils.copy(is, out);
+            }
             // Note: Ignore the given expirationDate, since Last.fm sets it to just one day ahead.
-            properties.setProperty("expiration-date", Long.toString(getExpirationDate()));
-            properties.store(mw, null);
+            append(cacheEntryName, data.toByteArray(), System.currentTimeMillis() + ttl);
         } catch (Exception e) {
             // we ignore the exception. if something went wrong we just don't cache it.
         }
     }
 
-    private long getExpirationDate() {
-        return System.currentTimeMillis() + ttl;
+    /**
+     * Appends an entry to the current segment, or a removal if data is {@code null}.
+     */
+    private synchronized void append(String cacheEntryName, byte[] data, long expirationDate) throws IOException {
+        int length = data == null ? 0 : data.length;
+        Map.Entry<Integer, FileChannel> segment = segments.lastEntry();
+        if (segment.getValue().size() > 0 && segment.getValue().size() + getRecordSize(cacheEntryName, length) > SEGMENT_SIZE) {
+            createSegment(segment.getKey() + 1);
+            segment = segments.lastEntry();
+            evict();
+        }
+        write(segment, cacheEntryName, data, expirationDate);
     }
 
-    private void createCache() {
-        if (!Files.exists(cacheDir)) {
-            try {
-                Files.createDirectories(cacheDir);
-            } catch (IOException ignore) {}
+    /**
+     * Writes an entry, or a removal if data is {@code null}, at the end of the given segment and updates the index.
+     *
+     * @return The number of bytes written.
+     */
+    private long write(Map.Entry<Integer, FileChannel> segment, String cacheEntryName, byte[] data, long expirationDate) throws IOException {
+        byte[] key = cacheEntryName.getBytes(StandardCharsets.UTF_8);
+        int length = data == null ? REMOVED : data.length;
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + key.length + Long.BYTES + Integer.BYTES + Math.max(length, 0));
+        record.putInt(key.length).put(key).putLong(expirationDate).putInt(length);
+        if (data != null) {
+            record.put(data);
+        }
+        record.flip();
+
+        FileChannel channel = segment.getValue();
+        long position = channel.size();
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+        if (data == null) {
+            index.remove(cacheEntryName);
+        } else {
+            index.put(cacheEntryName, new Entry(segment.getKey(), position + record.limit() - length, length, expirationDate));
+        }
+        return record.limit();
+    }
+
+    private static long getRecordSize(String cacheEntryName, int length) {
+        return Integer.BYTES + cacheEntryName.getBytes(StandardCharsets.UTF_8).length + Long.BYTES + Integer.BYTES + length;
+    }
+
+    /**
+     * Deletes the oldest segments until the cache fits its maximum size. The live entries of a segment are copied to
+     * the current segment first, unless the cache would still be too large, in which case they are evicted as well.
+     */
+    private void evict() throws IOException {
+        long size = 0;
+        for (FileChannel channel : segments.values()) {
+            size += channel.size();
+        }
+        Map.Entry<Integer, FileChannel> current = segments.lastEntry();
+        while (size > maxSize && segments.size() > 1) {
+            Map.Entry<Integer, FileChannel> oldest = segments.firstEntry();
+            long now = System.currentTimeMillis();
+            List<Map.Entry<String, Entry>> live = index.entrySet().stream()
+                    .filter(e -> e.getValue().segment == oldest.getKey() && e.getValue().expirationDate >= now)
+                    .sorted(Comparator.comparingLong(e -> e.getValue().position))
+                    .collect(Collectors.toList());
+            long liveSize = live.stream().mapToLong(e -> getRecordSize(e.getKey(), e.getValue().length)).sum();
+            size -= oldest.getValue().size();
+            if (size + liveSize <= maxSize) {
+                for (Map.Entry<String, Entry> e : live) {
+                    ByteBuffer data = readFully(oldest.getValue(), e.getValue().position, e.getValue().length);
+                    if (data != null) {
+                        size += write(current, e.getKey(), data.array(), e.getValue().expirationDate);
+                    }
+                }
+            }
+            segments.remove(oldest.getKey());
+            oldest.getValue().close();
+            Files.deleteIfExists(cacheDir.resolve(SEGMENT_PREFIX + oldest.getKey() + SEGMENT_SUFFIX));
+            index.values().removeIf(entry -> entry.segment == oldest.getKey());
+            LOG.debug("Evicted Last.fm cache segment {}", oldest.getKey());
         }
     }
 
     @Override
     public boolean isExpired(String cacheEntryName) {
-        Path f = getMetaFile(cacheEntryName);
-        if (!Files.exists(f)) {
-            return false;
-        }
-        try (Reader r = Files.newBufferedReader(f)) {
-            Properties p = new Properties();
-            p.load(r);
-            long expirationDate = Long.valueOf(p.getProperty("expiration-date"));
-            return expirationDate < System.currentTimeMillis();
-        } catch (Exception e) {
-            return false;
+        Entry entry = index.get(cacheEntryName);
+        if (entry != null && entry.expirationDate < System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return true;
         }
+        return false;
     }
 
     @Override
-    public void clear() {
-        try (Stream<Path> walk = Files.list(cacheDir)) {
-            walk.filter(Files::isRegularFile)
-                .forEach(LambdaUtils.uncheckConsumer(Files::deleteIfExists));
-        } catch (Exception ignore) {}
+    public synchronized void clear() {
+        try {
+            index.clear();
+            for (Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+                segment.getValue().close();
+                Files.deleteIfExists(cacheDir.resolve(SEGMENT_PREFIX + segment.getKey() + SEGMENT_SUFFIX));
+            }
+            segments.clear();
+            createSegment(0);
+        } catch (Exception e) {
+            LOG.warn("Failed to clear Last.fm cache {}", cacheDir, e);
+        }
     }
 
-    private Path getXmlFile(String cacheEntryName) {
-        return cacheDir.resolve(cacheEntryName + ".xml");
+    public long getHitCount() {
+        return hits.get();
     }
 
-    private Path getMetaFile(String cacheEntryName) {
-        return cacheDir.resolve(cacheEntryName + ".meta");
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int getEntryCount() {
+        return index.size();
+    }
+
+    private static class Entry {
+        private final int segment;
+        private final long position;
+        private final int length;
+        private final long expirationDate;
+
+        private Entry(int segment, long position, int length, long expirationDate) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.expirationDate = expirationDate;
+        }
     }
 }
@@ -25,10 +25,12 @@ import de.umass.lastfm.Artist;
 import org.airsonic.player.dao.ArtistDao;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.*;
+import org.airsonic.player.monitor.MetricsManager;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
@@ -58,6 +60,12 @@ public class LastFmService {
     private MediaFileService mediaFileService;
     @Autowired
     private ArtistDao artistDao;
+    @Autowired
+    private MetricsManager metricsManager;
+    @Autowired
+    private LibraryNameResolver libraryNameResolver;
+    @Value("${LastFmCacheSize:#{256 * 1024 * 1024}}")
+    private long cacheSize;
 
     @PostConstruct
     public void init() {
@@ -65,7 +73,15 @@ public class LastFmService {
         caller.setUserAgent("Airsonic");
 
         Path cacheDir = SettingsService.getAirsonicHome().resolve("lastfmcache");
-        caller.setCache(new LastFmCache(cacheDir, CACHE_TIME_TO_LIVE_MILLIS));
+        LastFmCache cache = new LastFmCache(cacheDir, CACHE_TIME_TO_LIVE_MILLIS, cacheSize);
+        caller.setCache(cache);
+
+        metricsManager.gauge(LastFmCache.class, "entries", cache::getEntryCount);
+        metricsManager.gauge(LastFmCache.class, "hitRate", () -> {
+            long hits = cache.getHitCount();
+            long total = hits + cache.getMissCount();
+            return total == 0 ? 0.0 : (double) hits / total;
+        });
     }
 
     /**
@@ -86,26 +102,24 @@ public class LastFmService {
         String artistName = getArtistName(mediaFile);
         try {
             Collection<Artist> similarArtists = Artist.getSimilar(getCanonicalArtistName(artistName), LAST_FM_KEY);
+            List<String> names = similarArtists.stream().map(Artist::getName).collect(Collectors.toList());
+            Map<String, MediaFile> present = libraryNameResolver.resolveArtistDirectories(names, musicFolders);
 
             // First select artists that are present.
-            for (Artist lastFmArtist : similarArtists) {
-                MediaFile similarArtist = mediaFileDao.getArtistByName(lastFmArtist.getName(), musicFolders);
-                if (similarArtist != null) {
-                    result.add(similarArtist);
-                    if (result.size() == count) {
-                        return result;
-                    }
+            for (MediaFile similarArtist : present.values()) {
+                result.add(similarArtist);
+                if (result.size() == count) {
+                    return result;
                 }
             }
 
             // Then fill up with non-present artists
             if (includeNotPresent) {
-                for (Artist lastFmArtist : similarArtists) {
-                    MediaFile similarArtist = mediaFileDao.getArtistByName(lastFmArtist.getName(), musicFolders);
-                    if (similarArtist == null) {
+                for (String name : names) {
+                    if (!present.containsKey(name)) {
                         MediaFile notPresentArtist = new MediaFile();
                         notPresentArtist.setId(-1);
-                        notPresentArtist.setArtist(lastFmArtist.getName());
+                        notPresentArtist.setArtist(name);
                         result.add(notPresentArtist);
                         if (result.size() == count) {
                             return result;
@@ -135,26 +149,26 @@ public class LastFmService {
 
         try {
 
-            // First select artists that are present.
             Collection<Artist> similarArtists = Artist.getSimilar(getCanonicalArtistName(artist.getName()), LAST_FM_KEY);
-            for (Artist lastFmArtist : similarArtists) {
-                org.airsonic.player.domain.Artist similarArtist = artistDao.getArtist(lastFmArtist.getName(), musicFolders);
-                if (similarArtist != null) {
-                    result.add(similarArtist);
-                    if (result.size() == count) {
-                        return result;
-                    }
+            List<String> names = similarArtists.stream().map(Artist::getName).collect(Collectors.toList());
+            Map<String, org.airsonic.player.domain.Artist> present = libraryNameResolver.resolveArtists(names, musicFolders);
+
+            // First select artists that are present.
+            for (org.airsonic.player.domain.Artist similarArtist : present.values()) {
+                result.add(similarArtist);
+                if (result.size() == count) {
+                    return result;
                 }
             }
 
             // Then fill up with non-present artists
             if (includeNotPresent) {
-                for (Artist lastFmArtist : similarArtists) {
-                    org.airsonic.player.domain.Artist similarArtist = artistDao.getArtist(lastFmArtist.getName());
-                    if (similarArtist == null) {
+                Set<String> presentElsewhere = libraryNameResolver.resolveArtists(names, null).keySet();
+                for (String name : names) {
+                    if (!presentElsewhere.contains(name)) {
                         org.airsonic.player.domain.Artist notPresentArtist = new org.airsonic.player.domain.Artist();
                         notPresentArtist.setId(-1);
-                        notPresentArtist.setName(lastFmArtist.getName());
+                        notPresentArtist.setName(name);
                         result.add(notPresentArtist);
                         if (result.size() == count) {
                             return result;
@@ -180,10 +194,12 @@ public class LastFmService {
     public List<MediaFile> getSimilarSongs(org.airsonic.player.domain.Artist artist, int count,
                                            List<MusicFolder> musicFolders) {
 
-        List<MediaFile> similarSongs = new ArrayList<MediaFile>(mediaFileDao.getSongsByArtist(artist.getName(), 0, 1000));
+        List<String> artists = new ArrayList<>();
+        artists.add(artist.getName());
         for (org.airsonic.player.domain.Artist similarArtist : getSimilarArtists(artist, 100, false, musicFolders)) {
-            similarSongs.addAll(mediaFileDao.getSongsByArtist(similarArtist.getName(), 0, 1000));
+            artists.add(similarArtist.getName());
         }
+        List<MediaFile> similarSongs = new ArrayList<MediaFile>(mediaFileDao.getSongsByArtists(artists, 1000, musicFolders));
         Collections.shuffle(similarSongs);
         return similarSongs.subList(0, Math.min(count, similarSongs.size()));
     }
@@ -280,17 +296,10 @@ public class LastFmService {
                 return Collections.emptyList();
             }
 
-            List<MediaFile> result = new ArrayList<MediaFile>();
-            for (Track topTrack : Artist.getTopTracks(artistName, LAST_FM_KEY)) {
-                MediaFile song = mediaFileDao.getSongByArtistAndTitle(artistName, topTrack.getName(), musicFolders);
-                if (song != null) {
-                    result.add(song);
-                    if (result.size() == count) {
-                        return result;
-                    }
-                }
-            }
-            return result;
+            List<String> titles = Artist.getTopTracks(artistName, LAST_FM_KEY).stream().map(Track::getName).collect(Collectors.toList());
+            return libraryNameResolver.resolveSongs(artistName, titles, musicFolders).values().stream()
+                    .limit(count)
+                    .collect(Collectors.toList());
         } catch (Throwable x) {
             LOG.warn("Failed to find top songs for " + artistName, x);
             return Collections.emptyList();
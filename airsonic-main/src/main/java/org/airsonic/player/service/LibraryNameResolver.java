@@ -0,0 +1,169 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves artist names and song titles from external services, such as Last.fm, against the media library.
+ * <p/>
+ * Names are matched after normalization, ignoring case, diacritics, punctuation and leading or trailing articles,
+ * so that "Beyonce" finds "Beyoncé" and "Beatles, The" finds "The Beatles". A whole list of candidates is resolved
+ * with a single query, using a dictionary of the normalized names in the library that is refreshed every few
+ * minutes.
+ */
+@Service
+public class LibraryNameResolver {
+
+    private static final long DICTIONARY_TTL_MINUTES = 10;
+    private static final int SONGS_PER_ARTIST = 1000;
+
+    @Autowired
+    private ArtistDao artistDao;
+    @Autowired
+    private MediaFileDao mediaFileDao;
+    @Autowired
+    private SettingsService settingsService;
+
+    private final Supplier<Map<String, List<String>>> artistNames = Suppliers.memoizeWithExpiration(
+        () -> createDictionary(artistDao.getArtistNames()), DICTIONARY_TTL_MINUTES, TimeUnit.MINUTES);
+    private final Supplier<Map<String, List<String>>> directoryArtistNames = Suppliers.memoizeWithExpiration(
+        () -> createDictionary(mediaFileDao.getDirectoryArtistNames()), DICTIONARY_TTL_MINUTES, TimeUnit.MINUTES);
+    private final Supplier<Map<String, List<String>>> songArtistNames = Suppliers.memoizeWithExpiration(
+        () -> createDictionary(mediaFileDao.getSongArtistNames()), DICTIONARY_TTL_MINUTES, TimeUnit.MINUTES);
+
+    /**
+     * Resolves artist names to artists.
+     *
+     * @param names        The artist names to resolve.
+     * @param musicFolders Only return artists that have at least one album in these folders, or {@code null} for
+     *                     artists in any folder.
+     * @return The artists found, keyed by the given names, in the order of the given names.
+     */
+    public Map<String, Artist> resolveArtists(List<String> names, List<MusicFolder> musicFolders) {
+        return resolve(names, artistNames.get(), n -> artistDao.getArtists(n, musicFolders), Artist::getName);
+    }
+
+    /**
+     * Resolves artist names to artist directories.
+     *
+     * @param names        The artist names to resolve.
+     * @param musicFolders Only return directories in these folders.
+     * @return The directories found, keyed by the given names, in the order of the given names.
+     */
+    public Map<String, MediaFile> resolveArtistDirectories(List<String> names, List<MusicFolder> musicFolders) {
+        return resolve(names, directoryArtistNames.get(), n -> mediaFileDao.getArtistsByNames(n, musicFolders), MediaFile::getArtist);
+    }
+
+    /**
+     * Resolves song titles of an artist to songs.
+     *
+     * @param artistName   The artist name.
+     * @param titles       The song titles to resolve.
+     * @param musicFolders Only return songs in these folders.
+     * @return The songs found, keyed by the given titles, in the order of the given titles.
+     */
+    public Map<String, MediaFile> resolveSongs(String artistName, List<String> titles, List<MusicFolder> musicFolders) {
+        List<String> artists = new ArrayList<>(songArtistNames.get().getOrDefault(normalize(artistName), Collections.emptyList()));
+        if (!artists.contains(artistName)) {
+            artists.add(artistName);
+        }
+        List<MediaFile> songs = mediaFileDao.getSongsByArtists(artists, SONGS_PER_ARTIST, musicFolders);
+        return resolve(titles, createDictionary(songs.stream().map(MediaFile::getTitle).collect(Collectors.toList())),
+            t -> songs, MediaFile::getTitle);
+    }
+
+    /**
+     * Looks up the library names matching the given names, preferring exact matches.
+     */
+    private <T> Map<String, T> resolve(List<String> names, Map<String, List<String>> dictionary,
+                                       Function<Collection<String>, List<T>> lookup, Function<T, String> nameOf) {
+        Map<String, List<String>> candidates = new LinkedHashMap<>();
+        Set<String> libraryNames = new HashSet<>();
+        for (String name : names) {
+            if (name == null) {
+                continue;
+            }
+            List<String> matches = new ArrayList<>();
+            matches.add(name);
+            dictionary.getOrDefault(normalize(name), Collections.emptyList()).stream().filter(m -> !m.equals(name)).forEach(matches::add);
+            candidates.put(name, matches);
+            libraryNames.addAll(matches);
+        }
+
+        Map<String, T> found = new HashMap<>();
+        for (T item : lookup.apply(libraryNames)) {
+            found.putIfAbsent(nameOf.apply(item), item);
+        }
+
+        Map<String, T> result = new LinkedHashMap<>();
+        candidates.forEach((name, matches) -> matches.stream().map(found::get).filter(Objects::nonNull).findFirst()
+                .ifPresent(item -> result.put(name, item)));
+        return result;
+    }
+
+    private Map<String, List<String>> createDictionary(Collection<String> names) {
+        Map<String, List<String>> dictionary = new HashMap<>();
+        for (String name : names) {
+            if (name != null) {
+                dictionary.computeIfAbsent(normalize(name), k -> new ArrayList<>(1)).add(name);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the given name in lower case, without diacritics, punctuation and articles.
+     */
+    String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(name, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .replace("&", " and ")
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+        for (String article : settingsService.getIgnoredArticlesAsArray()) {
+            String prefix = article.toLowerCase(Locale.ROOT) + " ";
+            String suffix = " " + article.toLowerCase(Locale.ROOT);
+            if (normalized.startsWith(prefix) && normalized.length() > prefix.length()) {
+                normalized = normalized.substring(prefix.length());
+            } else if (normalized.endsWith(suffix) && normalized.length() > suffix.length()) {
+                normalized = normalized.substring(0, normalized.length() - suffix.length());
+            }
+        }
+        return normalized;
+    }
+}
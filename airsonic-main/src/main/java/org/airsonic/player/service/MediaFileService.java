@@ -25,10 +25,12 @@ import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.i18n.LocaleResolver;
+import org.airsonic.player.service.metadata.EmbeddedArtworkStore;
 import org.airsonic.player.service.metadata.JaudiotaggerParser;
 import org.airsonic.player.service.metadata.MetaData;
 import org.airsonic.player.service.metadata.MetaDataParser;
 import org.airsonic.player.service.metadata.MetaDataParserFactory;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.airsonic.player.util.FileUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
@@ -74,7 +76,11 @@ public class MediaFileService {
     @Autowired
     private MetaDataParserFactory metaDataParserFactory;
     @Autowired
+    private EmbeddedArtworkStore embeddedArtworkStore;
+    @Autowired
     private LocaleResolver localeResolver;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
     private boolean memoryCacheEnabled = true;
 
     /**
@@ -377,7 +383,8 @@ public class MediaFileService {
         Map<String, MediaFile> storedChildrenMap = mediaFileDao.getChildrenOf(parent.getPath()).parallelStream().collect(Collectors.toConcurrentMap(i -> i.getPath(), i -> i));
 
         try (Stream<Path> children = Files.list(parent.getFile())) {
-            List<MediaFile> result = children.parallel()
+            List<Path> paths = children.collect(Collectors.toList());
+            List<MediaFile> result = paths.parallelStream()
                     .filter(this::includeMediaFile)
                     .map(x -> {
                         MediaFile media = storedChildrenMap.remove(x.toString());
@@ -396,6 +403,10 @@ public class MediaFileService {
             // Delete children that no longer exist on disk.
             mediaFileDao.deleteMediaFiles(storedChildrenMap.keySet());
 
+            if (!isRoot(parent)) {
+                classifyDirectory(parent, result, paths);
+            }
+
             // Update timestamp in parent.
             parent.setChildrenLastUpdated(parent.getChanged());
             parent.setPresent(true);
@@ -497,49 +508,55 @@ public class MediaFileService {
             mediaFile.setFileSize(FileUtil.size(file));
             mediaFile.setMediaType(getMediaType(mediaFile));
 
-        } else {
-
-            // Is this an album?
-            if (!isRoot(mediaFile)) {
-                try (Stream<Path> stream = Files.list(file)) {
-                    List<Path> children = stream.parallel().collect(Collectors.toList());
-                    Path firstChild = children.parallelStream()
-                            .filter(x -> includeMediaFile(x))
-                            .filter(x -> Files.isRegularFile(x))
-                            .findFirst().orElse(null);
-
-                    if (firstChild != null) {
-                        mediaFile.setMediaType(MediaFile.MediaType.ALBUM);
-
-                        // Guess artist/album name, year and genre.
-                        MetaDataParser parser = metaDataParserFactory.getParser(firstChild);
-                        if (parser != null) {
-                            MetaData metaData = parser.getMetaData(firstChild);
-                            mediaFile.setArtist(metaData.getAlbumArtist());
-                            mediaFile.setAlbumName(metaData.getAlbumName());
-                            mediaFile.setYear(metaData.getYear());
-                            mediaFile.setGenre(metaData.getGenre());
-                        }
-
-                        // Look for cover art.
-                        Path coverArt = findCoverArt(children);
-                        if (coverArt != null) {
-                            mediaFile.setCoverArtPath(coverArt.toString());
-                        }
+            // keep the checksum as long as the contents look unchanged
+            if (existingFile != null && lastModified.equals(existingFile.getChanged())
+                    && Objects.equals(mediaFile.getFileSize(), existingFile.getFileSize())) {
+                mediaFile.setCrc(existingFile.getCrc());
+            }
 
-                    } else {
-                        mediaFile.setArtist(file.getFileName().toString());
-                    }
+        } else if (existingFile != null) {
+            // The directory is classified from its children once they have been read, see updateChildren()
+            mediaFile.setMediaType(existingFile.getMediaType());
+            mediaFile.setArtist(existingFile.getArtist());
+            mediaFile.setAlbumName(existingFile.getAlbumName());
+            mediaFile.setYear(existingFile.getYear());
+            mediaFile.setGenre(existingFile.getGenre());
+            mediaFile.setCoverArtPath(existingFile.getCoverArtPath());
+        } else if (!isRoot(mediaFile)) {
+            mediaFile.setArtist(file.getFileName().toString());
+        }
 
-                } catch (IOException e) {
-                    LOG.warn("Could not retrieve children for {}.", file.toString(), e);
+        return mediaFile;
+    }
 
-                    mediaFile.setArtist(file.getFileName().toString());
-                }
-            }
+    /**
+     * Guesses whether a directory is an album, and its artist, album name, year, genre and cover art, from the
+     * children read in the same pass. This way the tags of each file are only read once per scan.
+     *
+     * @param directory The directory.
+     * @param children  The media files in the directory, in listing order.
+     * @param paths     All files in the directory, including those that aren't media files.
+     */
+    private void classifyDirectory(MediaFile directory, List<MediaFile> children, List<Path> paths) {
+        MediaFile firstChild = children.stream().filter(x -> x != null && x.isFile()).findFirst().orElse(null);
+        if (firstChild == null) {
+            directory.setMediaType(MediaFile.MediaType.DIRECTORY);
+            directory.setArtist(directory.getFile().getFileName().toString());
+            directory.setAlbumName(null);
+            directory.setYear(null);
+            directory.setGenre(null);
+            directory.setCoverArtPath(null);
+            return;
         }
 
-        return mediaFile;
+        directory.setMediaType(MediaFile.MediaType.ALBUM);
+        directory.setArtist(firstChild.getAlbumArtist());
+        directory.setAlbumName(firstChild.getAlbumName());
+        directory.setYear(firstChild.getYear());
+        directory.setGenre(firstChild.getGenre());
+
+        Path coverArt = findCoverArt(paths, children);
+        directory.setCoverArtPath(coverArt == null ? null : coverArt.toString());
     }
 
     private MediaFile.MediaType getMediaType(MediaFile mediaFile) {
@@ -557,9 +574,50 @@ public class MediaFileService {
         return MediaFile.MediaType.MUSIC;
     }
 
+    /**
+     * Stores the CRC32 checksum of an unchanged media file so that it does not need to be read again.
+     */
+    public void updateCrc(MediaFile mediaFile, long crc) {
+        mediaFile.setCrc(crc);
+        mediaFileDao.updateCrc(mediaFile.getId(), crc);
+    }
+
     public void refreshMediaFile(MediaFile mediaFile) {
         mediaFile = createMediaFile(mediaFile.getFile(), mediaFile);
         updateMediaFile(mediaFile);
+        sonosCatalogVersion.catalogChanged();
+    }
+
+    /**
+     * Brings the files of a directory into the database without waiting for a media library scan, for instance
+     * after files have been uploaded into it. The directories between the music folder and the given directory are
+     * refreshed too, so the new content can be browsed right away.
+     *
+     * @param dir A directory within a music folder.
+     */
+    @CacheEvict(allEntries = true)
+    public void refreshDirectory(Path dir) {
+        String root = securityService.getRootFolderForFile(dir);
+        if (root == null || !Files.isDirectory(dir)) {
+            return;
+        }
+
+        Deque<Path> ancestors = new ArrayDeque<>();
+        for (Path p = dir; p != null && p.startsWith(root); p = p.getParent()) {
+            ancestors.push(p);
+        }
+
+        for (Path p : ancestors) {
+            MediaFile mediaFile = mediaFileDao.getMediaFile(p.toString());
+            if (mediaFile == null) {
+                mediaFile = createMediaFile(p, null);
+                updateMediaFile(mediaFile);
+            } else {
+                mediaFile = checkLastModified(mediaFile, false);
+            }
+            getChildrenOf(mediaFile, true, true, false, false);
+        }
+        sonosCatalogVersion.catalogChanged();
     }
 
     @CacheEvict(allEntries = true)
@@ -585,12 +643,12 @@ public class MediaFileService {
     /**
      * Finds a cover art image for the given directory, by looking for it on the disk.
      */
-    private Path findCoverArt(Collection<Path> candidates) {
+    private Path findCoverArt(Collection<Path> candidates, List<MediaFile> children) {
         Path candidate = null;
         var coverArtSource = settingsService.getCoverArtSource();
         switch (coverArtSource) {
             case TAGFILE:
-                candidate = findTagCover(candidates);
+                candidate = findTagCover(children);
                 if (candidate != null) {
                     return candidate;
                 } else {
@@ -599,14 +657,14 @@ public class MediaFileService {
             case FILE:
                 return findFileCover(candidates);
             case TAG:
-                return findTagCover(candidates);
+                return findTagCover(children);
             case FILETAG:
             default:
                 candidate = findFileCover(candidates);
                 if (candidate != null) {
                     return candidate;
                 } else {
-                    return findTagCover(candidates);
+                    return findTagCover(children);
                 }
         }
     }
@@ -625,9 +683,11 @@ public class MediaFileService {
         return null;
     }
 
-    private Path findTagCover(Collection<Path> candidates) {
+    private Path findTagCover(List<MediaFile> children) {
         // Look for embedded images in audiofiles. (Only check first audio file encountered).
-        return candidates.parallelStream().filter(parser::isApplicable).findFirst().filter(c -> parser.isImageAvailable(getMediaFile(c))).orElse(null);
+        // The image is extracted to the artwork store, so that it can be served without reading the audio file.
+        return children.stream().filter(x -> x != null && x.isAudio()).map(MediaFile::getFile)
+                .filter(parser::isApplicable).findFirst().map(embeddedArtworkStore::getArtwork).orElse(null);
     }
 
     public void setSecurityService(SecurityService securityService) {
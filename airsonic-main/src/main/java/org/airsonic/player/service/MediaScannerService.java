@@ -23,7 +23,9 @@ import org.airsonic.player.dao.AlbumDao;
 import org.airsonic.player.dao.ArtistDao;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.*;
+import org.airsonic.player.service.metadata.EmbeddedArtworkStore;
 import org.airsonic.player.service.search.IndexManager;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.apache.commons.lang.ObjectUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +47,7 @@ import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
@@ -53,6 +56,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Provides services for scanning the music library.
@@ -84,6 +89,14 @@ public class MediaScannerService {
     private AlbumDao albumDao;
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    private BroadcastService broadcastService;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
+    @Autowired
+    private CoverArtService coverArtService;
+    @Autowired
+    private EmbeddedArtworkStore embeddedArtworkStore;
 
     @Autowired
     @Value("${MediaScannerParallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors() + 1}}")
@@ -154,7 +167,8 @@ public class MediaScannerService {
     }
 
     private void broadcastScanStatus() {
-        CompletableFuture.runAsync(() -> {
+        // Sent from the scan threads every few files, so only the latest count is kept for slow sends
+        broadcastService.sendLatest("scanStatus", () -> {
             ScanStatus status = new ScanStatus();
             status.setCount(scanCount.longValue());
             status.setScanning(scanning);
@@ -201,6 +215,10 @@ public class MediaScannerService {
         LOG.info("Starting to scan media library.");
         MediaLibraryStatistics statistics = new MediaLibraryStatistics();
         LOG.debug("New last scan date is {}", statistics.getScanDate());
+        // The albums and artists with songs that are new or modified since the last scan
+        Set<Album> changedAlbums = ConcurrentHashMap.newKeySet();
+        Set<Artist> changedArtists = ConcurrentHashMap.newKeySet();
+        boolean completed = false;
 
         try {
             // Maps from artist name to album count.
@@ -219,13 +237,13 @@ public class MediaScannerService {
             // Recurse through all files on disk.
             settingsService.getAllMusicFolders()
                 .parallelStream()
-                .forEach(musicFolder -> scanFile(mediaFileService.getMediaFile(musicFolder.getPath(), false), musicFolder, statistics, albumCount, artists, albums, albumsInDb, genres, encountered, false));
+                .forEach(musicFolder -> scanFile(mediaFileService.getMediaFile(musicFolder.getPath(), false), musicFolder, statistics, albumCount, artists, albums, albumsInDb, changedAlbums, changedArtists, genres, encountered, false));
 
             // Scan podcast folder.
             Path podcastFolder = Paths.get(settingsService.getPodcastFolder());
             if (Files.exists(podcastFolder)) {
                 scanFile(mediaFileService.getMediaFile(podcastFolder), new MusicFolder(podcastFolder, null, true, null),
-                        statistics, albumCount, artists, albums, albumsInDb, genres, encountered, true);
+                        statistics, albumCount, artists, albums, albumsInDb, changedAlbums, changedArtists, genres, encountered, true);
             }
 
             LOG.info("Scanned media library with {} entries.", scanCount.get());
@@ -276,13 +294,18 @@ public class MediaScannerService {
 
             CompletableFuture.allOf(albumPersistence, artistPersistence, mediaFilePersistence, genrePersistence).join();
 
+            LOG.info("Deleting unreferenced cover art");
+            deleteUnreferencedArtwork(statistics.getScanDate());
+
             if (settingsService.getClearFullScanSettingAfterScan()) {
                 settingsService.setClearFullScanSettingAfterScan(null);
                 settingsService.setFullScan(null);
                 settingsService.save();
             }
 
+            sonosCatalogVersion.catalogChanged();
             LOG.info("Completed media library scan.");
+            completed = true;
 
         } catch (Throwable x) {
             LOG.error("Failed to scan media library.", x);
@@ -291,10 +314,63 @@ public class MediaScannerService {
             indexManager.stopIndexing(statistics);
             LOG.info("Media library scan took {}s", ChronoUnit.SECONDS.between(statistics.getScanDate(), Instant.now()));
         }
+
+        if (completed && settingsService.isCoverArtPregeneration()) {
+            pregenerateThumbnails(changedAlbums, changedArtists);
+        }
+    }
+
+    /**
+     * Deletes the images extracted from tags that are no longer the cover art of any media file, album or artist.
+     * Images extracted during this scan are kept, as lazy refreshes may not have persisted them yet.
+     */
+    private void deleteUnreferencedArtwork(Instant scanDate) {
+        Set<Path> referenced = Stream.of(mediaFileDao.getCoverArtPaths(), albumDao.getCoverArtPaths(), artistDao.getCoverArtPaths())
+                .flatMap(List::stream)
+                .map(Paths::get)
+                .collect(Collectors.toSet());
+        int deleted = embeddedArtworkStore.deleteUnreferenced(referenced, scanDate);
+        LOG.info("Deleted {} unreferenced cover art images.", deleted);
+    }
+
+    /**
+     * Creates the cover art thumbnails of the changed albums and artists, so that browsing a freshly imported
+     * library doesn't wait for them. Only thumbnails that are missing or out of date are created. Runs on a few
+     * low priority threads, and counts towards the scan count so that progress is shown while scanning.
+     */
+    private void pregenerateThumbnails(Collection<Album> albums, Collection<Artist> artists) {
+        LOG.info("Creating cover art thumbnails.");
+        Instant start = Instant.now();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, settingsService.getCoverArtConcurrency() / 2), r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("CoverArtPregeneration-" + t.getId());
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            CompletableFuture.allOf(Stream.<Runnable>concat(
+                    albums.stream().map(album -> () -> coverArtService.pregenerateThumbnails(album)),
+                    artists.stream().map(artist -> () -> coverArtService.pregenerateThumbnails(artist)))
+                    .map(task -> CompletableFuture.runAsync(() -> {
+                        task.run();
+                        if (scanCount.incrementAndGet() % 25 == 0) {
+                            broadcastScanStatus();
+                        }
+                    }, executor))
+                    .toArray(CompletableFuture[]::new))
+                .join();
+        } catch (Throwable x) {
+            LOG.error("Failed to create cover art thumbnails.", x);
+        } finally {
+            executor.shutdown();
+        }
+        LOG.info("Creating cover art thumbnails took {}s", ChronoUnit.SECONDS.between(start, Instant.now()));
     }
 
     private void scanFile(MediaFile file, MusicFolder musicFolder, MediaLibraryStatistics statistics,
-                          Map<String, AtomicInteger> albumCount, Map<String, Artist> artists, Map<String, Album> albums, Map<Integer, Album> albumsInDb, Genres genres, Map<String, Boolean> encountered, boolean isPodcast) {
+                          Map<String, AtomicInteger> albumCount, Map<String, Artist> artists, Map<String, Album> albums, Map<Integer, Album> albumsInDb,
+                          Set<Album> changedAlbums, Set<Artist> changedArtists, Genres genres, Map<String, Boolean> encountered, boolean isPodcast) {
         if (scanCount.incrementAndGet() % 250 == 0) {
             broadcastScanStatus();
             LOG.info("Scanned media library with {} entries.", scanCount.get());
@@ -308,20 +384,30 @@ public class MediaScannerService {
             mediaFileDao.createOrUpdateMediaFile(file);
         }
 
-        indexManager.index(file);
-
         if (file.isDirectory()) {
             mediaFileService.getChildrenOf(file, true, true, false, false)
                 .parallelStream()
-                .forEach(child -> scanFile(child, musicFolder, statistics, albumCount, artists, albums, albumsInDb, genres, encountered, isPodcast));
+                .forEach(child -> scanFile(child, musicFolder, statistics, albumCount, artists, albums, albumsInDb, changedAlbums, changedArtists, genres, encountered, isPodcast));
         } else {
             if (!isPodcast) {
-                updateAlbum(file, musicFolder, statistics.getScanDate(), albumCount, albums, albumsInDb);
-                updateArtist(file, musicFolder, statistics.getScanDate(), albumCount, artists);
+                Album album = updateAlbum(file, musicFolder, statistics.getScanDate(), albumCount, albums, albumsInDb);
+                Artist artist = updateArtist(file, musicFolder, statistics.getScanDate(), albumCount, artists);
+                // The file was read from disk during this scan if it is new or modified
+                if (!file.getLastScanned().isBefore(statistics.getScanDate())) {
+                    if (album != null) {
+                        changedAlbums.add(album);
+                    }
+                    if (artist != null) {
+                        changedArtists.add(artist);
+                    }
+                }
             }
             statistics.incrementSongs(1);
         }
 
+        // Directories are indexed once their children have been read, as they are classified from them
+        indexManager.index(file);
+
         updateGenres(file, genres);
         encountered.putIfAbsent(file.getPath(), Boolean.TRUE);
 
@@ -345,10 +431,10 @@ public class MediaScannerService {
         }
     }
 
-    private void updateAlbum(MediaFile file, MusicFolder musicFolder, Instant lastScanned, Map<String, AtomicInteger> albumCount, Map<String, Album> albums, Map<Integer, Album> albumsInDb) {
+    private Album updateAlbum(MediaFile file, MusicFolder musicFolder, Instant lastScanned, Map<String, AtomicInteger> albumCount, Map<String, Album> albums, Map<Integer, Album> albumsInDb) {
         String artist = file.getAlbumArtist() != null ? file.getAlbumArtist() : file.getArtist();
         if (file.getAlbumName() == null || artist == null || file.getParentPath() == null || !file.isAudio()) {
-            return;
+            return null;
         }
 
         final AtomicBoolean firstEncounter = new AtomicBoolean(false);
@@ -415,11 +501,12 @@ public class MediaScannerService {
             file.setAlbumArtist(album.getArtist());
             mediaFileDao.createOrUpdateMediaFile(file);
         }
+        return album;
     }
 
-    private void updateArtist(MediaFile file, MusicFolder musicFolder, Instant lastScanned, Map<String, AtomicInteger> albumCount, Map<String, Artist> artists) {
+    private Artist updateArtist(MediaFile file, MusicFolder musicFolder, Instant lastScanned, Map<String, AtomicInteger> albumCount, Map<String, Artist> artists) {
         if (file.getAlbumArtist() == null || !file.isAudio()) {
-            return;
+            return null;
         }
 
         final AtomicBoolean firstEncounter = new AtomicBoolean(false);
@@ -458,6 +545,7 @@ public class MediaScannerService {
             artist.setFolderId(musicFolder.getId());
             indexManager.index(artist, musicFolder);
         }
+        return artist;
     }
 
     public void setSettingsService(SettingsService settingsService) {
@@ -487,4 +575,8 @@ public class MediaScannerService {
     public void setMessagingTemplate(SimpMessagingTemplate messagingTemplate) {
         this.messagingTemplate = messagingTemplate;
     }
+
+    public void setBroadcastService(BroadcastService broadcastService) {
+        this.broadcastService = broadcastService;
+    }
 }
@@ -2,6 +2,7 @@ package org.airsonic.player.service;
 
 import com.google.common.collect.ImmutableMap;
 import org.airsonic.player.ajax.MediaFileEntry;
+import org.airsonic.player.ajax.PlayQueueDelta;
 import org.airsonic.player.ajax.PlayQueueInfo;
 import org.airsonic.player.dao.InternetRadioDao;
 import org.airsonic.player.dao.MediaFileDao;
@@ -32,8 +33,6 @@ import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static java.util.concurrent.CompletableFuture.runAsync;
-
 @Service
 public class PlayQueueService {
     @Autowired
@@ -64,13 +63,15 @@ public class PlayQueueService {
     private InternetRadioService internetRadioService;
     @Autowired
     private SimpMessagingTemplate brokerTemplate;
+    @Autowired
+    private BroadcastService broadcastService;
 
     public void start(Player player) {
         player.getPlayQueue().setStatus(PlayQueue.Status.PLAYING);
         if (player.isJukebox()) {
             jukeboxService.start(player);
         }
-        runAsync(() -> brokerTemplate.convertAndSendToUser(player.getUsername(),
+        broadcast(player, () -> brokerTemplate.convertAndSendToUser(player.getUsername(),
                 "/queue/playqueues/" + player.getId() + "/playstatus", PlayQueue.Status.PLAYING));
     }
 
@@ -79,7 +80,7 @@ public class PlayQueueService {
         if (player.isJukebox()) {
             jukeboxService.stop(player);
         }
-        runAsync(() -> brokerTemplate.convertAndSendToUser(player.getUsername(),
+        broadcast(player, () -> brokerTemplate.convertAndSendToUser(player.getUsername(),
                 "/queue/playqueues/" + player.getId() + "/playstatus", PlayQueue.Status.STOPPED));
     }
 
@@ -97,7 +98,7 @@ public class PlayQueueService {
             jukeboxService.skip(player, index, (int) (offset / 1000));
         }
 
-        runAsync(() -> {
+        broadcast(player, () -> {
             brokerTemplate.convertAndSendToUser(player.getUsername(),
                     "/queue/playqueues/" + player.getId() + "/skip", ImmutableMap.of("index", index, "offset", offset));
             brokerTemplate.convertAndSendToUser(player.getUsername(),
@@ -107,13 +108,14 @@ public class PlayQueueService {
 
     public void reloadSearchCriteria(Player player, String sessionId) {
         PlayQueue playQueue = player.getPlayQueue();
+        Snapshot before = new Snapshot(playQueue);
         int size = playQueue.size();
         playQueue.setInternetRadio(null);
         if (playQueue.getRandomSearchCriteria() != null) {
             playQueue.addFiles(true, mediaFileService.getRandomSongs(playQueue.getRandomSearchCriteria(), player.getUsername()));
         }
 
-        broadcastPlayQueue(player, pq -> pq.setStartPlayerAt(size), sessionId);
+        broadcastPlayQueue(player, before, size, 0, sessionId);
     }
 
     public int savePlayQueue(Player player, int index, long offset) {
@@ -136,6 +138,7 @@ public class PlayQueueService {
         }
 
         PlayQueue playQueue = player.getPlayQueue();
+        Snapshot before = new Snapshot(playQueue);
         playQueue.clear();
         for (Integer mediaFileId : savedPlayQueue.getMediaFileIds()) {
             MediaFile mediaFile = mediaFileService.getMediaFile(mediaFileId);
@@ -149,9 +152,7 @@ public class PlayQueueService {
         int currentIndex = Optional.ofNullable(currentId).map(mediaFileService::getMediaFile)
                 .map(c -> playQueue.getFiles().indexOf(c)).orElse(-1);
 
-        broadcastPlayQueue(player,
-                currentIndex == -1 ? identity : pq -> pq.setStartPlayerAt(currentIndex).setStartPlayerAtPosition(positionMillis),
-                sessionId);
+        broadcastPlayQueue(player, before, currentIndex, positionMillis, sessionId);
     }
 
     public void playMediaFile(Player player, int id, String sessionId) {
@@ -350,14 +351,16 @@ public class PlayQueueService {
         if (player.isWeb()) {
             mediaFileService.removeVideoFiles(files);
         }
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().addFiles(false, files);
         player.getPlayQueue().setRandomSearchCriteria(null);
         player.getPlayQueue().setInternetRadio(radio);
-        broadcastPlayQueue(player, startAt0, sessionId);
+        broadcastPlayQueue(player, before, 0, 0, sessionId);
     }
 
     public void add(Player player, List<Integer> ids, Integer index, boolean removeVideoFiles, boolean broadcast) {
         PlayQueue playQueue = player.getPlayQueue();
+        Snapshot before = new Snapshot(playQueue);
         List<MediaFile> files = new ArrayList<>();
         for (int id : ids) {
             MediaFile ancestor = mediaFileService.getMediaFile(id);
@@ -374,19 +377,21 @@ public class PlayQueueService {
         playQueue.setRandomSearchCriteria(null);
         playQueue.setInternetRadio(null);
         if (broadcast) {
-            broadcastPlayQueue(player);
+            broadcastPlayQueue(player, before);
         }
     }
 
     public void addRandomCriteria(Player player, boolean append, RandomSearchCriteria criteria, boolean autoRandom) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().addFiles(append, mediaFileService.getRandomSongs(criteria, player.getUsername()));
         player.getPlayQueue().setRandomSearchCriteria(autoRandom ? criteria : null);
         player.getPlayQueue().setInternetRadio(null);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void addPlaylist(Player player, int id, boolean removeVideoFiles) {
         PlayQueue playQueue = player.getPlayQueue();
+        Snapshot before = new Snapshot(playQueue);
 
         List<MediaFile> files = playlistService.getFilesInPlaylist(id);
         if (removeVideoFiles) {
@@ -397,11 +402,12 @@ public class PlayQueueService {
 
         playQueue.setRandomSearchCriteria(null);
         playQueue.setInternetRadio(null);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void reset(Player player, List<Integer> ids, boolean removeVideoFiles) {
         PlayQueue playQueue = player.getPlayQueue();
+        Snapshot before = new Snapshot(playQueue);
         MediaFile currentFile = playQueue.getCurrentFile();
         PlayQueue.Status status = playQueue.getStatus();
 
@@ -411,41 +417,47 @@ public class PlayQueueService {
         int index = currentFile == null ? -1 : playQueue.getFiles().indexOf(currentFile);
         playQueue.setIndex(index);
         playQueue.setStatus(status);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void clear(Player player) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().clear();
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void shuffle(Player player) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().shuffle();
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void remove(Player player, List<Integer> indexes) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         Collections.sort(indexes);
 
         for (int i = indexes.size() - 1; i >= 0; i--) {
             player.getPlayQueue().removeFileAt(indexes.get(i));
         }
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void rearrange(Player player, List<Integer> indexes) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().rearrange(indexes);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void up(Player player, int index) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().moveUp(index);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void down(Player player, int index) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().moveDown(index);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void toggleRepeat(Player player) {
@@ -456,35 +468,34 @@ public class PlayQueueService {
         } else {
             playQueue.setRepeatStatus(RepeatStatus.getNext(playQueue.getRepeatStatus()));
         }
-        runAsync(() -> brokerTemplate.convertAndSendToUser(player.getUsername(),
+        broadcast(player, () -> brokerTemplate.convertAndSendToUser(player.getUsername(),
                 "/queue/playqueues/" + player.getId() + "/repeat", playQueue.getRepeatStatus()));
     }
 
     public void undo(Player player) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().undo();
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
     public void sort(Player player, PlayQueue.SortOrder order) {
+        Snapshot before = new Snapshot(player.getPlayQueue());
         player.getPlayQueue().sort(order);
-        broadcastPlayQueue(player);
+        broadcastPlayQueue(player, before);
     }
 
-    private static final Function<PlayQueueInfo, PlayQueueInfo> identity = pq -> pq;
-    private static final Function<PlayQueueInfo, PlayQueueInfo> startAt0 = pq -> pq.setStartPlayerAt(0);
-
     //
     // Methods dedicated to jukebox
     //
     public void setJukeboxGain(Player player, float gain) {
         jukeboxService.setGain(player, gain);
-        runAsync(() -> brokerTemplate.convertAndSendToUser(player.getUsername(),
+        broadcast(player, () -> brokerTemplate.convertAndSendToUser(player.getUsername(),
                 "/queue/playqueues/" + player.getId() + "/jukebox/gain", gain));
     }
 
     public void setJukeboxPosition(Player player, int positionInSeconds) {
         jukeboxService.setPosition(player, positionInSeconds);
-        runAsync(() -> brokerTemplate.convertAndSendToUser(player.getUsername(),
+        broadcast(player, () -> brokerTemplate.convertAndSendToUser(player.getUsername(),
                 "/queue/playqueues/" + player.getId() + "/jukebox/position", positionInSeconds));
     }
 
@@ -492,51 +503,82 @@ public class PlayQueueService {
     // End : Methods dedicated to jukebox
     //
 
-    private void broadcastPlayQueue(Player player) {
-        broadcastPlayQueue(player, identity, null);
+    private void broadcastPlayQueue(Player player, Snapshot before) {
+        broadcastPlayQueue(player, before, -1, 0, null);
     }
 
-    private void broadcastPlayQueue(Player player, Function<PlayQueueInfo, PlayQueueInfo> playQueueModifier, String triggeringSessionId) {
-        runAsync(() -> {
-            PlayQueueInfo info = playQueueModifier.apply(getPlayQueueInfo(player));
-            brokerTemplate.convertAndSendToUser(player.getUsername(),
-                    "/queue/playqueues/" + player.getId() + "/updated", info);
-            postBroadcast(info, player, triggeringSessionId);
+    /**
+     * Sends the changes made to the play queue since the given snapshot rather than the whole play queue, as
+     * converting every entry of a large play queue is expensive. Clients that missed a change ask for the whole play
+     * queue again.
+     *
+     * @param startPlayerAt         The index to start playing at, or -1 to keep playing.
+     * @param startPlayerAtPosition The position to start playing at, in milliseconds.
+     * @param triggeringSessionId   The web session that made the change, which starts playing.
+     */
+    private void broadcastPlayQueue(Player player, Snapshot before, int startPlayerAt, long startPlayerAtPosition, String triggeringSessionId) {
+        PlayQueue playQueue = player.getPlayQueue();
+        Snapshot after = new Snapshot(playQueue);
+        broadcast(player, () -> {
+            List<PlayQueueDelta.Operation> operations;
+            if (before.internetRadio || after.internetRadio) {
+                // Radio sources aren't media files, and there are only a few of them
+                operations = new ArrayList<>();
+                operations.add(PlayQueueDelta.Operation.reset(after.internetRadio ? convertInternetRadio(player) : convertMediaFileList(player, after.files)));
+            } else {
+                operations = PlayQueueDelta.diff(before.files, after.files, files -> convertMediaFileList(player, files));
+            }
+            if (after.index != before.index) {
+                operations.add(PlayQueueDelta.Operation.setIndex(after.index));
+            }
+            PlayQueueDelta delta = new PlayQueueDelta(before.version, after.version, operations, playQueue.getStatus(),
+                    playQueue.isShuffleRadioEnabled(), after.internetRadio);
+            brokerTemplate.convertAndSendToUser(player.getUsername(), "/queue/playqueues/" + player.getId(), delta);
+            postBroadcast(player, startPlayerAt, startPlayerAtPosition, triggeringSessionId);
         });
     }
 
-    private void postBroadcast(PlayQueueInfo info, Player player, String sessionId) {
-        if (info.getStartPlayerAt() != -1) {
+    /**
+     * Sends the broadcasts of a player in order, as clients apply the play queue changes one after the other.
+     */
+    private void broadcast(Player player, Runnable broadcast) {
+        broadcastService.send("playqueues/" + player.getId(), broadcast);
+    }
+
+    private void postBroadcast(Player player, int startPlayerAt, long startPlayerAtPosition, String sessionId) {
+        if (startPlayerAt != -1) {
             if (player.isWeb() && sessionId != null) {
                 // trigger the web player to start playing at this location
                 SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
                 headerAccessor.setSessionId(sessionId);
                 brokerTemplate.convertAndSendToUser(player.getUsername(),
                         "/queue/playqueues/" + player.getId() + "/skip",
-                        ImmutableMap.of("index", info.getStartPlayerAt(), "offset", info.getStartPlayerAtPosition()),
+                        ImmutableMap.of("index", startPlayerAt, "offset", startPlayerAtPosition),
                         headerAccessor.getMessageHeaders());
             } else if (!player.isExternalWithPlaylist()) {
-                skip(player, info.getStartPlayerAt(), info.getStartPlayerAtPosition());
+                skip(player, startPlayerAt, startPlayerAtPosition);
             }
         }
     }
 
     public PlayQueueInfo getPlayQueueInfo(Player player) {
         PlayQueue playQueue = player.getPlayQueue();
+        Snapshot snapshot = new Snapshot(playQueue);
 
         List<MediaFileEntry> entries;
-        if (playQueue.isInternetRadioEnabled()) {
+        if (snapshot.internetRadio) {
             entries = convertInternetRadio(player);
         } else {
-            entries = convertMediaFileList(player);
+            entries = convertMediaFileList(player, snapshot.files);
         }
 
         float gain = jukeboxService.getGain(player);
 
-        return new PlayQueueInfo(entries, playQueue.getStatus(), playQueue.getRepeatStatus(), playQueue.isShuffleRadioEnabled(), playQueue.isInternetRadioEnabled(), gain);
+        return new PlayQueueInfo(entries, snapshot.version, snapshot.index, playQueue.getStatus(), playQueue.getRepeatStatus(),
+                playQueue.isShuffleRadioEnabled(), snapshot.internetRadio, gain);
     }
 
-    private List<MediaFileEntry> convertMediaFileList(Player player) {
+    private List<MediaFileEntry> convertMediaFileList(Player player, List<MediaFile> files) {
         String url = ""; // NetworkService.getBaseUrl(request);
         Function<MediaFile, String> streamUrlGenerator = file -> url + "stream?player=" + player.getId() + "&id="
                 + file.getId();
@@ -544,7 +586,7 @@ public class PlayQueueService {
                 .addJWTToken(player.getUsername(), url + "ext/stream?player=" + player.getId() + "&id=" + file.getId());
         Function<MediaFile, String> remoteCoverArtUrlGenerator = file -> jwtSecurityService
                 .addJWTToken(player.getUsername(), url + "ext/coverArt.view?id=" + file.getId());
-        return mediaFileService.toMediaFileEntryList(player.getPlayQueue().getFiles(), player.getUsername(), true, true,
+        return mediaFileService.toMediaFileEntryList(files, player.getUsername(), true, true,
                 streamUrlGenerator, remoteStreamUrlGenerator, remoteCoverArtUrlGenerator);
     }
 
@@ -563,9 +605,16 @@ public class PlayQueueService {
             int streamId = -(1 + entries.size());
             Integer streamTrackNumber = entries.size();
             String streamUrl = streamSource.getStreamUrl();
+            String remoteStreamUrl = streamUrl;
+            if (settingsService.isInternetRadioRelay()) {
+                String relayUrl = "internetRadioRelay.view?player=" + player.getId() + "&id=" + radio.getId()
+                        + "&source=" + streamTrackNumber;
+                remoteStreamUrl = jwtSecurityService.addJWTToken(player.getUsername(), "ext/" + relayUrl);
+                streamUrl = relayUrl;
+            }
             entries.add(new MediaFileEntry(streamId, // Entry id
                     streamTrackNumber, // Track number
-                    streamUrl, // Track title (use radio stream URL for now)
+                    streamSource.getStreamUrl(), // Track title (use radio stream URL for now)
                     "", // Track artist
                     radioName, // Album name (use radio name)
                     "Internet Radio", // Genre
@@ -586,7 +635,7 @@ public class PlayQueueService {
                     true, // Present
                     radioHomepageUrl, // Album URL (use radio home page URL)
                     streamUrl, // Stream URL
-                    streamUrl, // Remote stream URL
+                    remoteStreamUrl, // Remote stream URL
                     null, // Cover art URL
                     null // Remote cover art URL
             ));
@@ -594,4 +643,23 @@ public class PlayQueueService {
 
         return entries;
     }
+
+    /**
+     * The state of a play queue at a given version.
+     */
+    private static class Snapshot {
+        private final List<MediaFile> files;
+        private final long version;
+        private final int index;
+        private final boolean internetRadio;
+
+        private Snapshot(PlayQueue playQueue) {
+            synchronized (playQueue) {
+                files = new ArrayList<>(playQueue.getFiles());
+                version = playQueue.getVersion();
+                index = playQueue.getIndex();
+                internetRadio = playQueue.isInternetRadioEnabled();
+            }
+        }
+    }
 }
@@ -30,6 +30,7 @@ import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.domain.User;
 import org.airsonic.player.service.playlist.PlaylistExportHandler;
 import org.airsonic.player.service.playlist.PlaylistImportHandler;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -79,6 +80,7 @@ public class PlaylistService {
     private List<PlaylistImportHandler> importHandlers;
     @Autowired
     private SimpMessagingTemplate brokerTemplate;
+    private SonosCatalogVersion sonosCatalogVersion;
 
     public PlaylistService(
             MediaFileDao mediaFileDao,
@@ -86,7 +88,8 @@ public class PlaylistService {
             SecurityService securityService,
             SettingsService settingsService,
             List<PlaylistExportHandler> exportHandlers,
-            List<PlaylistImportHandler> importHandlers
+            List<PlaylistImportHandler> importHandlers,
+            SonosCatalogVersion sonosCatalogVersion
     ) {
         Assert.notNull(mediaFileDao, "mediaFileDao must not be null");
         Assert.notNull(playlistDao, "playlistDao must not be null");
@@ -94,12 +97,14 @@ public class PlaylistService {
         Assert.notNull(settingsService, "settingsService must not be null");
         Assert.notNull(exportHandlers, "exportHandlers must not be null");
         Assert.notNull(importHandlers, "importHandlers must not be null");
+        Assert.notNull(sonosCatalogVersion, "sonosCatalogVersion must not be null");
         this.mediaFileDao = mediaFileDao;
         this.playlistDao = playlistDao;
         this.securityService = securityService;
         this.settingsService = settingsService;
         this.exportHandlers = exportHandlers;
         this.importHandlers = importHandlers;
+        this.sonosCatalogVersion = sonosCatalogVersion;
     }
 
     public List<Playlist> getAllPlaylists() {
@@ -149,6 +154,7 @@ public class PlaylistService {
 
     public void createPlaylist(Playlist playlist) {
         playlistDao.createPlaylist(playlist);
+        sonosCatalogVersion.favoritesChanged();
         if (playlist.getShared()) {
             runAsync(() -> brokerTemplate.convertAndSend("/topic/playlists/updated", playlist));
         } else {
@@ -159,6 +165,7 @@ public class PlaylistService {
     @CacheEvict(cacheNames = "playlistUsersCache", key = "#playlist.id")
     public void addPlaylistUser(Playlist playlist, String username) {
         playlistDao.addPlaylistUser(playlist.getId(), username);
+        sonosCatalogVersion.favoritesChanged();
         // this might cause dual notifications on the client if the playlist is already public
         runAsync(() -> brokerTemplate.convertAndSendToUser(username, "/queue/playlists/updated", playlist));
     }
@@ -166,6 +173,7 @@ public class PlaylistService {
     @CacheEvict(cacheNames = "playlistUsersCache", key = "#playlist.id")
     public void deletePlaylistUser(Playlist playlist, String username) {
         playlistDao.deletePlaylistUser(playlist.getId(), username);
+        sonosCatalogVersion.favoritesChanged();
         if (!playlist.getShared()) {
             runAsync(() -> brokerTemplate.convertAndSendToUser(username, "/queue/playlists/deleted", playlist.getId()));
         }
@@ -188,6 +196,7 @@ public class PlaylistService {
     @CacheEvict(cacheNames = "playlistCache")
     public void deletePlaylist(int id) {
         playlistDao.deletePlaylist(id);
+        sonosCatalogVersion.favoritesChanged();
         runAsync(() -> brokerTemplate.convertAndSend("/topic/playlists/deleted", id));
     }
 
@@ -203,6 +212,7 @@ public class PlaylistService {
     public void updatePlaylist(Playlist playlist, boolean filesChangedBroadcastContext) {
         Playlist oldPlaylist = getPlaylist(playlist.getId());
         playlistDao.updatePlaylist(playlist);
+        sonosCatalogVersion.favoritesChanged();
         runAsync(() -> {
             BroadcastedPlaylist bp = new BroadcastedPlaylist(playlist, filesChangedBroadcastContext);
             if (playlist.getShared()) {
@@ -19,6 +19,7 @@
  */
 package org.airsonic.player.service;
 
+import com.google.common.util.concurrent.RateLimiter;
 import org.airsonic.player.dao.PodcastDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.PodcastChannel;
@@ -34,6 +35,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -41,6 +43,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
@@ -50,17 +53,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
@@ -84,10 +90,21 @@ public class PodcastService {
     private static final Namespace[] ITUNES_NAMESPACES = {Namespace.getNamespace("http://www.itunes.com/DTDs/Podcast-1.0.dtd"),
         Namespace.getNamespace("http://www.itunes.com/dtds/podcast-1.0.dtd")};
 
+    /**
+     * Minimum time between persisting the progress of an episode download.
+     */
+    private static final long PROGRESS_PERSIST_INTERVAL_MILLIS = 5000L;
+
+    private static final String PARTIAL_DOWNLOAD_SUFFIX = ".part";
+
     private final ExecutorService refreshExecutor;
     private final ExecutorService downloadExecutor;
     private final ScheduledExecutorService scheduledExecutor;
+    private final CloseableHttpClient downloadClient;
+    private final Map<Integer, EpisodeDownload> activeDownloads = new ConcurrentHashMap<>();
+    private final Map<String, HostDownloads> hostDownloads = new HashMap<>();
     private ScheduledFuture<?> scheduledRefresh;
+    private volatile boolean shuttingDown;
     @Autowired
     private PodcastDao podcastDao;
     @Autowired
@@ -108,14 +125,31 @@ public class PodcastService {
             return t;
         };
         refreshExecutor = Executors.newFixedThreadPool(5, threadFactory);
-        downloadExecutor = Executors.newFixedThreadPool(3, threadFactory);
+        // Downloads only get here once the per-host limit lets them start, so the pool grows with them
+        downloadExecutor = Executors.newCachedThreadPool(threadFactory);
         scheduledExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+        // Limited by the per-host limit of the downloads rather than by the connection pool
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(Integer.MAX_VALUE);
+        connectionManager.setDefaultMaxPerRoute(Integer.MAX_VALUE);
+        downloadClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(2 * 60 * 1000) // 2 minutes
+                        .setSocketTimeout(10 * 60 * 1000) // 10 minutes
+                        // Workaround HttpClient circular redirects, which some feeds use (with query parameters)
+                        .setCircularRedirectsAllowed(true)
+                        // Workaround HttpClient not understanding latest RFC-compliant cookie 'expires' attributes
+                        .setCookieSpec(CookieSpecs.STANDARD)
+                        .build())
+                .build();
     }
 
     @PostConstruct
     public void init() {
         try {
-            // Clean up partial downloads.
+            // Resume interrupted downloads.
             getAllChannels()
                 .parallelStream()
                 .map(PodcastChannel::getId)
@@ -123,8 +157,8 @@ public class PodcastService {
                 .flatMap(List::parallelStream)
                 .filter(e -> e.getStatus() == PodcastStatus.DOWNLOADING)
                 .forEach(e -> {
-                    deleteEpisode(e, false);
-                    LOG.info("Deleted Podcast episode '{}' since download was interrupted.", e.getTitle());
+                    LOG.info("Resuming interrupted download of Podcast episode '{}'", e.getTitle());
+                    downloadEpisode(e);
                 });
             schedule();
         } catch (Throwable x) {
@@ -132,6 +166,13 @@ public class PodcastService {
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        // Leave partial downloads in place so that they are resumed on next startup.
+        shuttingDown = true;
+        FileUtil.closeQuietly(downloadClient);
+    }
+
     public synchronized void schedule() {
         Runnable task = () -> {
             LOG.info("Starting scheduled Podcast refresh.");
@@ -216,7 +257,7 @@ public class PodcastService {
      */
     public List<PodcastEpisode> getEpisodes(int channelId) {
         List<PodcastEpisode> episodes = filterAllowed(podcastDao.getEpisodes(channelId));
-        return addMediaFileIdToEpisodes(episodes);
+        return addDownloadProgressToEpisodes(addMediaFileIdToEpisodes(episodes));
     }
 
     /**
@@ -248,7 +289,7 @@ public class PodcastService {
         if (episode.getStatus() == PodcastStatus.DELETED && !includeDeleted) {
             return null;
         }
-        addMediaFileIdToEpisodes(Collections.singletonList(episode));
+        addDownloadProgressToEpisodes(addMediaFileIdToEpisodes(Collections.singletonList(episode)));
         return episode;
     }
 
@@ -265,6 +306,19 @@ public class PodcastService {
         }).collect(Collectors.toList());
     }
 
+    /**
+     * Replaces the persisted download progress with the more recent in-memory progress of active downloads.
+     */
+    private List<PodcastEpisode> addDownloadProgressToEpisodes(List<PodcastEpisode> episodes) {
+        episodes.forEach(episode -> {
+            EpisodeDownload download = activeDownloads.get(episode.getId());
+            if (download != null && episode.getStatus() == PodcastStatus.DOWNLOADING) {
+                episode.setBytesDownloaded(download.getBytesDownloaded());
+            }
+        });
+        return episodes;
+    }
+
     private List<PodcastChannel> addMediaFileIdToChannels(List<PodcastChannel> channels) {
         return channels.stream().map(channel -> {
             try {
@@ -408,8 +462,64 @@ public class PodcastService {
     }
 
     public void downloadEpisode(final PodcastEpisode episode) {
-        Runnable task = () -> doDownloadEpisode(episode);
-        downloadExecutor.submit(task);
+        EpisodeDownload download = new EpisodeDownload(episode);
+        if (activeDownloads.putIfAbsent(episode.getId(), download) != null) {
+            LOG.info("Podcast {} is already being downloaded.", episode.getUrl());
+            return;
+        }
+        submitDownload(download);
+    }
+
+    /**
+     * Starts the download, or queues it behind the downloads from the same host if the host is at its limit.
+     */
+    private void submitDownload(EpisodeDownload download) {
+        String host = getHost(download.getEpisode().getUrl());
+        synchronized (hostDownloads) {
+            HostDownloads downloads = hostDownloads.computeIfAbsent(host, h -> new HostDownloads());
+            if (!downloads.tryStart()) {
+                downloads.waiting.add(download);
+                return;
+            }
+        }
+        startDownload(host, download);
+    }
+
+    private void startDownload(String host, EpisodeDownload download) {
+        downloadExecutor.execute(() -> {
+            try {
+                doDownloadEpisode(download);
+            } finally {
+                activeDownloads.remove(download.getEpisode().getId(), download);
+                finishDownload(host);
+            }
+        });
+    }
+
+    /**
+     * Starts the downloads waiting for the host, as many as its limit allows, in the order they were submitted.
+     */
+    private void finishDownload(String host) {
+        List<EpisodeDownload> next = new ArrayList<>();
+        synchronized (hostDownloads) {
+            HostDownloads downloads = hostDownloads.get(host);
+            downloads.active--;
+            while (!downloads.waiting.isEmpty() && downloads.tryStart()) {
+                next.add(downloads.waiting.poll());
+            }
+            if (downloads.active == 0) {
+                hostDownloads.remove(host);
+            }
+        }
+        next.forEach(download -> startDownload(host, download));
+    }
+
+    private static String getHost(String url) {
+        try {
+            return StringUtils.defaultString(URI.create(url).getHost());
+        } catch (Exception x) {
+            return "";
+        }
     }
 
     private void refreshEpisodes(PodcastChannel channel, List<Element> episodeElements) {
@@ -512,80 +622,169 @@ public class PodcastService {
         return null;
     }
 
-    private void doDownloadEpisode(PodcastEpisode episode) {
-        if (isEpisodeDeleted(episode)) {
+    private void doDownloadEpisode(EpisodeDownload download) {
+        PodcastEpisode episode = download.getEpisode();
+        if (download.isCancelled() || isEpisodeDeleted(episode)) {
             LOG.info("Podcast {} was deleted. Aborting download.", episode.getUrl());
             return;
         }
 
-        LOG.info("Starting to download Podcast from {}", episode.getUrl());
-
         PodcastChannel channel = getChannel(episode.getChannelId());
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectTimeout(2 * 60 * 1000) // 2 minutes
-                .setSocketTimeout(10 * 60 * 1000) // 10 minutes
-                // Workaround HttpClient circular redirects, which some feeds use (with query parameters)
-                .setCircularRedirectsAllowed(true)
-                // Workaround HttpClient not understanding latest RFC-compliant cookie 'expires' attributes
-                .setCookieSpec(CookieSpecs.STANDARD)
-                .build();
-        HttpGet method = new HttpGet(episode.getUrl());
-        method.setConfig(requestConfig);
-        method.addHeader("User-Agent", "Airsonic/" + versionService.getLocalVersion());
-        Path file = getFile(channel, episode);
+        Path file = getEpisodeFile(channel, episode);
+        Path partFile = getPartialFile(file);
 
-        try (CloseableHttpClient client = HttpClients.createDefault();
-                CloseableHttpResponse response = client.execute(method);
-                InputStream in = response.getEntity().getContent();
-                OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+        long offset = 0L;
+        try {
+            offset = Files.exists(partFile) ? Files.size(partFile) : 0L;
+        } catch (IOException x) {
+            LOG.warn("Failed to get size of partial download {}", partFile, x);
+        }
+        if (offset > 0) {
+            LOG.info("Resuming download of Podcast from {} at byte {}", episode.getUrl(), offset);
+        } else {
+            LOG.info("Starting to download Podcast from {}", episode.getUrl());
+        }
+
+        try (CloseableHttpResponse response = requestEpisode(episode, offset)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                // Partial file is stale, start over next time
+                deleteIfExists(partFile);
+                throw new IOException("Server rejected resuming the download at byte " + offset);
+            }
+            if (statusCode >= 400) {
+                throw new IOException("Server returned HTTP status " + statusCode);
+            }
+            boolean append = offset > 0 && statusCode == HttpStatus.SC_PARTIAL_CONTENT;
+            if (!append) {
+                offset = 0L;
+            }
 
             episode.setStatus(PodcastStatus.DOWNLOADING);
-            episode.setBytesDownloaded(0L);
+            episode.setBytesDownloaded(offset);
             episode.setErrorMessage(null);
             episode.setPath(file.toString());
-            podcastDao.updateEpisode(episode);
-
-            byte[] buffer = new byte[8192];
-            long bytesDownloaded = 0;
-            int n;
-            long nextLogCount = 30000L;
-
-            while ((n = in.read(buffer)) != -1) {
-                out.write(buffer, 0, n);
-                bytesDownloaded += n;
-
-                if (bytesDownloaded > nextLogCount) {
-                    episode.setBytesDownloaded(bytesDownloaded);
-                    nextLogCount += 30000L;
-
-                    // Abort download if episode was deleted by user.
-                    if (isEpisodeDeleted(episode)) {
-                        break;
-                    }
-                    podcastDao.updateEpisode(episode);
-                }
+            download.setBytesDownloaded(offset);
+            if (!download.persistProgress()) {
+                LOG.info("Podcast {} was deleted. Aborting download.", episode.getUrl());
+                return;
             }
 
-            if (isEpisodeDeleted(episode)) {
+            long bytesDownloaded = copy(response.getEntity().getContent(), partFile, append, offset, download);
+
+            if (download.isCancelled()) {
                 LOG.info("Podcast {} was deleted. Aborting download.", episode.getUrl());
-                FileUtil.closeQuietly(out);
-                FileUtil.delete(file);
+                deleteIfExists(partFile);
             } else {
+                moveFile(partFile, file);
                 addMediaFileIdToEpisodes(Collections.singletonList(episode));
                 episode.setBytesDownloaded(bytesDownloaded);
-                podcastDao.updateEpisode(episode);
+                if (!download.persistProgress()) {
+                    deleteIfExists(file);
+                    return;
+                }
                 LOG.info("Downloaded {} bytes from Podcast {}", bytesDownloaded, episode.getUrl());
-                FileUtil.closeQuietly(out);
                 updateTags(file, episode);
                 episode.setStatus(PodcastStatus.COMPLETED);
-                podcastDao.updateEpisode(episode);
-                deleteObsoleteEpisodes(channel);
+                if (download.persistProgress()) {
+                    deleteObsoleteEpisodes(channel);
+                }
             }
         } catch (Exception x) {
+            if (shuttingDown) {
+                LOG.info("Download of Podcast {} interrupted by shutdown.", episode.getUrl());
+                return;
+            }
             LOG.warn("Failed to download Podcast from {}", episode.getUrl(), x);
             episode.setStatus(PodcastStatus.ERROR);
             episode.setErrorMessage(getErrorMessage(x));
-            podcastDao.updateEpisode(episode);
+            download.persistProgress();
+        }
+    }
+
+    /**
+     * Requests the episode from the given offset. If the server resumes at another offset than the one asked for,
+     * the episode is requested again from the start.
+     */
+    private CloseableHttpResponse requestEpisode(PodcastEpisode episode, long offset) throws IOException {
+        HttpGet method = new HttpGet(episode.getUrl());
+        method.addHeader("User-Agent", "Airsonic/" + versionService.getLocalVersion());
+        if (offset > 0) {
+            method.addHeader("Range", "bytes=" + offset + "-");
+        }
+        CloseableHttpResponse response = downloadClient.execute(method);
+        if (offset > 0 && response.getStatusLine().getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT
+                && getRangeStart(response) != offset) {
+            LOG.info("Server did not resume Podcast {} at byte {}, starting over", episode.getUrl(), offset);
+            response.close();
+            return requestEpisode(episode, 0L);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the first byte of a partial response, as given by its Content-Range header, or -1 if unknown.
+     */
+    private static long getRangeStart(HttpResponse response) {
+        Header header = response.getFirstHeader("Content-Range");
+        String range = header == null ? "" : header.getValue().trim();
+        try {
+            return Long.parseLong(StringUtils.substringBetween(range, "bytes ", "-").trim());
+        } catch (Exception x) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Copies the response body to the partial file, applying the Podcast bandwidth limit. Progress is kept in
+     * memory and only persisted every {@link #PROGRESS_PERSIST_INTERVAL_MILLIS}.
+     *
+     * @return The total number of bytes of the episode on disk.
+     */
+    private long copy(InputStream in, Path partFile, boolean append, long offset, EpisodeDownload download) throws IOException {
+        RateLimiter rateLimiter = settingsService.getPodcastDownloadBitrateLimiter();
+        long bytesDownloaded = offset;
+        long nextPersist = System.currentTimeMillis() + PROGRESS_PERSIST_INTERVAL_MILLIS;
+
+        try (InputStream input = in;
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(partFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING))) {
+            byte[] buffer = new byte[0x10000];
+            int n;
+            while (!download.isCancelled() && (n = input.read(buffer)) != -1) {
+                if (n > 0) {
+                    rateLimiter.acquire(n);
+                }
+                out.write(buffer, 0, n);
+                bytesDownloaded += n;
+                download.setBytesDownloaded(bytesDownloaded);
+
+                long now = System.currentTimeMillis();
+                if (now >= nextPersist) {
+                    nextPersist = now + PROGRESS_PERSIST_INTERVAL_MILLIS;
+                    download.getEpisode().setBytesDownloaded(bytesDownloaded);
+                    download.persistProgress();
+                }
+            }
+        }
+
+        return bytesDownloaded;
+    }
+
+    private static void moveFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException x) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteIfExists(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException x) {
+            LOG.warn("Could not delete file {}", file, x);
         }
     }
 
@@ -634,6 +833,23 @@ public class PodcastService {
         }
     }
 
+    /**
+     * Returns the file an episode is downloaded to, reusing the previous location if a partial download exists.
+     */
+    private Path getEpisodeFile(PodcastChannel channel, PodcastEpisode episode) {
+        if (episode.getPath() != null) {
+            Path previous = Paths.get(episode.getPath());
+            if (Files.exists(getPartialFile(previous)) && securityService.isWriteAllowed(previous)) {
+                return previous;
+            }
+        }
+        return getFile(channel, episode);
+    }
+
+    private static Path getPartialFile(Path file) {
+        return file.resolveSibling(file.getFileName() + PARTIAL_DOWNLOAD_SUFFIX);
+    }
+
     private synchronized Path getFile(PodcastChannel channel, PodcastEpisode episode) {
 
         Path channelDir = getChannelDirectory(channel);
@@ -650,7 +866,7 @@ public class PodcastService {
         }
 
         Path file = channelDir.resolve(filename + "." + extension);
-        for (int i = 0; Files.exists(file); i++) {
+        for (int i = 0; Files.exists(file) || Files.exists(getPartialFile(file)); i++) {
             file = channelDir.resolve(filename + i + "." + extension);
         }
 
@@ -711,9 +927,17 @@ public class PodcastService {
             return;
         }
 
+        // Abort any ongoing download before the episode is updated.
+        EpisodeDownload download = activeDownloads.get(episode.getId());
+        if (download != null) {
+            download.cancel();
+        }
+
         // Delete file.
         if (episode.getPath() != null) {
-            FileUtil.delete(Paths.get(episode.getPath()));
+            Path file = Paths.get(episode.getPath());
+            deleteIfExists(file);
+            deleteIfExists(getPartialFile(file));
         }
 
         if (logicalDelete) {
@@ -725,6 +949,70 @@ public class PodcastService {
         }
     }
 
+    /**
+     * The downloads from a single host, those that are running and those that wait for the host's limit.
+     */
+    private class HostDownloads {
+        private final Queue<EpisodeDownload> waiting = new ArrayDeque<>();
+        private int active;
+
+        boolean tryStart() {
+            int limit = settingsService.getPodcastDownloadsPerHost();
+            if (limit > 0 && active >= limit) {
+                return false;
+            }
+            active++;
+            return true;
+        }
+    }
+
+    /**
+     * An episode download in progress. Holds the in-memory progress and the cancellation token that is
+     * signalled when the episode is deleted.
+     */
+    private class EpisodeDownload {
+        private final PodcastEpisode episode;
+        private volatile long bytesDownloaded;
+        private volatile boolean cancelled;
+
+        EpisodeDownload(PodcastEpisode episode) {
+            this.episode = episode;
+        }
+
+        PodcastEpisode getEpisode() {
+            return episode;
+        }
+
+        long getBytesDownloaded() {
+            return bytesDownloaded;
+        }
+
+        void setBytesDownloaded(long bytesDownloaded) {
+            this.bytesDownloaded = bytesDownloaded;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Writes the episode to the database, unless the download was cancelled.
+         *
+         * @return Whether the episode was written.
+         */
+        synchronized boolean persistProgress() {
+            if (cancelled) {
+                return false;
+            }
+            podcastDao.updateEpisode(episode);
+            return true;
+        }
+    }
+
     public void setPodcastDao(PodcastDao podcastDao) {
         this.podcastDao = podcastDao;
     }
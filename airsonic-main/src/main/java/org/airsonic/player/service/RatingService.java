@@ -22,6 +22,7 @@ package org.airsonic.player.service;
 import org.airsonic.player.dao.RatingDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -44,6 +45,8 @@ public class RatingService {
     private SecurityService securityService;
     @Autowired
     private MediaFileService mediaFileService;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
 
     /**
      * Returns the highest rated albums.
@@ -71,6 +74,7 @@ public class RatingService {
      */
     public void setRatingForUser(String username, MediaFile mediaFile, Integer rating) {
         ratingDao.setRatingForUser(username, mediaFile, rating);
+        sonosCatalogVersion.favoritesChanged();
     }
 
     /**
@@ -78,6 +78,8 @@ public class SettingsService {
     private static final String KEY_COVER_ART_SOURCE = "CoverArtSource";
     private static final String KEY_COVER_ART_CONCURRENCY = "CoverArtConcurrency";
     private static final String KEY_COVER_ART_QUALITY = "CoverArtQuality";
+    private static final String KEY_VIDEO_PROBE_CONCURRENCY = "VideoProbeConcurrency";
+    private static final String KEY_COVER_ART_PREGENERATION = "CoverArtPregeneration";
     private static final String KEY_WELCOME_TITLE = "WelcomeTitle";
     private static final String KEY_WELCOME_SUBTITLE = "WelcomeSubtitle";
     private static final String KEY_WELCOME_MESSAGE = "WelcomeMessage2";
@@ -97,12 +99,15 @@ public class SettingsService {
     private static final String KEY_PODCAST_FOLDER = "PodcastFolder";
     private static final String KEY_PODCAST_EPISODE_RETENTION_COUNT = "PodcastEpisodeRetentionCount";
     private static final String KEY_PODCAST_EPISODE_DOWNLOAD_COUNT = "PodcastEpisodeDownloadCount";
+    private static final String KEY_PODCAST_DOWNLOAD_BITRATE_LIMIT = "PodcastDownloadBitrateLimit";
+    private static final String KEY_PODCAST_DOWNLOADS_PER_HOST = "PodcastDownloadsPerHost";
     private static final String KEY_DOWNLOAD_BITRATE_LIMIT = "DownloadBitrateLimit";
     private static final String KEY_UPLOAD_BITRATE_LIMIT = "UploadBitrateLimit";
     private static final String KEY_DOWNSAMPLING_COMMAND = "DownsamplingCommand4";
     private static final String KEY_HLS_COMMAND = "HlsCommand3";
+    private static final String KEY_HLS_SEGMENTER_COMMAND = "HlsSegmenterCommand";
     private static final String KEY_JUKEBOX_COMMAND = "JukeboxCommand2";
-    private static final String KEY_VIDEO_IMAGE_COMMAND = "VideoImageCommand";
+    private static final String KEY_VIDEO_FRAMES_COMMAND = "VideoFramesCommand";
     private static final String KEY_LDAP_ENABLED = "LdapEnabled";
     private static final String KEY_LDAP_URL = "LdapUrl";
     private static final String KEY_LDAP_MANAGER_DN = "LdapManagerDn";
@@ -113,6 +118,7 @@ public class SettingsService {
     private static final String KEY_SETTINGS_CHANGED = "SettingsChanged";
     private static final String KEY_ORGANIZE_BY_FOLDER_STRUCTURE = "OrganizeByFolderStructure";
     private static final String KEY_SORT_ALBUMS_BY_YEAR = "SortAlbumsByYear";
+    private static final String KEY_INTERNET_RADIO_RELAY = "InternetRadioRelay";
     private static final String KEY_DLNA_ENABLED = "DlnaEnabled";
     private static final String KEY_DLNA_SERVER_NAME = "DlnaServerName";
     private static final String KEY_DLNA_BASE_LAN_URL = "DlnaBaseLANURL";
@@ -169,7 +175,9 @@ public class SettingsService {
     private static final String DEFAULT_COVER_ART_FILE_TYPES = "cover.jpg cover.png cover.gif folder.jpg jpg jpeg gif png";
     private static final String DEFAULT_COVER_ART_SOURCE = CoverArtSource.FILETAG.name();
     private static final int DEFAULT_COVER_ART_CONCURRENCY = 4;
+    private static final boolean DEFAULT_COVER_ART_PREGENERATION = false;
     private static final int DEFAULT_COVER_ART_QUALITY = 90;
+    private static final int DEFAULT_VIDEO_PROBE_CONCURRENCY = 2;
     private static final String DEFAULT_WELCOME_TITLE = "Welcome to Airsonic!";
     private static final String DEFAULT_WELCOME_SUBTITLE = null;
     private static final String DEFAULT_WELCOME_MESSAGE = "__Welcome to Airsonic!__\n" +
@@ -196,12 +204,15 @@ public class SettingsService {
     private static final String DEFAULT_PODCAST_FOLDER = Util.getDefaultPodcastFolder();
     private static final int DEFAULT_PODCAST_EPISODE_RETENTION_COUNT = 10;
     private static final int DEFAULT_PODCAST_EPISODE_DOWNLOAD_COUNT = 1;
+    private static final long DEFAULT_PODCAST_DOWNLOAD_BITRATE_LIMIT = 0;
+    private static final int DEFAULT_PODCAST_DOWNLOADS_PER_HOST = 2;
     private static final long DEFAULT_DOWNLOAD_BITRATE_LIMIT = 0;
     private static final long DEFAULT_UPLOAD_BITRATE_LIMIT = 0;
     private static final String DEFAULT_DOWNSAMPLING_COMMAND = "ffmpeg -i %s -map 0:0 -b:a %bk -v 0 -f mp3 -";
     private static final String DEFAULT_HLS_COMMAND = "ffmpeg -ss %o -t %d -i %s -async 1 -b:v %bk -s %wx%h -ar 44100 -ac 2 -v 0 -f mpegts -c:v libx264 -preset superfast -c:a libmp3lame -threads 0 -";
+    private static final String DEFAULT_HLS_SEGMENTER_COMMAND = "ffmpeg -ss %o -i %s -output_ts_offset %o -async 1 -b:v %bk -s %wx%h -ar 44100 -ac 2 -v 0 -c:v libx264 -preset superfast -c:a libmp3lame -threads 0 -force_key_frames expr:gte(t,n_forced*10) -f segment -segment_time 10 -segment_format mpegts -segment_start_number %n -segment_list %p/segments.csv -segment_list_type csv %p/%05d.ts";
     private static final String DEFAULT_JUKEBOX_COMMAND = "ffmpeg -ss %o -i %s -map 0:0 -v 0 -ar 44100 -ac 2 -f s16be -";
-    private static final String DEFAULT_VIDEO_IMAGE_COMMAND = "ffmpeg -r 1 -ss %o -t 1 -i %s -s %wx%h -v 0 -f mjpeg -";
+    private static final String DEFAULT_VIDEO_FRAMES_COMMAND = "ffmpeg -skip_frame nokey -i %s -vf fps=1/%i,scale=-2:%h -vsync vfr -q:v 3 -v 0 %p/%04d.jpg";
     private static final boolean DEFAULT_LDAP_ENABLED = false;
     private static final String DEFAULT_LDAP_URL = "ldap://host.domain.com:389/cn=Users,dc=domain,dc=com";
     private static final String DEFAULT_LDAP_MANAGER_DN = null;
@@ -212,6 +223,7 @@ public class SettingsService {
     private static final long DEFAULT_SETTINGS_CHANGED = 0L;
     private static final boolean DEFAULT_ORGANIZE_BY_FOLDER_STRUCTURE = true;
     private static final boolean DEFAULT_SORT_ALBUMS_BY_YEAR = true;
+    private static final boolean DEFAULT_INTERNET_RADIO_RELAY = false;
     private static final boolean DEFAULT_DLNA_ENABLED = false;
     private static final String DEFAULT_DLNA_SERVER_NAME = "Airsonic";
     private static final String DEFAULT_DLNA_BASE_LAN_URL = null;
@@ -271,6 +283,7 @@ public class SettingsService {
     private final ConcurrentMap<String, List<MusicFolder>> cachedMusicFoldersPerUser = new ConcurrentHashMap<>();
     private RateLimiter downloadRateLimiter;
     private RateLimiter uploadRateLimiter;
+    private RateLimiter podcastDownloadRateLimiter;
     private Pattern excludePattern;
 
     // Array of obsolete properties. Used to clean property file.
@@ -280,7 +293,8 @@ public class SettingsService {
             "CoverArtFileTypes", "UrlRedirectCustomHost", "CoverArtLimit", "StreamPort",
             "PortForwardingEnabled", "RewriteUrl", "UrlRedirectCustomUrl", "UrlRedirectContextPath",
             "UrlRedirectFrom", "UrlRedirectionEnabled", "UrlRedirectType", "Port", "HttpsPort",
-            "MediaLibraryStatistics", "LastScanned", "database.config.type", "DatabaseConfigType"
+            "MediaLibraryStatistics", "LastScanned", "database.config.type", "DatabaseConfigType",
+            "VideoImageCommand"
             );
 
     public static Map<String, String> getMigratedPropertyKeys() {
@@ -625,6 +639,22 @@ public class SettingsService {
         setInt(KEY_COVER_ART_QUALITY, quality);
     }
 
+    public int getVideoProbeConcurrency() {
+        return getInt(KEY_VIDEO_PROBE_CONCURRENCY, DEFAULT_VIDEO_PROBE_CONCURRENCY);
+    }
+
+    public void setVideoProbeConcurrency(Integer concurrency) {
+        setInt(KEY_VIDEO_PROBE_CONCURRENCY, concurrency);
+    }
+
+    public boolean isCoverArtPregeneration() {
+        return getBoolean(KEY_COVER_ART_PREGENERATION, DEFAULT_COVER_ART_PREGENERATION);
+    }
+
+    public void setCoverArtPregeneration(boolean pregeneration) {
+        setBoolean(KEY_COVER_ART_PREGENERATION, pregeneration);
+    }
+
     public String getWelcomeTitle() {
         return StringUtils.trimToNull(getProperty(KEY_WELCOME_TITLE, DEFAULT_WELCOME_TITLE));
     }
@@ -785,6 +815,42 @@ public class SettingsService {
         setProperty(KEY_PODCAST_FOLDER, folder);
     }
 
+    /**
+     * @return The Podcast download bitrate limit in Kbit/s. Zero if unlimited.
+     */
+    public long getPodcastDownloadBitrateLimit() {
+        return getLong(KEY_PODCAST_DOWNLOAD_BITRATE_LIMIT, DEFAULT_PODCAST_DOWNLOAD_BITRATE_LIMIT);
+    }
+
+    public RateLimiter getPodcastDownloadBitrateLimiter() {
+        if (podcastDownloadRateLimiter == null) {
+            podcastDownloadRateLimiter = RateLimiter.create(adjustBitrateLimit(getPodcastDownloadBitrateLimit()));
+        }
+        return podcastDownloadRateLimiter;
+    }
+
+    /**
+     * @param limit The Podcast download bitrate limit in Kbit/s. Zero if unlimited.
+     */
+    public void setPodcastDownloadBitrateLimit(long limit) {
+        setLong(KEY_PODCAST_DOWNLOAD_BITRATE_LIMIT, limit);
+        getPodcastDownloadBitrateLimiter().setRate(adjustBitrateLimit(limit));
+    }
+
+    /**
+     * Returns the maximum number of concurrent Podcast episode downloads from a single host (0 for no limit).
+     */
+    public int getPodcastDownloadsPerHost() {
+        return getInt(KEY_PODCAST_DOWNLOADS_PER_HOST, DEFAULT_PODCAST_DOWNLOADS_PER_HOST);
+    }
+
+    /**
+     * Sets the maximum number of concurrent Podcast episode downloads from a single host (0 for no limit).
+     */
+    public void setPodcastDownloadsPerHost(int count) {
+        setInt(KEY_PODCAST_DOWNLOADS_PER_HOST, count);
+    }
+
     /**
      * @return The download bitrate limit in Kbit/s. Zero if unlimited.
      */
@@ -857,12 +923,20 @@ public class SettingsService {
         setProperty(KEY_HLS_COMMAND, command);
     }
 
+    public String getHlsSegmenterCommand() {
+        return getProperty(KEY_HLS_SEGMENTER_COMMAND, DEFAULT_HLS_SEGMENTER_COMMAND);
+    }
+
+    public void setHlsSegmenterCommand(String command) {
+        setProperty(KEY_HLS_SEGMENTER_COMMAND, command);
+    }
+
     String getJukeboxCommand() {
         return getProperty(KEY_JUKEBOX_COMMAND, DEFAULT_JUKEBOX_COMMAND);
     }
 
-    public String getVideoImageCommand() {
-        return getProperty(KEY_VIDEO_IMAGE_COMMAND, DEFAULT_VIDEO_IMAGE_COMMAND);
+    public String getVideoFramesCommand() {
+        return getProperty(KEY_VIDEO_FRAMES_COMMAND, DEFAULT_VIDEO_FRAMES_COMMAND);
     }
 
     public boolean isLdapEnabled() {
@@ -944,6 +1018,18 @@ public class SettingsService {
         setBoolean(KEY_ORGANIZE_BY_FOLDER_STRUCTURE, b);
     }
 
+    /**
+     * Returns whether internet radio stations are relayed through the server, rather than played from the
+     * station directly.
+     */
+    public boolean isInternetRadioRelay() {
+        return getBoolean(KEY_INTERNET_RADIO_RELAY, DEFAULT_INTERNET_RADIO_RELAY);
+    }
+
+    public void setInternetRadioRelay(boolean b) {
+        setBoolean(KEY_INTERNET_RADIO_RELAY, b);
+    }
+
     public boolean isSortAlbumsByYear() {
         return getBoolean(KEY_SORT_ALBUMS_BY_YEAR, DEFAULT_SORT_ALBUMS_BY_YEAR);
     }
@@ -30,11 +30,11 @@ import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.domain.SonosLink;
 import org.airsonic.player.service.search.IndexType;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.airsonic.player.service.sonos.SonosHelper;
 import org.airsonic.player.service.sonos.SonosLinkSecurityInterceptor;
 import org.airsonic.player.service.sonos.SonosServiceRegistration;
 import org.airsonic.player.service.sonos.SonosSoapFault;
-import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
@@ -115,6 +115,15 @@ public class SonosService implements SonosSoap {
     private SonosServiceRegistration registration;
     @Autowired
     private SonosLinkDao sonosLinkDao;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
+
+    /**
+     * Rendered metadata pages, keyed by user, base url, container id, index, count and catalog/favorites
+     * versions. A version change makes all older entries unreachable, they then age out.
+     */
+    private final Cache<List<Object>, MediaList> mediaListCache = CacheBuilder.newBuilder()
+            .maximumSize(2000).expireAfterWrite(1, TimeUnit.HOURS).<List<Object>, MediaList>build();
 
     /**
      * The context for the request. This is used to get the Auth information
@@ -172,9 +181,8 @@ public class SonosService implements SonosSoap {
     @Override
     public LastUpdate getLastUpdate() {
         LastUpdate result = new LastUpdate();
-        // Effectively disabling caching
-        result.setCatalog(RandomStringUtils.randomAlphanumeric(8));
-        result.setFavorites(RandomStringUtils.randomAlphanumeric(8));
+        result.setCatalog(String.valueOf(sonosCatalogVersion.getCatalog()));
+        result.setFavorites(String.valueOf(sonosCatalogVersion.getFavorites()));
         return result;
     }
 
@@ -188,6 +196,20 @@ public class SonosService implements SonosSoap {
 
         LOG.debug("getMetadata: id={} index={} count={} recursive={}", id, index, count, parameters.isRecursive());
 
+        List<Object> cacheKey = null;
+        if (isCacheable(id)) {
+            cacheKey = Arrays.asList(username, NetworkService.getBaseUrl(request), id, index, count,
+                    sonosCatalogVersion.getCatalog(), sonosCatalogVersion.getFavorites());
+            MediaList cached = mediaListCache.getIfPresent(cacheKey);
+            if (cached != null) {
+                LOG.debug("getMetadata cached result: id={} index={} count={} total={}", id, cached.getIndex(),
+                        cached.getCount(), cached.getTotal());
+                GetMetadataResponse response = new GetMetadataResponse();
+                response.setGetMetadataResult(cached);
+                return response;
+            }
+        }
+
         List<? extends AbstractMedia> media = null;
         MediaList mediaList = null;
 
@@ -255,6 +277,9 @@ public class SonosService implements SonosSoap {
         if (mediaList == null) {
             mediaList = SonosHelper.createSubList(index, count, media);
         }
+        if (cacheKey != null) {
+            mediaListCache.put(cacheKey, mediaList);
+        }
 
         LOG.debug("getMetadata result: id={} index={} count={} total={}", id, mediaList.getIndex(),
                 mediaList.getCount(), mediaList.getTotal());
@@ -264,6 +289,21 @@ public class SonosService implements SonosSoap {
         return response;
     }
 
+    /**
+     * Shuffles, radios, album lists and podcasts change without a catalog or favorites version change, so
+     * they are always rendered fresh.
+     */
+    private static boolean isCacheable(String id) {
+        return !ID_SHUFFLE.equals(id)
+                && !ID_PODCASTS.equals(id)
+                && !id.startsWith(ID_SHUFFLE_MUSICFOLDER_PREFIX)
+                && !id.startsWith(ID_SHUFFLE_ARTIST_PREFIX)
+                && !id.startsWith(ID_SHUFFLE_ALBUMLIST_PREFIX)
+                && !id.startsWith(ID_RADIO_ARTIST_PREFIX)
+                && !id.startsWith(ID_ALBUMLIST_PREFIX)
+                && !id.startsWith(ID_PODCAST_CHANNEL_PREFIX);
+    }
+
     @Override
     public GetExtendedMetadataResponse getExtendedMetadata(GetExtendedMetadata parameters) {
         LOG.debug("getExtendedMetadata: {}", parameters.getId());
@@ -543,6 +583,14 @@ public class SonosService implements SonosSoap {
         this.sonosHelper = sonosHelper;
     }
 
+    public void setSonosCatalogVersion(SonosCatalogVersion sonosCatalogVersion) {
+        this.sonosCatalogVersion = sonosCatalogVersion;
+    }
+
+    public void setContext(WebServiceContext context) {
+        this.context = context;
+    }
+
     @Override
     public RateItemResponse rateItem(RateItem parameters) {
         return null;
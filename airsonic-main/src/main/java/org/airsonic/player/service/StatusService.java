@@ -27,6 +27,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -34,9 +37,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -58,10 +61,10 @@ public class StatusService {
     private SettingsService settingsService;
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    private BroadcastService broadcastService;
 
-    // cleanup task to remove stale remote plays (every 3 hours)
-    private Object cleanup = Executors.newSingleThreadScheduledExecutor()
-            .scheduleWithFixedDelay(() -> cleanupRemotePlays(), 3, 3, TimeUnit.HOURS);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(StatusService::newThread);
 
     private final List<TransferStatus> streamStatuses = Collections.synchronizedList(new ArrayList<>());
     private final List<TransferStatus> downloadStatuses = Collections.synchronizedList(new ArrayList<>());
@@ -72,6 +75,28 @@ public class StatusService {
     // Maps from player ID to latest inactive stream status.
     private final Map<Integer, TransferStatus> inactiveStreamStatuses = new ConcurrentHashMap<>();
 
+    private static Thread newThread(Runnable r) {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        t.setName("StatusService");
+        return t;
+    }
+
+    @PostConstruct
+    public void init() {
+        // cleanup task to remove stale remote plays (every 3 hours)
+        scheduler.scheduleWithFixedDelay(this::cleanupRemotePlays, 3, 3, TimeUnit.HOURS);
+
+        // samples the transfer histories, so that the transferring threads don't have to
+        scheduler.scheduleAtFixedRate(this::sampleTransfers, TransferStatus.SAMPLE_INTERVAL_MILLIS,
+                TransferStatus.SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
     public TransferStatus createStreamStatus(Player player) {
         return createStatus(player, streamStatuses);
     }
@@ -136,6 +161,12 @@ public class StatusService {
         return new ArrayList<>(uploadStatuses);
     }
 
+    public void sampleTransfers() {
+        streamStatuses.forEach(TransferStatus::sample);
+        downloadStatuses.forEach(TransferStatus::sample);
+        uploadStatuses.forEach(TransferStatus::sample);
+    }
+
     public void cleanupRemotePlays() {
         Set<PlayStatus> expired = remotePlays.parallelStream().filter(PlayStatus::isExpired).collect(Collectors.toSet());
         expired.forEach(e -> {
@@ -173,7 +204,8 @@ public class StatusService {
     }
 
     private void broadcast(PlayStatus status, String location) {
-        CompletableFuture.runAsync(() -> {
+        // Sent in order rather than coalesced, a transfer removes one play and adds the next when its song changes
+        broadcastService.send("nowPlaying/" + status.getTransferId(), () -> {
             NowPlayingInfo info = NowPlayingInfo.createForBroadcast(status, settingsService);
 
             if (info != null) {
@@ -209,4 +241,8 @@ public class StatusService {
     public void setMessagingTemplate(SimpMessagingTemplate messagingTemplate) {
         this.messagingTemplate = messagingTemplate;
     }
+
+    public void setBroadcastService(BroadcastService broadcastService) {
+        this.broadcastService = broadcastService;
+    }
 }
@@ -455,6 +455,22 @@ public class TranscodingService {
                 parameters.getMediaFile(), null);
     }
 
+    /**
+     * Returns a downsampled input stream to the given stream, such as an internet radio station. The stream is
+     * fed to the downsampling command through its standard input.
+     *
+     * @param in         The stream to downsample.
+     * @param maxBitRate The bit rate to downsample to, in kbps.
+     * @param title      The title of the stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    public InputStream getDownsampledInputStream(InputStream in, int maxBitRate, String title) throws IOException {
+        String command = settingsService.getDownsamplingCommand().replace("%s", "-");
+        MediaFile mediaFile = new MediaFile();
+        mediaFile.setTitle(title);
+        return createTranscodeInputStream(command, maxBitRate, null, mediaFile, in);
+    }
+
     /**
      * Returns whether downsampling is supported (i.e., whether ffmpeg is installed or not.)
      *
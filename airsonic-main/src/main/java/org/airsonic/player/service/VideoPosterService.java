@@ -0,0 +1,237 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.io.InputStreamReaderThread;
+import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.StringUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts still frames from videos, for posters and previews. The frames of a video are extracted once, by a
+ * single transcoder run that only decodes keyframes, and are then kept on disk. Every poster size and preview
+ * offset is served from these frames.
+ * <p/>
+ * Extraction runs in the background, so that callers never wait for it. Videos that frames could not be extracted
+ * from are remembered until they change, rather than extracted again for every request.
+ */
+@Service
+public class VideoPosterService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VideoPosterService.class);
+
+    /**
+     * The number of frames extracted from a video, evenly spread over its duration.
+     */
+    public static final int FRAME_COUNT = 50;
+
+    /**
+     * The height of the extracted frames. Larger posters are scaled up from it.
+     */
+    private static final int FRAME_HEIGHT = 360;
+
+    private static final int MIN_FRAME_INTERVAL = 5;
+    private static final long EXTRACTION_TIMEOUT_MINUTES = 5;
+    private static final int EXTRACTION_THREADS = 2;
+
+    private final Set<Path> extractions = ConcurrentHashMap.newKeySet();
+    private final Set<Path> failures = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(EXTRACTION_THREADS, EXTRACTION_THREADS, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), VideoPosterService::newThread);
+
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private TranscodingService transcodingService;
+
+    public VideoPosterService() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static Thread newThread(Runnable r) {
+        Thread t = Executors.defaultThreadFactory().newThread(r);
+        t.setDaemon(true);
+        t.setName("VideoFrameExtractor");
+        return t;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the number of seconds between the extracted frames of the given video.
+     */
+    public int getFrameInterval(MediaFile video) {
+        Double duration = video.getDuration();
+        if (duration == null) {
+            return MIN_FRAME_INTERVAL;
+        }
+        return Math.max(MIN_FRAME_INTERVAL, (int) Math.round(duration / FRAME_COUNT));
+    }
+
+    /**
+     * Returns the index of the extracted frame closest to the given offset.
+     */
+    public int getFrameIndex(MediaFile video, int offset) {
+        int index = Math.round((float) Math.max(0, offset) / getFrameInterval(video));
+        if (video.getDuration() != null) {
+            index = Math.min(index, (int) (video.getDuration() / getFrameInterval(video)));
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether the frames of the given video are being extracted, starting to extract them in the background
+     * if they haven't been yet.
+     *
+     * @param video The video.
+     * @return Whether the frames are being extracted, {@code false} once they are extracted or could not be.
+     */
+    public boolean isExtracting(MediaFile video) {
+        Path directory = getFrameDirectory(video);
+        if (Files.exists(directory) || failures.contains(directory)) {
+            return false;
+        }
+        if (extractions.add(directory)) {
+            executor.execute(() -> {
+                try {
+                    extract(video, directory);
+                } catch (Exception e) {
+                    LOG.warn("Failed to extract frames from {}", video.getFile(), e);
+                    failures.add(directory);
+                } finally {
+                    extractions.remove(directory);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Returns the extracted frame closest to the given offset.
+     *
+     * @param video  The video.
+     * @param offset The offset, in seconds.
+     * @return The frame, or {@code null} if the frames are not extracted.
+     */
+    public Path getFrame(MediaFile video, int offset) {
+        Path directory = getFrameDirectory(video);
+        // Short videos, or videos with few keyframes, may not have a frame for every offset
+        for (int index = getFrameIndex(video, offset); index >= 0; index--) {
+            Path frame = directory.resolve(String.format("%04d.jpg", index + 1));
+            if (Files.exists(frame)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private void extract(MediaFile video, Path directory) throws IOException, InterruptedException {
+        Path tmp = directory.resolveSibling(directory.getFileName() + ".tmp");
+        try {
+            if (Files.exists(tmp)) {
+                FileUtil.delete(tmp);
+            }
+            Files.createDirectories(tmp);
+
+            Map<Character, String> values = Map.of(
+                    's', video.getFile().toAbsolutePath().toString(),
+                    'i', String.valueOf(getFrameInterval(video)),
+                    'h', String.valueOf(FRAME_HEIGHT),
+                    'p', tmp.toString());
+            List<String> command = new ArrayList<>();
+            for (String arg : StringUtil.split(settingsService.getVideoFramesCommand())) {
+                command.add(StringUtil.replacePlaceholders(arg, values));
+            }
+            command.set(0, transcodingService.getTranscodeDirectory().resolve(command.get(0)).toString());
+
+            LOG.debug("Extracting video frames: {}", command.stream().collect(Collectors.joining("][", "[", "]")));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            process.getOutputStream().close();
+            new InputStreamReaderThread(process.getInputStream(), command.get(0), true).start();
+            if (!process.waitFor(EXTRACTION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                process.destroy();
+                throw new IOException("Timed out extracting frames from " + video.getFile());
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("Frame extraction from " + video.getFile() + " exited with " + process.exitValue());
+            }
+            if (!Files.exists(tmp.resolve(String.format("%04d.jpg", 1)))) {
+                throw new IOException("No frames extracted from " + video.getFile());
+            }
+
+            // Publish the frames all at once, so that a partial extraction is never used
+            try {
+                Files.move(tmp, directory, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, directory);
+            }
+        } catch (IOException e) {
+            FileUtil.delete(tmp);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            FileUtil.delete(tmp);
+            throw e;
+        }
+        deleteOldFrames(video, directory);
+    }
+
+    /**
+     * Deletes the frames extracted from the video before it last changed.
+     */
+    private void deleteOldFrames(MediaFile video, Path directory) throws IOException {
+        String prefix = DigestUtils.md5Hex(video.getPath()) + "-";
+        try (Stream<Path> directories = Files.list(directory.getParent())) {
+            directories.filter(d -> d.getFileName().toString().startsWith(prefix) && !d.equals(directory))
+                    .forEach(FileUtil::delete);
+        }
+    }
+
+    private Path getFrameDirectory(MediaFile video) {
+        String key = DigestUtils.md5Hex(video.getPath()) + "-" + video.getChanged().toEpochMilli();
+        return SettingsService.getAirsonicHome().resolve("videoframes").resolve(key);
+    }
+}
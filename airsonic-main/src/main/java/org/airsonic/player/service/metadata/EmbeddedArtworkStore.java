@@ -0,0 +1,140 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.metadata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.FileUtil;
+import org.airsonic.player.util.StringUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jaudiotagger.tag.images.Artwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of images embedded in audio files. Each image is extracted once, and is stored under
+ * the digest of its bytes so that albums sharing the same artwork share a single file. Cover art can then be
+ * served from the store without reading the tags of the audio file again.
+ */
+@Component
+public class EmbeddedArtworkStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedArtworkStore.class);
+
+    @Autowired
+    private JaudiotaggerParser parser;
+
+    /**
+     * The stored image of recently seen audio files, keyed by path and modification time.
+     */
+    private final Cache<String, Optional<Path>> extracted = CacheBuilder.newBuilder().maximumSize(10000).build();
+
+    /**
+     * Returns the image embedded in the given audio file, extracting it into the store if it isn't there yet.
+     *
+     * @param audioFile The audio file.
+     * @return The stored image, or {@code null} if the file has no embedded image or it could not be read.
+     */
+    public Path getArtwork(Path audioFile) {
+        String key = audioFile + "@" + FileUtil.lastModified(audioFile).toEpochMilli();
+        try {
+            return extracted.get(key, () -> Optional.ofNullable(extract(audioFile))).orElse(null);
+        } catch (ExecutionException | RuntimeException e) {
+            LOG.info("Failed to extract cover art from {}", audioFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the stored images that are no longer referenced, so that the store doesn't keep every image that was
+     * ever replaced. Images stored since the given instant are kept, as they may not have been persisted yet.
+     *
+     * @param referenced   The cover art paths in use.
+     * @param storedBefore Only images stored before this instant are deleted.
+     * @return The number of deleted images.
+     */
+    public int deleteUnreferenced(Collection<Path> referenced, Instant storedBefore) {
+        Path directory = getDirectory();
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        Set<Path> unreferenced;
+        try (Stream<Path> files = Files.walk(directory)) {
+            unreferenced = files.filter(Files::isRegularFile)
+                    .filter(file -> !referenced.contains(file))
+                    .filter(file -> FileUtil.lastModified(file).isBefore(storedBefore))
+                    .collect(Collectors.toSet());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to list cover art in {}", directory, e);
+            return 0;
+        }
+        unreferenced.forEach(FileUtil::delete);
+        extracted.asMap().values().removeIf(stored -> stored.filter(unreferenced::contains).isPresent());
+        return unreferenced.size();
+    }
+
+    private Path extract(Path audioFile) throws Exception {
+        Artwork artwork = parser.getArtwork(audioFile);
+        if (artwork == null || artwork.getBinaryData() == null || artwork.getBinaryData().length == 0) {
+            return null;
+        }
+
+        byte[] data = artwork.getBinaryData();
+        String digest = DigestUtils.sha256Hex(data);
+        String suffix = Optional.ofNullable(StringUtil.getSuffix(artwork.getMimeType())).orElse("jpg");
+        Path stored = getDirectory().resolve(digest.substring(0, 2)).resolve(digest + "." + suffix);
+
+        if (!Files.exists(stored)) {
+            Files.createDirectories(stored.getParent());
+            // Write to a temporary file first, as scanning threads may store the same image concurrently
+            Path tmp = Files.createTempFile(stored.getParent(), digest, ".tmp");
+            try {
+                Files.write(tmp, data);
+                Files.move(tmp, stored, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.exists(stored)) {
+                    throw e;
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            LOG.debug("Stored cover art of {} as {}", audioFile, stored);
+        }
+        return stored;
+    }
+
+    private static Path getDirectory() {
+        return SettingsService.getAirsonicHome().resolve("artwork");
+    }
+}
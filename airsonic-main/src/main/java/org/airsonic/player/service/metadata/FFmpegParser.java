@@ -23,6 +23,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.monitor.MetricsManager;
 import org.airsonic.player.service.SettingsService;
 import org.airsonic.player.service.TranscodingService;
 import org.airsonic.player.util.Util;
@@ -33,17 +34,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Parses meta data from video files using FFmpeg (http://ffmpeg.org/).
  * <p/>
  * Currently duration, bitrate and dimension are supported.
+ * <p/>
+ * Media library scans parse files in parallel, so the number of simultaneous ffprobe processes is capped, and a
+ * process that doesn't complete in time is killed.
  *
  * @author Sindre Mehus
  */
@@ -56,11 +72,38 @@ public class FFmpegParser extends MetaDataParser {
     private static final String[] FFPROBE_OPTIONS = {
         "-v", "quiet", "-print_format", "json", "-show_format", "-show_streams"
     };
+    private static final long PROBE_TIMEOUT_SECONDS = 30;
 
     @Autowired
     private TranscodingService transcodingService;
     @Autowired
     private SettingsService settingsService;
+    @Autowired
+    private MetricsManager metricsManager;
+
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private Semaphore permits;
+    private ScheduledExecutorService watchdog;
+
+    @PostConstruct
+    public void init() {
+        int concurrency = Math.max(1, settingsService.getVideoProbeConcurrency());
+        permits = new Semaphore(concurrency, true);
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setDaemon(true);
+            t.setName("FfprobeWatchdog");
+            return t;
+        });
+        metricsManager.gauge(FFmpegParser.class, "probes.running", processes::size);
+        metricsManager.gauge(FFmpegParser.class, "probes.waiting", permits::getQueueLength);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        processes.forEach(Process::destroyForcibly);
+    }
 
     /**
      * Parses meta data for the given music file. No guessing or reformatting is done.
@@ -91,8 +134,7 @@ public class FFmpegParser extends MetaDataParser {
             command.addAll(Arrays.asList(FFPROBE_OPTIONS));
             command.add(file.toAbsolutePath().toString());
 
-            Process process = Runtime.getRuntime().exec(command.toArray(new String[0]));
-            final JsonNode result = objectMapper.readTree(process.getInputStream());
+            final JsonNode result = probe(command);
 
             metaData.setDuration(result.at("/format/duration").asDouble());
             // Bitrate is in Kb/s
@@ -128,6 +170,9 @@ public class FFmpegParser extends MetaDataParser {
                     break;
                 }
             }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted when parsing metadata in {}", file);
         } catch (Throwable x) {
             LOG.warn("Error when parsing metadata in {}", file, x);
         }
@@ -135,6 +180,45 @@ public class FFmpegParser extends MetaDataParser {
         return metaData;
     }
 
+    /**
+     * Runs ffprobe once a slot is available, and returns its output.
+     */
+    private JsonNode probe(List<String> command) throws IOException, InterruptedException {
+        MetricsManager.Timer waitTimer = metricsManager.timer(FFmpegParser.class, "probe.wait");
+        try {
+            permits.acquire();
+        } finally {
+            waitTimer.close();
+        }
+        MetricsManager.Timer probeTimer = metricsManager.timer(FFmpegParser.class, "probe");
+        try {
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            processes.add(process);
+            ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+                LOG.warn("Killing ffprobe after {} seconds: {}", PROBE_TIMEOUT_SECONDS, command);
+                process.destroyForcibly();
+            }, PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            try (InputStream in = process.getInputStream()) {
+                process.getOutputStream().close();
+                JsonNode result = objectMapper.readTree(in);
+                // ffprobe exits right after writing its output
+                if (!process.waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IOException("ffprobe did not exit: " + command);
+                }
+                return result;
+            } finally {
+                timeout.cancel(false);
+                if (process.isAlive()) {
+                    process.destroyForcibly().waitFor(PROBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+                processes.remove(process);
+            }
+        } finally {
+            probeTimer.close();
+            permits.release();
+        }
+    }
+
     private static String getData(JsonNode node, String keyName) {
         List<String> keys = ImmutableList.of("/tags/" + keyName, "/tags/" + keyName.toUpperCase(), "/tags/" + keyName.toLowerCase());
         Optional<String> nonNullKey = keys.stream().map(k -> node.at("/format" + k).asText()).filter(StringUtils::isNotBlank).findFirst();
@@ -0,0 +1,864 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.service.metadata;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.MoreFiles;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.service.SettingsService;
+import org.apache.commons.lang.StringUtils;
+import org.jaudiotagger.tag.FieldKey;
+import org.jaudiotagger.tag.id3.framebody.FrameBodyTCON;
+import org.jaudiotagger.tag.reference.GenreTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the tags and audio header of MP3, FLAC and MP4 files directly, rather than through Jaudiotagger. Only the
+ * fields that are stored in the database are decoded, with bounded reads, so that large frames such as embedded
+ * pictures are skipped without being read. Files this parser can't make sense of are left to
+ * {@link JaudiotaggerParser}, which is also used for editing tags.
+ */
+@Service
+@Order(-10)
+public class FastTagParser extends MetaDataParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FastTagParser.class);
+
+    /**
+     * Frames and comments larger than this are not text fields we are interested in, and are skipped.
+     */
+    private static final int MAX_FIELD_SIZE = 64 * 1024;
+
+    /**
+     * The largest block of Vorbis comments that is read.
+     */
+    private static final int MAX_COMMENT_BLOCK_SIZE = 1024 * 1024;
+
+    /**
+     * How far past the tag the first MPEG frame is looked for.
+     */
+    private static final int MAX_FRAME_SCAN = 64 * 1024;
+
+    private static final Set<String> APPLICABLE_FORMATS = ImmutableSet.of("mp3", "flac", "m4a", "m4b");
+
+    private static final Map<String, FieldKey> ID3V22_FRAMES = ImmutableMap.<String, FieldKey>builder()
+            .put("TT2", FieldKey.TITLE)
+            .put("TP1", FieldKey.ARTIST)
+            .put("TP2", FieldKey.ALBUM_ARTIST)
+            .put("TAL", FieldKey.ALBUM)
+            .put("TYE", FieldKey.YEAR)
+            .put("TCO", FieldKey.GENRE)
+            .put("TRK", FieldKey.TRACK)
+            .put("TPA", FieldKey.DISC_NO)
+            .build();
+
+    private static final Map<String, FieldKey> ID3V23_FRAMES = ImmutableMap.<String, FieldKey>builder()
+            .put("TIT2", FieldKey.TITLE)
+            .put("TPE1", FieldKey.ARTIST)
+            .put("TPE2", FieldKey.ALBUM_ARTIST)
+            .put("TALB", FieldKey.ALBUM)
+            .put("TYER", FieldKey.YEAR)
+            .put("TDRC", FieldKey.YEAR)
+            .put("TCON", FieldKey.GENRE)
+            .put("TRCK", FieldKey.TRACK)
+            .put("TPOS", FieldKey.DISC_NO)
+            .build();
+
+    private static final Map<String, FieldKey> VORBIS_COMMENTS = ImmutableMap.<String, FieldKey>builder()
+            .put("TITLE", FieldKey.TITLE)
+            .put("ARTIST", FieldKey.ARTIST)
+            .put("ALBUMARTIST", FieldKey.ALBUM_ARTIST)
+            .put("ALBUM ARTIST", FieldKey.ALBUM_ARTIST)
+            .put("ALBUM", FieldKey.ALBUM)
+            .put("DATE", FieldKey.YEAR)
+            .put("GENRE", FieldKey.GENRE)
+            .put("TRACKNUMBER", FieldKey.TRACK)
+            .put("DISCNUMBER", FieldKey.DISC_NO)
+            .put("MUSICBRAINZ_ALBUMID", FieldKey.MUSICBRAINZ_RELEASEID)
+            .put("MUSICBRAINZ_TRACKID", FieldKey.MUSICBRAINZ_TRACK_ID)
+            .build();
+
+    private static final Map<String, FieldKey> MP4_ITEMS = ImmutableMap.<String, FieldKey>builder()
+            .put("©nam", FieldKey.TITLE)
+            .put("©ART", FieldKey.ARTIST)
+            .put("aART", FieldKey.ALBUM_ARTIST)
+            .put("©alb", FieldKey.ALBUM)
+            .put("©day", FieldKey.YEAR)
+            .put("©gen", FieldKey.GENRE)
+            .put("gnre", FieldKey.GENRE)
+            .put("trkn", FieldKey.TRACK)
+            .put("disk", FieldKey.DISC_NO)
+            .build();
+
+    private static final Map<String, FieldKey> MP4_FREEFORM_ITEMS = ImmutableMap.of(
+            "MusicBrainz Album Id", FieldKey.MUSICBRAINZ_RELEASEID,
+            "MusicBrainz Track Id", FieldKey.MUSICBRAINZ_TRACK_ID);
+
+    private static final int[][] MPEG1_BIT_RATES = {
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+    };
+    private static final int[][] MPEG2_BIT_RATES = {
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+    private static final int[][] SAMPLE_RATES = {
+        {11025, 12000, 8000},
+        null,
+        {22050, 24000, 16000},
+        {44100, 48000, 32000}
+    };
+
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private JaudiotaggerParser jaudiotaggerParser;
+
+    /**
+     * Parses meta data for the given music file. No guessing or reformatting is done.
+     *
+     * @param file The music file to parse.
+     * @return Meta data for the file.
+     */
+    @Override
+    public MetaData getRawMetaData(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MetaData metaData;
+            switch (MoreFiles.getFileExtension(file).toLowerCase()) {
+                case "mp3":
+                    metaData = readMp3(channel);
+                    break;
+                case "flac":
+                    metaData = readFlac(channel);
+                    break;
+                default:
+                    metaData = readMp4(channel);
+                    break;
+            }
+            if (metaData != null) {
+                return metaData;
+            }
+            LOG.debug("Unsupported tag layout in {}, falling back to Jaudiotagger", file);
+        } catch (IOException | RuntimeException x) {
+            LOG.debug("Failed to read tags in {}, falling back to Jaudiotagger", file, x);
+        }
+        return jaudiotaggerParser.getRawMetaData(file);
+    }
+
+    /**
+     * Converts the tag fields in the same way as {@link JaudiotaggerParser}.
+     */
+    private static void setTagFields(MetaData metaData, Map<FieldKey, String> fields) {
+        fields.replaceAll((key, value) -> StringUtils.replace(StringUtils.trimToNull(value), "\0", " "));
+        metaData.setAlbumName(fields.get(FieldKey.ALBUM));
+        metaData.setTitle(fields.get(FieldKey.TITLE));
+        metaData.setYear(JaudiotaggerParser.parseIntegerPattern(fields.get(FieldKey.YEAR), JaudiotaggerParser.YEAR_NUMBER_PATTERN));
+        metaData.setGenre(JaudiotaggerParser.mapGenre(fields.get(FieldKey.GENRE)));
+        metaData.setDiscNumber(JaudiotaggerParser.parseIntegerPattern(fields.get(FieldKey.DISC_NO), null));
+        metaData.setTrackNumber(JaudiotaggerParser.parseIntegerPattern(fields.get(FieldKey.TRACK), JaudiotaggerParser.TRACK_NUMBER_PATTERN));
+        metaData.setMusicBrainzReleaseId(fields.get(FieldKey.MUSICBRAINZ_RELEASEID));
+        metaData.setMusicBrainzRecordingId(fields.get(FieldKey.MUSICBRAINZ_TRACK_ID));
+
+        metaData.setArtist(fields.get(FieldKey.ARTIST));
+        metaData.setAlbumArtist(fields.get(FieldKey.ALBUM_ARTIST));
+
+        if (StringUtils.isBlank(metaData.getArtist())) {
+            metaData.setArtist(metaData.getAlbumArtist());
+        }
+        if (StringUtils.isBlank(metaData.getAlbumArtist())) {
+            metaData.setAlbumArtist(metaData.getArtist());
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------------
+    // MP3
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static MetaData readMp3(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long audioStart = 0;
+        Map<FieldKey, String> fields = null;
+
+        if (size >= 10) {
+            ByteBuffer header = read(channel, 0, 10);
+            if (header.get(0) == 'I' && header.get(1) == 'D' && header.get(2) == '3') {
+                int version = header.get(3);
+                int flags = header.get(5);
+                long tagEnd = 10 + syncSafeInt(header, 6);
+                audioStart = tagEnd + ((flags & 0x10) != 0 ? 10 : 0);
+                // Tags unsynchronised as a whole are rare, and are left to Jaudiotagger
+                if (version < 2 || version > 4 || (flags & 0x80) != 0 && version < 4) {
+                    return null;
+                }
+                fields = readId3v2Frames(channel, version, flags, tagEnd);
+                if (fields == null) {
+                    return null;
+                }
+                // Genres may refer to ID3v1 genre numbers, in a syntax that differs between versions
+                fields.computeIfPresent(FieldKey.GENRE, (key, genre) -> version == 2 ? FrameBodyTCON.convertID3v22GenreToGeneric(genre)
+                        : version == 3 ? FrameBodyTCON.convertID3v23GenreToGeneric(genre)
+                        : FrameBodyTCON.convertID3v24GenreToGeneric(genre));
+            }
+        }
+
+        boolean hasId3v1 = size >= 128 && "TAG".equals(readString(read(channel, size - 128, 3), 0, 3, StandardCharsets.ISO_8859_1));
+        if (fields == null) {
+            fields = hasId3v1 ? readId3v1(channel, size - 128) : new EnumMap<>(FieldKey.class);
+        }
+
+        MetaData metaData = new MetaData();
+        setTagFields(metaData, fields);
+        return readMpegAudioHeader(channel, audioStart, size, metaData) ? metaData : null;
+    }
+
+    private static Map<FieldKey, String> readId3v2Frames(FileChannel channel, int version, int flags, long tagEnd) throws IOException {
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        long position = 10;
+        if ((flags & 0x40) != 0) {
+            ByteBuffer extendedHeader = read(channel, position, 4);
+            position += version == 4 ? syncSafeInt(extendedHeader, 0) : 4 + extendedHeader.getInt(0);
+        }
+
+        int headerSize = version == 2 ? 6 : 10;
+        Map<String, FieldKey> frames = version == 2 ? ID3V22_FRAMES : ID3V23_FRAMES;
+        while (position + headerSize <= tagEnd) {
+            ByteBuffer header = read(channel, position, headerSize);
+            if (header.get(0) == 0) {
+                // Padding
+                break;
+            }
+            String id = readString(header, 0, version == 2 ? 3 : 4, StandardCharsets.ISO_8859_1);
+            int frameSize;
+            int formatFlags = 0;
+            if (version == 2) {
+                frameSize = (header.get(3) & 0xFF) << 16 | (header.get(4) & 0xFF) << 8 | header.get(5) & 0xFF;
+            } else {
+                frameSize = version == 4 ? syncSafeInt(header, 4) : header.getInt(4);
+                formatFlags = header.get(9) & 0xFF;
+            }
+            if (!StringUtils.isAlphanumeric(id) || frameSize < 0 || position + headerSize + frameSize > tagEnd) {
+                return null;
+            }
+
+            FieldKey key = frames.get(id);
+            boolean userText = "TXXX".equals(id) || "TXX".equals(id);
+            boolean uniqueFileId = "UFID".equals(id) || "UFI".equals(id);
+            if ((key != null || userText || uniqueFileId) && frameSize > 1 && frameSize <= MAX_FIELD_SIZE) {
+                boolean compressedOrEncrypted = version == 3 && (formatFlags & 0xC0) != 0 || version == 4 && (formatFlags & 0x0C) != 0;
+                if (compressedOrEncrypted) {
+                    return null;
+                }
+                byte[] data = toArray(read(channel, position + headerSize, frameSize));
+                if (version == 4 && (formatFlags & 0x02) != 0) {
+                    data = removeUnsynchronisation(data);
+                }
+                int offset = version == 4 && (formatFlags & 0x01) != 0 ? 4 : 0;
+                if (offset >= data.length) {
+                    return null;
+                }
+
+                if (key != null) {
+                    fields.putIfAbsent(key, decodeId3Text(data, offset));
+                } else if (userText) {
+                    int encoding = data[offset];
+                    int end = findTerminator(data, offset + 1, encoding);
+                    String description = decodeId3String(data, offset + 1, end, encoding);
+                    if ("MusicBrainz Album Id".equals(description)) {
+                        int valueStart = Math.min(data.length, end + terminatorLength(encoding));
+                        fields.putIfAbsent(FieldKey.MUSICBRAINZ_RELEASEID, decodeId3String(data, valueStart, data.length, encoding));
+                    }
+                } else {
+                    int end = findTerminator(data, offset, 0);
+                    if ("http://musicbrainz.org".equals(new String(data, offset, end - offset, StandardCharsets.ISO_8859_1))) {
+                        fields.putIfAbsent(FieldKey.MUSICBRAINZ_TRACK_ID, new String(data, end + 1, Math.max(0, data.length - end - 1), StandardCharsets.ISO_8859_1));
+                    }
+                }
+            }
+            position += headerSize + frameSize;
+        }
+        return fields;
+    }
+
+    /**
+     * Decodes the first value of a text frame.
+     */
+    private static String decodeId3Text(byte[] data, int offset) {
+        int encoding = data[offset];
+        return decodeId3String(data, offset + 1, findTerminator(data, offset + 1, encoding), encoding);
+    }
+
+    private static String decodeId3String(byte[] data, int start, int end, int encoding) {
+        if (start >= end) {
+            return null;
+        }
+        String value = new String(data, start, end - start, getId3Charset(encoding));
+        return StringUtils.removeStart(value, "\uFEFF");
+    }
+
+    private static Charset getId3Charset(int encoding) {
+        switch (encoding) {
+            case 1:
+                return StandardCharsets.UTF_16;
+            case 2:
+                return StandardCharsets.UTF_16BE;
+            case 3:
+                return StandardCharsets.UTF_8;
+            default:
+                return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    private static int terminatorLength(int encoding) {
+        return encoding == 1 || encoding == 2 ? 2 : 1;
+    }
+
+    /**
+     * Returns the index of the string terminator from the given position, or the end of the data if there is none.
+     */
+    private static int findTerminator(byte[] data, int start, int encoding) {
+        int step = terminatorLength(encoding);
+        for (int i = start; i + step <= data.length; i += step) {
+            if (data[i] == 0 && (step == 1 || data[i + 1] == 0)) {
+                return i;
+            }
+        }
+        return data.length;
+    }
+
+    private static byte[] removeUnsynchronisation(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        for (int i = 0; i < data.length; i++) {
+            out.write(data[i]);
+            if ((data[i] & 0xFF) == 0xFF && i + 1 < data.length && data[i + 1] == 0) {
+                i++;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<FieldKey, String> readId3v1(FileChannel channel, long position) throws IOException {
+        ByteBuffer tag = read(channel, position, 128);
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        fields.put(FieldKey.TITLE, readString(tag, 3, 30, StandardCharsets.ISO_8859_1));
+        fields.put(FieldKey.ARTIST, readString(tag, 33, 30, StandardCharsets.ISO_8859_1));
+        fields.put(FieldKey.ALBUM, readString(tag, 63, 30, StandardCharsets.ISO_8859_1));
+        fields.put(FieldKey.YEAR, readString(tag, 93, 4, StandardCharsets.ISO_8859_1));
+        // ID3v1.1 keeps the track number at the end of the comment
+        if (tag.get(125) == 0 && tag.get(126) != 0) {
+            fields.put(FieldKey.TRACK, String.valueOf(tag.get(126) & 0xFF));
+        }
+        int genre = tag.get(127) & 0xFF;
+        if (genre < GenreTypes.getInstanceOf().getSize()) {
+            fields.put(FieldKey.GENRE, GenreTypes.getInstanceOf().getValueForId(genre));
+        }
+        return fields;
+    }
+
+    /**
+     * Reads the bit rate and duration from the first MPEG frame, and from its Xing or VBRI header if it has one.
+     */
+    private static boolean readMpegAudioHeader(FileChannel channel, long start, long end, MetaData metaData) throws IOException {
+        if (start >= end) {
+            return false;
+        }
+        ByteBuffer buffer = read(channel, start, (int) Math.min(MAX_FRAME_SCAN, end - start));
+        for (int i = 0; i + 4 <= buffer.limit(); i++) {
+            int header = buffer.getInt(i);
+            int frameLength = getFrameLength(header);
+            if (frameLength <= 0) {
+                continue;
+            }
+            // Make sure this isn't a false sync by checking the next frame
+            if (i + frameLength + 4 <= buffer.limit() && getFrameLength(buffer.getInt(i + frameLength)) <= 0) {
+                continue;
+            }
+
+            int version = header >> 19 & 3;
+            int layer = 3 - (header >> 17 & 3);
+            boolean mono = (header >> 6 & 3) == 3;
+            int bitRate = getBitRate(header);
+            int sampleRate = SAMPLE_RATES[version][header >> 10 & 3];
+            int samplesPerFrame = layer == 0 ? 384 : layer == 2 && version != 3 ? 576 : 1152;
+            int sideInfoLength = version == 3 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+
+            long frameCount = -1;
+            long audioBytes = end - start - i;
+            boolean variable = false;
+            int xing = i + 4 + sideInfoLength;
+            int vbri = i + 4 + 32;
+            if (xing + 16 <= buffer.limit() && isTag(buffer, xing, "Xing", "Info")) {
+                variable = isTag(buffer, xing, "Xing");
+                int flags = buffer.getInt(xing + 4);
+                int fieldPosition = xing + 8;
+                if ((flags & 1) != 0) {
+                    frameCount = buffer.getInt(fieldPosition) & 0xFFFFFFFFL;
+                    fieldPosition += 4;
+                }
+                if ((flags & 2) != 0 && variable) {
+                    audioBytes = buffer.getInt(fieldPosition) & 0xFFFFFFFFL;
+                }
+            } else if (vbri + 18 <= buffer.limit() && isTag(buffer, vbri, "VBRI")) {
+                variable = true;
+                audioBytes = buffer.getInt(vbri + 10) & 0xFFFFFFFFL;
+                frameCount = buffer.getInt(vbri + 14) & 0xFFFFFFFFL;
+            }
+
+            double duration;
+            if (frameCount > 0) {
+                duration = (double) frameCount * samplesPerFrame / sampleRate;
+                if (variable) {
+                    bitRate = (int) Math.round(audioBytes * 8 / duration / 1000);
+                }
+            } else {
+                // Constant bit rate, so every frame has the length of the first one
+                duration = (double) (audioBytes / frameLength) * samplesPerFrame / sampleRate;
+            }
+            metaData.setVariableBitRate(variable);
+            metaData.setBitRate(bitRate);
+            metaData.setDuration(duration);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length of the MPEG audio frame with the given header, or -1 if it isn't a valid frame header.
+     */
+    private static int getFrameLength(int header) {
+        int version = header >> 19 & 3;
+        int layerBits = header >> 17 & 3;
+        int bitRateIndex = header >> 12 & 0xF;
+        int sampleRateIndex = header >> 10 & 3;
+        if ((header & 0xFFE00000) != 0xFFE00000 || version == 1 || layerBits == 0 || bitRateIndex == 0
+                || bitRateIndex == 0xF || sampleRateIndex == 3) {
+            return -1;
+        }
+        int layer = 3 - layerBits;
+        int bitRate = getBitRate(header) * 1000;
+        int sampleRate = SAMPLE_RATES[version][sampleRateIndex];
+        int padding = header >> 9 & 1;
+        if (layer == 0) {
+            return (12 * bitRate / sampleRate + padding) * 4;
+        }
+        return (layer == 2 && version != 3 ? 72 : 144) * bitRate / sampleRate + padding;
+    }
+
+    private static int getBitRate(int header) {
+        int version = header >> 19 & 3;
+        int layer = 3 - (header >> 17 & 3);
+        return (version == 3 ? MPEG1_BIT_RATES : MPEG2_BIT_RATES)[layer][header >> 12 & 0xF];
+    }
+
+    // -------------------------------------------------------------------------------------------------------------
+    // FLAC
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static MetaData readFlac(FileChannel channel) throws IOException {
+        if (channel.size() < 4 || !isTag(read(channel, 0, 4), 0, "fLaC")) {
+            return null;
+        }
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        long sampleRate = 0;
+        long sampleCount = 0;
+        long position = 4;
+        boolean last = false;
+        while (!last) {
+            ByteBuffer header = read(channel, position, 4);
+            last = (header.get(0) & 0x80) != 0;
+            int type = header.get(0) & 0x7F;
+            int length = header.getInt(0) & 0xFFFFFF;
+            if (type == 0) {
+                ByteBuffer streamInfo = read(channel, position + 4, 18);
+                sampleRate = (streamInfo.getInt(10) & 0xFFFFFFFFL) >>> 12;
+                sampleCount = streamInfo.getLong(10) & 0xFFFFFFFFFL;
+            } else if (type == 4) {
+                if (length > MAX_COMMENT_BLOCK_SIZE) {
+                    return null;
+                }
+                readVorbisComments(read(channel, position + 4, length), fields);
+            }
+            position += 4 + length;
+        }
+        if (sampleRate == 0) {
+            return null;
+        }
+
+        MetaData metaData = new MetaData();
+        setTagFields(metaData, fields);
+        // Same precision and rounding as Jaudiotagger, so that rescanning a file doesn't change its details
+        double duration = (float) sampleCount / sampleRate;
+        metaData.setDuration(duration);
+        metaData.setVariableBitRate(true);
+        if (duration > 0) {
+            metaData.setBitRate((int) ((channel.size() - position) / 1000 * 8 / (float) duration));
+        }
+        return metaData;
+    }
+
+    private static void readVorbisComments(ByteBuffer buffer, Map<FieldKey, String> fields) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(4 + buffer.getInt(0));
+        long count = buffer.getInt() & 0xFFFFFFFFL;
+        for (long i = 0; i < count && buffer.remaining() >= 4; i++) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return;
+            }
+            int start = buffer.position();
+            buffer.position(start + length);
+            if (length > MAX_FIELD_SIZE) {
+                continue;
+            }
+            String comment = readString(buffer, start, length, StandardCharsets.UTF_8);
+            int separator = comment.indexOf('=');
+            if (separator > 0) {
+                FieldKey key = VORBIS_COMMENTS.get(comment.substring(0, separator).toUpperCase());
+                if (key != null) {
+                    fields.putIfAbsent(key, comment.substring(separator + 1));
+                }
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------------
+    // MP4
+    // -------------------------------------------------------------------------------------------------------------
+
+    private static MetaData readMp4(FileChannel channel) throws IOException {
+        Atom ftyp = Atom.read(channel, 0, channel.size());
+        if (ftyp == null || !"ftyp".equals(ftyp.type)) {
+            return null;
+        }
+        Atom moov = ftyp.next(channel, channel.size(), "moov");
+        Atom mvhd = moov == null ? null : moov.child(channel, "mvhd");
+        if (mvhd == null) {
+            return null;
+        }
+
+        MetaData metaData = new MetaData();
+        ByteBuffer header = read(channel, mvhd.dataStart(), 32);
+        boolean version1 = header.get(0) == 1;
+        long timeScale = (version1 ? header.getInt(20) : header.getInt(12)) & 0xFFFFFFFFL;
+        long units = version1 ? header.getLong(24) : header.getInt(16) & 0xFFFFFFFFL;
+        if (timeScale > 0) {
+            metaData.setDuration((double) units / timeScale);
+        }
+
+        Map<FieldKey, String> fields = new EnumMap<>(FieldKey.class);
+        Atom ilst = moov.path(channel, "udta", "meta", "ilst");
+        if (ilst != null) {
+            for (Atom item = ilst.firstChild(channel); item != null; item = item.next(channel, ilst.end)) {
+                readMp4Item(channel, item, fields);
+            }
+        }
+        setTagFields(metaData, fields);
+
+        Integer bitRate = readMp4BitRate(channel, moov);
+        if (bitRate == null && metaData.getDuration() != null && metaData.getDuration() > 0) {
+            long audioBytes = 0;
+            for (Atom mdat = ftyp.next(channel, channel.size(), "mdat"); mdat != null; mdat = mdat.next(channel, channel.size(), "mdat")) {
+                audioBytes += mdat.end - mdat.dataStart();
+            }
+            bitRate = (int) Math.round(audioBytes * 8 / metaData.getDuration() / 1000);
+        }
+        metaData.setBitRate(bitRate);
+        return metaData;
+    }
+
+    private static void readMp4Item(FileChannel channel, Atom item, Map<FieldKey, String> fields) throws IOException {
+        FieldKey key = MP4_ITEMS.get(item.type);
+        if ("----".equals(item.type)) {
+            Atom name = item.child(channel, "name");
+            if (name != null && name.end - name.dataStart() <= MAX_FIELD_SIZE) {
+                ByteBuffer buffer = read(channel, name.dataStart() + 4, (int) (name.end - name.dataStart() - 4));
+                key = MP4_FREEFORM_ITEMS.get(readString(buffer, 0, buffer.limit(), StandardCharsets.UTF_8));
+            }
+        }
+        Atom data = key == null ? null : item.child(channel, "data");
+        if (data == null || data.end - data.dataStart() > MAX_FIELD_SIZE || data.end - data.dataStart() < 8) {
+            return;
+        }
+
+        ByteBuffer buffer = read(channel, data.dataStart(), (int) (data.end - data.dataStart()));
+        int valueLength = buffer.limit() - 8;
+        String value;
+        if ("trkn".equals(item.type) || "disk".equals(item.type)) {
+            value = valueLength >= 4 ? String.valueOf(buffer.getShort(10) & 0xFFFF) : null;
+        } else if ("gnre".equals(item.type)) {
+            // ID3v1 genre, numbered from one
+            int genre = valueLength >= 2 ? (buffer.getShort(8) & 0xFFFF) - 1 : -1;
+            value = genre >= 0 && genre < GenreTypes.getInstanceOf().getSize() ? GenreTypes.getInstanceOf().getValueForId(genre) : null;
+        } else {
+            value = readString(buffer, 8, valueLength, StandardCharsets.UTF_8);
+        }
+        if (value != null) {
+            fields.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Returns the average bit rate declared by the elementary stream descriptor of the first track, if any.
+     */
+    private static Integer readMp4BitRate(FileChannel channel, Atom moov) throws IOException {
+        Atom stsd = moov.path(channel, "trak", "mdia", "minf", "stbl", "stsd");
+        if (stsd == null) {
+            return null;
+        }
+        Atom entry = Atom.read(channel, stsd.dataStart() + 8, stsd.end);
+        if (entry == null || !"mp4a".equals(entry.type)) {
+            return null;
+        }
+        // Audio sample entries have 28 bytes of fields before their child atoms
+        Atom esds = null;
+        for (Atom child = Atom.read(channel, entry.dataStart() + 28, entry.end); child != null; child = child.next(channel, entry.end)) {
+            if ("esds".equals(child.type)) {
+                esds = child;
+                break;
+            }
+        }
+        if (esds == null || esds.end - esds.dataStart() > MAX_FIELD_SIZE) {
+            return null;
+        }
+
+        ByteBuffer buffer = read(channel, esds.dataStart() + 4, (int) (esds.end - esds.dataStart() - 4));
+        if (!skipToDescriptor(buffer, 0x03)) {
+            return null;
+        }
+        buffer.position(buffer.position() + 2);
+        int flags = buffer.get() & 0xFF;
+        if ((flags & 0x80) != 0) {
+            buffer.position(buffer.position() + 2);
+        }
+        if ((flags & 0x40) != 0) {
+            buffer.position(buffer.position() + (buffer.get() & 0xFF));
+        }
+        if ((flags & 0x20) != 0) {
+            buffer.position(buffer.position() + 2);
+        }
+        if (!skipToDescriptor(buffer, 0x04) || buffer.remaining() < 13) {
+            return null;
+        }
+        int averageBitRate = buffer.getInt(buffer.position() + 9);
+        return averageBitRate > 0 ? averageBitRate / 1000 : null;
+    }
+
+    /**
+     * Reads the tag and length of an MPEG-4 descriptor, leaving the buffer at the start of its content.
+     */
+    private static boolean skipToDescriptor(ByteBuffer buffer, int tag) {
+        if (buffer.remaining() < 2 || (buffer.get() & 0xFF) != tag) {
+            return false;
+        }
+        for (int i = 0; i < 4 && buffer.hasRemaining(); i++) {
+            if ((buffer.get() & 0x80) == 0) {
+                break;
+            }
+        }
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * The position and type of an MP4 atom.
+     */
+    private static class Atom {
+        private final long start;
+        private final int headerSize;
+        private final long end;
+        private final String type;
+
+        private Atom(long start, int headerSize, long end, String type) {
+            this.start = start;
+            this.headerSize = headerSize;
+            this.end = end;
+            this.type = type;
+        }
+
+        /**
+         * Reads the header of the atom at the given position, or returns {@code null} if there is no valid atom.
+         */
+        private static Atom read(FileChannel channel, long position, long parentEnd) throws IOException {
+            if (position + 8 > parentEnd) {
+                return null;
+            }
+            ByteBuffer header = FastTagParser.read(channel, position, 8);
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int headerSize = 8;
+            if (size == 1) {
+                size = FastTagParser.read(channel, position + 8, 8).getLong(0);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = parentEnd - position;
+            }
+            if (size < headerSize || position + size > parentEnd) {
+                return null;
+            }
+            return new Atom(position, headerSize, position + size, readString(header, 4, 4, StandardCharsets.ISO_8859_1));
+        }
+
+        private long dataStart() {
+            // The meta atom is a full atom, with a version and flags before its children
+            return start + headerSize + ("meta".equals(type) ? 4 : 0);
+        }
+
+        private Atom next(FileChannel channel, long parentEnd) throws IOException {
+            return read(channel, end, parentEnd);
+        }
+
+        private Atom next(FileChannel channel, long parentEnd, String nextType) throws IOException {
+            for (Atom atom = next(channel, parentEnd); atom != null; atom = atom.next(channel, parentEnd)) {
+                if (nextType.equals(atom.type)) {
+                    return atom;
+                }
+            }
+            return null;
+        }
+
+        private Atom firstChild(FileChannel channel) throws IOException {
+            return read(channel, dataStart(), end);
+        }
+
+        private Atom child(FileChannel channel, String childType) throws IOException {
+            Atom first = firstChild(channel);
+            if (first == null || childType.equals(first.type)) {
+                return first;
+            }
+            return first.next(channel, end, childType);
+        }
+
+        private Atom path(FileChannel channel, String... types) throws IOException {
+            Atom atom = this;
+            for (String childType : types) {
+                atom = atom.child(channel, childType);
+                if (atom == null) {
+                    return null;
+                }
+            }
+            return atom;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------------
+
+    /**
+     * Reads the given range of the file.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a string, up to the first null character.
+     */
+    private static String readString(ByteBuffer buffer, int offset, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        buffer.duplicate().position(offset).get(bytes);
+        int end = 0;
+        while (end < length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, 0, end, charset);
+    }
+
+    private static boolean isTag(ByteBuffer buffer, int offset, String... tags) {
+        if (offset + 4 > buffer.limit()) {
+            return false;
+        }
+        String tag = readString(buffer, offset, 4, StandardCharsets.ISO_8859_1);
+        for (String t : tags) {
+            if (t.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int syncSafeInt(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0x7F) << 21 | (buffer.get(offset + 1) & 0x7F) << 14
+                | (buffer.get(offset + 2) & 0x7F) << 7 | buffer.get(offset + 3) & 0x7F;
+    }
+
+    /**
+     * Updates the given file with the given meta data, through {@link JaudiotaggerParser}.
+     */
+    @Override
+    public void setMetaData(MediaFile file, MetaData metaData) {
+        jaudiotaggerParser.setMetaData(file, metaData);
+    }
+
+    /**
+     * Returns whether this parser supports tag editing (using the {@link #setMetaData} method).
+     *
+     * @return Always true.
+     */
+    @Override
+    public boolean isEditingSupported() {
+        return true;
+    }
+
+    @Override
+    SettingsService getSettingsService() {
+        return settingsService;
+    }
+
+    /**
+     * Returns whether this parser is applicable to the given file.
+     *
+     * @param path The path to music file in question.
+     * @return Whether this parser is applicable to the given file.
+     */
+    @Override
+    public boolean isApplicable(Path path) {
+        return Files.isRegularFile(path) && APPLICABLE_FORMATS.contains(MoreFiles.getFileExtension(path).toLowerCase());
+    }
+}
@@ -60,8 +60,8 @@ public class JaudiotaggerParser extends MetaDataParser {
 
     private static final Logger LOG = LoggerFactory.getLogger(JaudiotaggerParser.class);
     private static final Pattern GENRE_PATTERN = Pattern.compile("\\((\\d+)\\).*");
-    private static final Pattern TRACK_NUMBER_PATTERN = Pattern.compile("(\\d+)/\\d+");
-    private static final Pattern YEAR_NUMBER_PATTERN = Pattern.compile("(\\d{4}).*");
+    static final Pattern TRACK_NUMBER_PATTERN = Pattern.compile("(\\d+)/\\d+");
+    static final Pattern YEAR_NUMBER_PATTERN = Pattern.compile("(\\d{4}).*");
     @Autowired
     private final SettingsService settingsService;
 
@@ -149,7 +149,7 @@ public class JaudiotaggerParser extends MetaDataParser {
      * Sometimes the genre is returned as "(17)" or "(17)Rock", instead of "Rock".  This method
      * maps the genre ID to the corresponding text.
      */
-    private static String mapGenre(String genre) {
+    static String mapGenre(String genre) {
         if (genre == null) {
             return null;
         }
@@ -163,7 +163,7 @@ public class JaudiotaggerParser extends MetaDataParser {
         return genre;
     }
 
-    private static Integer parseIntegerPattern(String str, Pattern pattern) {
+    static Integer parseIntegerPattern(String str, Pattern pattern) {
         str = StringUtils.trimToNull(str);
 
         if (str == null) {
@@ -283,7 +283,11 @@ public class JaudiotaggerParser extends MetaDataParser {
     }
 
     public Artwork getArtwork(MediaFile file) throws Exception {
-        AudioFile audioFile = AudioFileIO.read(file.getFile().toFile());
+        return getArtwork(file.getFile());
+    }
+
+    public Artwork getArtwork(Path file) throws Exception {
+        AudioFile audioFile = AudioFileIO.read(file.toFile());
         Tag tag = audioFile.getTag();
         Artwork artwork = null;
         if (tag != null) {
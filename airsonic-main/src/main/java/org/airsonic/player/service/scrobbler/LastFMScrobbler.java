@@ -19,11 +19,10 @@
  */
 package org.airsonic.player.service.scrobbler;
 
-import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Scrobble;
 import org.airsonic.player.util.StringUtil;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -38,12 +37,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Provides services for "audioscrobbling" at www.last.fm.
@@ -53,95 +49,62 @@ import java.util.concurrent.LinkedBlockingQueue;
 public class LastFMScrobbler {
 
     private static final Logger LOG = LoggerFactory.getLogger(LastFMScrobbler.class);
-    private static final int MAX_PENDING_REGISTRATION = 2000;
 
-    private RegistrationThread thread;
-    private final LinkedBlockingQueue<RegistrationData> queue = new LinkedBlockingQueue<RegistrationData>();
+    /**
+     * The maximum number of listens submitted in a single request, as defined by the protocol.
+     */
+    public static final int MAX_BATCH_SIZE = 50;
+
     private final RequestConfig requestConfig = RequestConfig.custom()
             .setConnectTimeout(15000)
             .setSocketTimeout(15000)
             .build();
 
-
     /**
-     * Registers the given media file at www.last.fm. This method returns immediately, the actual registration is done
-     * by a separate thread.
+     * Submits the given listens at last.fm in a single request, using the protocol defined at
+     * http://www.last.fm/api/submissions.
      *
-     * @param mediaFile  The media file to register.
-     * @param username   last.fm username.
-     * @param password   last.fm password.
-     * @param submission Whether this is a submission or a now playing notification.
-     * @param time       Event time, or {@code null} to use current time.
+     * @param username  last.fm username.
+     * @param password  last.fm password.
+     * @param scrobbles The listens, at most {@link #MAX_BATCH_SIZE}.
+     * @return Whether the listens were accepted. {@code false} if they were rejected, and submitting them again
+     *         would not help.
+     * @throws IOException If the listens could not be submitted now, but may be later.
      */
-    public synchronized void register(MediaFile mediaFile, String username, String password, boolean submission, Instant time) {
-        if (thread == null) {
-            thread = new RegistrationThread();
-            thread.start();
-        }
+    public boolean submit(String username, String password, List<Scrobble> scrobbles) throws IOException {
+        String[] lines = authenticate(username, password);
+        lines = registerSubmission(scrobbles, lines[1], lines[3]);
 
-        if (queue.size() >= MAX_PENDING_REGISTRATION) {
-            LOG.warn("Last.fm scrobbler queue is full. Ignoring " + mediaFile);
-            return;
+        if (lines[0].startsWith("OK")) {
+            LOG.info("Successfully submitted {} listen(s) for user {} at Last.fm, latest '{}'", scrobbles.size(), username,
+                    scrobbles.get(scrobbles.size() - 1).getTitle());
+            return true;
         }
-
-        RegistrationData registrationData = createRegistrationData(mediaFile, username, password, submission, time);
-        if (registrationData == null) {
-            return;
+        if (lines[0].startsWith("BADSESSION")) {
+            throw new IOException("Invalid Last.fm session");
         }
-
-        try {
-            queue.put(registrationData);
-        } catch (InterruptedException x) {
-            LOG.warn("Interrupted while queuing Last.fm scrobble: " + x.toString());
+        if (lines[0].startsWith("FAILED")) {
+            // the protocol only reports temporary failures this way, such as the service being unavailable
+            throw new IOException("Last.fm submission failed: " + lines[0]);
         }
-    }
-
-    private RegistrationData createRegistrationData(MediaFile mediaFile, String username, String password, boolean submission, Instant time) {
-        RegistrationData reg = new RegistrationData();
-        reg.username = username;
-        reg.password = password;
-        reg.artist = mediaFile.getArtist();
-        reg.album = mediaFile.getAlbumName();
-        reg.title = mediaFile.getTitle();
-        reg.duration = mediaFile.getDuration() == null ? 0 : (int) Math.round(mediaFile.getDuration());
-        reg.time = time == null ? Instant.now() : time;
-        reg.submission = submission;
-
-        return reg;
+        LOG.warn("Failed to submit {} listen(s) for user {} at Last.fm: {}", scrobbles.size(), username, lines[0]);
+        return false;
     }
 
     /**
-     * Scrobbles the given song data at last.fm, using the protocol defined at http://www.last.fm/api/submissions.
+     * Registers the given listen as playing now at last.fm. Unlike submissions, these are not retried.
      *
-     * @param registrationData Registration data for the song.
+     * @param username last.fm username.
+     * @param password last.fm password.
+     * @param scrobble The listen.
      */
-    private void scrobble(RegistrationData registrationData) throws URISyntaxException, ClientProtocolException, IOException {
-        if (registrationData == null) {
-            return;
-        }
-
-        String[] lines = authenticate(registrationData);
-        if (lines == null) {
-            return;
-        }
-
-        String sessionId = lines[1];
-        String nowPlayingUrl = lines[2];
-        String submissionUrl = lines[3];
-
-        if (registrationData.submission) {
-            lines = registerSubmission(registrationData, sessionId, submissionUrl);
+    public void nowPlaying(String username, String password, Scrobble scrobble) throws IOException {
+        String[] lines = authenticate(username, password);
+        lines = registerNowPlaying(scrobble, lines[1], lines[2]);
+        if (lines[0].startsWith("OK")) {
+            LOG.debug("Successfully registered now playing for song '{}' for user {} at Last.fm", scrobble.getTitle(), username);
         } else {
-            lines = registerNowPlaying(registrationData, sessionId, nowPlayingUrl);
-        }
-
-        if (lines[0].startsWith("FAILED")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm: " + lines[0]);
-        } else if (lines[0].startsWith("BADSESSION")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm.  Invalid session.");
-        } else if (lines[0].startsWith("OK")) {
-            LOG.info("Successfully registered " + (registrationData.submission ? "submission" : "now playing") +
-                      " for song '" + registrationData.title + "' for user " + registrationData.username + " at Last.fm: " + registrationData.time);
+            LOG.warn("Failed to register now playing for song '{}' at Last.fm: {}", scrobble.getTitle(), lines[0]);
         }
     }
 
@@ -153,73 +116,72 @@ public class LastFMScrobbler {
      * Line 2: URL to use for now playing, e.g., "https://post.audioscrobbler.com:80/np_1.2"
      * Line 3: URL to use for submissions, e.g., "https://post2.audioscrobbler.com:80/protocol_1.2"
      * <p/>
-     * If authentication fails, <code>null</code> is returned.
+     * If authentication fails, an exception is thrown, as the credentials or the clock may yet be fixed.
      */
-    private String[] authenticate(RegistrationData registrationData) throws URISyntaxException, ClientProtocolException, IOException {
+    private String[] authenticate(String username, String password) throws IOException {
         String clientId = "sub";
         String clientVersion = "0.1";
         long timestamp = System.currentTimeMillis() / 1000L;
-        String authToken = calculateAuthenticationToken(registrationData.password, timestamp);
-        URI uri = new URI("http",
-                /* userInfo= */ null, "post.audioscrobbler.com", -1,
-                "/",
-                String.format("hs=true&p=1.2.1&c=%s&v=%s&u=%s&t=%s&a=%s",
-                        clientId, clientVersion, registrationData.username,
-                        timestamp, authToken),
-                /* fragment= */ null);
+        String authToken = calculateAuthenticationToken(password, timestamp);
+        URI uri;
+        try {
+            uri = new URI("http",
+                    /* userInfo= */ null, "post.audioscrobbler.com", -1,
+                    "/",
+                    String.format("hs=true&p=1.2.1&c=%s&v=%s&u=%s&t=%s&a=%s",
+                            clientId, clientVersion, username,
+                            timestamp, authToken),
+                    /* fragment= */ null);
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
 
         String[] lines = executeGetRequest(uri);
 
         if (lines[0].startsWith("BANNED")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm. Client version is banned.");
-            return null;
+            throw new IOException("Last.fm authentication failed. Client version is banned.");
         }
 
         if (lines[0].startsWith("BADAUTH")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm. Wrong username or password.");
-            return null;
+            throw new IOException("Last.fm authentication failed for user " + username + ". Wrong username or password.");
         }
 
         if (lines[0].startsWith("BADTIME")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm. Bad timestamp, please check local clock.");
-            return null;
-        }
-
-        if (lines[0].startsWith("FAILED")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm: " + lines[0]);
-            return null;
+            throw new IOException("Last.fm authentication failed. Bad timestamp, please check local clock.");
         }
 
         if (!lines[0].startsWith("OK")) {
-            LOG.warn("Failed to scrobble song '" + registrationData.title + "' at Last.fm.  Unknown response: " + lines[0]);
-            return null;
+            throw new IOException("Last.fm authentication failed: " + lines[0]);
         }
 
         return lines;
     }
 
-    private String[] registerSubmission(RegistrationData registrationData, String sessionId, String url) throws UnsupportedEncodingException, ClientProtocolException, IOException {
+    private String[] registerSubmission(List<Scrobble> scrobbles, String sessionId, String url) throws IOException {
         Map<String, String> params = new HashMap<String, String>();
         params.put("s", sessionId);
-        params.put("a[0]", registrationData.artist);
-        params.put("t[0]", registrationData.title);
-        params.put("i[0]", String.valueOf(registrationData.time.getEpochSecond()));
-        params.put("o[0]", "P");
-        params.put("r[0]", "");
-        params.put("l[0]", String.valueOf(registrationData.duration));
-        params.put("b[0]", registrationData.album);
-        params.put("n[0]", "");
-        params.put("m[0]", "");
+        for (int i = 0; i < scrobbles.size(); i++) {
+            Scrobble scrobble = scrobbles.get(i);
+            params.put("a[" + i + "]", scrobble.getArtist());
+            params.put("t[" + i + "]", scrobble.getTitle());
+            params.put("i[" + i + "]", String.valueOf(scrobble.getListenedAt().getEpochSecond()));
+            params.put("o[" + i + "]", "P");
+            params.put("r[" + i + "]", "");
+            params.put("l[" + i + "]", String.valueOf(scrobble.getDuration()));
+            params.put("b[" + i + "]", scrobble.getAlbum());
+            params.put("n[" + i + "]", "");
+            params.put("m[" + i + "]", "");
+        }
         return executePostRequest(url, params);
     }
 
-    private String[] registerNowPlaying(RegistrationData registrationData, String sessionId, String url) throws UnsupportedEncodingException, ClientProtocolException, IOException {
+    private String[] registerNowPlaying(Scrobble scrobble, String sessionId, String url) throws IOException {
         Map<String, String> params = new HashMap<String, String>();
         params.put("s", sessionId);
-        params.put("a", registrationData.artist);
-        params.put("t", registrationData.title);
-        params.put("b", registrationData.album);
-        params.put("l", String.valueOf(registrationData.duration));
+        params.put("a", scrobble.getArtist());
+        params.put("t", scrobble.getTitle());
+        params.put("b", scrobble.getAlbum());
+        params.put("l", String.valueOf(scrobble.getDuration()));
         params.put("n", "");
         params.put("m", "");
         return executePostRequest(url, params);
@@ -229,13 +191,13 @@ public class LastFMScrobbler {
         return DigestUtils.md5Hex(DigestUtils.md5Hex(password) + timestamp);
     }
 
-    private String[] executeGetRequest(URI url) throws IOException, ClientProtocolException {
+    private String[] executeGetRequest(URI url) throws IOException {
         HttpGet method = new HttpGet(url);
         method.setConfig(requestConfig);
         return executeRequest(method);
     }
 
-    private String[] executePostRequest(String url, Map<String, String> parameters) throws UnsupportedEncodingException, ClientProtocolException, IOException {
+    private String[] executePostRequest(String url, Map<String, String> parameters) throws IOException {
         List<NameValuePair> params = new ArrayList<NameValuePair>();
         for (Map.Entry<String, String> entry : parameters.entrySet()) {
             params.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
@@ -247,59 +209,11 @@ public class LastFMScrobbler {
         return executeRequest(request);
     }
 
-    private String[] executeRequest(HttpUriRequest request) throws ClientProtocolException, IOException {
+    private String[] executeRequest(HttpUriRequest request) throws IOException {
         try (CloseableHttpClient client = HttpClients.createDefault()) {
             ResponseHandler<String> responseHandler = new BasicResponseHandler();
             String response = client.execute(request, responseHandler);
             return response.split("\\r?\\n");
         }
     }
-
-    private class RegistrationThread extends Thread {
-        private RegistrationThread() {
-            super("LastFMScrobbler Registration");
-        }
-
-        @Override
-        public void run() {
-            while (true) {
-                RegistrationData registrationData = null;
-                try {
-                    registrationData = queue.take();
-                    scrobble(registrationData);
-                } catch (IOException x) {
-                    handleNetworkError(registrationData, x.toString());
-                } catch (Exception x) {
-                    LOG.warn("Error in Last.fm registration: " + x.toString());
-                }
-            }
-        }
-
-        private void handleNetworkError(RegistrationData registrationData, String errorMessage) {
-            try {
-                queue.put(registrationData);
-                LOG.info("Last.fm registration for '" + registrationData.title +
-                         "' encountered network error: " + errorMessage + ".  Will try again later. In queue: " + queue.size());
-            } catch (InterruptedException x) {
-                LOG.error("Failed to reschedule Last.fm registration for '" + registrationData.title + "': " + x.toString());
-            }
-            try {
-                sleep(60L * 1000L);  // Wait 60 seconds.
-            } catch (InterruptedException x) {
-                LOG.error("Failed to sleep after Last.fm registration failure for '" + registrationData.title + "': " + x.toString());
-            }
-        }
-    }
-
-    private static class RegistrationData {
-        private String username;
-        private String password;
-        private String artist;
-        private String album;
-        private String title;
-        private int duration;
-        private Instant time;
-        public boolean submission;
-    }
-
 }
@@ -19,12 +19,10 @@
  */
 package org.airsonic.player.service.scrobbler;
 
-import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.Scrobble;
 import org.airsonic.player.util.Util;
-import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
@@ -32,9 +30,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Provides services for "audioscrobbling" at listenbrainz.org.
@@ -44,189 +40,106 @@ import java.util.concurrent.LinkedBlockingQueue;
 public class ListenBrainzScrobbler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ListenBrainzScrobbler.class);
-    private static final int MAX_PENDING_REGISTRATION = 2000;
 
-    private RegistrationThread thread;
-    private final LinkedBlockingQueue<RegistrationData> queue = new LinkedBlockingQueue<RegistrationData>();
+    public static final String DEFAULT_URL = "https://api.listenbrainz.org/1/submit-listens";
+
+    /**
+     * The maximum number of listens submitted in a single request.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
     private final RequestConfig requestConfig = RequestConfig.custom()
             .setConnectTimeout(15000)
             .setSocketTimeout(15000)
             .build();
 
     /**
-     * Registers the given media file at listenbrainz.org. This method returns
-     * immediately, the actual registration is done by a separate thread.
+     * Submits the given listens to ListenBrainz in a single request, using the protocol defined at
+     * https://listenbrainz.readthedocs.io/en/latest/dev/api.html.
      *
-     * @param mediaFile  The media file to register.
-     * @param url        The ListenBrainz URL (null for default)
-     * @param token      The token to authentication user on ListenBrainz.
-     * @param submission Whether this is a submission or a now playing notification.
-     * @param time       Event time, or {@code null} to use current time.
+     * @param url       The ListenBrainz URL (null for default)
+     * @param token     The token to authentication user on ListenBrainz.
+     * @param scrobbles The listens, at most {@link #MAX_BATCH_SIZE}.
+     * @return Whether the listens were accepted. {@code false} if they were rejected, and submitting them again
+     *         would not help.
+     * @throws IOException If the listens could not be submitted now, but may be later.
      */
-    public synchronized void register(MediaFile mediaFile, String url, String token, boolean submission, Instant time) {
-        if (thread == null) {
-            thread = new RegistrationThread();
-            thread.start();
+    public boolean submit(String url, String token, List<Scrobble> scrobbles) throws IOException {
+        List<Map<String, Object>> payloads = new ArrayList<>();
+        for (Scrobble scrobble : scrobbles) {
+            Map<String, Object> payload = createPayload(scrobble);
+            payload.put("listened_at", scrobble.getListenedAt().getEpochSecond());
+            payloads.add(payload);
         }
 
-        if (queue.size() >= MAX_PENDING_REGISTRATION) {
-            LOG.warn("ListenBrainz scrobbler queue is full. Ignoring '{}'", mediaFile.getTitle());
-            return;
-        }
+        Map<String, Object> content = new HashMap<>();
+        content.put("listen_type", scrobbles.size() == 1 ? "single" : "import");
+        content.put("payload", payloads);
 
-        RegistrationData registrationData = createRegistrationData(mediaFile, url, token, submission, time);
-        if (registrationData == null) {
-            return;
+        int status = executeJsonPostRequest(url, token, Util.toJson(content));
+        if (status / 100 == 2) {
+            LOG.info("Successfully submitted {} listen(s) at ListenBrainz ({}), latest '{}'", scrobbles.size(), url,
+                    scrobbles.get(scrobbles.size() - 1).getTitle());
+            return true;
         }
-
-        try {
-            queue.put(registrationData);
-        } catch (InterruptedException x) {
-            LOG.warn("Interrupted while queuing ListenBrainz scrobble", x);
+        if (status == 401 || status == 429 || status / 100 == 5) {
+            // the token may be fixed, or the service may recover
+            throw new IOException("ListenBrainz (" + url + ") responded with status " + status);
         }
-    }
-
-    private RegistrationData createRegistrationData(MediaFile mediaFile, String url, String token, boolean submission, Instant time) {
-        RegistrationData reg = new RegistrationData();
-        reg.url = url == null ? "https://api.listenbrainz.org/1/submit-listens" : url;
-        reg.token = token;
-        reg.artist = mediaFile.getArtist();
-        reg.album = mediaFile.getAlbumName();
-        reg.title = mediaFile.getTitle();
-        reg.musicBrainzReleaseId = mediaFile.getMusicBrainzReleaseId();
-        reg.musicBrainzRecordingId = mediaFile.getMusicBrainzRecordingId();
-        reg.trackNumber = mediaFile.getTrackNumber();
-        reg.duration = mediaFile.getDuration() == null ? 0 : (int) Math.round(mediaFile.getDuration());
-        reg.time = time == null ? Instant.now() : time;
-        reg.submission = submission;
-
-        return reg;
+        LOG.warn("ListenBrainz ({}) rejected {} listen(s) with status {}", url, scrobbles.size(), status);
+        return false;
     }
 
     /**
-     * Scrobbles the given song data at listenbrainz.org, using the protocol defined at https://listenbrainz.readthedocs.io/en/latest/dev/api.html.
+     * Registers the given listen as playing now. Unlike submissions, these are not retried.
      *
-     * @param registrationData Registration data for the song.
+     * @param url      The ListenBrainz URL (null for default)
+     * @param token    The token to authentication user on ListenBrainz.
+     * @param scrobble The listen.
      */
-    private void scrobble(RegistrationData registrationData) throws ClientProtocolException, IOException {
-        if (registrationData == null || registrationData.token == null) {
-            return;
-        }
-
-        if (!submit(registrationData)) {
-            LOG.warn("Failed to scrobble song '{}' at ListenBrainz ({}).", registrationData.title, registrationData.url);
+    public void nowPlaying(String url, String token, Scrobble scrobble) throws IOException {
+        Map<String, Object> content = new HashMap<>();
+        content.put("listen_type", "playing_now");
+        content.put("payload", Collections.singletonList(createPayload(scrobble)));
+
+        int status = executeJsonPostRequest(url, token, Util.toJson(content));
+        if (status / 100 == 2) {
+            LOG.debug("Successfully registered now playing for song '{}' at ListenBrainz ({})", scrobble.getTitle(), url);
         } else {
-            LOG.info("Successfully registered {} for song '{}' at ListenBrainz ({}): {}",
-                    (registrationData.submission ? "submission" : "now playing"), registrationData.title,
-                    registrationData.url, registrationData.time);
+            LOG.warn("Failed to register now playing for song '{}' at ListenBrainz ({}): status {}", scrobble.getTitle(), url, status);
         }
     }
-    /**
-     * Returns if submission succeeds.
-     */
-    private boolean submit(RegistrationData registrationData) throws ClientProtocolException, IOException {
+
+    private static Map<String, Object> createPayload(Scrobble scrobble) {
         Map<String, Object> additional_info = new HashMap<String, Object>();
-        additional_info.computeIfAbsent("release_mbid", k -> registrationData.musicBrainzReleaseId);
-        additional_info.computeIfAbsent("recording_mbid", k -> registrationData.musicBrainzRecordingId);
-        additional_info.computeIfAbsent("tracknumber", k -> registrationData.trackNumber);
+        additional_info.computeIfAbsent("release_mbid", k -> scrobble.getMusicBrainzReleaseId());
+        additional_info.computeIfAbsent("recording_mbid", k -> scrobble.getMusicBrainzRecordingId());
+        additional_info.computeIfAbsent("tracknumber", k -> scrobble.getTrackNumber());
 
         Map<String, Object> track_metadata = new HashMap<String, Object>();
         if (additional_info.size() > 0) {
             track_metadata.put("additional_info", additional_info);
         }
-        track_metadata.computeIfAbsent("artist_name", k -> registrationData.artist);
-        track_metadata.computeIfAbsent("track_name", k -> registrationData.title);
-        track_metadata.computeIfAbsent("release_name", k -> registrationData.album);
+        track_metadata.computeIfAbsent("artist_name", k -> scrobble.getArtist());
+        track_metadata.computeIfAbsent("track_name", k -> scrobble.getTitle());
+        track_metadata.computeIfAbsent("release_name", k -> scrobble.getAlbum());
 
         Map<String, Object> payload = new HashMap<String, Object>();
         if (track_metadata.size() > 0) {
             payload.put("track_metadata", track_metadata);
         }
-
-        Map<String, Object> content = new HashMap<String, Object>();
-
-        if (registrationData.submission) {
-            payload.put("listened_at", Long.valueOf(registrationData.time.getEpochSecond()));
-            content.put("listen_type", "single");
-        } else {
-            content.put("listen_type", "playing_now");
-        }
-
-        List<Map<String, Object>> payloads = new ArrayList<Map<String, Object>>();
-        payloads.add(payload);
-        content.put("payload", payloads);
-
-        String json = Util.toJson(content);
-
-        executeJsonPostRequest(registrationData.url, registrationData.token, json);
-
-        return true;
+        return payload;
     }
 
-    private boolean executeJsonPostRequest(String url, String token, String json) throws ClientProtocolException, IOException {
-        HttpPost request = new HttpPost(url);
+    private int executeJsonPostRequest(String url, String token, String json) throws IOException {
+        HttpPost request = new HttpPost(url == null ? DEFAULT_URL : url);
         request.setEntity(new StringEntity(json, "UTF-8"));
         request.setHeader("Authorization", "token " + token);
         request.setHeader("Content-type", "application/json; charset=utf-8");
+        request.setConfig(requestConfig);
 
-        executeRequest(request);
-        return true;
-    }
-
-    private void executeRequest(HttpUriRequest request) throws ClientProtocolException, IOException {
         try (CloseableHttpClient client = HttpClients.createDefault()) {
-            client.execute(request);
+            return client.execute(request, response -> response.getStatusLine().getStatusCode());
         }
     }
-
-    private class RegistrationThread extends Thread {
-        private RegistrationThread() {
-            super("ListenBrainzScrobbler Registration");
-        }
-
-        @Override
-        public void run() {
-            while (true) {
-                RegistrationData registrationData = null;
-                try {
-                    registrationData = queue.take();
-                    scrobble(registrationData);
-                } catch (ClientProtocolException x) {
-                } catch (IOException x) {
-                    handleNetworkError(registrationData, x);
-                } catch (Exception x) {
-                    LOG.warn("Error in ListenBrainz registration: " + x.toString());
-                }
-            }
-        }
-
-        private void handleNetworkError(RegistrationData registrationData, Exception error) {
-            try {
-                queue.put(registrationData);
-                LOG.info("ListenBrainz registration for '{}' encountered network error. Will try again later. In queue: {}", registrationData.title, queue.size(), error);
-            } catch (InterruptedException x) {
-                LOG.error("Failed to reschedule ListenBrainz registration for '{}'", registrationData.title, x);
-            }
-            try {
-                sleep(60L * 1000L);  // Wait 60 seconds.
-            } catch (InterruptedException x) {
-                LOG.error("Failed to sleep after ListenBrainz registration failure for '{}'", registrationData.title, x);
-            }
-        }
-    }
-
-    private static class RegistrationData {
-        private String url;
-        private String token;
-        private String artist;
-        private String album;
-        private String title;
-        private String musicBrainzReleaseId;
-        private String musicBrainzRecordingId;
-        private Integer trackNumber;
-        private int duration;
-        private Instant time;
-        public boolean submission;
-    }
-
 }
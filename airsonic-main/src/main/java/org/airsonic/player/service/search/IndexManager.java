@@ -147,7 +147,7 @@ public class IndexManager {
         }
     }
 
-    public final void startIndexing() {
+    public void startIndexing() {
         EnumSet.allOf(IndexType.class).parallelStream().forEach(x -> {
             try {
                 writers.put(x, createIndexWriter(x));
@@ -0,0 +1,56 @@
+/*
+ * This file is part of Airsonic.
+ *
+ *  Airsonic is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Airsonic is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *  Copyright 2021 (C) Airsonic Authors
+ */
+
+package org.airsonic.player.service.sonos;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version counters reported to Sonos controllers in <code>getLastUpdate</code>. Controllers only
+ * re-fetch their cached browse trees when a version changes.
+ * <p>
+ * The catalog version changes once when a media library scan completes, and when media files or directories are
+ * refreshed outside of a scan, such as after tag edits or uploads. The favorites version changes when
+ * playlists, stars or ratings change. Both start at the current time so that versions handed out before a
+ * restart are never reused.
+ */
+@Component
+public class SonosCatalogVersion {
+
+    private final AtomicLong catalog = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong favorites = new AtomicLong(System.currentTimeMillis());
+
+    public long getCatalog() {
+        return catalog.get();
+    }
+
+    public long getFavorites() {
+        return favorites.get();
+    }
+
+    public void catalogChanged() {
+        catalog.incrementAndGet();
+    }
+
+    public void favoritesChanged() {
+        favorites.incrementAndGet();
+    }
+}
@@ -23,7 +23,6 @@ import com.auth0.jwt.interfaces.DecodedJWT;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.sonos.services._1.*;
-import org.airsonic.player.controller.CoverArtController;
 import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.*;
 import org.airsonic.player.service.*;
@@ -75,6 +74,8 @@ public class SonosHelper {
     private PodcastService podcastService;
     @Autowired
     private JWTSecurityService jwtSecurityService;
+    @Autowired
+    private SonosCatalogVersion sonosCatalogVersion;
 
     public List<AbstractMedia> forRoot() {
         MediaMetadata shuffle = new MediaMetadata();
@@ -276,7 +277,7 @@ public class SonosHelper {
             MediaCollection mediaCollection = new MediaCollection();
             AlbumArtUrl albumArtURI = new AlbumArtUrl();
             albumArtURI.setValue(
-                    getCoverArtUrl(CoverArtController.PLAYLIST_COVERART_PREFIX + playlist.getId(), username, request));
+                    getCoverArtUrl(CoverArtService.PLAYLIST_COVERART_PREFIX + playlist.getId(), username, request));
 
             mediaCollection.setId(SonosService.ID_PLAYLIST_PREFIX + playlist.getId());
             mediaCollection.setCanPlay(true);
@@ -606,10 +607,12 @@ public class SonosHelper {
 
     public void star(int id, String username) {
         mediaFileDao.starMediaFile(id, username);
+        sonosCatalogVersion.favoritesChanged();
     }
 
     public void unstar(int id, String username) {
         mediaFileDao.unstarMediaFile(id, username);
+        sonosCatalogVersion.favoritesChanged();
     }
 
     private String getCoverArtUrl(String id, String username, HttpServletRequest request) {
@@ -27,10 +27,8 @@ import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.User;
 import org.airsonic.player.service.SearchService;
-import org.fourthline.cling.support.model.BrowseResult;
 import org.fourthline.cling.support.model.DIDLContent;
 import org.fourthline.cling.support.model.PersonWithRole;
-import org.fourthline.cling.support.model.SortCriterion;
 import org.fourthline.cling.support.model.container.Container;
 import org.fourthline.cling.support.model.container.MusicAlbum;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -62,20 +60,12 @@ public class AlbumUpnpProcessor extends UpnpContentProcessor <Album, MediaFile>
         setRootTitle("Albums");
     }
 
-    /**
-     * Browses the top-level content of a type.
-     */
-    public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
-        DIDLContent didl = new DIDLContent();
-
+    @Override
+    public List<Album> getItems(long offset, long maxResults, boolean descending) {
         List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
-        List<Album> selectedItems = getAlbumDao().getAlphabeticalAlbums((int) firstResult, (int) maxResults, false, true, allFolders);
-        for (Album item : selectedItems) {
-            addItem(didl, item);
-        }
-
-        return createBrowseResult(didl, (int) didl.getCount(), getAllItemsSize());
+        return getAlbumDao().getAlphabeticalAlbums((int) offset, (int) Math.min(maxResults, Integer.MAX_VALUE), false, true, descending, allFolders);
     }
+
     public Container createContainer(Album album) {
         MusicAlbum container = new MusicAlbum();
 
@@ -96,8 +86,7 @@ public class AlbumUpnpProcessor extends UpnpContentProcessor <Album, MediaFile>
     }
 
     public List<Album> getAllItems() {
-        List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
-        return getAlbumDao().getAlphabeticalAlbums(0, Integer.MAX_VALUE, false, true, allFolders);
+        return getItems(0, Integer.MAX_VALUE, false);
     }
 
     public Album getItemById(String id) {
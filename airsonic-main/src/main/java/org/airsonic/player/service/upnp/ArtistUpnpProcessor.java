@@ -61,12 +61,20 @@ public class ArtistUpnpProcessor extends UpnpContentProcessor <Artist, Album> {
     }
 
     public List<Artist> getAllItems() {
+        return getItems(0, Integer.MAX_VALUE, false);
+    }
+
+    @Override
+    public List<Artist> getItems(long offset, long maxResults, boolean descending) {
         List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
-        List<Artist> allArtists = getArtistDao().getAlphabetialArtists(0, Integer.MAX_VALUE, allFolders);
-        // alpha artists doesn't quite work :P
-        allArtists.sort((Artist o1, Artist o2) -> o1.getName().replaceAll("\\W", "").compareToIgnoreCase(o2.getName().replaceAll("\\W", "")));
+        // sorted by the stored sort name, as plain alphabetical order doesn't quite work :P
+        return getArtistDao().getSortedArtists((int) offset, (int) Math.min(maxResults, Integer.MAX_VALUE), descending, allFolders);
+    }
 
-        return allArtists;
+    @Override
+    public int getAllItemsSize() {
+        List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
+        return getArtistDao().getArtistCount(allFolders);
     }
 
     public Artist getItemById(String id) {
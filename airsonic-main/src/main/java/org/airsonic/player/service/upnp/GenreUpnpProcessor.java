@@ -51,12 +51,6 @@ public class GenreUpnpProcessor extends UpnpContentProcessor <Genre, MediaFile>
         // we have to override this to do an index-based id.
         DIDLContent didl = new DIDLContent();
         List<Genre> allItems = getAllItems();
-        if (filter != null) {
-            // filter items
-        }
-        if (orderBy != null) {
-            // sort items
-        }
         List<Genre> selectedItems = Util.subList(allItems, firstResult, maxResults);
         for (int i = 0; i < selectedItems.size(); i++) {
             Genre item = selectedItems.get(i);
@@ -94,8 +88,21 @@ public class GenreUpnpProcessor extends UpnpContentProcessor <Genre, MediaFile>
     }
 
     public List<MediaFile> getChildren(Genre item) {
+        return getChildren(item, 0, Integer.MAX_VALUE, false);
+    }
+
+    @Override
+    public List<MediaFile> getChildren(Genre item, long offset, long maxResults, boolean descending) {
+        if (descending) {
+            return page(getChildren(item), offset, maxResults, true);
+        }
         List<MusicFolder> allFolders = getDispatcher().getSettingsService().getAllMusicFolders();
-        return getDispatcher().getMediaFileProcessor().getMediaFileDao().getSongsByGenre(item.getName(), 0, Integer.MAX_VALUE, allFolders);
+        return getDispatcher().getMediaFileProcessor().getMediaFileDao().getSongsByGenre(item.getName(), (int) offset, (int) Math.min(maxResults, Integer.MAX_VALUE), allFolders);
+    }
+
+    @Override
+    public int getChildrenSize(Genre item) {
+        return item.getSongCount();
     }
 
     public void addChild(DIDLContent didl, MediaFile child) {
@@ -23,6 +23,7 @@ import org.airsonic.player.dao.MediaFileDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.service.MediaFileService;
+import org.apache.commons.lang3.tuple.Pair;
 import org.fourthline.cling.support.model.BrowseResult;
 import org.fourthline.cling.support.model.DIDLContent;
 import org.fourthline.cling.support.model.DIDLObject;
@@ -36,7 +37,10 @@ import org.springframework.stereotype.Service;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * @author Allen Petersen
@@ -45,6 +49,8 @@ import java.util.List;
 @Service
 public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, MediaFile> {
 
+    private static final Pattern NON_WORD = Pattern.compile("\\W");
+
     @Autowired
     MediaFileDao mediaFileDao;
 
@@ -74,8 +80,7 @@ public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, Med
         }
         container.setId(DispatchingContentDirectory.CONTAINER_ID_FOLDER_PREFIX + DispatchingContentDirectory.SEPARATOR + item.getId());
         container.setTitle(item.getName());
-        List<MediaFile> children = getChildren(item);
-        container.setChildCount(children.size());
+        container.setChildCount(getMediaFileDao().getChildrenCount(item.getPath()));
 
         if (! getMediaFileService().isRoot(item)) {
             MediaFile parent = getMediaFileService().getParentOf(item);
@@ -107,9 +112,12 @@ public class MediaFileUpnpProcessor extends UpnpContentProcessor <MediaFile, Med
     }
 
     public List<MediaFile> getChildren(MediaFile item) {
-        List<MediaFile> children = getMediaFileService().getChildrenOf(item, true, true, true);
-        children.sort((MediaFile o1, MediaFile o2) -> o1.getPath().replaceAll("\\W", "").compareToIgnoreCase(o2.getPath().replaceAll("\\W", "")));
-        return children;
+        // compute each sort key once instead of on every comparison
+        return getMediaFileService().getChildrenOf(item, true, true, false).stream()
+                .map(child -> Pair.of(NON_WORD.matcher(child.getPath()).replaceAll(""), child))
+                .sorted(Comparator.comparing(Pair::getKey, String.CASE_INSENSITIVE_ORDER))
+                .map(Pair::getValue)
+                .collect(Collectors.toList());
     }
 
     public void addItem(DIDLContent didl, MediaFile item) {
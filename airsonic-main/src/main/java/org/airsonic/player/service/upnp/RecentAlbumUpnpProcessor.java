@@ -20,7 +20,6 @@
 package org.airsonic.player.service.upnp;
 import org.airsonic.player.domain.Album;
 import org.airsonic.player.domain.MusicFolder;
-import org.airsonic.player.util.Util;
 import org.fourthline.cling.support.model.BrowseResult;
 import org.fourthline.cling.support.model.DIDLContent;
 import org.fourthline.cling.support.model.SortCriterion;
@@ -45,17 +44,11 @@ public class RecentAlbumUpnpProcessor extends AlbumUpnpProcessor {
      * Browses the top-level content.
      */
     public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
-        // AlbumUpnpProcessor overrides browseRoot() with an optimization;
-        // this restores the default behavior for the subclass.
+        // AlbumUpnpProcessor pages through all albums in the database;
+        // the recent albums are a short list, so page through it in memory.
         DIDLContent didl = new DIDLContent();
         List<Album> allItems = getAllItems();
-        if (filter != null) {
-            // filter items (not implemented yet)
-        }
-        if (orderBy != null) {
-            // sort items (not implemented yet)
-        }
-        List<Album> selectedItems = Util.subList(allItems, firstResult, maxResults);
+        List<Album> selectedItems = page(allItems, firstResult, maxResults, isDescending(orderBy));
         for (Album item : selectedItems) {
             addItem(didl, item);
         }
@@ -63,6 +56,11 @@ public class RecentAlbumUpnpProcessor extends AlbumUpnpProcessor {
         return createBrowseResult(didl, (int) didl.getCount(), allItems.size());
     }
 
+    @Override
+    public List<Album> getItems(long offset, long maxResults, boolean descending) {
+        return page(getAllItems(), offset, maxResults, descending);
+    }
+
     @Override
     public List<Album> getAllItems() {
         List<MusicFolder> allFolders = getDispatchingContentDirectory().getSettingsService().getAllMusicFolders();
@@ -19,6 +19,7 @@
 */
 package org.airsonic.player.service.upnp;
 
+import com.google.common.collect.Lists;
 import org.airsonic.player.domain.MusicFolder;
 import org.airsonic.player.domain.ParamSearchResult;
 import org.airsonic.player.util.Util;
@@ -31,6 +32,7 @@ import org.fourthline.cling.support.model.container.StorageFolder;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,6 +41,8 @@ import java.util.List;
  */
 public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
 
+    private static final String TITLE_PROPERTY = "dc:title";
+
     @Autowired
     private DispatchingContentDirectory dispatchingContentDirectory;
 
@@ -67,22 +71,18 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
 
     /**
      * Browses the top-level content of a type.
+     * <p>
+     * The filter only restricts which properties are returned and is not applied, all properties are always
+     * returned (which the UPnP specification allows).
      */
     public BrowseResult browseRoot(String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
         DIDLContent didl = new DIDLContent();
-        List<T> allItems = getAllItems();
-        if (filter != null) {
-            // filter items (not implemented yet)
-        }
-        if (orderBy != null) {
-            // sort items (not implemented yet)
-        }
-        List<T> selectedItems = Util.subList(allItems, firstResult, maxResults);
+        List<T> selectedItems = getItems(firstResult, maxResults, isDescending(orderBy));
         for (T item : selectedItems) {
             addItem(didl, item);
         }
 
-        return createBrowseResult(didl, (int) didl.getCount(), allItems.size());
+        return createBrowseResult(didl, (int) didl.getCount(), getAllItemsSize());
     }
 
     /**
@@ -100,20 +100,56 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
      */
     public BrowseResult browseObject(String id, String filter, long firstResult, long maxResults, SortCriterion[] orderBy) throws Exception {
         T item = getItemById(id);
-        List<U> allChildren = getChildren(item);
-        if (filter != null) {
-            // filter items (not implemented yet)
-        }
-        if (orderBy != null) {
-            // sort items (not implemented yet)
-        }
-        List<U> selectedChildren = Util.subList(allChildren, firstResult, maxResults);
+        List<U> selectedChildren = getChildren(item, firstResult, maxResults, isDescending(orderBy));
 
         DIDLContent didl = new DIDLContent();
         for (U child : selectedChildren) {
             addChild(didl, child);
         }
-        return createBrowseResult(didl, selectedChildren.size(), allChildren.size());
+        return createBrowseResult(didl, selectedChildren.size(), getChildrenSize(item));
+    }
+
+    /**
+     * Whether the requested sort order is the reverse of the natural (title) order of the content. Only the
+     * first sort criterion is taken into account, and only if it is the title. Content requested in any other
+     * order is returned in its natural order.
+     */
+    protected static boolean isDescending(SortCriterion[] orderBy) {
+        return orderBy != null && orderBy.length > 0 && !orderBy[0].isAscending()
+                && TITLE_PROPERTY.equals(orderBy[0].getPropertyName());
+    }
+
+    /**
+     * Returns a page of the top-level items. The default implementation pages through {@link #getAllItems()},
+     * processors for large collections should override this to let the database do the paging and sorting.
+     */
+    public List<T> getItems(long offset, long maxResults, boolean descending) throws Exception {
+        return page(getAllItems(), offset, maxResults, descending);
+    }
+
+    public abstract List<U> getChildren(T item) throws Exception;
+
+    /**
+     * Returns a page of the children of an item. The default implementation pages through
+     * {@link #getChildren(Object)}, processors for large collections should override this together with
+     * {@link #getChildrenSize(Object)}.
+     */
+    public List<U> getChildren(T item, long offset, long maxResults, boolean descending) throws Exception {
+        return page(getChildren(item), offset, maxResults, descending);
+    }
+
+    public int getChildrenSize(T item) throws Exception {
+        return getChildren(item).size();
+    }
+
+    protected static <V> List<V> page(List<V> all, long offset, long maxResults, boolean descending) {
+        if (offset >= all.size()) {
+            return Collections.emptyList();
+        }
+        if (descending) {
+            all = Lists.reverse(all);
+        }
+        return Util.subList(all, offset, maxResults);
     }
 
     protected BrowseResult createBrowseResult(DIDLContent didl, int count, int totalMatches) throws Exception {
@@ -155,7 +191,7 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
         didl.addContainer(createContainer(item));
     }
 
-    // this can probably be optimized in some cases
+    // processors for large collections should override this with a count query
     public int getAllItemsSize() throws Exception {
         return getAllItems().size();
     }
@@ -166,8 +202,6 @@ public abstract class UpnpContentProcessor<T extends Object, U extends Object> {
 
     public abstract T getItemById(String id);
 
-    public abstract List<U> getChildren(T item) throws Exception;
-
     public abstract void addChild(DIDLContent didl, U child);
 
     public String getRootTitle() {
@@ -0,0 +1,58 @@
+package org.airsonic.player.spring;
+
+import org.airsonic.player.monitor.MetricsManager;
+import org.airsonic.player.util.KeyedExecutor;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+/**
+ * Sends the messages of every websocket session in order, while the messages of different sessions are sent in
+ * parallel. The broker's own publish order preservation sends the messages of all sessions one at a time instead, so
+ * that a single slow client holds up everyone else.
+ * <p>
+ * The number of messages waiting for every session is available as a metric.
+ */
+public class SessionOrderedTaskExecutor extends ThreadPoolTaskExecutor implements ApplicationListener<AbstractSubProtocolEvent> {
+
+    private final MetricsManager metricsManager;
+    private final KeyedExecutor<String> sessions = new KeyedExecutor<>(super::execute);
+
+    public SessionOrderedTaskExecutor(MetricsManager metricsManager) {
+        this.metricsManager = metricsManager;
+        // Same pool as the broker's default for the client outbound channel
+        setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        setAllowCoreThreadTimeOut(true);
+        metricsManager.gauge(SessionOrderedTaskExecutor.class, "queued", sessions::getQueueSize);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String sessionId = null;
+        if (task instanceof MessageHandlingRunnable) {
+            sessionId = SimpMessageHeaderAccessor.getSessionId(((MessageHandlingRunnable) task).getMessage().getHeaders());
+        }
+        if (sessionId == null) {
+            super.execute(task);
+        } else {
+            sessions.execute(sessionId, task);
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(AbstractSubProtocolEvent event) {
+        if (event instanceof SessionConnectedEvent) {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+            metricsManager.gauge(SessionOrderedTaskExecutor.class, "queued." + sessionId, () -> sessions.getQueueSize(sessionId));
+        } else if (event instanceof SessionDisconnectEvent) {
+            String sessionId = ((SessionDisconnectEvent) event).getSessionId();
+            // Nobody is listening anymore
+            sessions.clear(sessionId);
+            metricsManager.remove(SessionOrderedTaskExecutor.class, "queued." + sessionId);
+        }
+    }
+}
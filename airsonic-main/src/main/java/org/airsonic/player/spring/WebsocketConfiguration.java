@@ -1,10 +1,12 @@
 package org.airsonic.player.spring;
 
+import org.airsonic.player.monitor.MetricsManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.WebSocketHandler;
@@ -24,6 +26,9 @@ public class WebsocketConfiguration implements WebSocketMessageBrokerConfigurer
 
     private TaskScheduler messageBrokerTaskScheduler;
 
+    @Autowired
+    private MetricsManager metricsManager;
+
     @Autowired
     public void setMessageBrokerTaskScheduler(TaskScheduler taskScheduler) {
         this.messageBrokerTaskScheduler = taskScheduler;
@@ -35,10 +40,12 @@ public class WebsocketConfiguration implements WebSocketMessageBrokerConfigurer
                 .setTaskScheduler(messageBrokerTaskScheduler)
                 .setHeartbeatValue(new long[] { 20000, 20000 });
         config.setApplicationDestinationPrefixes("/app");
+    }
 
-        // this ensures publish order is serial at the cost of no parallelization and
-        // performance - if performance is bad, this should be turned off
-        config.setPreservePublishOrder(true);
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // publish order is preserved per session rather than by sending to one session at a time
+        registration.taskExecutor(new SessionOrderedTaskExecutor(metricsManager));
     }
 
     @Override
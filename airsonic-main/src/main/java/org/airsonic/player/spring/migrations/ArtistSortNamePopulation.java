@@ -0,0 +1,69 @@
+package org.airsonic.player.spring.migrations;
+
+import liquibase.change.custom.CustomSqlChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.core.UpdateStatement;
+import org.airsonic.player.domain.Artist;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ArtistSortNamePopulation implements CustomSqlChange {
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Column artist.sort_name populated from artist.name";
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        return new ValidationErrors();
+    }
+
+    @Override
+    public SqlStatement[] generateStatements(Database database) throws CustomChangeException {
+        Map<Integer, String> sortNames = new HashMap<>();
+        JdbcConnection conn = null;
+        if (database.getConnection() instanceof JdbcConnection) {
+            conn = (JdbcConnection) database.getConnection();
+        }
+
+        if (conn != null) {
+            try (Statement st = conn.createStatement();
+                    ResultSet result = st.executeQuery("select id, name from artist");) {
+
+                while (result.next()) {
+                    sortNames.put(result.getInt("id"), Artist.createSortName(result.getString("name")));
+                }
+            } catch (DatabaseException | SQLException e) {
+                throw new CustomChangeException(e);
+            }
+        }
+
+        return sortNames.entrySet().parallelStream()
+                .map(a -> new UpdateStatement(database.getDefaultCatalogName(), database.getDefaultSchemaName(), "artist")
+                        .addNewColumnValue("sort_name", a.getValue())
+                        .setWhereClause("id=?")
+                        .addWhereParameter(a.getKey()))
+                .toArray(SqlStatement[]::new);
+    }
+
+}
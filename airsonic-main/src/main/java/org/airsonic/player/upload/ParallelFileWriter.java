@@ -0,0 +1,202 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.upload;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes files on an executor while the caller keeps producing data, so that a single reader (such as an archive
+ * being extracted) can feed several files to disk at once. Data is handed over in chunks, and at most a fixed
+ * number of chunks are buffered before the reader is made to wait.
+ */
+public class ParallelFileWriter {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private final Executor executor;
+    private final Semaphore bufferedChunks;
+    private final int maxBufferedChunks;
+    private final List<CompletableFuture<Path>> files = new ArrayList<>();
+
+    public ParallelFileWriter(Executor executor, int maxBufferedChunks) {
+        this.executor = executor;
+        this.maxBufferedChunks = maxBufferedChunks;
+        this.bufferedChunks = new Semaphore(maxBufferedChunks);
+    }
+
+    /**
+     * Creates the given file. It is written in the background, in the order data is written to the stream, and is
+     * complete once the stream is closed and {@link #await()} has returned.
+     */
+    public OutputStream create(Path file) {
+        return new ChunkedOutputStream(file);
+    }
+
+    /**
+     * Waits for all files to be written.
+     *
+     * @return The files that were written, and the errors of those that could not be written.
+     */
+    public Result await() throws InterruptedException {
+        Result result = new Result();
+        for (CompletableFuture<Path> file : files) {
+            try {
+                result.written.add(file.join());
+            } catch (CompletionException e) {
+                result.errors.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            }
+        }
+        files.clear();
+        // all chunks are released once every file is done
+        bufferedChunks.acquire(maxBufferedChunks);
+        bufferedChunks.release(maxBufferedChunks);
+        return result;
+    }
+
+    public static class Result {
+        private final List<Path> written = new ArrayList<>();
+        private final List<Exception> errors = new ArrayList<>();
+
+        public List<Path> getWritten() {
+            return written;
+        }
+
+        public List<Exception> getErrors() {
+            return errors;
+        }
+    }
+
+    private class ChunkedOutputStream extends OutputStream {
+        private final Path file;
+        private volatile FileChannel channel;
+        private CompletableFuture<Void> pending;
+        private byte[] chunk = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean closed;
+
+        private ChunkedOutputStream(Path file) {
+            this.file = file;
+            this.pending = CompletableFuture.runAsync(() -> {
+                try {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == chunk.length) {
+                flushChunk();
+            }
+            chunk[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == chunk.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, chunk.length - count);
+                System.arraycopy(b, off, chunk, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            if (pending.isCompletedExceptionally()) {
+                // the file could not be written, no point buffering the rest of it
+                count = 0;
+                return;
+            }
+            try {
+                bufferedChunks.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing " + file);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, count);
+            pending = pending.thenRunAsync(() -> {
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+            pending.whenComplete((r, e) -> bufferedChunks.release());
+            chunk = new byte[CHUNK_SIZE];
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushChunk();
+            chunk = null;
+            files.add(pending.handleAsync((r, e) -> {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException closeException) {
+                        e = e == null ? closeException : e;
+                    }
+                    if (e != null) {
+                        // don't leave partial files behind
+                        try {
+                            Files.deleteIfExists(file);
+                        } catch (IOException deleteException) {
+                            e.addSuppressed(deleteException);
+                        }
+                    }
+                }
+                if (e != null) {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    throw new CompletionException(cause instanceof UncheckedIOException ? cause.getCause() : cause);
+                }
+                return file;
+            }, executor));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.upload;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports the bytes read from a streamed upload to an {@link UploadListener}.
+ */
+public class UploadInputStream extends FilterInputStream {
+    private UploadListener listener;
+
+    public UploadInputStream(InputStream source, UploadListener listener) {
+        super(source);
+        this.listener = listener;
+    }
+
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            listener.bytesRead(1);
+        }
+        return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            listener.bytesRead(read);
+        }
+        return read;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            listener.bytesRead(skipped);
+        }
+        return skipped;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2021 (C) Airsonic Authors
+ */
+package org.airsonic.player.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runs tasks on an executor in the order they were added for the same key, while tasks with different keys run in
+ * parallel. A key only takes up one thread of the executor at a time, however many tasks it has waiting.
+ *
+ * @param <K> The key type.
+ */
+public class KeyedExecutor<K> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedExecutor.class);
+
+    /**
+     * The number of tasks of a key that run before the other keys get their turn.
+     */
+    private static final int BATCH_SIZE = 16;
+
+    private final Executor executor;
+
+    // A key is only mapped while a drain of its queue is scheduled or running
+    private final ConcurrentMap<K, Queue<Runnable>> queues = new ConcurrentHashMap<>();
+
+    public KeyedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the task after the tasks added before with the same key.
+     */
+    public void execute(K key, Runnable task) {
+        add(key, task, false);
+    }
+
+    /**
+     * Runs the task after the task of the same key that is running, if any, and drops the tasks of the key that
+     * haven't started yet. Meant for tasks that send the latest state of something, where the earlier states don't
+     * matter anymore.
+     */
+    public void executeLatest(K key, Runnable task) {
+        add(key, task, true);
+    }
+
+    /**
+     * Drops the tasks of the key that haven't started yet.
+     */
+    public void clear(K key) {
+        queues.computeIfPresent(key, (k, queue) -> {
+            queue.clear();
+            return queue;
+        });
+    }
+
+    /**
+     * Returns the number of tasks of the key that haven't started yet.
+     */
+    public int getQueueSize(K key) {
+        Queue<Runnable> queue = queues.get(key);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Returns the number of tasks that haven't started yet.
+     */
+    public int getQueueSize() {
+        return queues.values().stream().mapToInt(Queue::size).sum();
+    }
+
+    private void add(K key, Runnable task, boolean replace) {
+        queues.compute(key, (k, queue) -> {
+            if (queue == null) {
+                queue = new LinkedBlockingQueue<>();
+                executor.execute(() -> drain(k));
+            } else if (replace) {
+                queue.clear();
+            }
+            queue.add(task);
+            return queue;
+        });
+    }
+
+    private void drain(K key) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Runnable task = next(key);
+            if (task == null) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Task for {} failed", key, e);
+            }
+        }
+        executor.execute(() -> drain(key));
+    }
+
+    /**
+     * Takes the next task of the key, or unmaps the key if it has none left.
+     */
+    private Runnable next(K key) {
+        Runnable[] next = new Runnable[1];
+        queues.computeIfPresent(key, (k, queue) -> {
+            next[0] = queue.poll();
+            return next[0] == null ? null : queue;
+        });
+        return next[0];
+    }
+}
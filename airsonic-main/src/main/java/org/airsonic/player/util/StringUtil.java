@@ -220,6 +220,30 @@ public final class StringUtil {
         return result.toArray(new String[result.size()]);
     }
 
+    /**
+     * Replaces placeholders such as <code>%s</code> in a command argument with their values. All placeholders are
+     * replaced at once, so a value that contains something that looks like a placeholder (a file name such as
+     * <code>100%best.mkv</code>) is left as it is. Unknown placeholders are kept.
+     *
+     * @param input  The command argument.
+     * @param values The value of every placeholder, by the character that follows the <code>%</code>.
+     * @return The argument with its placeholders replaced.
+     */
+    public static String replacePlaceholders(String input, Map<Character, String> values) {
+        StringBuilder result = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            String value = c == '%' && i + 1 < input.length() ? values.get(input.charAt(i + 1)) : null;
+            if (value != null) {
+                result.append(value);
+                i++;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
     /**
      * Reads lines from the given input stream. All lines are trimmed. Empty lines and lines starting
      * with "#" are skipped. The input stream is always closed by this method.
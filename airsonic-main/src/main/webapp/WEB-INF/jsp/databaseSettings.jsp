@@ -124,5 +124,34 @@
 
 </form:form>
 
+<c:if test="${not empty statements}">
+    <h2><fmt:message key="databasesettings.statements"/></h2>
+    <p><fmt:message key="databasesettings.statementsinfo"/></p>
+    <table class="music indent">
+        <tr>
+            <th style="text-align:left"><fmt:message key="databasesettings.statement"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.count"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.totaltime"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.meantime"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.p95time"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.maxtime"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.meanrows"/></th>
+            <th class="fit rightalign"><fmt:message key="databasesettings.meanbatchsize"/></th>
+        </tr>
+        <c:forEach items="${statements}" var="statement">
+            <tr>
+                <td class="truncate" title="${fn:escapeXml(statement.statement)}">${fn:escapeXml(statement.statement)}</td>
+                <td class="fit rightalign">${statement.count}</td>
+                <td class="fit rightalign"><fmt:formatNumber value="${statement.totalMillis}" maxFractionDigits="0"/></td>
+                <td class="fit rightalign"><fmt:formatNumber value="${statement.meanMillis}" maxFractionDigits="2"/></td>
+                <td class="fit rightalign"><fmt:formatNumber value="${statement.p95Millis}" maxFractionDigits="2"/></td>
+                <td class="fit rightalign"><fmt:formatNumber value="${statement.maxMillis}" maxFractionDigits="2"/></td>
+                <td class="fit rightalign"><fmt:formatNumber value="${statement.meanRows}" maxFractionDigits="1"/></td>
+                <td class="fit rightalign"><fmt:formatNumber value="${statement.meanBatchSize}" maxFractionDigits="1"/></td>
+            </tr>
+        </c:forEach>
+    </table>
+</c:if>
+
 </body>
 </html>
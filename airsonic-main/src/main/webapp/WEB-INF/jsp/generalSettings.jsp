@@ -143,6 +143,24 @@
             </td>
         </tr>
 
+        <tr>
+            <td><fmt:message key="generalsettings.videoprobeconcurrency"/></td>
+            <td>
+                <form:input path="videoProbeConcurrency" size="15em"/>
+                <c:import url="helpToolTip.jsp"><c:param name="topic" value="videoprobeconcurrency"/></c:import>
+            </td>
+        </tr>
+
+        <tr>
+            <td>
+            </td>
+            <td>
+                <form:checkbox path="coverArtPregeneration" id="coverArtPregeneration"/>
+                <label for="coverArtPregeneration"><fmt:message key="generalsettings.coverartpregeneration"/></label>
+                <c:import url="helpToolTip.jsp"><c:param name="topic" value="coverartpregeneration"/></c:import>
+            </td>
+        </tr>
+
         <tr><td colspan="2">&nbsp;</td></tr>
 
         <tr>
@@ -46,6 +46,13 @@
         <td/>
     </tr>
 
+    <tr>
+        <td style="padding-top:1.5em" colspan="5">
+            <input type="checkbox" name="relay" id="relay" ${model.relay ? "checked" : ""}/>
+            <label for="relay"><fmt:message key="internetradiosettings.relay"/></label>
+        </td>
+    </tr>
+
     <tr>
         <td style="padding-top:1.5em" colspan="5">
             <input type="submit" value="<fmt:message key='common.save'/>" style="margin-right:0.3em">
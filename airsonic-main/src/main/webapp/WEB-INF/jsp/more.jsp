@@ -295,10 +295,6 @@
 
     <form method="post" enctype="multipart/form-data" action="upload.view?${_csrf.parameterName}=${_csrf.token}">
         <table>
-            <tr>
-                <td><fmt:message key="more.upload.source"/></td>
-                <td colspan="2"><input type="file" id="file" name="file" size="40" multiple="multiple"/></td>
-            </tr>
             <tr>
                 <td><fmt:message key="more.upload.target"/></td>
                 <td><input type="text" id="dir" name="dir" size="37" value="${model.uploadDirectory}"/></td>
@@ -310,6 +306,11 @@
                     <label for="unzip"><fmt:message key="more.upload.unzip"/></label>
                 </td>
             </tr>
+            <%-- files come after dir and unzip so that they can be processed while they are uploaded --%>
+            <tr>
+                <td><fmt:message key="more.upload.source"/></td>
+                <td colspan="2"><input type="file" id="file" name="file" size="40" multiple="multiple"/></td>
+            </tr>
         </table>
     </form>
 
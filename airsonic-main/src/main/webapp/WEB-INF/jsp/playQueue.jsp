@@ -79,6 +79,9 @@
         // List of songs (of type PlayQueueInfo.Entry)
         songs: [],
 
+        // Version of the play queue the songs are at, changes are only applied on top of the same version
+        version: null,
+
         // Stream URL of the media being played
         currentStreamUrl: null,
 
@@ -453,6 +456,7 @@
         playerSpecificCallbacks: {},
 
         unsubscribePlayerSpecificCallbacks() {
+            this.version = null;
             for (var topic in this.playerSpecificCallbacks) {
                 top.StompClient.unsubscribe(topic, "playQueue.jsp");
                 delete this.playerSpecificCallbacks[topic];
@@ -467,7 +471,10 @@
                 pq.playerSpecificCallbacks['/user/queue/playqueues/' + this.player.id + '/playstatus'] = function(msg) {
                     pq.playQueuePlayStatusCallback(JSON.parse(msg.body));
                 };
-                pq.playerSpecificCallbacks['/user/queue/playqueues/' + this.player.id + '/updated'] = function(msg) {
+                pq.playerSpecificCallbacks['/user/queue/playqueues/' + this.player.id] = function(msg) {
+                    pq.playQueueDeltaCallback(JSON.parse(msg.body));
+                };
+                pq.playerSpecificCallbacks['/user/queue/playqueues/' + this.player.id + '/snapshot'] = function(msg) {
                     pq.playQueueCallback(JSON.parse(msg.body));
                 };
                 pq.playerSpecificCallbacks['/user/queue/playqueues/' + this.player.id + '/skip'] = function(msg) {
@@ -988,17 +995,59 @@
 
         playQueueCallback(playQueue, initial) {
             this.songs = playQueue.entries;
+            this.version = playQueue.version;
             this.shuffleRadioEnabled = playQueue.shuffleRadioEnabled;
             this.internetRadioEnabled = playQueue.internetRadioEnabled;
 
+            this.playQueueRepeatStatusCallback(playQueue.repeatStatus);
+            this.playQueueUpdated(playQueue.playStatus, initial);
+            this.jukeBoxGainCallback(playQueue.gain);
+        },
+
+        playQueueDeltaCallback(delta) {
+            if (this.version == null || delta.baseVersion < this.version) {
+                // the snapshot we're waiting for (or already have) includes this change
+                return;
+            }
+            if (delta.baseVersion > this.version) {
+                // missed a change, start over from the whole play queue
+                this.version = null;
+                top.StompClient.send("/app/playqueues/" + this.player.id + "/snapshot", "");
+                return;
+            }
+            var songs = this.songs;
+            delta.operations.forEach(op => {
+                if (op.type == 'INSERT') {
+                    songs = songs.slice(0, op.index).concat(op.entries, songs.slice(op.index));
+                } else if (op.type == 'REMOVE') {
+                    songs.splice(op.index, op.count);
+                } else if (op.type == 'MOVE') {
+                    songs.splice(op.toIndex, 0, songs.splice(op.index, 1)[0]);
+                } else if (op.type == 'REORDER') {
+                    var old = songs.slice(op.index, op.index + op.order.length);
+                    op.order.forEach((from, i) => songs[op.index + i] = old[from]);
+                } else if (op.type == 'RESET') {
+                    songs = op.entries;
+                }
+                // SET_INDEX needs no handling, players are told what to play through skip messages
+            });
+            this.songs = songs;
+            this.version = delta.version;
+            this.shuffleRadioEnabled = delta.shuffleRadioEnabled;
+            this.internetRadioEnabled = delta.internetRadioEnabled;
+
+            this.playQueueUpdated(delta.playStatus, false);
+        },
+
+        playQueueUpdated(playStatus, initial) {
+
             // If an internet radio has no sources, display a message to the user.
             if (this.internetRadioEnabled && this.songs.length == 0) {
                 top.main.$().toastmessage("showErrorToast", "<fmt:message key="playlist.toast.radioerror"/>");
                 this.onStop();
             }
 
-            this.playQueueRepeatStatusCallback(playQueue.repeatStatus);
-            this.playQueuePlayStatusCallback(playQueue.playStatus, true);
+            this.playQueuePlayStatusCallback(playStatus, true);
 
             // download m3u for external player only once at the beginning, every subsequent change is just reflected on the server
             // download m3u for external with playlist player every time the playlist changes
@@ -1046,8 +1095,6 @@
             this.currentSongIndex = this.getCurrentSongIndex();
             this.musicTable.ajax.reload().columns.adjust();
             this.updateCurrentImage();
-
-            this.jukeBoxGainCallback(playQueue.gain);
         },
 
         updateWindowTitle(song) {
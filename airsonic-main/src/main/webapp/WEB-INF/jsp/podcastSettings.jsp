@@ -72,6 +72,26 @@
         </td>
     </tr>
 
+    <tr>
+        <td><fmt:message key="podcastsettings.downloadsperhost"/></td>
+        <td>
+            <form:select path="downloadsPerHost" cssStyle="width:20em">
+                <fmt:message key="podcastsettings.downloadsperhost.unlimited" var="unlimited"/>
+
+                <c:forTokens items="1 2 3 4 5" delims=" " var="count">
+                    <form:option value="${count}" label="${count}"/>
+                </c:forTokens>
+                <form:option value="0" label="${unlimited}"/>
+
+            </form:select>
+        </td>
+    </tr>
+
+    <tr>
+        <td><fmt:message key="podcastsettings.downloadlimit"/></td>
+        <td><form:input path="downloadLimit" size="8"/></td>
+    </tr>
+
     <tr>
         <td><fmt:message key="podcastsettings.folder"/></td>
         <td><form:input path="folder" cssStyle="width:20em"/></td>
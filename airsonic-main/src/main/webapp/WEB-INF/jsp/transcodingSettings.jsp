@@ -77,6 +77,15 @@
                 <input class="monospace" type="text" name="hlsCommand" size="100" value="${model.hlsCommand}"/>
             </td>
         </tr>
+        <tr>
+            <td style="font-weight: bold;">
+                <fmt:message key="advancedsettings.hlssegmentercommand"/>
+                <c:import url="helpToolTip.jsp"><c:param name="topic" value="hlssegmentercommand"/></c:import>
+            </td>
+            <td>
+                <input class="monospace" type="text" name="hlsSegmenterCommand" size="100" value="${model.hlsSegmenterCommand}"/>
+            </td>
+        </tr>
     </table>
 
     <table style="white-space:nowrap" class="indent">
@@ -0,0 +1,147 @@
+package org.airsonic.player.ajax;
+
+import org.airsonic.player.ajax.PlayQueueDelta.Operation;
+import org.airsonic.player.ajax.PlayQueueDelta.Type;
+import org.airsonic.player.domain.MediaFile;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class PlayQueueDeltaTest {
+
+    private final List<MediaFile> files = IntStream.range(0, 10).mapToObj(PlayQueueDeltaTest::file).collect(Collectors.toList());
+    private final Map<MediaFileEntry, MediaFile> converted = new IdentityHashMap<>();
+
+    @Test
+    public void testUnchanged() {
+        assertThat(diff(files, new ArrayList<>(files))).isEmpty();
+    }
+
+    @Test
+    public void testAppend() {
+        List<MediaFile> after = new ArrayList<>(files);
+        after.add(file(10));
+        after.add(file(11));
+
+        List<Operation> operations = diff(files, after);
+        assertThat(operations).extracting(Operation::getType).containsExactly(Type.INSERT);
+        // Only the new files are converted
+        assertThat(operations.get(0).getEntries()).hasSize(2);
+        assertApplies(operations, after);
+    }
+
+    @Test
+    public void testRemoveRuns() {
+        List<MediaFile> after = new ArrayList<>(files);
+        after.removeAll(Arrays.asList(files.get(1), files.get(2), files.get(6)));
+
+        List<Operation> operations = diff(files, after);
+        assertThat(operations).extracting(Operation::getType).containsExactly(Type.REMOVE, Type.REMOVE);
+        assertThat(converted).isEmpty();
+        assertApplies(operations, after);
+    }
+
+    @Test
+    public void testInsertRuns() {
+        List<MediaFile> after = new ArrayList<>(files);
+        after.add(3, file(10));
+        after.add(7, file(11));
+
+        List<Operation> operations = diff(files, after);
+        assertThat(operations).extracting(Operation::getType).containsExactly(Type.INSERT, Type.INSERT);
+        assertApplies(operations, after);
+    }
+
+    @Test
+    public void testMove() {
+        List<MediaFile> down = new ArrayList<>(files);
+        down.add(7, down.remove(2));
+        List<Operation> operations = diff(files, down);
+        assertThat(operations).extracting(Operation::getType).containsExactly(Type.MOVE);
+        assertApplies(operations, down);
+
+        List<MediaFile> up = new ArrayList<>(files);
+        up.add(2, up.remove(7));
+        operations = diff(files, up);
+        assertThat(operations).extracting(Operation::getType).containsExactly(Type.MOVE);
+        assertApplies(operations, up);
+    }
+
+    @Test
+    public void testShuffle() {
+        List<MediaFile> after = new ArrayList<>(files);
+        after.add(files.get(0));
+        List<MediaFile> before = new ArrayList<>(after);
+        Collections.shuffle(after, new Random(42));
+
+        List<Operation> operations = diff(before, after);
+        assertThat(operations).extracting(Operation::getType).containsExactly(Type.REORDER);
+        assertThat(converted).isEmpty();
+        assertApplies(before, operations, after);
+    }
+
+    @Test
+    public void testReplace() {
+        List<MediaFile> after = Arrays.asList(file(10), files.get(3), file(11));
+
+        assertApplies(diff(files, after), after);
+    }
+
+    private static MediaFile file(int i) {
+        MediaFile file = new MediaFile();
+        file.setPath("file" + i);
+        return file;
+    }
+
+    private List<Operation> diff(List<MediaFile> before, List<MediaFile> after) {
+        return PlayQueueDelta.diff(before, after, list -> list.stream().map(file -> {
+            MediaFileEntry entry = mock(MediaFileEntry.class);
+            converted.put(entry, file);
+            return entry;
+        }).collect(Collectors.toList()));
+    }
+
+    private void assertApplies(List<Operation> operations, List<MediaFile> expected) {
+        assertApplies(files, operations, expected);
+    }
+
+    /**
+     * Applies the operations the same way as the web client does.
+     */
+    private void assertApplies(List<MediaFile> before, List<Operation> operations, List<MediaFile> expected) {
+        List<MediaFile> result = new ArrayList<>(before);
+        for (Operation operation : operations) {
+            switch (operation.getType()) {
+                case INSERT:
+                    result.addAll(operation.getIndex(), operation.getEntries().stream().map(converted::get).collect(Collectors.toList()));
+                    break;
+                case REMOVE:
+                    result.subList(operation.getIndex(), operation.getIndex() + operation.getCount()).clear();
+                    break;
+                case MOVE:
+                    result.add(operation.getToIndex(), result.remove(operation.getIndex()));
+                    break;
+                case REORDER:
+                    List<MediaFile> old = new ArrayList<>(result.subList(operation.getIndex(), operation.getIndex() + operation.getOrder().size()));
+                    for (int i = 0; i < old.size(); i++) {
+                        result.set(operation.getIndex() + i, old.get(operation.getOrder().get(i)));
+                    }
+                    break;
+                default:
+                    throw new AssertionError(operation.getType());
+            }
+        }
+        assertThat(result).usingElementComparator((a, b) -> a == b ? 0 : 1).containsExactlyElementsOf(expected);
+    }
+}
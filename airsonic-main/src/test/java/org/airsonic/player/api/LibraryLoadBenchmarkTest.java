@@ -0,0 +1,204 @@
+package org.airsonic.player.api;
+
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Stopwatch;
+import org.airsonic.player.TestCaseUtils;
+import org.airsonic.player.dao.AlbumDao;
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.MediaScannerService;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.HomeRule;
+import org.airsonic.player.util.SyntheticLibrary;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Scans a synthetic library, then drives the busiest REST endpoints at a fixed concurrency and reports the scan
+ * durations and the throughput and latency percentiles of every endpoint. Requests go through the whole security
+ * and MVC stack, but not through the network.
+ * <p>
+ * Skipped unless the library size is given. For example, this scans 500k tracks and runs 16 concurrent clients:
+ * <pre>
+ * mvn test -pl airsonic-main -Dtest=LibraryLoadBenchmarkTest -DlibraryBenchmark.artists=5000 -DlibraryBenchmark.threads=16
+ * </pre>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class LibraryLoadBenchmarkTest {
+
+    private static final String PREFIX = "libraryBenchmark.";
+    private static final int ARTISTS = Integer.getInteger(PREFIX + "artists", 0);
+    private static final int ALBUMS_PER_ARTIST = Integer.getInteger(PREFIX + "albumsPerArtist", 10);
+    private static final int TRACKS_PER_ALBUM = Integer.getInteger(PREFIX + "tracksPerAlbum", 10);
+    private static final int DEPTH = Integer.getInteger(PREFIX + "depth", 1);
+    private static final double FLAC_RATIO = Double.parseDouble(System.getProperty(PREFIX + "flacRatio", "0.2"));
+    private static final boolean SKEWED = Boolean.parseBoolean(System.getProperty(PREFIX + "skewed", "true"));
+    private static final double CHANGED = Double.parseDouble(System.getProperty(PREFIX + "changed", "0.01"));
+    private static final int THREADS = Integer.getInteger(PREFIX + "threads", 8);
+    private static final int WARMUP = Integer.getInteger(PREFIX + "warmup", 200);
+    private static final int REQUESTS = Integer.getInteger(PREFIX + "requests", 2000);
+
+    private static final Pattern STATUS_OK = Pattern.compile("\"status\"\\s*:\\s*\"ok\"");
+
+    @ClassRule
+    public static final HomeRule homeRule = new HomeRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private MediaScannerService mediaScannerService;
+
+    @Autowired
+    private ArtistDao artistDao;
+
+    @Autowired
+    private AlbumDao albumDao;
+
+    @Autowired
+    private MediaFileDao mediaFileDao;
+
+    @BeforeClass
+    public static void checkEnabled() {
+        assumeTrue("Set " + PREFIX + "artists to run the benchmark", ARTISTS > 0);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        SyntheticLibrary library = new SyntheticLibrary(ARTISTS, ALBUMS_PER_ARTIST, TRACKS_PER_ALBUM);
+        library.setDepth(DEPTH);
+        library.setFlacRatio(FLAC_RATIO);
+        library.setSkewed(SKEWED);
+        Path root = temporaryFolder.newFolder("library").toPath();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        library.generate(root);
+        System.out.printf("Generated %d artists, %d albums and %d tracks in %s%n",
+                library.getArtistCount(), library.getAlbumCount(), library.getTrackCount(), stopwatch);
+
+        settingsService.createMusicFolder(new MusicFolder(root, "Synthetic", true, Instant.now()));
+        stopwatch = Stopwatch.createStarted();
+        TestCaseUtils.execScan(mediaScannerService);
+        System.out.printf("Full scan in %s (%.1f tracks/s)%n",
+                stopwatch, library.getTrackCount() * 1000.0 / Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+
+        int touched = library.touch(root, CHANGED);
+        stopwatch = Stopwatch.createStarted();
+        TestCaseUtils.execScan(mediaScannerService);
+        System.out.printf("Incremental scan of %d changed tracks in %s%n", touched, stopwatch);
+
+        List<MusicFolder> musicFolders = settingsService.getAllMusicFolders();
+        List<Artist> artists = artistDao.getAlphabetialArtists(0, Integer.MAX_VALUE, musicFolders);
+        List<Album> albums = albumDao.getAlphabeticalAlbums(0, Integer.MAX_VALUE, false, true, musicFolders);
+        assertThat(artists).isNotEmpty();
+        assertThat(albums).isNotEmpty();
+
+        // The same requests in the same order for every run, whatever ids the scan assigned
+        Random random = new Random(42);
+        List<Integer> songIds = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Album album = albums.get(random.nextInt(albums.size()));
+            mediaFileDao.getSongsForAlbum(album.getArtist(), album.getName()).stream().map(MediaFile::getId).forEach(songIds::add);
+        }
+        assertThat(songIds).isNotEmpty();
+
+        System.out.printf("%d concurrent clients, %d requests per endpoint after %d warm up requests%n", THREADS, REQUESTS, WARMUP);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            run(executor, "getIndexes", () -> "getIndexes");
+            run(executor, "getAlbumList2", () -> "getAlbumList2?type=alphabeticalByName&size=50&offset=" + random.nextInt(albums.size()));
+            run(executor, "search3", () -> {
+                String[] words = artists.get(random.nextInt(artists.size())).getName().split(" ");
+                return "search3?query=" + URLEncoder.encode(words[random.nextInt(words.length)], StandardCharsets.UTF_8);
+            });
+            run(executor, "stream", () -> "stream?format=raw&id=" + songIds.get(random.nextInt(songIds.size())));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(ExecutorService executor, String name, Supplier<String> requests) throws Exception {
+        for (Future<Boolean> warmup : executor.invokeAll(requests(requests, WARMUP, new Timer()))) {
+            warmup.get();
+        }
+
+        Timer timer = new Timer(new SlidingWindowReservoir(REQUESTS));
+        List<Callable<Boolean>> calls = requests(requests, REQUESTS, timer);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        int failures = 0;
+        for (Future<Boolean> call : executor.invokeAll(calls)) {
+            if (!call.get()) {
+                failures++;
+            }
+        }
+        long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+
+        Snapshot snapshot = timer.getSnapshot();
+        System.out.printf("%-14s %8.1f req/s   p50 %8.2f ms   p95 %8.2f ms   p99 %8.2f ms   max %8.2f ms   %d failed%n",
+                name, REQUESTS * 1e9 / elapsed, snapshot.getMedian() / 1e6, snapshot.get95thPercentile() / 1e6,
+                snapshot.get99thPercentile() / 1e6, snapshot.getMax() / 1e6, failures);
+        assertThat(failures).as(name + " failures").isZero();
+    }
+
+    private List<Callable<Boolean>> requests(Supplier<String> requests, int count, Timer timer) {
+        List<Callable<Boolean>> calls = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String path = requests.get();
+            boolean rest = !path.startsWith("stream");
+            RequestBuilder request = get(URI.create("/rest/" + path + (path.contains("?") ? "&" : "?")
+                    + "u=admin&p=admin&c=benchmark&f=json&v=" + TestCaseUtils.restApiVersion()));
+            calls.add(() -> {
+                MockHttpServletResponse response = timer.time(() -> mvc.perform(request).andReturn().getResponse());
+                // Errors are sent as REST responses, also for streams
+                return response.getStatus() == 200 && (rest
+                        ? STATUS_OK.matcher(response.getContentAsString()).find()
+                        : response.getContentType() != null && response.getContentType().startsWith("audio/"));
+            });
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ This file is part of Airsonic.
+
+ Airsonic is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ Airsonic is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with Airsonic.  If not, see <http://www.gnu.org/licenses/>.
+
+ Copyright 2016 (C) Airsonic Authors
+ Based upon Subsonic, Copyright 2009 (C) Sindre Mehus
+ */
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MusicFolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test of {@link ArtistDao}.
+ */
+public class ArtistDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    ArtistDao artistDao;
+
+    @Autowired
+    MusicFolderDao musicFolderDao;
+
+    private List<MusicFolder> folders;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from artist");
+        getJdbcTemplate().execute("delete from music_folder");
+        musicFolderDao.createMusicFolder(new MusicFolder(Paths.get("path"), "name", true, Instant.now()));
+        folders = musicFolderDao.getAllMusicFolders();
+    }
+
+    @Test
+    public void testCreateSortName() {
+        assertThat(Artist.createSortName("The Beatles")).isEqualTo("thebeatles");
+        assertThat(Artist.createSortName("a-ha")).isEqualTo("aha");
+        assertThat(Artist.createSortName("Björk")).isEqualTo("björk");
+        assertThat(Artist.createSortName("!!!")).isEqualTo("!!!");
+        assertThat(Artist.createSortName(null)).isNull();
+    }
+
+    @Test
+    public void testGetSortedArtists() {
+        createArtist("ABBA");
+        createArtist("a-ha");
+        createArtist("AC/DC");
+        createArtist("Absynthe Minded");
+
+        assertThat(artistDao.getSortedArtists(0, 10, false, folders)).extracting(Artist::getName)
+                .containsExactly("ABBA", "Absynthe Minded", "AC/DC", "a-ha");
+        assertThat(artistDao.getSortedArtists(1, 2, false, folders)).extracting(Artist::getName)
+                .containsExactly("Absynthe Minded", "AC/DC");
+        assertThat(artistDao.getSortedArtists(0, 2, true, folders)).extracting(Artist::getName)
+                .containsExactly("a-ha", "AC/DC");
+        assertThat(artistDao.getSortedArtists(0, 10, false, Collections.emptyList())).isEmpty();
+    }
+
+    @Test
+    public void testGetArtistCount() {
+        assertThat(artistDao.getArtistCount(folders)).isEqualTo(0);
+
+        createArtist("ABBA");
+        createArtist("a-ha");
+        Artist absent = createArtist("Absent");
+        absent.setPresent(false);
+        artistDao.createOrUpdateArtist(absent);
+
+        assertThat(artistDao.getArtistCount(folders)).isEqualTo(2);
+        assertThat(artistDao.getArtistCount(Collections.emptyList())).isEqualTo(0);
+    }
+
+    private Artist createArtist(String name) {
+        Artist artist = new Artist();
+        artist.setName(name);
+        artist.setPresent(true);
+        artist.setLastScanned(Instant.now());
+        artist.setFolderId(folders.get(0).getId());
+        artistDao.createOrUpdateArtist(artist);
+        return artist;
+    }
+}
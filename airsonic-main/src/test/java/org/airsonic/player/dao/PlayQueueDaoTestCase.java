@@ -0,0 +1,102 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MediaFile.MediaType;
+import org.airsonic.player.domain.PersistedPlayQueue;
+import org.airsonic.player.domain.PlayQueue.RepeatStatus;
+import org.airsonic.player.domain.Player;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test of the live play queues of {@link PlayQueueDao}.
+ */
+public class PlayQueueDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    PlayQueueDao playQueueDao;
+
+    @Autowired
+    PlayerDao playerDao;
+
+    @Autowired
+    MediaFileDao mediaFileDao;
+
+    private Player player;
+    private List<Integer> ids;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from player");
+        player = new Player();
+        playerDao.createPlayer(player);
+        ids = IntStream.range(0, 5).mapToObj(this::createMediaFile).collect(Collectors.toList());
+    }
+
+    private int createMediaFile(int i) {
+        MediaFile file = new MediaFile();
+        file.setPath("/music/playqueue/" + i + ".mp3");
+        file.setFolder("/music");
+        file.setMediaType(MediaType.MUSIC);
+        file.setPresent(true);
+        file.setChanged(Instant.now());
+        file.setCreated(Instant.now());
+        file.setLastScanned(Instant.now());
+        file.setChildrenLastUpdated(Instant.now());
+        mediaFileDao.createOrUpdateMediaFile(file);
+        return mediaFileDao.getMediaFile(file.getPath()).getId();
+    }
+
+    private PersistedPlayQueue update(List<Integer> mediaFileIds, List<Integer> previousIds) {
+        playQueueDao.updatePersistedPlayQueue(new PersistedPlayQueue(player.getId(), 1, RepeatStatus.QUEUE, mediaFileIds), previousIds);
+        return playQueueDao.getPersistedPlayQueue(player.getId());
+    }
+
+    @Test
+    public void testWritesChangedPositions() {
+        assertThat(playQueueDao.getPersistedPlayQueue(player.getId())).isNull();
+
+        List<Integer> first = Arrays.asList(ids.get(0), ids.get(1), ids.get(2));
+        PersistedPlayQueue persisted = update(first, Collections.emptyList());
+        assertThat(persisted.getMediaFileIds()).isEqualTo(first);
+        assertThat(persisted.getIndex()).isEqualTo(1);
+        assertThat(persisted.getRepeatStatus()).isEqualTo(RepeatStatus.QUEUE);
+
+        List<Integer> second = Arrays.asList(ids.get(0), ids.get(3), ids.get(2), ids.get(4), ids.get(4));
+        assertThat(update(second, first).getMediaFileIds()).isEqualTo(second);
+        assertThat(mediaFileDao.getFilesInPlayerQueue(player.getId())).extracting(MediaFile::getId).isEqualTo(second);
+
+        List<Integer> third = Arrays.asList(ids.get(1));
+        assertThat(update(third, second).getMediaFileIds()).isEqualTo(third);
+    }
+
+    @Test
+    public void testGapsOfDeletedMediaFiles() {
+        update(ids, Collections.emptyList());
+        getJdbcTemplate().update("delete from media_file where id=?", ids.get(1));
+
+        List<Integer> mediaFileIds = playQueueDao.getPersistedPlayQueue(player.getId()).getMediaFileIds();
+        assertThat(mediaFileIds).containsExactly(ids.get(0), null, ids.get(2), ids.get(3), ids.get(4));
+
+        List<Integer> closed = Arrays.asList(ids.get(0), ids.get(2), ids.get(3), ids.get(4));
+        assertThat(update(closed, mediaFileIds).getMediaFileIds()).isEqualTo(closed);
+    }
+
+    @Test
+    public void testDeletedWithPlayer() {
+        update(ids, Collections.emptyList());
+        playerDao.deletePlayer(player.getId());
+
+        assertThat(playQueueDao.getPersistedPlayQueue(player.getId())).isNull();
+    }
+}
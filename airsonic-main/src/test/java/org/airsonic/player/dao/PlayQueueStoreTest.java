@@ -0,0 +1,81 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PersistedPlayQueue;
+import org.airsonic.player.domain.PlayQueue;
+import org.airsonic.player.domain.PlayQueue.RepeatStatus;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PlayQueueStoreTest {
+
+    @Mock
+    private PlayQueueDao playQueueDao;
+    @Mock
+    private MediaFileDao mediaFileDao;
+    @InjectMocks
+    private PlayQueueStore playQueueStore;
+
+    private static MediaFile file(int id) {
+        MediaFile file = new MediaFile();
+        file.setId(id);
+        file.setPath("file" + id);
+        return file;
+    }
+
+    @Test
+    public void testRestore() {
+        when(playQueueDao.getPersistedPlayQueue(1)).thenReturn(new PersistedPlayQueue(1, 1, RepeatStatus.TRACK, Arrays.asList(10, 11)));
+        when(mediaFileDao.getFilesInPlayerQueue(1)).thenReturn(Arrays.asList(file(10), file(11)));
+
+        PlayQueue playQueue = new PlayQueue();
+        playQueueStore.restore(1, playQueue);
+        assertThat(playQueue.getFiles()).extracting(MediaFile::getId).containsExactly(10, 11);
+        assertThat(playQueue.getIndex()).isEqualTo(1);
+        assertThat(playQueue.getRepeatStatus()).isEqualTo(RepeatStatus.TRACK);
+
+        // Restoring doesn't write the play queue back
+        playQueueStore.flush(true);
+        verify(playQueueDao, never()).updatePersistedPlayQueue(any(), any());
+    }
+
+    @Test
+    public void testWritesOnceSettled() {
+        PlayQueue playQueue = new PlayQueue();
+        playQueueStore.restore(1, playQueue);
+
+        playQueue.addFiles(true, file(10), file(11));
+        playQueueStore.flush(false);
+        playQueue.addFiles(true, file(12));
+        playQueueStore.flush(false);
+        verify(playQueueDao, never()).updatePersistedPlayQueue(any(), any());
+
+        playQueueStore.flush(false);
+        ArgumentCaptor<PersistedPlayQueue> written = ArgumentCaptor.forClass(PersistedPlayQueue.class);
+        verify(playQueueDao).updatePersistedPlayQueue(written.capture(), eq(Collections.emptyList()));
+        assertThat(written.getValue().getMediaFileIds()).containsExactly(10, 11, 12);
+
+        // Only the changes since the last write are written
+        playQueue.removeFileAt(0);
+        playQueueStore.flush(true);
+        List<Integer> previous = Arrays.asList(10, 11, 12);
+        verify(playQueueDao).updatePersistedPlayQueue(written.capture(), eq(previous));
+        assertThat(written.getValue().getMediaFileIds()).containsExactly(11, 12);
+    }
+}
@@ -0,0 +1,82 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.domain.Scrobble;
+import org.airsonic.player.domain.User;
+import org.airsonic.player.domain.UserCredential;
+import org.airsonic.player.domain.UserCredential.App;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit test of {@link ScrobbleDao}.
+ */
+public class ScrobbleDaoTestCase extends DaoTestCaseBean2 {
+
+    @Autowired
+    ScrobbleDao scrobbleDao;
+
+    @Autowired
+    UserDao userDao;
+
+    @Before
+    public void setUp() {
+        getJdbcTemplate().execute("delete from scrobble");
+        if (userDao.getUserByName("scrobbler", true) == null) {
+            userDao.createUser(new User("scrobbler", null), new UserCredential("scrobbler", "scrobbler", "secret", "noop", App.AIRSONIC));
+        }
+    }
+
+    private Scrobble createScrobble(App app, String title, Instant listenedAt) {
+        Scrobble scrobble = new Scrobble();
+        scrobble.setUsername("scrobbler");
+        scrobble.setApp(app);
+        scrobble.setTitle(title);
+        scrobble.setTrackNumber(3);
+        scrobble.setListenedAt(listenedAt);
+        scrobble.setNextAttempt(listenedAt);
+        scrobbleDao.createScrobble(scrobble);
+        return scrobble;
+    }
+
+    @Test
+    public void testBatchesInListeningOrder() {
+        Instant now = Instant.now();
+        createScrobble(App.LISTENBRAINZ, "Second", now.minusSeconds(100));
+        createScrobble(App.LISTENBRAINZ, "First", now.minusSeconds(200));
+        createScrobble(App.LISTENBRAINZ, "Third", now.minusSeconds(50));
+        createScrobble(App.LASTFM, "Other", now.minusSeconds(10));
+
+        List<Scrobble> batch = scrobbleDao.getScrobbles("scrobbler", App.LISTENBRAINZ, 2);
+        assertThat(batch).extracting(Scrobble::getTitle).containsExactly("First", "Second");
+        assertThat(batch.get(0).getTrackNumber()).isEqualTo(3);
+        assertThat(scrobbleDao.getScrobbleCount()).isEqualTo(4);
+        assertThat(scrobbleDao.getOldestListenedAt()).isEqualTo(batch.get(0).getListenedAt());
+
+        scrobbleDao.deleteScrobbles(batch.stream().map(Scrobble::getId).collect(Collectors.toList()));
+        assertThat(scrobbleDao.getScrobbles("scrobbler", App.LISTENBRAINZ, 2)).extracting(Scrobble::getTitle).containsExactly("Third");
+    }
+
+    @Test
+    public void testDeferredRecipientsAreNotDue() {
+        Instant now = Instant.now();
+        createScrobble(App.LISTENBRAINZ, "One", now.minusSeconds(100));
+        createScrobble(App.LASTFM, "Two", now.minusSeconds(100));
+        assertThat(scrobbleDao.getDueRecipients(now)).containsExactlyInAnyOrder(
+                Pair.of("scrobbler", App.LISTENBRAINZ), Pair.of("scrobbler", App.LASTFM));
+
+        scrobbleDao.deferScrobbles("scrobbler", App.LASTFM, 2, now.plusSeconds(60));
+        // new listens don't cut the backoff short
+        createScrobble(App.LASTFM, "Three", now);
+        assertThat(scrobbleDao.getDueRecipients(now)).containsExactly(Pair.of("scrobbler", App.LISTENBRAINZ));
+        assertThat(scrobbleDao.getScrobbles("scrobbler", App.LASTFM, 10)).extracting(Scrobble::getAttempts).containsExactly(2, 0);
+        assertThat(scrobbleDao.getDueRecipients(now.plusSeconds(61))).hasSize(2);
+    }
+}
@@ -0,0 +1,63 @@
+package org.airsonic.player.dao;
+
+import org.airsonic.player.monitor.MetricsManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StatementMetricsTest {
+
+    @Mock
+    private MetricsManager metricsManager;
+    @InjectMocks
+    private StatementMetrics statementMetrics;
+
+    @Test
+    public void testFingerprintCollapsesLiteralsAndParameterLists() {
+        assertThat(StatementMetrics.fingerprint("select id from media_file\n  where path = 'it''s' and year > 1990 limit 10"))
+                .isEqualTo("select id from media_file where path = ? and year > ? limit ?");
+        assertThat(StatementMetrics.fingerprint("select * from artist where name in (:names)"))
+                .isEqualTo("select * from artist where name in (:names)");
+        assertThat(StatementMetrics.fingerprint("select * from album where id in (?, ?,?)"))
+                .isEqualTo(StatementMetrics.fingerprint("select * from album where id in (?, ?)"));
+        assertThat(StatementMetrics.fingerprint("select col1 from t2"))
+                .isEqualTo("select col1 from t2");
+    }
+
+    @Test
+    public void testStatementsDifferingInValuesShareStatistics() {
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        statementMetrics.record("select * from player where id = 1", start, 1);
+        statementMetrics.record("select * from player where id = 2", start, 0);
+        statementMetrics.recordBatch("update player set name = ?", start, 30, 10);
+
+        List<StatementMetrics.Statistics> statements = statementMetrics.getSlowestStatements(10);
+
+        assertThat(statements).extracting(StatementMetrics.Statistics::getStatement)
+                .containsExactly("select * from player where id = ?", "update player set name = ?");
+        assertThat(statements.get(0).getCount()).isEqualTo(2);
+        assertThat(statements.get(0).getMeanRows()).isEqualTo(0.5);
+        assertThat(statements.get(0).getMeanBatchSize()).isEqualTo(0);
+        assertThat(statements.get(1).getMeanBatchSize()).isEqualTo(10);
+        assertThat(statements.get(1).getMaxRows()).isEqualTo(30);
+        assertThat(statements.get(0).getTotalMillis()).isGreaterThanOrEqualTo(10);
+    }
+
+    @Test
+    public void testSlowestStatementsAreLimited() {
+        long start = System.nanoTime();
+        statementMetrics.record("select * from user", start - TimeUnit.MILLISECONDS.toNanos(1), 1);
+        statementMetrics.record("select * from share", start - TimeUnit.MILLISECONDS.toNanos(50), 1);
+
+        assertThat(statementMetrics.getSlowestStatements(1)).extracting(StatementMetrics.Statistics::getStatement)
+                .containsExactly("select * from share");
+    }
+}
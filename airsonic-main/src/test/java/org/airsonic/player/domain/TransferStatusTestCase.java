@@ -0,0 +1,42 @@
+package org.airsonic.player.domain;
+
+import org.airsonic.player.domain.TransferStatus.Sample;
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransferStatusTestCase {
+
+    @Test
+    public void testByteCounts() {
+        TransferStatus status = new TransferStatus(null);
+        status.addBytesTransferred(10);
+        status.addBytesTransferred(5);
+        status.addBytesSkipped(3);
+        assertThat(status.getBytesTransferred()).isEqualTo(15);
+        assertThat(status.getBytesSkipped()).isEqualTo(3);
+
+        status.setBytesTransferred(7);
+        status.setBytesSkipped(0);
+        assertThat(status.getBytesTransferred()).isEqualTo(7);
+        assertThat(status.getBytesSkipped()).isZero();
+    }
+
+    @Test
+    public void testHistoryKeepsLatestSamples() {
+        TransferStatus status = new TransferStatus(null);
+        for (int i = 0; i < 250; i++) {
+            status.addBytesTransferred(1);
+            status.sample();
+        }
+
+        // The oldest 50 samples are overwritten, and the rest are in order
+        assertThat(status.getHistory().stream().map(Sample::getBytesTransferred).collect(Collectors.toList()))
+                .isEqualTo(LongStream.rangeClosed(51, 250).boxed().collect(Collectors.toList()));
+        assertThat(status.getHistory().getLast().getBytesTransferred()).isEqualTo(250);
+        assertThat(status.getMillisSinceLastUpdate()).isGreaterThanOrEqualTo(0);
+    }
+}
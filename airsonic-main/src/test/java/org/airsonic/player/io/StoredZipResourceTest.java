@@ -0,0 +1,93 @@
+package org.airsonic.player.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StoredZipResourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StoredZipResource.Entry createEntry(String name, String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return new StoredZipResource.Entry(file, name, Files.size(file), Instant.parse("2020-01-02T03:04:06Z"));
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file));
+        return crc.getValue();
+    }
+
+    @Test
+    public void testReadableByZipInputStream() throws IOException {
+        List<StoredZipResource.Entry> entries = Arrays.asList(
+                createEntry("Album/01 - Track.mp3", "first track contents"),
+                createEntry("Album/02 - Bjørk.flac", "second track, with a longer body than the first"),
+                createEntry("Album/cover.jpg", ""));
+        StoredZipResource zip = new StoredZipResource(entries, e -> crc(e.getFile()));
+
+        byte[] bytes;
+        try (InputStream in = zip.getInputStream()) {
+            bytes = IOUtils.toByteArray(in);
+        }
+        assertThat((long) bytes.length).isEqualTo(zip.contentLength());
+
+        try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+            for (StoredZipResource.Entry entry : entries) {
+                ZipEntry zipEntry = zin.getNextEntry();
+                assertThat(zipEntry.getName()).isEqualTo(entry.getName());
+                assertThat(zipEntry.getMethod()).isEqualTo(ZipEntry.STORED);
+                assertThat(IOUtils.toByteArray(zin)).isEqualTo(Files.readAllBytes(entry.getFile()));
+                assertThat(zipEntry.getCrc()).isEqualTo(crc(entry.getFile()));
+            }
+            assertThat(zin.getNextEntry()).isNull();
+        }
+    }
+
+    @Test
+    public void testSkipMatchesFullStream() throws IOException {
+        List<StoredZipResource.Entry> entries = Arrays.asList(
+                createEntry("a/one", "0123456789"),
+                createEntry("a/two", "abcdefghijklmnopqrstuvwxyz"));
+        AtomicInteger crcCalls = new AtomicInteger();
+        StoredZipResource zip = new StoredZipResource(entries, e -> {
+            crcCalls.incrementAndGet();
+            return crc(e.getFile());
+        });
+
+        byte[] full;
+        try (InputStream in = zip.getInputStream()) {
+            full = IOUtils.toByteArray(in);
+        }
+        assertThat(crcCalls).hasValue(2);
+
+        for (int start = 0; start < full.length; start++) {
+            try (InputStream in = zip.getInputStream()) {
+                assertThat(in.skip(start)).isEqualTo(start);
+                assertThat(IOUtils.toByteArray(in)).isEqualTo(Arrays.copyOfRange(full, start, full.length));
+            }
+        }
+        // CRCs are only computed once per archive
+        assertThat(crcCalls).hasValue(2);
+    }
+}
@@ -0,0 +1,106 @@
+package org.airsonic.player.io;
+
+import com.google.common.base.Stopwatch;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Holds many transcoded streams open at once, each read by a client that has stalled, and reports the number of
+ * platform threads and the heap in use. Every stream has what a transcoded stream has in the server: a request
+ * thread, a thread copying the source into the transcoder and a thread reading the transcoder's stderr. The
+ * transcoder is <code>cat</code>, so that the threads and pipes are measured rather than the transcoding. The JDK
+ * adds a process reaper thread for every transcoder, whatever the threads of the streams are.
+ * <p>
+ * Skipped unless the number of streams is given. Run it with and without virtual threads to compare, for example:
+ * <pre>
+ * mvn test -pl airsonic-main -Dtest=StreamLoadBenchmarkTest -DstreamBenchmark.streams=1000 -Dairsonic.virtualThreads=true
+ * </pre>
+ * Only platform threads have been measured so far, on Java 17: 1000 streams took about 4000 more platform threads
+ * and 63 MB of heap. Virtual threads need Java 21 or later, and their numbers are still to be measured.
+ */
+public class StreamLoadBenchmarkTest {
+
+    private static final int STREAMS = Integer.getInteger("streamBenchmark.streams", 0);
+    private static final String CAT = "/bin/cat";
+
+    @BeforeClass
+    public static void checkEnabled() {
+        assumeTrue("Set streamBenchmark.streams to run the benchmark", STREAMS > 0);
+        assumeTrue(CAT + " is needed as the transcoder", Files.isExecutable(Paths.get(CAT)));
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        int threadsBefore = threads.getThreadCount();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+        CountDownLatch playing = new CountDownLatch(STREAMS);
+        CountDownLatch stalled = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> clients = new ArrayList<>(STREAMS);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        for (int i = 0; i < STREAMS; i++) {
+            clients.add(IoThreads.start("Stream client " + i, () -> {
+                try (InputStream in = new TranscodeInputStream(new ProcessBuilder(CAT), new EndlessInputStream(), null)) {
+                    if (in.read(new byte[8192]) <= 0) {
+                        failures.incrementAndGet();
+                    }
+                    playing.countDown();
+                    stalled.await();
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    playing.countDown();
+                }
+            }));
+        }
+        assertThat(playing.await(5, TimeUnit.MINUTES)).isTrue();
+        System.out.printf("Started %d streams in %s, %s%n", STREAMS, stopwatch,
+                IoThreads.isVirtual() ? "virtual threads" : "platform threads");
+
+        System.gc();
+        System.out.printf("Platform threads %6d (%+d)   heap %8.1f MB (%+.1f MB)   peak threads %d%n",
+                threads.getThreadCount(), threads.getThreadCount() - threadsBefore,
+                memory.getHeapMemoryUsage().getUsed() / 1e6, (memory.getHeapMemoryUsage().getUsed() - heapBefore) / 1e6,
+                threads.getPeakThreadCount());
+
+        stalled.countDown();
+        for (Thread client : clients) {
+            client.join(TimeUnit.MINUTES.toMillis(1));
+        }
+        assertThat(failures.get()).isZero();
+    }
+
+    /**
+     * Source data that never runs out, so the copy threads stay busy until the transcoder's pipe fills up.
+     */
+    private static class EndlessInputStream extends InputStream {
+
+        @Override
+        public int read() {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return len;
+        }
+    }
+}
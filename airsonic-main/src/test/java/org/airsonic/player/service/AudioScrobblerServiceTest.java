@@ -0,0 +1,183 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.dao.ScrobbleDao;
+import org.airsonic.player.domain.Scrobble;
+import org.airsonic.player.domain.UserCredential;
+import org.airsonic.player.domain.UserCredential.App;
+import org.airsonic.player.monitor.MetricsManager;
+import org.airsonic.player.service.scrobbler.LastFMScrobbler;
+import org.airsonic.player.service.scrobbler.ListenBrainzScrobbler;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AudioScrobblerServiceTest {
+
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private ScrobbleDao scrobbleDao;
+    @Mock
+    private MetricsManager metricsManager;
+    @Mock
+    private LastFMScrobbler lastFMScrobbler;
+    @Mock
+    private ListenBrainzScrobbler listenBrainzScrobbler;
+    @InjectMocks
+    private AudioScrobblerService audioScrobblerService;
+
+    @Before
+    public void setup() {
+        when(scrobbleDao.getDueRecipients(any())).thenReturn(Collections.singletonList(Pair.of("user", App.LASTFM)));
+        when(securityService.getDecodableCredsForApps("user", App.LASTFM)).thenReturn(
+                Map.of(App.LASTFM, new UserCredential("user", "lastfmuser", "secret", "noop", App.LASTFM)));
+    }
+
+    @After
+    public void shutdown() {
+        audioScrobblerService.shutdown();
+    }
+
+    private List<Scrobble> createBatch(int size, int attempts) {
+        List<Scrobble> batch = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            Scrobble scrobble = new Scrobble();
+            scrobble.setId(i);
+            scrobble.setUsername("user");
+            scrobble.setApp(App.LASTFM);
+            scrobble.setTitle("Song " + i);
+            scrobble.setListenedAt(Instant.ofEpochSecond(i));
+            scrobble.setAttempts(attempts);
+            batch.add(scrobble);
+        }
+        // the listens are gone from the outbox once submitted or deferred
+        when(scrobbleDao.getScrobbles("user", App.LASTFM, LastFMScrobbler.MAX_BATCH_SIZE))
+                .thenReturn(batch).thenReturn(Collections.emptyList());
+        return batch;
+    }
+
+    /**
+     * Returns the time of the next attempt after dispatching, which must have failed.
+     */
+    private Instant getNextAttempt(int attempts) {
+        ArgumentCaptor<Instant> nextAttempt = ArgumentCaptor.forClass(Instant.class);
+        verify(scrobbleDao).deferScrobbles(eq("user"), eq(App.LASTFM), eq(attempts), nextAttempt.capture());
+        return nextAttempt.getValue();
+    }
+
+    @Test
+    public void testSubmitsBatch() throws Exception {
+        List<Scrobble> batch = createBatch(3, 0);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", batch)).thenReturn(true);
+
+        audioScrobblerService.dispatch();
+
+        verify(scrobbleDao).deleteScrobbles(List.of(1, 2, 3));
+        verify(scrobbleDao, never()).deferScrobbles(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    public void testRejectedBatchOnlyDefersListensNotSubmitted() throws Exception {
+        List<Scrobble> batch = createBatch(3, 0);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", batch)).thenReturn(false);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", List.of(batch.get(0)))).thenReturn(true);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", List.of(batch.get(1)))).thenThrow(new IOException("Unavailable"));
+
+        audioScrobblerService.dispatch();
+
+        verify(scrobbleDao).deleteScrobbles(List.of(1));
+        verify(scrobbleDao, never()).deleteScrobbles(List.of(2));
+        verify(scrobbleDao, never()).deleteScrobbles(List.of(3));
+        verify(lastFMScrobbler, never()).submit("lastfmuser", "secret", List.of(batch.get(2)));
+        getNextAttempt(1);
+    }
+
+    @Test
+    public void testDropsRejectedListens() throws Exception {
+        List<Scrobble> batch = createBatch(2, 0);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", batch)).thenReturn(false);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", List.of(batch.get(0)))).thenReturn(false);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", List.of(batch.get(1)))).thenReturn(true);
+
+        audioScrobblerService.dispatch();
+
+        verify(scrobbleDao).deleteScrobbles(List.of(1));
+        verify(scrobbleDao).deleteScrobbles(List.of(2));
+        verify(scrobbleDao, never()).deferScrobbles(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    public void testBacksOffExponentially() throws Exception {
+        List<Scrobble> batch = createBatch(2, 3);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", batch)).thenThrow(new IOException("Unavailable"));
+
+        audioScrobblerService.dispatch();
+
+        assertThat(Duration.between(Instant.now(), getNextAttempt(4)).toMinutes()).isCloseTo(8, within(1L));
+        verify(scrobbleDao, never()).deleteScrobbles(any());
+    }
+
+    @Test
+    public void testBackoffIsLimited() throws Exception {
+        List<Scrobble> batch = createBatch(1, 20);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", batch)).thenThrow(new IOException("Unavailable"));
+
+        audioScrobblerService.dispatch();
+
+        assertThat(Duration.between(Instant.now(), getNextAttempt(21)).toMinutes()).isCloseTo(360, within(1L));
+    }
+
+    @Test
+    public void testDropsListensAfterMaxAttempts() throws Exception {
+        List<Scrobble> batch = createBatch(2, 35);
+        when(lastFMScrobbler.submit("lastfmuser", "secret", batch)).thenThrow(new IOException("Unavailable"));
+
+        audioScrobblerService.dispatch();
+
+        verify(scrobbleDao).deleteScrobbles(List.of(1, 2));
+        verify(scrobbleDao, never()).deferScrobbles(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    public void testEvictCredentials() throws Exception {
+        when(lastFMScrobbler.submit(eq("lastfmuser"), eq("secret"), any())).thenReturn(true);
+
+        createBatch(1, 0);
+        audioScrobblerService.dispatch();
+        createBatch(1, 0);
+        audioScrobblerService.dispatch();
+        verify(securityService).getDecodableCredsForApps("user", App.LASTFM);
+
+        audioScrobblerService.evictCredentials("user");
+        createBatch(1, 0);
+        audioScrobblerService.dispatch();
+        verify(securityService, times(2)).getDecodableCredsForApps("user", App.LASTFM);
+    }
+}
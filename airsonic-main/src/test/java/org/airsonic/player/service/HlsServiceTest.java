@@ -0,0 +1,185 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.PlayStatus;
+import org.airsonic.player.domain.Player;
+import org.airsonic.player.domain.TransferStatus;
+import org.airsonic.player.util.HomeRule;
+import org.airsonic.player.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.awt.Dimension;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HlsServiceTest {
+
+    @ClassRule
+    public static final HomeRule homeRule = new HomeRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private TranscodingService transcodingService;
+    @Mock
+    private StatusService statusService;
+    @Mock
+    private MediaFileService mediaFileService;
+    @InjectMocks
+    private HlsService hlsService;
+
+    private Path log;
+    private MediaFile mediaFile;
+    private Player player;
+    private final Dimension size = new Dimension(640, 360);
+
+    @Before
+    public void setup() throws Exception {
+        assumeFalse(Util.isWindows());
+        Path transcodeDirectory = temporaryFolder.newFolder("transcode").toPath();
+        log = temporaryFolder.getRoot().toPath().resolve("starts.log");
+
+        // Logs every start, then writes three segments at a time of a video that has ten of them, like ffmpeg's
+        // segment muxer it lists each one once it is complete
+        Path segmenter = transcodeDirectory.resolve("segmenter");
+        Files.writeString(segmenter, "#!/bin/sh\n"
+                + "echo \"$2 $1\" >> " + log + "\n"
+                + "i=$2\n"
+                + "while [ $i -le $(($2 + 2)) ] && [ $i -le 9 ]; do\n"
+                + "  f=$(printf '%05d.ts' $i); echo \"segment $i\" > \"$3/$f\"; echo \"$f,0,10\" >> \"$3/segments.csv\"; i=$((i + 1))\n"
+                + "done\n"
+                + "[ $i -le 9 ] && exec sleep 60\n");
+        segmenter.toFile().setExecutable(true);
+        when(transcodingService.getTranscodeDirectory()).thenReturn(transcodeDirectory);
+        when(settingsService.getHlsSegmenterCommand()).thenReturn("segmenter %s %n %p");
+        when(statusService.createStreamStatus(any(Player.class))).thenAnswer(invocation -> new TransferStatus(invocation.getArgument(0)));
+
+        mediaFile = new MediaFile();
+        mediaFile.setId(1);
+        mediaFile.setChanged(Instant.now());
+        mediaFile.setPath(temporaryFolder.newFile("100%no 50%best.mkv").toString());
+        player = createPlayer(1);
+        hlsService.init();
+    }
+
+    @After
+    public void shutdown() {
+        hlsService.shutdown();
+    }
+
+    private static Player createPlayer(int id) {
+        Player player = new Player();
+        player.setId(id);
+        return player;
+    }
+
+    private String getSegment(int index) throws Exception {
+        return getSegment(player, index);
+    }
+
+    private String getSegment(Player player, int index) throws Exception {
+        HlsService.Segment segment = hlsService.getSegment(mediaFile, player, 1000, size, index);
+        return segment == null ? null : Files.readString(segment.getFile()).trim();
+    }
+
+    private List<String> getStarts() throws Exception {
+        return Files.readAllLines(log);
+    }
+
+    @Test
+    public void testSegmentsComeFromOneSegmenter() throws Exception {
+        assertThat(getSegment(0)).isEqualTo("segment 0");
+        assertThat(getSegment(1)).isEqualTo("segment 1");
+        assertThat(getSegment(2)).isEqualTo("segment 2");
+
+        // Placeholders in the file name are not replaced
+        assertThat(getStarts()).containsExactly("0 " + mediaFile.getFile().toAbsolutePath());
+    }
+
+    @Test
+    public void testRestartsWhenSeekingAhead() throws Exception {
+        assertThat(getSegment(0)).isEqualTo("segment 0");
+        assertThat(getSegment(7)).isEqualTo("segment 7");
+        assertThat(getStarts()).extracting(line -> line.split(" ")[0]).containsExactly("0", "7");
+
+        // Segments of an earlier run are still served
+        assertThat(getSegment(1)).isEqualTo("segment 1");
+        assertThat(getStarts()).hasSize(2);
+    }
+
+    @Test
+    public void testNoSegmentPastTheEnd() throws Exception {
+        assertThat(getSegment(9)).isEqualTo("segment 9");
+        assertThat(getSegment(10)).isNull();
+    }
+
+    @Test
+    public void testPlayersDontRestartEachOther() throws Exception {
+        Player other = createPlayer(2);
+        assertThat(getSegment(7)).isEqualTo("segment 7");
+        assertThat(getSegment(other, 0)).isEqualTo("segment 0");
+        assertThat(getSegment(8)).isEqualTo("segment 8");
+        assertThat(getSegment(other, 1)).isEqualTo("segment 1");
+
+        assertThat(getStarts()).extracting(line -> line.split(" ")[0]).containsExactly("7", "0");
+    }
+
+    @Test
+    public void testSessionIsAStream() throws Exception {
+        HlsService.Segment segment = hlsService.getSegment(mediaFile, player, 1000, size, 0);
+        hlsService.getSegment(mediaFile, player, 1000, size, 1);
+
+        TransferStatus status = segment.getStatus();
+        assertThat(status.getPlayer()).isSameAs(player);
+        assertThat(status.getFile()).isEqualTo(mediaFile.getFile());
+        PlayStatus playStatus = new PlayStatus(status.getId(), mediaFile, player, 0);
+        verify(statusService, times(1)).createStreamStatus(player);
+        verify(statusService).addActiveLocalPlay(playStatus);
+        verify(mediaFileService, times(1)).incrementPlayCount(mediaFile);
+        verify(statusService, never()).removeStreamStatus(any());
+
+        hlsService.evictIdleSessions(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10));
+        verify(statusService).removeActiveLocalPlay(playStatus);
+        verify(statusService).removeStreamStatus(status);
+    }
+
+    @Test
+    public void testEvictsIdleSessions() throws Exception {
+        assertThat(getSegment(0)).isEqualTo("segment 0");
+        Path segment = hlsService.getSegment(mediaFile, player, 1000, size, 0).getFile();
+
+        hlsService.evictIdleSessions(System.currentTimeMillis());
+        assertThat(segment).exists();
+
+        hlsService.evictIdleSessions(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(10));
+        assertThat(segment).doesNotExist();
+
+        // A new session starts the segmenter again
+        assertThat(getSegment(0)).isEqualTo("segment 0");
+        assertThat(getStarts()).hasSize(2);
+    }
+}
@@ -0,0 +1,143 @@
+package org.airsonic.player.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InternetRadioRelayServiceTest {
+
+    private static final int META_INTERVAL = 16;
+
+    private HttpServer server;
+    private String url;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final InternetRadioRelayService relayService = new InternetRadioRelayService();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/radio", exchange -> serve(exchange, Integer.MAX_VALUE));
+        // The first connection to this one is dropped, so that the station reconnects
+        server.createContext("/dropping", exchange -> serve(exchange, connections.get() == 0 ? 2000 : Integer.MAX_VALUE));
+        server.createContext("/dead", exchange -> {
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/radio";
+    }
+
+    private void serve(HttpExchange exchange, int length) {
+        try {
+            connections.incrementAndGet();
+            boolean icy = "1".equals(exchange.getRequestHeaders().getFirst("Icy-MetaData"));
+            exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+            if (icy) {
+                exchange.getResponseHeaders().set("icy-metaint", String.valueOf(META_INTERVAL));
+            }
+            exchange.sendResponseHeaders(200, 0);
+
+            // The audio is a running counter, so that listeners can check that no metadata ended up in it
+            byte[] metaData = Arrays.copyOf("StreamTitle='Song';".getBytes(StandardCharsets.UTF_8), 32);
+            int counter = 0;
+            try (OutputStream out = exchange.getResponseBody()) {
+                while (counter < length) {
+                    for (int i = 0; i < META_INTERVAL; i++) {
+                        out.write(counter++ % 251);
+                    }
+                    if (icy) {
+                        out.write(metaData.length / 16);
+                        out.write(metaData);
+                    }
+                    out.flush();
+                    TimeUnit.MILLISECONDS.sleep(1);
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // listener went away
+        }
+    }
+
+    @After
+    public void tearDown() {
+        relayService.shutdown();
+        server.stop(0);
+    }
+
+    private static void assertContiguous(byte[] audio) {
+        for (int i = 1; i < audio.length; i++) {
+            assertThat(audio[i] & 0xFF).isEqualTo(((audio[i - 1] & 0xFF) + 1) % 251);
+        }
+    }
+
+    @Test
+    public void testListenersShareUpstreamConnection() throws Exception {
+        try (InternetRadioRelayService.Listener first = relayService.listen(url);
+                InternetRadioRelayService.Listener second = relayService.listen(url)) {
+            byte[] audio = new byte[1000];
+            new DataInputStream(first).readFully(audio);
+            assertContiguous(audio);
+            new DataInputStream(second).readFully(audio);
+            assertContiguous(audio);
+
+            assertThat(connections.get()).isEqualTo(1);
+            assertThat(relayService.getStationCount()).isEqualTo(1);
+            assertThat(first.getContentType()).isEqualTo("audio/mpeg");
+            assertThat(second.getTitle()).isEqualTo("Song");
+        }
+    }
+
+    @Test
+    public void testIdleStationIsDisconnectedAfterGracePeriod() throws Exception {
+        try (InternetRadioRelayService.Listener listener = relayService.listen(url)) {
+            assertThat(listener.read()).isNotEqualTo(-1);
+        }
+
+        relayService.evictIdleStations(System.currentTimeMillis());
+        assertThat(relayService.getStationCount()).isEqualTo(1);
+
+        relayService.evictIdleStations(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1));
+        assertThat(relayService.getStationCount()).isEqualTo(0);
+
+        // A new listener reconnects to the station
+        try (InternetRadioRelayService.Listener listener = relayService.listen(url)) {
+            assertThat(listener.read()).isNotEqualTo(-1);
+        }
+        assertThat(connections.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictingDeadStationLeavesOthersRunning() throws Exception {
+        String deadUrl = url.replace("/radio", "/dead");
+        String droppingUrl = url.replace("/radio", "/dropping");
+        assertThatThrownBy(() -> relayService.listen(deadUrl)).isInstanceOf(IOException.class);
+        // Let the dead station's thread go back to the pool, so that the next station runs in it
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        try (InternetRadioRelayService.Listener listener = relayService.listen(droppingUrl)) {
+            relayService.evictIdleStations(System.currentTimeMillis());
+            assertThat(relayService.getStationCount()).isEqualTo(1);
+
+            // Reads on past the dropped connection, so the station must have reconnected
+            new DataInputStream(listener).readFully(new byte[10000]);
+            assertThat(connections.get()).isEqualTo(2);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.util.LambdaUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LastFmCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void store(LastFmCache cache, String name, String content) {
+        cache.store(name, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), 0L);
+    }
+
+    private static String load(LastFmCache cache, String name) throws IOException {
+        try (InputStream in = cache.load(name)) {
+            return in == null ? null : IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testEntriesSurviveReopening() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LastFmCache cache = new LastFmCache(dir, 60000L, Long.MAX_VALUE);
+        store(cache, "artist.getInfo.abc", "<lfm>first</lfm>");
+        store(cache, "artist.getSimilar.abc", "<lfm>second</lfm>");
+        store(cache, "artist.getInfo.abc", "<lfm>updated</lfm>");
+        cache.remove("artist.getSimilar.abc");
+
+        LastFmCache reopened = new LastFmCache(dir, 60000L, Long.MAX_VALUE);
+        assertThat(reopened.contains("artist.getInfo.abc")).isTrue();
+        assertThat(reopened.isExpired("artist.getInfo.abc")).isFalse();
+        assertThat(load(reopened, "artist.getInfo.abc")).isEqualTo("<lfm>updated</lfm>");
+        assertThat(reopened.contains("artist.getSimilar.abc")).isFalse();
+        assertThat(reopened.getHitCount()).isEqualTo(1);
+        assertThat(reopened.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExpiration() {
+        LastFmCache cache = new LastFmCache(folder.getRoot().toPath(), -1L, Long.MAX_VALUE);
+        store(cache, "artist.getInfo.abc", "<lfm/>");
+        assertThat(cache.contains("artist.getInfo.abc")).isTrue();
+        assertThat(cache.isExpired("artist.getInfo.abc")).isTrue();
+    }
+
+    @Test
+    public void testOldestEntriesAreEvicted() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LastFmCache cache = new LastFmCache(dir, 60000L, 20 * 1024 * 1024);
+        // incompressible content, to fill segments quickly
+        Random random = new Random(0);
+        byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < 40; i++) {
+            random.nextBytes(data);
+            cache.store("entry" + i, new ByteArrayInputStream(data), 0L);
+        }
+        assertThat(cache.contains("entry0")).isFalse();
+        assertThat(cache.contains("entry39")).isTrue();
+        long size;
+        try (Stream<Path> files = Files.list(dir)) {
+            size = files.map(LambdaUtils.uncheckFunction(Files::size)).mapToLong(Long::longValue).sum();
+        }
+        assertThat(size).isLessThanOrEqualTo(20 * 1024 * 1024 + 8 * 1024 * 1024);
+    }
+
+    @Test
+    public void testLiveEntriesAreCopiedBeforeEviction() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LastFmCache cache = new LastFmCache(dir, 60000L, 20 * 1024 * 1024);
+        store(cache, "artist.getInfo.kept", "<lfm>kept</lfm>");
+        store(cache, "artist.getInfo.removed", "<lfm>removed</lfm>");
+        cache.remove("artist.getInfo.removed");
+        // superseded entries, so that only a few are live when the oldest segment is evicted
+        Random random = new Random(0);
+        byte[] data = new byte[1024 * 1024];
+        for (int i = 0; i < 40; i++) {
+            random.nextBytes(data);
+            cache.store("entry" + i % 4, new ByteArrayInputStream(data), 0L);
+        }
+        assertThat(load(cache, "artist.getInfo.kept")).isEqualTo("<lfm>kept</lfm>");
+        assertThat(cache.contains("artist.getInfo.removed")).isFalse();
+        assertThat(cache.getEntryCount()).isEqualTo(5);
+
+        LastFmCache reopened = new LastFmCache(dir, 60000L, 20 * 1024 * 1024);
+        assertThat(load(reopened, "artist.getInfo.kept")).isEqualTo("<lfm>kept</lfm>");
+        assertThat(reopened.contains("artist.getInfo.removed")).isFalse();
+        assertThat(reopened.getEntryCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void testCorruptKeyLengthIsTruncated() throws IOException {
+        testCorruptEntryIsTruncated(ByteBuffer.allocate(Integer.BYTES + 8).putInt(Integer.MAX_VALUE - 4));
+    }
+
+    @Test
+    public void testCorruptValueLengthIsTruncated() throws IOException {
+        byte[] key = "artist.getInfo.corrupt".getBytes(StandardCharsets.UTF_8);
+        testCorruptEntryIsTruncated(ByteBuffer.allocate(Integer.BYTES + key.length + Long.BYTES + Integer.BYTES + 8)
+                .putInt(key.length).put(key).putLong(Long.MAX_VALUE).putInt(Integer.MAX_VALUE - 4));
+    }
+
+    private void testCorruptEntryIsTruncated(ByteBuffer corrupt) throws IOException {
+        Path dir = folder.getRoot().toPath();
+        LastFmCache cache = new LastFmCache(dir, 60000L, Long.MAX_VALUE);
+        store(cache, "artist.getInfo.abc", "<lfm/>");
+        Path segment = dir.resolve("segment-0.dat");
+        long size = Files.size(segment);
+        Files.write(segment, corrupt.array(), StandardOpenOption.APPEND);
+
+        LastFmCache reopened = new LastFmCache(dir, 60000L, Long.MAX_VALUE);
+        assertThat(load(reopened, "artist.getInfo.abc")).isEqualTo("<lfm/>");
+        assertThat(reopened.getEntryCount()).isEqualTo(1);
+        assertThat(Files.size(segment)).isEqualTo(size);
+    }
+}
@@ -0,0 +1,100 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MusicFolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LibraryNameResolverTest {
+
+    @Mock
+    private ArtistDao artistDao;
+    @Mock
+    private MediaFileDao mediaFileDao;
+    @Mock
+    private SettingsService settingsService;
+    @InjectMocks
+    private LibraryNameResolver resolver;
+
+    private final List<MusicFolder> folders = Collections.emptyList();
+
+    @Before
+    public void setUp() {
+        when(settingsService.getIgnoredArticlesAsArray()).thenReturn(new String[] {"The", "El", "La"});
+    }
+
+    private static Artist createArtist(String name) {
+        Artist artist = new Artist();
+        artist.setName(name);
+        return artist;
+    }
+
+    private static MediaFile createSong(String title) {
+        MediaFile song = new MediaFile();
+        song.setTitle(title);
+        return song;
+    }
+
+    @Test
+    public void testNormalize() {
+        assertThat(resolver.normalize("Beyoncé")).isEqualTo("beyonce");
+        assertThat(resolver.normalize("The Beatles")).isEqualTo("beatles");
+        assertThat(resolver.normalize("Beatles, The")).isEqualTo("beatles");
+        assertThat(resolver.normalize("Simon & Garfunkel")).isEqualTo(resolver.normalize("simon and garfunkel"));
+        assertThat(resolver.normalize("The The")).isEqualTo("the");
+    }
+
+    @Test
+    public void testResolveArtistsInOneQuery() {
+        List<Artist> library = Arrays.asList(createArtist("Beyoncé"), createArtist("The Beatles"), createArtist("Muse"));
+        when(artistDao.getArtistNames()).thenReturn(library.stream().map(Artist::getName).collect(Collectors.toList()));
+        when(artistDao.getArtists(anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<String> names = invocation.getArgument(0);
+            return library.stream().filter(a -> names.contains(a.getName())).collect(Collectors.toList());
+        });
+
+        Map<String, Artist> resolved = resolver.resolveArtists(Arrays.asList("Muse", "Unknown", "Beatles, The", "Beyonce"), folders);
+
+        assertThat(resolved.keySet()).containsExactly("Muse", "Beatles, The", "Beyonce");
+        assertThat(resolved.get("Beyonce").getName()).isEqualTo("Beyoncé");
+        verify(artistDao, times(1)).getArtists(anyCollection(), any());
+    }
+
+    @Test
+    public void testResolveSongs() {
+        when(mediaFileDao.getSongArtistNames()).thenReturn(Arrays.asList("Muse"));
+        when(mediaFileDao.getSongsByArtists(eq(Arrays.asList("Muse", "MUSE")), anyInt(), any())).thenReturn(
+                Arrays.asList(createSong("Supermassive Black Hole"), createSong("Hysteria"), createSong("Uprising")));
+
+        Map<String, MediaFile> resolved = resolver.resolveSongs("MUSE", Arrays.asList("Uprising", "Unknown", "supermassive black hole"), folders);
+
+        assertThat(resolved.keySet()).containsExactly("Uprising", "supermassive black hole");
+        verify(mediaFileDao, times(1)).getSongsByArtists(anyCollection(), anyInt(), any());
+        verify(mediaFileDao, never()).getDirectoryArtistNames();
+    }
+}
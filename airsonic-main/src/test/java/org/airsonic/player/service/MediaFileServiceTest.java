@@ -0,0 +1,140 @@
+package org.airsonic.player.service;
+
+import com.google.common.collect.ImmutableSet;
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.CoverArtSource;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.service.metadata.EmbeddedArtworkStore;
+import org.airsonic.player.service.metadata.JaudiotaggerParser;
+import org.airsonic.player.service.metadata.MetaData;
+import org.airsonic.player.service.metadata.MetaDataParser;
+import org.airsonic.player.service.metadata.MetaDataParserFactory;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MediaFileServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private MediaFileDao mediaFileDao;
+    @Mock
+    private JaudiotaggerParser parser;
+    @Mock
+    private EmbeddedArtworkStore embeddedArtworkStore;
+    @Mock
+    private MetaDataParserFactory metaDataParserFactory;
+    @Mock
+    private MetaDataParser metaDataParser;
+    @Mock
+    private SonosCatalogVersion sonosCatalogVersion;
+    @InjectMocks
+    private MediaFileService mediaFileService;
+
+    private Path albumDir;
+
+    @Before
+    public void setup() throws Exception {
+        Path root = temporaryFolder.getRoot().toPath();
+        albumDir = Files.createDirectory(root.resolve("Album"));
+        Files.createFile(albumDir.resolve("01.mp3"));
+        Files.createFile(albumDir.resolve("02.mp3"));
+
+        MetaData metaData = new MetaData();
+        metaData.setArtist("Artist");
+        metaData.setAlbumArtist("Album Artist");
+        metaData.setAlbumName("Album");
+        metaData.setYear(2001);
+        metaData.setGenre("Genre");
+
+        when(securityService.isReadAllowed(any(Path.class))).thenReturn(true);
+        when(securityService.getRootFolderForFile(any(Path.class))).thenReturn(root.toString());
+        when(settingsService.getAllMusicFolders(anyBoolean(), anyBoolean())).thenReturn(Collections.emptyList());
+        when(settingsService.getMusicFileTypesSet()).thenReturn(ImmutableSet.of("mp3"));
+        when(settingsService.getVideoFileTypesSet()).thenReturn(ImmutableSet.of());
+        when(settingsService.getCoverArtSource()).thenReturn(CoverArtSource.FILETAG);
+        when(settingsService.getCoverArtFileTypesSet()).thenReturn(ImmutableSet.of("jpg"));
+        when(metaDataParserFactory.getParser(any(Path.class))).thenReturn(metaDataParser);
+        when(metaDataParser.getMetaData(any(Path.class))).thenReturn(metaData);
+    }
+
+    @Test
+    public void testDirectoryClassifiedFromChildren() {
+        MediaFile album = mediaFileService.getMediaFile(albumDir, false);
+        List<MediaFile> children = mediaFileService.getChildrenOf(album, true, true, false, false);
+
+        assertThat(children).hasSize(2);
+        assertThat(album.isAlbum()).isTrue();
+        assertThat(album.getArtist()).isEqualTo("Album Artist");
+        assertThat(album.getAlbumName()).isEqualTo("Album");
+        assertThat(album.getYear()).isEqualTo(2001);
+        assertThat(album.getGenre()).isEqualTo("Genre");
+        assertThat(album.getCoverArtPath()).isNull();
+
+        // Every file is only read once, even the one the directory was classified from
+        verify(metaDataParser).getMetaData(albumDir.resolve("01.mp3"));
+        verify(metaDataParser).getMetaData(albumDir.resolve("02.mp3"));
+        verify(metaDataParser, times(2)).getMetaData(any(Path.class));
+    }
+
+    @Test
+    public void testDirectoryWithoutFiles() throws Exception {
+        Path artistDir = albumDir.getParent();
+        MediaFile artist = mediaFileService.getMediaFile(artistDir, false);
+        mediaFileService.getChildrenOf(artist, true, true, false, false);
+
+        assertThat(artist.isAlbum()).isFalse();
+        assertThat(artist.getArtist()).isEqualTo(artistDir.getFileName().toString());
+    }
+
+    @Test
+    public void testRefreshChangesSonosCatalog() {
+        MediaFile album = mediaFileService.getMediaFile(albumDir, false);
+
+        mediaFileService.refreshMediaFile(album);
+
+        verify(sonosCatalogVersion, times(1)).catalogChanged();
+    }
+
+    @Test
+    public void testReadingFilesDoesntChangeSonosCatalog() throws Exception {
+        // As during a scan, which changes the version once when it completes
+        MediaFile album = mediaFileService.getMediaFile(albumDir, false);
+        MediaFile deleted = new MediaFile();
+        deleted.setPath(albumDir.resolve("03.mp3").toString());
+        when(mediaFileDao.getChildrenOf(album.getPath())).thenReturn(Collections.singletonList(deleted));
+        Files.delete(albumDir.resolve("01.mp3"));
+
+        mediaFileService.getChildrenOf(album, true, true, false, false);
+
+        verify(mediaFileDao).deleteMediaFiles(argThat(paths -> paths.contains(deleted.getPath())));
+        verify(sonosCatalogVersion, never()).catalogChanged();
+    }
+}
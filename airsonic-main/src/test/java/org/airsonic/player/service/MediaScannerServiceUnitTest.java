@@ -1,15 +1,35 @@
 package org.airsonic.player.service;
 
+import org.airsonic.player.dao.AlbumDao;
+import org.airsonic.player.dao.ArtistDao;
+import org.airsonic.player.dao.MediaFileDao;
+import org.airsonic.player.domain.Album;
+import org.airsonic.player.domain.Artist;
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.domain.MediaFile.MediaType;
 import org.airsonic.player.domain.MediaLibraryStatistics;
+import org.airsonic.player.domain.MusicFolder;
+import org.airsonic.player.service.metadata.EmbeddedArtworkStore;
 import org.airsonic.player.service.search.IndexManager;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class MediaScannerServiceUnitTest {
@@ -19,6 +39,31 @@ public class MediaScannerServiceUnitTest {
 
     @Mock
     IndexManager indexManager;
+    @Mock
+    SettingsService settingsService;
+    @Mock
+    PlaylistService playlistService;
+    @Mock
+    MediaFileService mediaFileService;
+    @Mock
+    MediaFileDao mediaFileDao;
+    @Mock
+    ArtistDao artistDao;
+    @Mock
+    AlbumDao albumDao;
+    @Mock
+    SimpMessagingTemplate messagingTemplate;
+    @Mock
+    BroadcastService broadcastService;
+    @Mock
+    SonosCatalogVersion sonosCatalogVersion;
+    @Mock
+    CoverArtService coverArtService;
+    @Mock
+    EmbeddedArtworkStore embeddedArtworkStore;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Test
     public void neverScanned() {
@@ -28,4 +73,50 @@ public class MediaScannerServiceUnitTest {
         when(indexManager.getStatistics()).thenReturn(new MediaLibraryStatistics());
         assertFalse(mediaScannerService.neverScanned());
     }
+
+    @Test
+    public void testOnlyChangedAlbumsAndArtistsArePregenerated() throws Exception {
+        Path musicFolderPath = temporaryFolder.newFolder("music").toPath();
+        MusicFolder musicFolder = new MusicFolder(1, musicFolderPath, "Music", true, Instant.now());
+        MediaFile root = new MediaFile();
+        root.setPath(musicFolderPath.toString());
+        root.setFolder(musicFolderPath.toString());
+        root.setMediaType(MediaType.DIRECTORY);
+
+        // Read from disk during the scan
+        MediaFile changed = createSong(musicFolderPath, "Changed Artist", "Changed Album", Instant.now().plusSeconds(3600));
+        // Not modified since the previous scan
+        MediaFile unchanged = createSong(musicFolderPath, "Unchanged Artist", "Unchanged Album", Instant.EPOCH);
+
+        ReflectionTestUtils.setField(mediaScannerService, "scannerParallelism", 2);
+        when(settingsService.getAllMusicFolders()).thenReturn(Collections.singletonList(musicFolder));
+        when(settingsService.getPodcastFolder()).thenReturn(musicFolderPath.resolve("podcasts").toString());
+        when(settingsService.isCoverArtPregeneration()).thenReturn(true);
+        when(mediaFileService.getMediaFile(musicFolderPath, false)).thenReturn(root);
+        when(mediaFileService.getChildrenOf(root, true, true, false, false)).thenReturn(Arrays.asList(changed, unchanged));
+
+        mediaScannerService.scanLibrary();
+        for (int i = 0; i < 100 && mediaScannerService.isScanning(); i++) {
+            Thread.sleep(50);
+        }
+        assertFalse(mediaScannerService.isScanning());
+
+        verify(coverArtService).pregenerateThumbnails(argThat((Album album) -> "Changed Album".equals(album.getName())));
+        verify(coverArtService).pregenerateThumbnails(argThat((Artist artist) -> "Changed Artist".equals(artist.getName())));
+        verify(coverArtService, never()).pregenerateThumbnails(argThat((Album album) -> "Unchanged Album".equals(album.getName())));
+        verify(coverArtService, never()).pregenerateThumbnails(argThat((Artist artist) -> "Unchanged Artist".equals(artist.getName())));
+    }
+
+    private static MediaFile createSong(Path musicFolderPath, String artist, String album, Instant lastScanned) {
+        MediaFile song = new MediaFile();
+        song.setPath(musicFolderPath.resolve(album).resolve("01.mp3").toString());
+        song.setParentPath(musicFolderPath.resolve(album).toString());
+        song.setFolder(musicFolderPath.toString());
+        song.setMediaType(MediaType.MUSIC);
+        song.setArtist(artist);
+        song.setAlbumArtist(artist);
+        song.setAlbumName(album);
+        song.setLastScanned(lastScanned);
+        return song;
+    }
 }
@@ -6,6 +6,7 @@ import org.airsonic.player.dao.PlaylistDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.service.playlist.DefaultPlaylistExportHandler;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.junit.Assert;
@@ -67,7 +68,8 @@ public class PlaylistServiceTestExport {
                                               settingsService,
                                               Lists.newArrayList(
                                                       defaultPlaylistExportHandler),
-                                              Collections.emptyList());
+                                              Collections.emptyList(),
+                                              new SonosCatalogVersion());
     }
 
     @Test
@@ -6,6 +6,7 @@ import org.airsonic.player.dao.PlaylistDao;
 import org.airsonic.player.domain.MediaFile;
 import org.airsonic.player.domain.Playlist;
 import org.airsonic.player.service.playlist.DefaultPlaylistImportHandler;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -74,7 +75,8 @@ public class PlaylistServiceTestImport {
                 securityService,
                 settingsService,
                 Collections.emptyList(),
-                Lists.newArrayList(defaultPlaylistImportHandler));
+                Lists.newArrayList(defaultPlaylistImportHandler),
+                new SonosCatalogVersion());
 
     }
 
@@ -19,10 +19,65 @@
 
 package org.airsonic.player.service;
 
+import com.sonos.services._1.AbstractMedia;
+import com.sonos.services._1.GetMetadata;
+import com.sonos.services._1.MediaCollection;
+import com.sonos.services._1.MediaList;
 import junit.framework.TestCase;
+import org.airsonic.player.service.sonos.SonosCatalogVersion;
+import org.airsonic.player.service.sonos.SonosHelper;
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.xml.ws.WebServiceContext;
+import javax.xml.ws.handler.MessageContext;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class SonosServiceTest extends TestCase {
 
+    private SonosService sonosService;
+    private SonosHelper sonosHelper;
+    private SonosCatalogVersion sonosCatalogVersion;
+
+    @Override
+    protected void setUp() {
+        sonosHelper = mock(SonosHelper.class);
+        sonosCatalogVersion = new SonosCatalogVersion();
+        WebServiceContext context = mock(WebServiceContext.class);
+        MessageContext messageContext = mock(MessageContext.class);
+        when(context.getUserPrincipal()).thenReturn(() -> "admin");
+        when(context.getMessageContext()).thenReturn(messageContext);
+        when(messageContext.get(AbstractHTTPDestination.HTTP_REQUEST)).thenReturn(new MockHttpServletRequest());
+
+        sonosService = new SonosService();
+        sonosService.setSonosHelper(sonosHelper);
+        sonosService.setSonosCatalogVersion(sonosCatalogVersion);
+        sonosService.setContext(context);
+    }
+
+    private MediaList getMetadata(String id) {
+        GetMetadata parameters = new GetMetadata();
+        parameters.setId(id);
+        parameters.setIndex(0);
+        parameters.setCount(100);
+        return sonosService.getMetadata(parameters).getGetMetadataResult();
+    }
+
+    private static List<AbstractMedia> createMedia(String title) {
+        MediaCollection collection = new MediaCollection();
+        collection.setTitle(title);
+        return Collections.singletonList(collection);
+    }
+
     public void testParsePlaylistIndices() {
         SonosService sonosService = new SonosService();
         assertEquals("[]", sonosService.parsePlaylistIndices("").toString());
@@ -32,4 +87,51 @@ public class SonosServiceTest extends TestCase {
         assertEquals("[1, 2, 4, 5, 6, 7]", sonosService.parsePlaylistIndices("1,2,4-7").toString());
         assertEquals("[11, 12, 15, 20, 21, 22]", sonosService.parsePlaylistIndices("11-12,15,20-22").toString());
     }
-}
\ No newline at end of file
+
+    public void testLastUpdateFollowsVersions() {
+        String catalog = sonosService.getLastUpdate().getCatalog();
+        String favorites = sonosService.getLastUpdate().getFavorites();
+        assertEquals(catalog, sonosService.getLastUpdate().getCatalog());
+
+        sonosCatalogVersion.catalogChanged();
+        assertFalse(catalog.equals(sonosService.getLastUpdate().getCatalog()));
+        assertEquals(favorites, sonosService.getLastUpdate().getFavorites());
+
+        sonosCatalogVersion.favoritesChanged();
+        assertFalse(favorites.equals(sonosService.getLastUpdate().getFavorites()));
+    }
+
+    public void testMetadataCachedUntilCatalogChanges() {
+        when(sonosHelper.forLibrary(eq("admin"), any())).thenReturn(createMedia("Old")).thenReturn(createMedia("New"));
+
+        assertEquals("Old", getMetadata(SonosService.ID_LIBRARY).getMediaCollectionOrMediaMetadata().get(0).getTitle());
+        assertEquals("Old", getMetadata(SonosService.ID_LIBRARY).getMediaCollectionOrMediaMetadata().get(0).getTitle());
+        verify(sonosHelper, times(1)).forLibrary(eq("admin"), any());
+
+        sonosCatalogVersion.catalogChanged();
+        assertEquals("New", getMetadata(SonosService.ID_LIBRARY).getMediaCollectionOrMediaMetadata().get(0).getTitle());
+        verify(sonosHelper, times(2)).forLibrary(eq("admin"), any());
+    }
+
+    public void testMetadataCachedUntilFavoritesChange() {
+        MediaCollection playlist = new MediaCollection();
+        playlist.setTitle("Playlist");
+        when(sonosHelper.forPlaylists(eq("admin"), any())).thenReturn(Collections.singletonList(playlist));
+
+        getMetadata(SonosService.ID_PLAYLISTS);
+        getMetadata(SonosService.ID_PLAYLISTS);
+        verify(sonosHelper, times(1)).forPlaylists(eq("admin"), any());
+
+        sonosCatalogVersion.favoritesChanged();
+        getMetadata(SonosService.ID_PLAYLISTS);
+        verify(sonosHelper, times(2)).forPlaylists(eq("admin"), any());
+    }
+
+    public void testShuffleNotCached() {
+        when(sonosHelper.forShuffle(eq(100), eq("admin"), any())).thenReturn(createMedia("Shuffle"));
+
+        getMetadata(SonosService.ID_SHUFFLE);
+        getMetadata(SonosService.ID_SHUFFLE);
+        verify(sonosHelper, times(2)).forShuffle(eq(100), eq("admin"), any());
+    }
+}
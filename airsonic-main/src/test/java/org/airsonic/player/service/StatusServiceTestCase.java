@@ -28,6 +28,7 @@ import org.airsonic.player.domain.UserSettings;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -42,6 +43,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
@@ -74,6 +76,7 @@ public class StatusServiceTestCase {
         doReturn(true).when(settings).getNowPlayingAllowed();
         service = new StatusService();
         service.setMessagingTemplate(messagingTemplate);
+        service.setBroadcastService(new BroadcastService());
         service.setMediaFileService(mediaFileService);
         service.setSettingsService(settingsService);
         player1 = new Player();
@@ -126,6 +129,30 @@ public class StatusServiceTestCase {
         verify(messagingTemplate, timeout(300)).convertAndSend(eq("/topic/nowPlaying/recent/add"), any(NowPlayingInfo.class));
     }
 
+    @Test
+    public void testNextSongOnSameTransfer() {
+        UUID transferId = UUID.randomUUID();
+        MediaFile song1 = new MediaFile();
+        song1.setId(1);
+        MediaFile song2 = new MediaFile();
+        song2.setId(2);
+        PlayStatus status1 = new PlayStatus(transferId, song1, player1, 0);
+        PlayStatus status2 = new PlayStatus(transferId, song2, player1, 0);
+
+        service.addActiveLocalPlay(status1);
+        service.removeActiveLocalPlay(status1);
+        service.addActiveLocalPlay(status2);
+
+        // None of the broadcasts are dropped, and they are sent in order
+        verify(messagingTemplate, timeout(300).times(2)).convertAndSend(eq("/topic/nowPlaying/current/add"), any(NowPlayingInfo.class));
+        verify(messagingTemplate, timeout(300)).convertAndSend(eq("/topic/nowPlaying/current/remove"), any(NowPlayingInfo.class));
+        InOrder inOrder = inOrder(messagingTemplate);
+        inOrder.verify(messagingTemplate).convertAndSend(eq("/topic/nowPlaying/current/add"), any(NowPlayingInfo.class));
+        inOrder.verify(messagingTemplate).convertAndSend(eq("/topic/nowPlaying/current/remove"), any(NowPlayingInfo.class));
+        inOrder.verify(messagingTemplate).convertAndSend(eq("/topic/nowPlaying/current/add"), any(NowPlayingInfo.class));
+        assertThat(service.getActivePlays()).hasSize(1);
+    }
+
     @Test
     public void testNoBroadcast() {
         // No media file
@@ -186,4 +213,25 @@ public class StatusServiceTestCase {
         assertThat(service.getAllStreamStatuses()).containsExactly(statusC);
         assertThat(service.getStreamStatusesForPlayer(player1)).containsExactly(statusC);
     }
+
+    @Test
+    public void testSampleTransfers() {
+        TransferStatus status = service.createStreamStatus(player1);
+        status.addBytesTransferred(100);
+        // Sampled periodically, not on transfer
+        assertThat(status.getHistory()).isEmpty();
+        assertThat(status.getMillisSinceLastUpdate()).isZero();
+
+        service.sampleTransfers();
+        service.sampleTransfers();
+        assertThat(status.getHistory()).extracting(TransferStatus.Sample::getBytesTransferred).containsExactly(100L);
+
+        status.addBytesTransferred(50);
+        service.sampleTransfers();
+        assertThat(status.getHistory()).extracting(TransferStatus.Sample::getBytesTransferred).containsExactly(100L, 150L);
+
+        // A final sample is taken when the transfer ends
+        service.removeStreamStatus(status);
+        assertThat(status.getHistory()).hasSize(3);
+    }
 }
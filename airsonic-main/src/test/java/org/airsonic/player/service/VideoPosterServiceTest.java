@@ -0,0 +1,176 @@
+package org.airsonic.player.service;
+
+import org.airsonic.player.domain.MediaFile;
+import org.airsonic.player.util.HomeRule;
+import org.airsonic.player.util.Util;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeFalse;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VideoPosterServiceTest {
+
+    @ClassRule
+    public static final HomeRule homeRule = new HomeRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private TranscodingService transcodingService;
+    @InjectMocks
+    private VideoPosterService videoPosterService;
+
+    private Path extractor;
+    private Path log;
+    private MediaFile video;
+
+    @Before
+    public void setup() throws Exception {
+        assumeFalse(Util.isWindows());
+        Path transcodeDirectory = temporaryFolder.newFolder("transcode").toPath();
+        extractor = transcodeDirectory.resolve("extractor");
+        log = temporaryFolder.getRoot().toPath().resolve("args.log");
+        when(transcodingService.getTranscodeDirectory()).thenReturn(transcodeDirectory);
+        when(settingsService.getVideoFramesCommand()).thenReturn("extractor %s %i %p");
+
+        video = new MediaFile();
+        video.setPath(temporaryFolder.newFile("100%p 50%iso.mkv").toString());
+        video.setChanged(Instant.now());
+        video.setDuration(60.0);
+    }
+
+    @After
+    public void shutdown() {
+        videoPosterService.shutdown();
+    }
+
+    /**
+     * Writes a stub extractor that logs its arguments, writes the given number of frames and exits with the given
+     * status.
+     */
+    private void writeExtractor(int frames, int status) throws Exception {
+        Files.writeString(extractor, "#!/bin/sh\n"
+                + "printf '%s\\n' \"$1\" \"$2\" > " + log + "\n"
+                + "i=1\n"
+                + "while [ $i -le " + frames + " ]; do\n"
+                + "  echo \"frame $i\" > \"$3/$(printf '%04d.jpg' $i)\"; i=$((i + 1))\n"
+                + "done\n"
+                + "exit " + status + "\n");
+        extractor.toFile().setExecutable(true);
+    }
+
+    /**
+     * Counts the frame directories of the video, including unfinished ones.
+     */
+    private long countFrameDirectories() throws Exception {
+        Path frames = SettingsService.getAirsonicHome().resolve("videoframes");
+        if (!Files.exists(frames)) {
+            return 0;
+        }
+        String prefix = DigestUtils.md5Hex(video.getPath());
+        try (Stream<Path> directories = Files.list(frames)) {
+            return directories.filter(d -> d.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    /**
+     * Starts extracting the frames of the video and waits until it is done.
+     */
+    private void extract() throws Exception {
+        assertThat(videoPosterService.isExtracting(video)).isTrue();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (videoPosterService.isExtracting(video)) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testReturnsClosestFrame() throws Exception {
+        writeExtractor(5, 0);
+        assertThat(videoPosterService.getFrame(video, 12)).isNull();
+
+        extract();
+        Path frame = videoPosterService.getFrame(video, 12);
+
+        assertThat(frame.getFileName().toString()).isEqualTo("0003.jpg");
+        assertThat(Files.readString(frame)).isEqualTo("frame 3\n");
+        // Frames past the last one fall back to the last one
+        assertThat(videoPosterService.getFrame(video, 50).getFileName().toString()).isEqualTo("0005.jpg");
+        assertThat(videoPosterService.isExtracting(video)).isFalse();
+    }
+
+    @Test
+    public void testPlaceholdersInPathAreKept() throws Exception {
+        writeExtractor(1, 0);
+
+        extract();
+
+        assertThat(Files.readAllLines(log)).containsExactly(video.getFile().toAbsolutePath().toString(), "5");
+    }
+
+    @Test
+    public void testFailedExtractionIsRememberedUntilVideoChanges() throws Exception {
+        writeExtractor(2, 1);
+
+        extract();
+        assertThat(videoPosterService.getFrame(video, 0)).isNull();
+        assertThat(countFrameDirectories()).isZero();
+
+        // Not extracted again while the video is unchanged
+        Files.delete(log);
+        writeExtractor(2, 0);
+        assertThat(videoPosterService.isExtracting(video)).isFalse();
+        assertThat(videoPosterService.getFrame(video, 0)).isNull();
+        assertThat(log).doesNotExist();
+
+        video.setChanged(video.getChanged().plusSeconds(1));
+        extract();
+        assertThat(videoPosterService.getFrame(video, 0)).isNotNull();
+        assertThat(countFrameDirectories()).isEqualTo(1);
+    }
+
+    @Test
+    public void testExtractionWithoutFramesIsNotPublished() throws Exception {
+        writeExtractor(0, 0);
+
+        extract();
+        assertThat(videoPosterService.getFrame(video, 0)).isNull();
+        assertThat(countFrameDirectories()).isZero();
+    }
+
+    @Test
+    public void testFramesOfEarlierVersionAreDeleted() throws Exception {
+        writeExtractor(2, 0);
+        extract();
+        Path frame = videoPosterService.getFrame(video, 0);
+
+        video.setChanged(video.getChanged().plusSeconds(1));
+        extract();
+
+        assertThat(frame).doesNotExist();
+        assertThat(videoPosterService.getFrame(video, 0)).exists();
+        assertThat(countFrameDirectories()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,163 @@
+package org.airsonic.player.service.metadata;
+
+import org.airsonic.player.TestCaseUtils;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.util.HomeRule;
+import org.jaudiotagger.tag.images.Artwork;
+import org.jaudiotagger.tag.images.StandardArtwork;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EmbeddedArtworkStoreTest {
+
+    @ClassRule
+    public static final HomeRule homeRule = new HomeRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private JaudiotaggerParser parser;
+    @InjectMocks
+    private EmbeddedArtworkStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        TestCaseUtils.cleanAirsonicHomeForTest();
+    }
+
+    @Test
+    public void testIdenticalArtworkIsStoredOnce() throws Exception {
+        Path first = temporaryFolder.newFile("first.mp3").toPath();
+        Path second = temporaryFolder.newFile("second.mp3").toPath();
+        when(parser.getArtwork(any(Path.class))).thenReturn(createArtwork("cover"));
+
+        Path stored = store.getArtwork(first);
+
+        assertThat(store.getArtwork(second)).isEqualTo(stored);
+        assertThat(Files.readAllBytes(stored)).isEqualTo("cover".getBytes(StandardCharsets.UTF_8));
+        assertThat(listStore()).containsExactly(stored);
+    }
+
+    @Test
+    public void testTagEditExtractsAgain() throws Exception {
+        Path audioFile = temporaryFolder.newFile("song.mp3").toPath();
+        Files.setLastModifiedTime(audioFile, FileTime.from(Instant.now().minus(1, ChronoUnit.DAYS)));
+        when(parser.getArtwork(audioFile)).thenReturn(createArtwork("before"), createArtwork("after"));
+
+        Path before = store.getArtwork(audioFile);
+        // Served from the path@mtime key while the file is unchanged
+        assertThat(store.getArtwork(audioFile)).isEqualTo(before);
+        verify(parser).getArtwork(audioFile);
+
+        Files.setLastModifiedTime(audioFile, FileTime.from(Instant.now()));
+        Path after = store.getArtwork(audioFile);
+
+        verify(parser, times(2)).getArtwork(audioFile);
+        assertThat(after).isNotEqualTo(before);
+        assertThat(Files.readAllBytes(after)).isEqualTo("after".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testConcurrentWritesLeaveOneCompleteFile() throws Exception {
+        byte[] data = new byte[1024 * 1024];
+        new Random(42).nextBytes(data);
+        when(parser.getArtwork(any(Path.class))).thenAnswer(invocation -> createArtwork(data));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Path>> tasks = IntStream.range(0, 8)
+                    .mapToObj(i -> (Callable<Path>) () -> store.getArtwork(temporaryFolder.newFile(i + ".mp3").toPath()))
+                    .collect(Collectors.toList());
+            List<Path> stored = executor.invokeAll(tasks).stream().map(this::get).distinct().collect(Collectors.toList());
+
+            assertThat(stored).hasSize(1);
+            assertThat(Files.readAllBytes(stored.get(0))).isEqualTo(data);
+            // No temporary files are left behind
+            assertThat(listStore()).containsExactly(stored.get(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeleteUnreferenced() throws Exception {
+        Path referencedFile = temporaryFolder.newFile("referenced.mp3").toPath();
+        Path unreferencedFile = temporaryFolder.newFile("unreferenced.mp3").toPath();
+        Path recentFile = temporaryFolder.newFile("recent.mp3").toPath();
+        when(parser.getArtwork(referencedFile)).thenReturn(createArtwork("referenced"));
+        when(parser.getArtwork(unreferencedFile)).thenReturn(createArtwork("unreferenced"));
+        when(parser.getArtwork(recentFile)).thenReturn(createArtwork("recent"));
+
+        Instant scanDate = Instant.now();
+        Path referenced = store.getArtwork(referencedFile);
+        Path unreferenced = store.getArtwork(unreferencedFile);
+        Path recent = store.getArtwork(recentFile);
+        Files.setLastModifiedTime(referenced, FileTime.from(scanDate.minus(1, ChronoUnit.DAYS)));
+        Files.setLastModifiedTime(unreferenced, FileTime.from(scanDate.minus(1, ChronoUnit.DAYS)));
+        Files.setLastModifiedTime(recent, FileTime.from(scanDate.plus(1, ChronoUnit.MINUTES)));
+
+        assertThat(store.deleteUnreferenced(Collections.singleton(referenced), scanDate)).isEqualTo(1);
+        assertThat(listStore()).containsExactlyInAnyOrder(referenced, recent);
+
+        // Extracted again if the file is seen later on
+        assertThat(store.getArtwork(unreferencedFile)).isEqualTo(unreferenced);
+        assertThat(unreferenced).exists();
+    }
+
+    private static Artwork createArtwork(String data) {
+        return createArtwork(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Artwork createArtwork(byte[] data) {
+        Artwork artwork = new StandardArtwork();
+        artwork.setBinaryData(data);
+        artwork.setMimeType("image/jpeg");
+        return artwork;
+    }
+
+    private static List<Path> listStore() throws Exception {
+        try (Stream<Path> files = Files.walk(SettingsService.getAirsonicHome().resolve("artwork"))) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private Path get(Future<Path> future) {
+        try {
+            return future.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.airsonic.player.service.metadata;
+
+import org.airsonic.player.monitor.MetricsManager;
+import org.airsonic.player.service.SettingsService;
+import org.airsonic.player.service.TranscodingService;
+import org.airsonic.player.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeFalse;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FFmpegParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private TranscodingService transcodingService;
+    @Mock
+    private SettingsService settingsService;
+    @Mock
+    private MetricsManager metricsManager;
+    @InjectMocks
+    private FFmpegParser parser;
+
+    private Path transcodeDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        assumeFalse(Util.isWindows());
+        transcodeDirectory = temporaryFolder.newFolder("transcode").toPath();
+        when(transcodingService.getTranscodeDirectory()).thenReturn(transcodeDirectory);
+        when(settingsService.getVideoProbeConcurrency()).thenReturn(2);
+        when(metricsManager.timer(eq(FFmpegParser.class), anyString())).thenReturn(mock(MetricsManager.Timer.class));
+        parser.init();
+    }
+
+    @After
+    public void shutdown() {
+        parser.shutdown();
+    }
+
+    @Test
+    public void testParsesProbeOutput() throws Exception {
+        writeFfprobe("echo '{\"format\": {\"duration\": \"12.5\", \"bit_rate\": \"2000000\", \"tags\": {\"TITLE\": \"Title\", \"date\": \"2001\"}},"
+                + " \"streams\": [{\"codec_name\": \"mjpeg\", \"width\": 1, \"height\": 1}, {\"codec_name\": \"h264\", \"width\": 1280, \"height\": 720}]}'");
+
+        MetaData metaData = parser.getRawMetaData(temporaryFolder.newFile("video.mkv").toPath());
+
+        assertThat(metaData.getDuration()).isEqualTo(12.5);
+        assertThat(metaData.getBitRate()).isEqualTo(2000);
+        assertThat(metaData.getTitle()).isEqualTo("Title");
+        assertThat(metaData.getYear()).isEqualTo(2001);
+        assertThat(metaData.getWidth()).isEqualTo(1280);
+        assertThat(metaData.getHeight()).isEqualTo(720);
+    }
+
+    @Test
+    public void testLimitsConcurrentProbes() throws Exception {
+        // Each probe records how many probes were running when it started
+        Path running = temporaryFolder.newFolder("running").toPath();
+        writeFfprobe("touch " + running + "/$$; ls " + running + " | wc -l >> " + running.resolveSibling("counts") + "; sleep 0.3; rm " + running + "/$$;"
+                + " echo '{\"format\": {\"duration\": \"1\"}}'");
+        Path video = temporaryFolder.newFile("video.mkv").toPath();
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<MetaData>> results = IntStream.range(0, 6)
+                    .mapToObj(i -> executor.submit(() -> parser.getRawMetaData(video)))
+                    .collect(Collectors.toList());
+            for (Future<MetaData> result : results) {
+                assertThat(result.get().getDuration()).isEqualTo(1.0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Integer> counts = Files.readAllLines(running.resolveSibling("counts")).stream()
+                .map(String::trim).map(Integer::valueOf).collect(Collectors.toList());
+        assertThat(counts).hasSize(6).allMatch(count -> count <= 2);
+    }
+
+    private void writeFfprobe(String script) throws Exception {
+        Path ffprobe = transcodeDirectory.resolve("ffprobe");
+        Files.writeString(ffprobe, "#!/bin/sh\n" + script + "\n");
+        ffprobe.toFile().setExecutable(true);
+    }
+}
@@ -0,0 +1,112 @@
+package org.airsonic.player.service.metadata;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FastTagParserTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private JaudiotaggerParser fallbackParser;
+    @InjectMocks
+    private FastTagParser parser;
+
+    @Test
+    public void testSameMetaDataAsJaudiotagger() throws Exception {
+        JaudiotaggerParser jaudiotaggerParser = new JaudiotaggerParser(null);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get(FastTagParserTest.class.getResource("/MEDIAS").toURI()))) {
+            files = walk.filter(parser::isApplicable).collect(Collectors.toList());
+        }
+        assertThat(files).isNotEmpty();
+
+        for (Path file : files) {
+            MetaData expected = jaudiotaggerParser.getRawMetaData(file);
+            // Jaudiotagger can't open some of the file names on platforms without a unicode file name encoding
+            if (expected.getDuration() == null) {
+                continue;
+            }
+            MetaData actual = parser.getRawMetaData(file);
+            assertThat(actual).as(file.toString())
+                    .usingRecursiveComparison().ignoringFields("duration", "bitRate").isEqualTo(expected);
+            assertThat(actual.getDuration()).as(file.toString()).isCloseTo(expected.getDuration(), within(0.0001));
+            assertThat(actual.getBitRate()).as(file.toString()).isEqualTo(expected.getBitRate());
+        }
+        verifyNoInteractions(fallbackParser);
+    }
+
+    @Test
+    public void testSkipsEmbeddedPicture() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeId3v24Frame(frames, "TIT2", ("\3Title").getBytes(StandardCharsets.UTF_8));
+        writeId3v24Frame(frames, "APIC", new byte[4 * 1024 * 1024]);
+        writeId3v24Frame(frames, "TPE1", ("\3Artist").getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] {'I', 'D', '3', 4, 0, 0});
+        out.write(syncSafeInt(frames.size()));
+        frames.writeTo(out);
+        // MPEG-1 layer III, 128 kbps, 44.1 kHz frames of 417 bytes
+        for (int i = 0; i < 20; i++) {
+            byte[] frame = new byte[417];
+            frame[0] = (byte) 0xFF;
+            frame[1] = (byte) 0xFB;
+            frame[2] = (byte) 0x90;
+            frame[3] = (byte) 0x00;
+            out.write(frame);
+        }
+        Path file = temporaryFolder.newFile("picture.mp3").toPath();
+        Files.write(file, out.toByteArray());
+
+        MetaData metaData = parser.getRawMetaData(file);
+        assertThat(metaData.getTitle()).isEqualTo("Title");
+        assertThat(metaData.getArtist()).isEqualTo("Artist");
+        assertThat(metaData.getAlbumArtist()).isEqualTo("Artist");
+        assertThat(metaData.getBitRate()).isEqualTo(128);
+        assertThat(metaData.getVariableBitRate()).isFalse();
+        assertThat(metaData.getDuration()).isCloseTo(20 * 1152 / 44100.0, within(0.0001));
+        verifyNoInteractions(fallbackParser);
+    }
+
+    @Test
+    public void testFallsBackOnUnknownLayout() throws Exception {
+        Path file = temporaryFolder.newFile("garbage.mp3").toPath();
+        Files.write(file, "not an mp3 file".getBytes(StandardCharsets.UTF_8));
+
+        parser.getRawMetaData(file);
+        verify(fallbackParser).getRawMetaData(file);
+    }
+
+    private static void writeId3v24Frame(ByteArrayOutputStream out, String id, byte[] body) throws Exception {
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(syncSafeInt(body.length));
+        out.write(new byte[2]);
+        out.write(body);
+    }
+
+    private static byte[] syncSafeInt(int value) {
+        return new byte[] {(byte) (value >> 21 & 0x7F), (byte) (value >> 14 & 0x7F), (byte) (value >> 7 & 0x7F), (byte) (value & 0x7F)};
+    }
+}
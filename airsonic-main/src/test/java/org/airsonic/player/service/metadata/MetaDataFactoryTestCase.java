@@ -49,7 +49,7 @@ public class MetaDataFactoryTestCase {
         settingsService.setVideoFileTypes("mp3 flv");
 
         parser = metaDataParserFactory.getParser(someMp3);
-        assertThat(parser, instanceOf(JaudiotaggerParser.class));
+        assertThat(parser, instanceOf(FastTagParser.class));
 
         parser = metaDataParserFactory.getParser(someFlv);
         assertThat(parser, instanceOf(FFmpegParser.class));
@@ -0,0 +1,95 @@
+package org.airsonic.player.service.scrobbler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpServer;
+import org.airsonic.player.domain.Scrobble;
+import org.airsonic.player.util.Util;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ListenBrainzScrobblerTest {
+
+    private HttpServer server;
+    private String url;
+    private final List<String> requests = new ArrayList<>();
+    private final List<String> authorizations = new ArrayList<>();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final ListenBrainzScrobbler scrobbler = new ListenBrainzScrobbler();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/1/submit-listens", exchange -> {
+            requests.add(new String(exchange.getRequestBody().readAllBytes(), "UTF-8"));
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/1/submit-listens";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static Scrobble createScrobble(String title, long listenedAt) {
+        Scrobble scrobble = new Scrobble();
+        scrobble.setArtist("Artist");
+        scrobble.setAlbum("Album");
+        scrobble.setTitle(title);
+        scrobble.setTrackNumber(1);
+        scrobble.setListenedAt(Instant.ofEpochSecond(listenedAt));
+        return scrobble;
+    }
+
+    @Test
+    public void testSubmitBatchAsSingleImport() throws Exception {
+        List<Scrobble> scrobbles = Arrays.asList(createScrobble("One", 1000), createScrobble("Two", 1200), createScrobble("Three", 1400));
+
+        assertThat(scrobbler.submit(url, "secret", scrobbles)).isTrue();
+
+        assertThat(requests).hasSize(1);
+        assertThat(authorizations).containsExactly("token secret");
+        JsonNode content = Util.getObjectMapper().readTree(requests.get(0));
+        assertThat(content.get("listen_type").asText()).isEqualTo("import");
+        assertThat(content.get("payload")).hasSize(3);
+        assertThat(content.get("payload").get(1).get("listened_at").asLong()).isEqualTo(1200);
+        assertThat(content.get("payload").get(1).get("track_metadata").get("track_name").asText()).isEqualTo("Two");
+    }
+
+    @Test
+    public void testSubmitSingleListen() throws Exception {
+        assertThat(scrobbler.submit(url, "secret", Arrays.asList(createScrobble("One", 1000)))).isTrue();
+
+        JsonNode content = Util.getObjectMapper().readTree(requests.get(0));
+        assertThat(content.get("listen_type").asText()).isEqualTo("single");
+    }
+
+    @Test
+    public void testServerErrorIsRetryable() {
+        status.set(503);
+        assertThatThrownBy(() -> scrobbler.submit(url, "secret", Arrays.asList(createScrobble("One", 1000))))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testBadRequestIsRejected() throws Exception {
+        status.set(400);
+        assertThat(scrobbler.submit(url, "secret", Arrays.asList(createScrobble("One", 1000)))).isFalse();
+    }
+}
@@ -0,0 +1,73 @@
+package org.airsonic.player.upload;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testWritesInterleavedFiles() throws Exception {
+        ParallelFileWriter writer = new ParallelFileWriter(executor, 2);
+        Random random = new Random(42);
+        byte[] first = new byte[1024 * 1024 + 17];
+        byte[] second = new byte[300 * 1024];
+        random.nextBytes(first);
+        random.nextBytes(second);
+        Path firstFile = folder.getRoot().toPath().resolve("first");
+        Path secondFile = folder.getRoot().toPath().resolve("second");
+
+        try (OutputStream os = writer.create(firstFile)) {
+            for (int i = 0; i < first.length; i += 1000) {
+                os.write(first, i, Math.min(1000, first.length - i));
+            }
+        }
+        try (OutputStream os = writer.create(secondFile)) {
+            os.write(second);
+        }
+
+        ParallelFileWriter.Result result = writer.await();
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.getWritten()).containsExactly(firstFile, secondFile);
+        assertThat(Files.readAllBytes(firstFile)).isEqualTo(first);
+        assertThat(Files.readAllBytes(secondFile)).isEqualTo(second);
+    }
+
+    @Test
+    public void testExistingFileIsReported() throws Exception {
+        ParallelFileWriter writer = new ParallelFileWriter(executor, 2);
+        Path existing = folder.newFile().toPath();
+        Files.write(existing, new byte[] { 1, 2, 3 });
+
+        try (OutputStream os = writer.create(existing)) {
+            os.write(new byte[600 * 1024]);
+        }
+
+        ParallelFileWriter.Result result = writer.await();
+        assertThat(result.getWritten()).isEmpty();
+        assertThat(result.getErrors()).hasSize(1).first().isInstanceOf(FileAlreadyExistsException.class);
+        // the existing file is left alone
+        assertThat(Files.readAllBytes(existing)).containsExactly(1, 2, 3);
+    }
+}
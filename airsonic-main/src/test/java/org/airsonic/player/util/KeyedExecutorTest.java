@@ -0,0 +1,133 @@
+package org.airsonic.player.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyedExecutorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final KeyedExecutor<String> keyedExecutor = new KeyedExecutor<>(executor);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOrderedPerKey() throws Exception {
+        List<Integer> first = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> second = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 1000; i++) {
+            int value = i;
+            keyedExecutor.execute("first", () -> first.add(value));
+            keyedExecutor.execute("second", () -> second.add(value));
+        }
+        flush("first", "second");
+
+        List<Integer> expected = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        assertThat(first).isEqualTo(expected);
+        assertThat(second).isEqualTo(expected);
+        assertThat(keyedExecutor.getQueueSize()).isZero();
+    }
+
+    @Test
+    public void testKeysRunInParallel() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        keyedExecutor.execute("slow", () -> {
+            started.countDown();
+            await(blocked);
+        });
+        keyedExecutor.execute("slow", () -> { });
+        keyedExecutor.execute("fast", other::countDown);
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(other.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(keyedExecutor.getQueueSize("slow")).isEqualTo(1);
+        blocked.countDown();
+        flush("slow");
+        assertThat(keyedExecutor.getQueueSize("slow")).isZero();
+    }
+
+    @Test
+    public void testLatestReplacesPending() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        keyedExecutor.executeLatest("status", () -> {
+            started.countDown();
+            await(blocked);
+            sent.add(0);
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        // The first one is running, so only the last of these is kept
+        for (int i = 1; i <= 10; i++) {
+            int value = i;
+            keyedExecutor.executeLatest("status", () -> sent.add(value));
+        }
+        assertThat(keyedExecutor.getQueueSize("status")).isEqualTo(1);
+        blocked.countDown();
+        flush("status");
+
+        assertThat(sent).containsExactly(0, 10);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        keyedExecutor.execute("session", () -> await(blocked));
+        keyedExecutor.execute("session", () -> sent.add(1));
+        keyedExecutor.clear("session");
+        blocked.countDown();
+        flush("session");
+        keyedExecutor.execute("session", () -> sent.add(2));
+        flush("session");
+
+        assertThat(sent).containsExactly(2);
+    }
+
+    @Test
+    public void testFailureDoesNotStopKey() throws Exception {
+        List<Integer> sent = Collections.synchronizedList(new ArrayList<>());
+        keyedExecutor.execute("key", () -> {
+            throw new IllegalStateException();
+        });
+        keyedExecutor.execute("key", () -> sent.add(1));
+        flush("key");
+
+        assertThat(sent).containsExactly(1);
+    }
+
+    /**
+     * Waits for the tasks added so far with the given keys to complete.
+     */
+    private void flush(String... keys) throws Exception {
+        CountDownLatch done = new CountDownLatch(keys.length);
+        for (String key : keys) {
+            keyedExecutor.execute(key, done::countDown);
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
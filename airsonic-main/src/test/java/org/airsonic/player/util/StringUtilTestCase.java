@@ -23,6 +23,7 @@ import junit.framework.TestCase;
 import org.apache.commons.lang.StringEscapeUtils;
 
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Unit test of {@link StringUtil}.
@@ -114,6 +115,14 @@ public class StringUtilTestCase extends TestCase {
         }
     }
 
+    public void testReplacePlaceholders() {
+        Map<Character, String> values = Map.of('s', "/music/100%no 50%best.mkv", 'b', "1000", 'p', "/tmp/hls");
+        assertEquals("/music/100%no 50%best.mkv", StringUtil.replacePlaceholders("%s", values));
+        assertEquals("1000k", StringUtil.replacePlaceholders("%bk", values));
+        assertEquals("/tmp/hls/%05d.ts", StringUtil.replacePlaceholders("%p/%05d.ts", values));
+        assertEquals("100%", StringUtil.replacePlaceholders("100%", values));
+    }
+
     public void testParseLocale() {
         assertEquals("Error in parseLocale().", null, null);
         assertEquals("Error in parseLocale().", new Locale("en"), StringUtil.parseLocale("en"));
@@ -0,0 +1,298 @@
+package org.airsonic.player.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates a synthetic music library of minimal but valid MP3 and FLAC files, to scan and load test large libraries.
+ * <p>
+ * The library is laid out as {@code root/[Group n/...]Artist/Year - Album/NN - Title.ext} and is the same for the
+ * same configuration and seed. Every file is tagged with its title, artist, album artist, album, year, genre and
+ * track number, and only carries a few kilobytes of silent audio.
+ */
+public class SyntheticLibrary {
+
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ne", "ru", "sa", "to", "va", "ber", "dan", "el", "fin", "gor", "hal", "is", "jon",
+        "kel", "lin", "mor", "nor", "or", "pel", "quin", "ros", "sil", "tur", "ul", "vin", "wes", "yor", "zan", "ad"
+    };
+    private static final String[] FOREIGN_WORDS = {"Über", "Café", "Niño", "Årets", "Björk", "Señor", "Çay", "Łódź"};
+    private static final String[] ARTICLES = {"The", "El", "La", "Le", "Les", "Die"};
+    private static final String[] GENRES = {"Rock", "Pop", "Jazz", "Classical", "Electronic", "Hip-Hop", "Folk", "Metal"};
+
+    private static final int MP3_FRAME_LENGTH = 417;
+    private static final int MP3_FRAMES = 10;
+    private static final int FLAC_SAMPLE_RATE = 44100;
+    private static final int FLAC_AUDIO_LENGTH = 4096;
+
+    private final int artists;
+    private final int albumsPerArtist;
+    private final int tracksPerAlbum;
+    private int depth;
+    private double flacRatio;
+    private boolean skewed;
+    private long seed = 42;
+
+    private int albumCount;
+    private int trackCount;
+
+    /**
+     * @param artists         Number of artists.
+     * @param albumsPerArtist Number of albums of every artist, or the mean number if skewed.
+     * @param tracksPerAlbum  Number of tracks on every album, or the mean number if skewed.
+     */
+    public SyntheticLibrary(int artists, int albumsPerArtist, int tracksPerAlbum) {
+        this.artists = artists;
+        this.albumsPerArtist = albumsPerArtist;
+        this.tracksPerAlbum = tracksPerAlbum;
+    }
+
+    /**
+     * Writes the library below the given directory.
+     */
+    public void generate(Path root) throws IOException {
+        Random random = new Random(seed);
+        albumCount = 0;
+        trackCount = 0;
+        for (int artist = 0; artist < artists; artist++) {
+            String artistName = name(artist, random);
+            Path artistDir = root;
+            for (int level = 0; level < depth; level++) {
+                artistDir = artistDir.resolve("Group " + (artist >> (4 * level) & 15));
+            }
+            artistDir = resolve(artistDir, artistName);
+
+            int albums = count(albumsPerArtist, random);
+            int year = 1960 + random.nextInt(30);
+            for (int album = 0; album < albums; album++, year++) {
+                String albumName = words(1 + random.nextInt(3), random);
+                String genre = GENRES[random.nextInt(GENRES.length)];
+                Path albumDir = Files.createDirectories(resolve(artistDir, year + " - " + albumName));
+
+                int tracks = count(tracksPerAlbum, random);
+                boolean flac = random.nextDouble() < flacRatio;
+                for (int track = 1; track <= tracks; track++) {
+                    Map<String, String> tags = new LinkedHashMap<>();
+                    tags.put("TITLE", words(2 + random.nextInt(3), random));
+                    tags.put("ARTIST", artistName);
+                    tags.put("ALBUMARTIST", artistName);
+                    tags.put("ALBUM", albumName);
+                    tags.put("DATE", String.valueOf(year));
+                    tags.put("GENRE", genre);
+                    tags.put("TRACKNUMBER", String.valueOf(track));
+                    String fileName = String.format("%02d - %s.%s", track, tags.get("TITLE"), flac ? "flac" : "mp3");
+                    Files.write(resolve(albumDir, fileName), flac ? flac(tags) : mp3(tags));
+                }
+                albumCount++;
+                trackCount += tracks;
+            }
+        }
+    }
+
+    /**
+     * Changes the last modified time of roughly the given fraction of the tracks below the given directory, so that
+     * the next scan reads them again. The same tracks are picked for the same seed.
+     *
+     * @return The number of changed tracks.
+     */
+    public int touch(Path root, double fraction) throws IOException {
+        FileTime now = FileTime.from(Instant.now());
+        int touched = 0;
+        try (Stream<Path> walk = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) walk.filter(Files::isRegularFile)::iterator) {
+                if (new Random(seed ^ root.relativize(file).toString().hashCode()).nextDouble() < fraction) {
+                    Files.setLastModifiedTime(file, now);
+                    touched++;
+                }
+            }
+        }
+        return touched;
+    }
+
+    /**
+     * Sets the number of grouping directories between the root and the artist directories.
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Sets the fraction of albums encoded as FLAC rather than MP3.
+     */
+    public void setFlacRatio(double flacRatio) {
+        this.flacRatio = flacRatio;
+    }
+
+    /**
+     * Sets whether album and track counts follow a geometric distribution around their means, so that a few
+     * artists have many albums like in real libraries, rather than being the same everywhere.
+     */
+    public void setSkewed(boolean skewed) {
+        this.skewed = skewed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getArtistCount() {
+        return artists;
+    }
+
+    public int getAlbumCount() {
+        return albumCount;
+    }
+
+    public int getTrackCount() {
+        return trackCount;
+    }
+
+    /**
+     * Resolves the name, without its accents if the platform can't encode it in file names.
+     */
+    private static Path resolve(Path dir, String name) {
+        try {
+            return dir.resolve(name);
+        } catch (InvalidPathException e) {
+            return dir.resolve(Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("[^\\p{ASCII}]", ""));
+        }
+    }
+
+    private int count(int mean, Random random) {
+        if (!skewed || mean <= 1) {
+            return mean;
+        }
+        return 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - 1.0 / mean));
+    }
+
+    /**
+     * Returns a name that is unique for the index, with an article or a non-ASCII word now and then.
+     */
+    private static String name(int index, Random random) {
+        StringBuilder name = new StringBuilder();
+        if (random.nextInt(10) == 0) {
+            name.append(ARTICLES[random.nextInt(ARTICLES.length)]).append(' ');
+        }
+        if (random.nextInt(20) == 0) {
+            name.append(FOREIGN_WORDS[random.nextInt(FOREIGN_WORDS.length)]).append(' ');
+        }
+        name.append(capitalize(SYLLABLES[random.nextInt(SYLLABLES.length)] + SYLLABLES[index % SYLLABLES.length]));
+        for (int rest = index / SYLLABLES.length; rest > 0; rest /= SYLLABLES.length) {
+            name.append(' ').append(capitalize(SYLLABLES[rest % SYLLABLES.length] + SYLLABLES[random.nextInt(SYLLABLES.length)]));
+        }
+        return name.toString();
+    }
+
+    private static String words(int count, Random random) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            if (random.nextInt(30) == 0) {
+                words.append(FOREIGN_WORDS[random.nextInt(FOREIGN_WORDS.length)]);
+            } else {
+                String word = SYLLABLES[random.nextInt(SYLLABLES.length)] + SYLLABLES[random.nextInt(SYLLABLES.length)];
+                words.append(i == 0 ? capitalize(word) : word);
+            }
+        }
+        return words.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /**
+     * An ID3v2.4 tag followed by MPEG-1 layer III, 128 kbps, 44.1 kHz frames of silence.
+     */
+    private static byte[] mp3(Map<String, String> tags) throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        writeId3Frame(frames, "TIT2", tags.get("TITLE"));
+        writeId3Frame(frames, "TPE1", tags.get("ARTIST"));
+        writeId3Frame(frames, "TPE2", tags.get("ALBUMARTIST"));
+        writeId3Frame(frames, "TALB", tags.get("ALBUM"));
+        writeId3Frame(frames, "TDRC", tags.get("DATE"));
+        writeId3Frame(frames, "TCON", tags.get("GENRE"));
+        writeId3Frame(frames, "TRCK", tags.get("TRACKNUMBER"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(10 + frames.size() + MP3_FRAMES * MP3_FRAME_LENGTH);
+        out.write(new byte[] {'I', 'D', '3', 4, 0, 0});
+        out.write(syncSafeInt(frames.size()));
+        frames.writeTo(out);
+        byte[] frame = new byte[MP3_FRAME_LENGTH];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        frame[2] = (byte) 0x90;
+        for (int i = 0; i < MP3_FRAMES; i++) {
+            out.write(frame);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeId3Frame(ByteArrayOutputStream out, String id, String value) throws IOException {
+        byte[] text = value.getBytes(StandardCharsets.UTF_8);
+        out.write(id.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(syncSafeInt(text.length + 1));
+        out.write(new byte[2]);
+        // UTF-8 text encoding
+        out.write(3);
+        out.write(text);
+    }
+
+    private static byte[] syncSafeInt(int value) {
+        return new byte[] {(byte) (value >> 21 & 0x7F), (byte) (value >> 14 & 0x7F), (byte) (value >> 7 & 0x7F), (byte) (value & 0x7F)};
+    }
+
+    /**
+     * A STREAMINFO block of one second of 16 bit stereo at 44.1 kHz and a VORBIS_COMMENT block, followed by zeros
+     * standing in for the audio frames.
+     */
+    private static byte[] flac(Map<String, String> tags) throws IOException {
+        ByteArrayOutputStream comments = new ByteArrayOutputStream();
+        byte[] vendor = "airsonic".getBytes(StandardCharsets.UTF_8);
+        comments.write(littleEndianInt(vendor.length));
+        comments.write(vendor);
+        comments.write(littleEndianInt(tags.size()));
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            byte[] comment = (tag.getKey() + "=" + tag.getValue()).getBytes(StandardCharsets.UTF_8);
+            comments.write(littleEndianInt(comment.length));
+            comments.write(comment);
+        }
+
+        ByteBuffer streamInfo = ByteBuffer.allocate(34);
+        streamInfo.putShort((short) 4096).putShort((short) 4096).put(new byte[6]);
+        // 20 bits sample rate, 3 bits channels - 1, 5 bits bits per sample - 1 and 36 bits sample count
+        streamInfo.putLong((long) FLAC_SAMPLE_RATE << 44 | 1L << 41 | 15L << 36 | FLAC_SAMPLE_RATE);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4 + 4 + 34 + 4 + comments.size() + FLAC_AUDIO_LENGTH);
+        out.write(new byte[] {'f', 'L', 'a', 'C'});
+        out.write(blockHeader(false, 0, streamInfo.capacity()));
+        out.write(streamInfo.array());
+        out.write(blockHeader(true, 4, comments.size()));
+        comments.writeTo(out);
+        out.write(new byte[FLAC_AUDIO_LENGTH]);
+        return out.toByteArray();
+    }
+
+    private static byte[] blockHeader(boolean last, int type, int length) {
+        return new byte[] {(byte) ((last ? 0x80 : 0) | type), (byte) (length >> 16), (byte) (length >> 8), (byte) length};
+    }
+
+    private static byte[] littleEndianInt(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+}
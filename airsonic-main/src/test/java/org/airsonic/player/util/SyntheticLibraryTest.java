@@ -0,0 +1,105 @@
+package org.airsonic.player.util;
+
+import org.airsonic.player.service.metadata.FastTagParser;
+import org.airsonic.player.service.metadata.JaudiotaggerParser;
+import org.airsonic.player.service.metadata.MetaData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SyntheticLibraryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private JaudiotaggerParser fallbackParser;
+    @InjectMocks
+    private FastTagParser parser;
+
+    @Test
+    public void testGeneratesReadableFiles() throws Exception {
+        SyntheticLibrary library = new SyntheticLibrary(40, 3, 5);
+        library.setDepth(2);
+        library.setFlacRatio(0.5);
+        library.setSkewed(true);
+        Path root = temporaryFolder.getRoot().toPath();
+        library.generate(root);
+
+        List<Path> files = tracks(root);
+        assertThat(files).hasSize(library.getTrackCount());
+        assertThat(files).anyMatch(file -> file.toString().endsWith(".flac")).anyMatch(file -> file.toString().endsWith(".mp3"));
+        assertThat(files.stream().map(file -> file.getParent().getParent()).distinct()).hasSize(40);
+        assertThat(files.stream().map(Path::getParent).distinct()).hasSize(library.getAlbumCount());
+        assertThat(files).allMatch(file -> root.relativize(file).getNameCount() == 5);
+
+        JaudiotaggerParser jaudiotaggerParser = new JaudiotaggerParser(null);
+        for (Path file : files) {
+            MetaData actual = parser.getRawMetaData(file);
+            MetaData expected = jaudiotaggerParser.getRawMetaData(file);
+            assertThat(actual).as(file.toString())
+                    .usingRecursiveComparison().ignoringFields("duration", "bitRate").isEqualTo(expected);
+            assertThat(actual.getDuration()).as(file.toString()).isCloseTo(expected.getDuration(), within(0.0001));
+            assertThat(actual.getTitle()).isNotEmpty();
+            assertThat(actual.getArtist()).isNotEmpty().isEqualTo(actual.getAlbumArtist());
+            assertThat(file.getFileName().toString()).startsWith(String.format("%02d - ", actual.getTrackNumber()));
+            assertThat(file.getParent().getFileName().toString()).startsWith(actual.getYear() + " - ");
+        }
+        verifyNoInteractions(fallbackParser);
+    }
+
+    @Test
+    public void testSameLibraryForSameSeed() throws Exception {
+        Path first = temporaryFolder.newFolder("first").toPath();
+        Path second = temporaryFolder.newFolder("second").toPath();
+        new SyntheticLibrary(10, 2, 3).generate(first);
+        new SyntheticLibrary(10, 2, 3).generate(second);
+
+        assertThat(tracks(first).stream().map(first::relativize).collect(Collectors.toList()))
+                .isEqualTo(tracks(second).stream().map(second::relativize).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testTouch() throws Exception {
+        SyntheticLibrary library = new SyntheticLibrary(20, 5, 10);
+        Path root = temporaryFolder.getRoot().toPath();
+        library.generate(root);
+        FileTime generated = FileTime.from(Instant.parse("2001-01-01T00:00:00Z"));
+        for (Path file : tracks(root)) {
+            Files.setLastModifiedTime(file, generated);
+        }
+
+        int touched = library.touch(root, 0.1);
+        assertThat(touched).isBetween(50, 150);
+        int changed = 0;
+        for (Path file : tracks(root)) {
+            if (!Files.getLastModifiedTime(file).equals(generated)) {
+                changed++;
+            }
+        }
+        assertThat(changed).isEqualTo(touched);
+    }
+
+    private static List<Path> tracks(Path root) throws Exception {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+}